@@ -5,6 +5,7 @@
 package ucar.nc2.bufr;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import org.jdom2.Element;
 import ucar.array.Array;
 import ucar.array.StructureData;
@@ -16,6 +17,7 @@ import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
 
@@ -54,6 +56,11 @@ public class BufrIosp extends AbstractIOServiceProvider {
     return MessageScanner.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return ImmutableList.of(MessageScanner.MAGIC);
+  }
+
   @Override
   public void build(RandomAccessFile raf, Group.Builder rootGroup, CancelTask cancelTask) throws IOException {
     setRaf(raf);
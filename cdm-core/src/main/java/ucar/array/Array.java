@@ -6,6 +6,8 @@ package ucar.array;
 
 import com.google.common.base.Objects;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleConsumer;
 import javax.annotation.concurrent.Immutable;
 
 /** Superclass for implementations of multidimensional arrays. */
@@ -37,6 +39,104 @@ public abstract class Array<T> implements Iterable<T> {
     return this.get(this.getIndex());
   }
 
+  /**
+   * Get the element indicated by the list of multidimensional indices, as a double, without boxing.
+   * 
+   * @param index list of indices, one for each dimension.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public double getDouble(int... index) {
+    return storage().getDouble(indexFn.get(index));
+  }
+
+  /**
+   * Get the element indicated by Index, as a double, without boxing.
+   * 
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public double getDouble(Index index) {
+    return getDouble(index.getCurrentIndex());
+  }
+
+  /**
+   * Get the element indicated by the list of multidimensional indices, as a float, without boxing.
+   * 
+   * @param index list of indices, one for each dimension.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public float getFloat(int... index) {
+    return storage().getFloat(indexFn.get(index));
+  }
+
+  /**
+   * Get the element indicated by Index, as a float, without boxing.
+   * 
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public float getFloat(Index index) {
+    return getFloat(index.getCurrentIndex());
+  }
+
+  /**
+   * Iterates in canonical order over all the elements of the Array, as doubles, without boxing.
+   * 
+   * @throws IllegalArgumentException (from nextDouble()) if the Array is not numeric.
+   */
+  public PrimitiveIterator.OfDouble doubleIterator() {
+    Storage<T> storage = storage();
+    if (indexFn.isCanonicalOrder()) {
+      return new CanonicalDoubleIterator(storage, length());
+    }
+    return new DoubleIterator(storage, indexFn.iterator());
+  }
+
+  /**
+   * Perform the action on all the elements of the Array in canonical order, as doubles, without boxing.
+   * 
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public void forEachDouble(DoubleConsumer action) {
+    doubleIterator().forEachRemaining(action);
+  }
+
+  /**
+   * Copy all the elements of the Array in canonical order into dest, converting to double.
+   * 
+   * @param dest must have room for length() elements starting at destPos.
+   * @param destPos starting pos in dest.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public void copyTo(double[] dest, int destPos) {
+    PrimitiveIterator.OfDouble iter = doubleIterator();
+    int destIndex = destPos;
+    while (iter.hasNext()) {
+      dest[destIndex++] = iter.nextDouble();
+    }
+  }
+
+  /**
+   * Copy all the elements of the Array in canonical order into dest, converting to float.
+   * 
+   * @param dest must have room for length() elements starting at destPos.
+   * @param destPos starting pos in dest.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public void copyTo(float[] dest, int destPos) {
+    Storage<T> storage = storage();
+    int destIndex = destPos;
+    if (indexFn.isCanonicalOrder()) {
+      long length = length();
+      for (long elem = 0; elem < length; elem++) {
+        dest[destIndex++] = storage.getFloat(elem);
+      }
+    } else {
+      PrimitiveIterator.OfLong iter = indexFn.iterator();
+      while (iter.hasNext()) {
+        dest[destIndex++] = storage.getFloat(iter.nextLong());
+      }
+    }
+  }
+
   /**
    * The ArrayType for this Array.
    * Note that ArrayType.CHAR is represented by an Array&lt;Byte&gt;.
@@ -165,5 +265,47 @@ public abstract class Array<T> implements Iterable<T> {
     return indexFn.contains(index);
   }
 
+  private static final class CanonicalDoubleIterator implements PrimitiveIterator.OfDouble {
+    private final Storage<?> storage;
+    private final long length;
+    private long elem;
+
+    CanonicalDoubleIterator(Storage<?> storage, long length) {
+      this.storage = storage;
+      this.length = length;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return elem < length;
+    }
+
+    @Override
+    public double nextDouble() {
+      return storage.getDouble(elem++);
+    }
+  }
+
+  private static final class DoubleIterator implements PrimitiveIterator.OfDouble {
+    // used when the data is not in canonical order
+    private final Storage<?> storage;
+    private final PrimitiveIterator.OfLong iter;
+
+    DoubleIterator(Storage<?> storage, PrimitiveIterator.OfLong iter) {
+      this.storage = storage;
+      this.iter = iter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iter.hasNext();
+    }
+
+    @Override
+    public double nextDouble() {
+      return storage.getDouble(iter.nextLong());
+    }
+  }
+
 }
 
@@ -9,6 +9,7 @@ import com.google.protobuf.ByteString;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for Byte. */
@@ -65,16 +66,16 @@ final class ArrayByte extends Array<Byte> {
     } else {
       byte[] ddest = (byte[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storage.get(iter.next());
+        ddest[destIndex++] = storage.get(iter.nextLong());
       }
     }
   }
 
   /** Convert the Array into a ByteString. */
   ByteString getByteString() {
-    if (indexFn.isCanonicalOrder()) {
+    if (indexFn.isCanonicalOrder() && storage instanceof StorageS) {
       return ByteString.copyFrom(((StorageS) storage).storage);
     }
     byte[] raw = new byte[(int) length()];
@@ -162,7 +163,7 @@ final class ArrayByte extends Array<Byte> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Byte> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -171,7 +172,7 @@ final class ArrayByte extends Array<Byte> {
 
     @Override
     public Byte next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
@@ -194,6 +195,16 @@ final class ArrayByte extends Array<Byte> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for doubles. */
@@ -55,6 +56,11 @@ final class ArrayDouble extends ucar.array.Array<Double> {
     return get(index.getCurrentIndex());
   }
 
+  @Override
+  public void copyTo(double[] dest, int destPos) {
+    arraycopy(0, dest, destPos, length());
+  }
+
   @Override
   void arraycopy(int srcPos, Object dest, int destPos, long length) {
     if (indexFn.isCanonicalOrder()) {
@@ -62,9 +68,9 @@ final class ArrayDouble extends ucar.array.Array<Double> {
     } else {
       double[] ddest = (double[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storageD.get(iter.next());
+        ddest[destIndex++] = storageD.get(iter.nextLong());
       }
     }
   }
@@ -82,7 +88,7 @@ final class ArrayDouble extends ucar.array.Array<Double> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Double> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -91,7 +97,7 @@ final class ArrayDouble extends ucar.array.Array<Double> {
 
     @Override
     public Double next() {
-      return storageD.get(iter.next());
+      return storageD.get(iter.nextLong());
     }
   }
 
@@ -104,6 +110,11 @@ final class ArrayDouble extends ucar.array.Array<Double> {
       this.storage = storage;
     }
 
+    // the primitive array, for loops that do not box, see ArrayStatistics
+    double[] array() {
+      return storage;
+    }
+
     @Override
     public long length() {
       return storage.length;
@@ -114,6 +125,16 @@ final class ArrayDouble extends ucar.array.Array<Double> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return (float) storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
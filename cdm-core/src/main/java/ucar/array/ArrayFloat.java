@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for floats. */
@@ -55,6 +56,11 @@ final class ArrayFloat extends Array<Float> {
     return get(index.getCurrentIndex());
   }
 
+  @Override
+  public void copyTo(float[] dest, int destPos) {
+    arraycopy(0, dest, destPos, length());
+  }
+
   @Override
   void arraycopy(int srcPos, Object dest, int destPos, long length) {
     if (indexFn.isCanonicalOrder()) {
@@ -62,9 +68,9 @@ final class ArrayFloat extends Array<Float> {
     } else {
       float[] ddest = (float[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storageF.get(iter.next());
+        ddest[destIndex++] = storageF.get(iter.nextLong());
       }
     }
   }
@@ -82,7 +88,7 @@ final class ArrayFloat extends Array<Float> {
 
   private class CanonicalIterator implements Iterator<Float> {
     // used when the data is not in canonical order
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -91,7 +97,7 @@ final class ArrayFloat extends Array<Float> {
 
     @Override
     public Float next() {
-      return storageF.get(iter.next());
+      return storageF.get(iter.nextLong());
     }
   }
 
@@ -103,6 +109,11 @@ final class ArrayFloat extends Array<Float> {
       this.storage = storage;
     }
 
+    // the primitive array, for loops that do not box, see ArrayStatistics
+    float[] array() {
+      return storage;
+    }
+
     @Override
     public long length() {
       return storage.length;
@@ -113,6 +124,16 @@ final class ArrayFloat extends Array<Float> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for Integer. */
@@ -64,9 +65,9 @@ class ArrayInteger extends Array<Integer> {
     } else {
       int[] ddest = (int[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storage.get(iter.next());
+        ddest[destIndex++] = storage.get(iter.nextLong());
       }
     }
   }
@@ -84,7 +85,7 @@ class ArrayInteger extends Array<Integer> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Integer> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -93,7 +94,7 @@ class ArrayInteger extends Array<Integer> {
 
     @Override
     public Integer next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
@@ -116,6 +117,16 @@ class ArrayInteger extends Array<Integer> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
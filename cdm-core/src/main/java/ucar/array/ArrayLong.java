@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for Long. */
@@ -62,9 +63,9 @@ final class ArrayLong extends Array<Long> {
     } else {
       long[] ddest = (long[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storage.get(iter.next());
+        ddest[destIndex++] = storage.get(iter.nextLong());
       }
     }
   }
@@ -82,7 +83,7 @@ final class ArrayLong extends Array<Long> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Long> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -91,7 +92,7 @@ final class ArrayLong extends Array<Long> {
 
     @Override
     public Long next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
@@ -114,6 +115,16 @@ final class ArrayLong extends Array<Long> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /** Concrete implementation of Array specialized for Short. */
@@ -62,9 +63,9 @@ final class ArrayShort extends Array<Short> {
     } else {
       short[] ddest = (short[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storage.get(iter.next());
+        ddest[destIndex++] = storage.get(iter.nextLong());
       }
     }
   }
@@ -82,7 +83,7 @@ final class ArrayShort extends Array<Short> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Short> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -91,7 +92,7 @@ final class ArrayShort extends Array<Short> {
 
     @Override
     public Short next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
@@ -114,6 +115,16 @@ final class ArrayShort extends Array<Short> {
       return storage[(int) elem];
     }
 
+    @Override
+    public double getDouble(long elem) {
+      return storage[(int) elem];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return storage[(int) elem];
+    }
+
     @Override
     public void arraycopy(int srcPos, Object dest, int destPos, long length) {
       System.arraycopy(storage, srcPos, dest, destPos, (int) length);
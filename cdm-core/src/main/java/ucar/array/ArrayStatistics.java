@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import com.google.common.base.Preconditions;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.LongStream;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.util.Misc;
+
+/**
+ * Statistics of the values of a numeric Array: the number of valid and missing values, min, max, sum, mean, and
+ * optionally a histogram. NaN is always missing, as is any value for which the IsMissingEvaluator returns true.
+ * Values of unsigned types are widened, eg a UBYTE of -1 is 255.
+ * <p>
+ * The values are read directly from the Array's storage without boxing. Arrays with at least
+ * {@link #getParallelThreshold()} elements are split into blocks that are computed on the common ForkJoinPool.
+ * Double and float Arrays in canonical order use an inner loop of independent lanes that the JIT can schedule or
+ * vectorize; a block is only rescanned element by element if it contains a NaN. The sum is added up in a different
+ * order than a sequential loop, so it may differ from one in the last bits.
+ */
+@Immutable
+public final class ArrayStatistics {
+  // Arrays with at least this many elements are computed in parallel
+  private static volatile long parallelThreshold =
+      Long.parseLong(System.getProperty("ucar.array.ArrayStatistics.parallelThreshold", String.valueOf(1 << 20)));
+  // number of elements computed by one task
+  private static final int blockSize = 1 << 16;
+
+  /**
+   * Set the number of elements at and above which statistics are computed in parallel.
+   * The default is set by the system property "ucar.array.ArrayStatistics.parallelThreshold".
+   */
+  public static void setParallelThreshold(long nelems) {
+    parallelThreshold = nelems;
+  }
+
+  /** Get the number of elements at and above which statistics are computed in parallel. */
+  public static long getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Compute the statistics of a numeric Array.
+   *
+   * @param array the data, in any order.
+   * @param eval which values are missing, or null if only NaN is missing.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public static ArrayStatistics compute(Array<?> array, @Nullable IsMissingEvaluator eval) {
+    return new Computation(array, eval, 0, 0, 0).compute();
+  }
+
+  /**
+   * Compute the statistics of a numeric Array, with a histogram of its valid values.
+   *
+   * @param array the data, in any order.
+   * @param eval which values are missing, or null if only NaN is missing.
+   * @param histMin the lower edge of the first bin. Smaller values are counted in the first bin.
+   * @param histMax the upper edge of the last bin. Larger values are counted in the last bin.
+   * @param nbins the number of bins, all the same width.
+   * @throws IllegalArgumentException if the Array is not numeric.
+   */
+  public static ArrayStatistics compute(Array<?> array, @Nullable IsMissingEvaluator eval, double histMin,
+      double histMax, int nbins) {
+    Preconditions.checkArgument(nbins > 0, "nbins must be > 0");
+    Preconditions.checkArgument(histMin < histMax, "histMin must be < histMax");
+    return new Computation(array, eval, histMin, histMax, nbins).compute();
+  }
+
+  /**
+   * If two Arrays have the same length, and their values in canonical order are nearly equal, as doubles or as floats.
+   * Used by {@link Arrays#equalDoubles} and {@link Arrays#equalFloats}.
+   */
+  static boolean nearlyEquals(Array<?> arr1, Array<?> arr2, boolean asFloats) {
+    long length = arr1.length();
+    if (length != arr2.length()) {
+      return false;
+    }
+    Values values1 = new Values(arr1);
+    Values values2 = new Values(arr2);
+    LongStream blocks = LongStream.range(0, (length + blockSize - 1) / blockSize);
+    if (length >= parallelThreshold && length > blockSize) {
+      blocks = blocks.parallel();
+    }
+    return blocks.allMatch(block -> {
+      long start = block * blockSize;
+      long end = Math.min(length, start + blockSize);
+      return asFloats ? nearlyEqualFloats(values1, values2, start, end)
+          : nearlyEqualDoubles(values1, values2, start, end);
+    });
+  }
+
+  private static boolean nearlyEqualDoubles(Values values1, Values values2, long start, long end) {
+    double[] data1 = values1.doubles(start, end);
+    double[] data2 = values2.doubles(start, end);
+    int from1 = values1.offset(data1, start);
+    int from2 = values2.offset(data2, start);
+    for (int i = 0; i < end - start; i++) {
+      if (!Misc.nearlyEquals(data1[from1 + i], data2[from2 + i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean nearlyEqualFloats(Values values1, Values values2, long start, long end) {
+    if (values1.floats != null && values2.floats != null) {
+      float[] data1 = values1.floats;
+      float[] data2 = values2.floats;
+      for (int i = (int) start; i < end; i++) {
+        if (!Misc.nearlyEquals(data1[i], data2[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    double[] data1 = values1.doubles(start, end);
+    double[] data2 = values2.doubles(start, end);
+    int from1 = values1.offset(data1, start);
+    int from2 = values2.offset(data2, start);
+    for (int i = 0; i < end - start; i++) {
+      if (!Misc.nearlyEquals((float) data1[from1 + i], (float) data2[from2 + i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the amount to add to a negative value read from the storage of an unsigned type, 0 for a signed type
+  private static double unsignedOffset(ArrayType arrayType) {
+    return arrayType.isUnsigned() ? Math.scalb(1.0, 8 * arrayType.getSize()) : 0;
+  }
+
+  // the values of an Array as doubles, in canonical order, without boxing
+  private static final class Values {
+    private final Array<?> array;
+    private final Storage<?> storage;
+    private final boolean canonical;
+    private final double unsignedOffset;
+    @Nullable
+    private final double[] doubles; // the storage, if canonical double[]
+    @Nullable
+    private final float[] floats; // the storage, if canonical float[]
+
+    Values(Array<?> array) {
+      this.array = array;
+      this.storage = array.storage();
+      this.canonical = array.indexFn().isCanonicalOrder();
+      this.unsignedOffset = unsignedOffset(array.getArrayType());
+      this.doubles = (canonical && storage instanceof ArrayDouble.StorageD) ? ((ArrayDouble.StorageD) storage).array()
+          : null;
+      this.floats = (canonical && storage instanceof ArrayFloat.StorageF) ? ((ArrayFloat.StorageF) storage).array()
+          : null;
+    }
+
+    // the elements start until end, either the double[] storage, or a copy starting at 0
+    double[] doubles(long start, long end) {
+      if (doubles != null) {
+        return doubles;
+      }
+      double[] result = new double[(int) (end - start)];
+      if (floats != null) {
+        for (int i = 0; i < result.length; i++) {
+          result[i] = floats[(int) start + i];
+        }
+      } else if (canonical) {
+        for (int i = 0; i < result.length; i++) {
+          result[i] = get(start + i);
+        }
+      } else {
+        PrimitiveIterator.OfLong iter = array.indexFn().iterator(start, end - start);
+        for (int i = 0; i < result.length; i++) {
+          result[i] = get(iter.nextLong());
+        }
+      }
+      return result;
+    }
+
+    // where element start is in the result of doubles(start, end)
+    int offset(double[] data, long start) {
+      return (data == doubles) ? (int) start : 0;
+    }
+
+    // element of the storage
+    double get(long elem) {
+      double val = storage.getDouble(elem);
+      return (val < 0) ? val + unsignedOffset : val;
+    }
+  }
+
+  private final long count;
+  private final long missingCount;
+  private final double min;
+  private final double max;
+  private final double sum;
+  private final double histMin;
+  private final double histMax;
+  @Nullable
+  private final long[] histogram;
+
+  private ArrayStatistics(Accum accum, double histMin, double histMax) {
+    this.count = accum.count;
+    this.missingCount = accum.missing;
+    this.min = accum.min;
+    this.max = accum.max;
+    this.sum = accum.sum;
+    this.histMin = histMin;
+    this.histMax = histMax;
+    this.histogram = accum.hist;
+  }
+
+  /** The number of valid values. */
+  public long count() {
+    return count;
+  }
+
+  /** The number of missing values, including NaNs. */
+  public long missingCount() {
+    return missingCount;
+  }
+
+  /** The smallest valid value, or NaN if there are none. */
+  public double min() {
+    return count == 0 ? Double.NaN : min;
+  }
+
+  /** The largest valid value, or NaN if there are none. */
+  public double max() {
+    return count == 0 ? Double.NaN : max;
+  }
+
+  /** The sum of the valid values. */
+  public double sum() {
+    return sum;
+  }
+
+  /** The mean of the valid values, or NaN if there are none. */
+  public double mean() {
+    return count == 0 ? Double.NaN : sum / count;
+  }
+
+  /** The min and max of the valid values. */
+  public MinMax minMax() {
+    return MinMax.create(min(), max());
+  }
+
+  /** The number of valid values in each histogram bin, or null if no histogram was asked for. */
+  @Nullable
+  public long[] histogram() {
+    return histogram == null ? null : histogram.clone();
+  }
+
+  /** The lower edge of the first histogram bin. */
+  public double histogramMin() {
+    return histMin;
+  }
+
+  /** The upper edge of the last histogram bin. */
+  public double histogramMax() {
+    return histMax;
+  }
+
+  @Override
+  public String toString() {
+    return "ArrayStatistics{" + "count=" + count + ", missingCount=" + missingCount + ", min=" + min() + ", max="
+        + max() + ", mean=" + mean() + '}';
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////
+
+  // statistics of part of the Array, merged when the parts are done
+  private static final class Accum {
+    long count;
+    long missing;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    double sum;
+    @Nullable
+    final long[] hist;
+
+    Accum(int nbins) {
+      this.hist = (nbins > 0) ? new long[nbins] : null;
+    }
+
+    void merge(Accum other) {
+      count += other.count;
+      missing += other.missing;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      sum += other.sum;
+      if (hist != null) {
+        for (int i = 0; i < hist.length; i++) {
+          hist[i] += other.hist[i];
+        }
+      }
+    }
+  }
+
+  private static final class Computation {
+    private final Array<?> array;
+    private final Storage<?> storage;
+    private final boolean canonical;
+    private final double unsignedOffset;
+    @Nullable
+    private final IsMissingEvaluator eval;
+    private final double histMin;
+    private final double histMax;
+    private final int nbins;
+    private final double binScale;
+
+    Computation(Array<?> array, @Nullable IsMissingEvaluator eval, double histMin, double histMax, int nbins) {
+      Preconditions.checkNotNull(array);
+      ArrayType arrayType = array.getArrayType();
+      Preconditions.checkArgument(arrayType.isNumeric() || arrayType.isEnum(), "Array must be numeric: %s",
+          arrayType);
+      this.array = array;
+      this.storage = array.storage();
+      this.canonical = array.indexFn().isCanonicalOrder();
+      this.unsignedOffset = unsignedOffset(arrayType);
+      this.eval = (eval != null && eval.hasMissing()) ? eval : null;
+      this.histMin = histMin;
+      this.histMax = histMax;
+      this.nbins = nbins;
+      this.binScale = (nbins > 0) ? nbins / (histMax - histMin) : 0;
+    }
+
+    ArrayStatistics compute() {
+      long length = array.length();
+      Accum accum;
+      if (length >= parallelThreshold && length > blockSize) {
+        accum = ForkJoinPool.commonPool().invoke(new Task(0, length));
+      } else {
+        // in blocks, so the inner loops are called often enough to be compiled, not just replaced on the stack
+        accum = new Accum(nbins);
+        for (long start = 0; start < length; start += blockSize) {
+          accumulate(start, Math.min(length, start + blockSize), accum);
+        }
+      }
+      return new ArrayStatistics(accum, histMin, histMax);
+    }
+
+    private final class Task extends RecursiveTask<Accum> {
+      private final long start;
+      private final long end;
+
+      Task(long start, long end) {
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      protected Accum compute() {
+        if (end - start <= blockSize) {
+          Accum accum = new Accum(nbins);
+          accumulate(start, end, accum);
+          return accum;
+        }
+        long mid = start + (end - start) / 2;
+        Task left = new Task(start, mid);
+        left.fork();
+        Accum accum = new Task(mid, end).compute();
+        accum.merge(left.join());
+        return accum;
+      }
+    }
+
+    // the elements start until end, in canonical order
+    private void accumulate(long start, long end, Accum accum) {
+      if (!canonical) {
+        PrimitiveIterator.OfLong iter = array.indexFn().iterator(start, end - start);
+        while (iter.hasNext()) {
+          add(get(iter.nextLong()), accum);
+        }
+      } else if (storage instanceof ArrayDouble.StorageD) {
+        doubles(((ArrayDouble.StorageD) storage).array(), (int) start, (int) end, accum);
+      } else if (storage instanceof ArrayFloat.StorageF) {
+        floats(((ArrayFloat.StorageF) storage).array(), (int) start, (int) end, accum);
+      } else if (storage instanceof StoragePaged) {
+        StoragePaged<?> paged = (StoragePaged<?>) storage;
+        int pageSize = paged.getPageSize();
+        long elem = start;
+        while (elem < end) {
+          Object page = paged.getPage((int) (elem / pageSize));
+          int from = (int) (elem % pageSize);
+          int to = (int) Math.min(pageSize, from + (end - elem));
+          if (page instanceof double[]) {
+            doubles((double[]) page, from, to, accum);
+          } else if (page instanceof float[]) {
+            floats((float[]) page, from, to, accum);
+          } else {
+            for (long i = elem; i < elem + (to - from); i++) {
+              add(get(i), accum);
+            }
+          }
+          elem += to - from;
+        }
+      } else {
+        for (long i = start; i < end; i++) {
+          add(get(i), accum);
+        }
+      }
+    }
+
+    // element of the storage, widened if unsigned
+    private double get(long elem) {
+      double val = storage.getDouble(elem);
+      return (val < 0) ? val + unsignedOffset : val;
+    }
+
+    private void add(double val, Accum accum) {
+      if (Double.isNaN(val) || (eval != null && eval.isMissing(val))) {
+        accum.missing++;
+        return;
+      }
+      accum.count++;
+      accum.sum += val;
+      if (val < accum.min) {
+        accum.min = val;
+      }
+      if (val > accum.max) {
+        accum.max = val;
+      }
+      if (accum.hist != null) {
+        int bin = (int) ((val - histMin) * binScale);
+        accum.hist[Math.max(0, Math.min(nbins - 1, bin))]++;
+      }
+    }
+
+    private void doubles(double[] data, int from, int to, Accum accum) {
+      if (eval == null && accum.hist == null) {
+        // independent min, max and sum for each of 4 lanes, so no result waits on the one before.
+        // Comparisons rather than Math.min/max, which also handle NaN and -0.0: a NaN is caught by the sum.
+        double min0 = Double.POSITIVE_INFINITY, min1 = min0, min2 = min0, min3 = min0;
+        double max0 = Double.NEGATIVE_INFINITY, max1 = max0, max2 = max0, max3 = max0;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+          double v0 = data[i], v1 = data[i + 1], v2 = data[i + 2], v3 = data[i + 3];
+          s0 += v0;
+          s1 += v1;
+          s2 += v2;
+          s3 += v3;
+          min0 = (v0 < min0) ? v0 : min0;
+          min1 = (v1 < min1) ? v1 : min1;
+          min2 = (v2 < min2) ? v2 : min2;
+          min3 = (v3 < min3) ? v3 : min3;
+          max0 = (v0 > max0) ? v0 : max0;
+          max1 = (v1 > max1) ? v1 : max1;
+          max2 = (v2 > max2) ? v2 : max2;
+          max3 = (v3 > max3) ? v3 : max3;
+        }
+        for (; i < to; i++) {
+          double v = data[i];
+          s0 += v;
+          min0 = (v < min0) ? v : min0;
+          max0 = (v > max0) ? v : max0;
+        }
+        double sum = (s0 + s1) + (s2 + s3);
+        if (!Double.isNaN(sum)) { // else there is a NaN, or both infinities, so rescan
+          accum.count += to - from;
+          accum.sum += sum;
+          accum.min = Math.min(accum.min, Math.min(Math.min(min0, min1), Math.min(min2, min3)));
+          accum.max = Math.max(accum.max, Math.max(Math.max(max0, max1), Math.max(max2, max3)));
+          return;
+        }
+      }
+      for (int i = from; i < to; i++) {
+        add(data[i], accum);
+      }
+    }
+
+    private void floats(float[] data, int from, int to, Accum accum) {
+      if (eval == null && accum.hist == null) {
+        // independent min, max and sum for each of 4 lanes, so no result waits on the one before.
+        // Comparisons rather than Math.min/max, which also handle NaN and -0.0: a NaN is caught by the sum.
+        float min0 = Float.POSITIVE_INFINITY, min1 = min0, min2 = min0, min3 = min0;
+        float max0 = Float.NEGATIVE_INFINITY, max1 = max0, max2 = max0, max3 = max0;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+          float v0 = data[i], v1 = data[i + 1], v2 = data[i + 2], v3 = data[i + 3];
+          s0 += v0;
+          s1 += v1;
+          s2 += v2;
+          s3 += v3;
+          min0 = (v0 < min0) ? v0 : min0;
+          min1 = (v1 < min1) ? v1 : min1;
+          min2 = (v2 < min2) ? v2 : min2;
+          min3 = (v3 < min3) ? v3 : min3;
+          max0 = (v0 > max0) ? v0 : max0;
+          max1 = (v1 > max1) ? v1 : max1;
+          max2 = (v2 > max2) ? v2 : max2;
+          max3 = (v3 > max3) ? v3 : max3;
+        }
+        for (; i < to; i++) {
+          float v = data[i];
+          s0 += v;
+          min0 = (v < min0) ? v : min0;
+          max0 = (v > max0) ? v : max0;
+        }
+        double sum = (s0 + s1) + (s2 + s3);
+        if (!Double.isNaN(sum)) { // else there is a NaN, or both infinities, so rescan
+          accum.count += to - from;
+          accum.sum += sum;
+          accum.min = Math.min(accum.min, Math.min(Math.min(min0, min1), Math.min(min2, min3)));
+          accum.max = Math.max(accum.max, Math.max(Math.max(max0, max1), Math.max(max2, max3)));
+          return;
+        }
+      }
+      for (int i = from; i < to; i++) {
+        add(data[i], accum);
+      }
+    }
+  }
+}
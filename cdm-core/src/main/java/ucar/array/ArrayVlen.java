@@ -6,6 +6,7 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -183,9 +184,9 @@ public final class ArrayVlen<T> extends Array<Array<T>> {
     } else {
       Object[] ddest = (Object[]) dest;
       int destIndex = destPos;
-      Iterator<Integer> iter = indexFn.iterator(srcPos, length);
+      PrimitiveIterator.OfLong iter = indexFn.iterator(srcPos, length);
       while (iter.hasNext()) {
-        ddest[destIndex++] = storage.getPrimitiveArray(iter.next());
+        ddest[destIndex++] = storage.getPrimitiveArray((int) iter.nextLong());
       }
     }
   }
@@ -203,7 +204,7 @@ public final class ArrayVlen<T> extends Array<Array<T>> {
 
   // used when the data is not in canonical order
   private class CanonicalIterator implements Iterator<Array<T>> {
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -212,7 +213,7 @@ public final class ArrayVlen<T> extends Array<Array<T>> {
 
     @Override
     public Array<T> next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
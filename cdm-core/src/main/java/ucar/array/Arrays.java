@@ -9,8 +9,9 @@ import com.google.protobuf.ByteString;
 import ucar.nc2.util.Misc;
 
 import javax.annotation.Nullable;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.PrimitiveIterator;
 
 /** Static helper classes for {@link Array} */
 public class Arrays {
@@ -24,9 +25,16 @@ public class Arrays {
    *
    * @param dataType data type of the data. Vlen detected from the shape.
    * @param shape multidimensional shape, must have same total length as dataArray.
-   * @param dataArray must be java primitive array or String[]
+   * @param dataArray must be java primitive array or String[], or a ByteBuffer or {@link StoragePaged} for a numeric
+   *        dataType.
    */
   public static <T> Array<T> factory(ArrayType dataType, int[] shape, Object dataArray) {
+    if (dataArray instanceof ByteBuffer) {
+      return factory(dataType, shape, (ByteBuffer) dataArray);
+    }
+    if (dataArray instanceof StoragePaged) {
+      return factory(dataType, shape, (StoragePaged<?>) dataArray);
+    }
     switch (dataType) {
       case CHAR:
         if (dataArray instanceof char[]) {
@@ -74,13 +82,88 @@ public class Arrays {
     }
   }
 
+  /**
+   * Create Array using the remaining bytes of a ByteBuffer as storage, in the ByteBuffer's byte order.
+   * The bytes are not copied, so if bb is direct or memory mapped, the data stays outside the Java heap.
+   * The calling routine must not change the ByteBuffer's contents. See {@link StorageBB}.
+   *
+   * @param dataType data type of the data, must be numeric, CHAR or an enum.
+   * @param shape multidimensional shape, bb must have at least this many elements remaining.
+   * @param bb the data, starting at its position. Its position, limit and byte order are not changed.
+   */
+  public static <T> Array<T> factory(ArrayType dataType, int[] shape, ByteBuffer bb) {
+    return fromStorage(dataType, shape, StorageBB.create(dataType, bb, bb.order()));
+  }
+
+  /**
+   * Create Array using paged storage, for Arrays with more elements than fit in a java array.
+   * The pages are not copied. The calling routine must not change them. See {@link StoragePaged}.
+   *
+   * @param dataType data type of the data, must be numeric, CHAR or an enum, and match the storage.
+   * @param shape multidimensional shape, storage must have at least this many elements.
+   * @param storage the data.
+   */
+  public static <T> Array<T> factory(ArrayType dataType, int[] shape, StoragePaged<?> storage) {
+    return fromStorage(dataType, shape, storage);
+  }
+
+  // Storage of a numeric type that is not a java primitive array
+  private static <T> Array<T> fromStorage(ArrayType dataType, int[] shape, Storage<?> storage) {
+    switch (dataType) {
+      case CHAR:
+      case BYTE:
+      case ENUM1:
+      case UBYTE:
+        return (Array<T>) new ArrayByte(dataType, shape, (Storage<Byte>) storage);
+      case DOUBLE:
+        return (Array<T>) new ArrayDouble(shape, (Storage<Double>) storage);
+      case FLOAT:
+        return (Array<T>) new ArrayFloat(shape, (Storage<Float>) storage);
+      case INT:
+      case ENUM4:
+      case UINT:
+        return (Array<T>) new ArrayInteger(dataType, shape, (Storage<Integer>) storage);
+      case LONG:
+      case ULONG:
+        return (Array<T>) new ArrayLong(dataType, shape, (Storage<Long>) storage);
+      case SHORT:
+      case ENUM2:
+      case USHORT:
+        return (Array<T>) new ArrayShort(dataType, shape, (Storage<Short>) storage);
+      default:
+        throw new IllegalArgumentException("Storage " + storage.getClass().getSimpleName() + " not supported for "
+            + dataType);
+    }
+  }
+
+  /**
+   * If the Array's storage is a ByteBuffer (see {@link #factory(ArrayType, int[], ByteBuffer)}) and it is in
+   * canonical order, return a read-only view of its bytes, positioned at 0, in their byte order, without copying.
+   * Otherwise return null.
+   */
+  @Nullable
+  public static ByteBuffer getByteBuffer(Array<?> array) {
+    Storage<?> storage = array.storage();
+    if (!(storage instanceof StorageBB) || !array.indexFn().isCanonicalOrder()) {
+      return null;
+    }
+    return ((StorageBB<?>) storage).getByteBuffer(array.length());
+  }
+
   /**
    * Create Array using empty java array of T, or java primitive array, same size as shape.
-   * Do not use this for Vlens or Structures.*
+   * Do not use this for Vlens or Structures.
+   * Numeric Arrays with more elements than fit in a java array use {@link StoragePaged}.
    * 
    * @param shape multidimensional shape
    */
   public static <T> Array<T> factoryFill(ArrayType dataType, int[] shape, Number fillValue) {
+    long size = computeSize(shape);
+    if (StoragePaged.isNeeded(size)) {
+      StoragePaged<?> storage = StoragePaged.create(dataType, size);
+      storage.fill(fillValue);
+      return fromStorage(dataType, shape, storage);
+    }
     switch (dataType) {
       case BYTE:
       case CHAR:
@@ -138,8 +221,15 @@ public class Arrays {
 
   private static Object combine_(ArrayType dataType, int[] shape, List<Array<?>> dataArrays) {
     long size = Arrays.computeSize(shape);
-    if (size > Integer.MAX_VALUE) {
-      throw new OutOfMemoryError();
+    if (StoragePaged.isNeeded(size)) {
+      // each of the dataArrays must fit in a java array
+      StoragePaged<?> storage = StoragePaged.create(dataType, size);
+      long start = 0;
+      for (Array<?> dataArray : dataArrays) {
+        storage.copyFrom(dataArray, start);
+        start += dataArray.length();
+      }
+      return storage;
     }
     Object dstAll;
 
@@ -397,89 +487,87 @@ public class Arrays {
     return newshape;
   }
 
-  /** Copy all the data out of the Array into a 1d primitive array of the appropriate type. */
+  /**
+   * Copy all the data out of the Array into a 1d primitive array of the appropriate type.
+   * 
+   * @throws IllegalArgumentException if the Array has more elements than fit in a java array.
+   */
   public static Object copyPrimitiveArray(Array<?> data) {
-    ArrayType dataType = data.getArrayType();
-    int idx = 0;
+    Preconditions.checkArgument(!StoragePaged.isNeeded(data.length()), "Array too large for a java array, length=%s",
+        data.length());
+    int n = (int) data.length();
+    Object parray = java.lang.reflect.Array.newInstance(primitiveArrayClass(data.getArrayType()), n);
+    // arraycopy follows the IndexFn when the data is not in canonical order
+    data.arraycopy(0, parray, 0, n);
+    return parray;
+  }
+
+  /**
+   * Copy all the data out of the Array in canonical order into a caller-supplied 1d primitive array of the
+   * appropriate type, starting at destPos. See {@link #checkPrimitiveArray(ArrayType, Object, int, long)}.
+   *
+   * @throws IllegalArgumentException if dest is the wrong type or too small.
+   */
+  public static void copyPrimitiveArray(Array<?> data, Object dest, int destPos) {
+    checkPrimitiveArray(data.getArrayType(), dest, destPos, data.length());
+    data.arraycopy(0, dest, destPos, data.length());
+  }
+
+  /**
+   * Check that dest is a 1d primitive array that holds the given type, with room for nelems elements starting at
+   * destPos. The primitive array is byte[] for CHAR, OPAQUE, ENUM1, BYTE and UBYTE; short[] for ENUM2, SHORT and
+   * USHORT; int[] for ENUM4, INT and UINT; long[] for LONG and ULONG; float[], double[] and String[] for FLOAT, DOUBLE
+   * and STRING.
+   *
+   * @throws IllegalArgumentException if not.
+   */
+  public static void checkPrimitiveArray(ArrayType dataType, Object dest, int destPos, long nelems) {
+    Preconditions.checkNotNull(dest);
+    Class<?> want = primitiveArrayClass(dataType);
+    Preconditions.checkArgument(dest.getClass().getComponentType() == want, "Destination for %s must be a %s[], not %s",
+        dataType, want.getSimpleName(), dest.getClass().getSimpleName());
+    int length = java.lang.reflect.Array.getLength(dest);
+    Preconditions.checkArgument(destPos >= 0 && destPos + nelems <= length,
+        "Destination of length %s does not have room for %s elements at %s", length, nelems, destPos);
+  }
+
+  private static Class<?> primitiveArrayClass(ArrayType dataType) {
     switch (dataType) {
       case CHAR:
       case OPAQUE:
       case ENUM1:
       case UBYTE:
-      case BYTE: {
-        Array<Byte> bdata = (Array<Byte>) data;
-        byte[] parray = new byte[(int) data.length()];
-        for (byte val : bdata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
+      case BYTE:
+        return byte.class;
       case ENUM2:
       case USHORT:
-      case SHORT: {
-        Array<Short> sdata = (Array<Short>) data;
-        short[] parray = new short[(int) data.length()];
-        for (short val : sdata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
+      case SHORT:
+        return short.class;
       case ENUM4:
       case UINT:
-      case INT: {
-        Array<Integer> idata = (Array<Integer>) data;
-        int[] parray = new int[(int) data.length()];
-        for (int val : idata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
+      case INT:
+        return int.class;
       case ULONG:
-      case LONG: {
-        Array<Long> ldata = (Array<Long>) data;
-        long[] parray = new long[(int) data.length()];
-        for (long val : ldata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
-      case FLOAT: {
-        Array<Float> fdata = (Array<Float>) data;
-        float[] parray = new float[(int) data.length()];
-        for (float val : fdata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
-      case DOUBLE: {
-        Array<Double> ddata = (Array<Double>) data;
-        double[] parray = new double[(int) data.length()];
-        for (double val : ddata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
-      case STRING: {
-        Array<String> sdata = (Array<String>) data;
-        String[] parray = new String[(int) data.length()];
-        for (String val : sdata) {
-          parray[idx++] = val;
-        }
-        return parray;
-      }
+      case LONG:
+        return long.class;
+      case FLOAT:
+        return float.class;
+      case DOUBLE:
+        return double.class;
+      case STRING:
+        return String.class;
       default:
         throw new IllegalStateException("Unimplemented datatype " + dataType);
     }
   }
 
-  /** Sum all the values in the Array as doubles. Must be an array of Number. */
+  /**
+   * Sum all the values in the Array as doubles, using {@link ArrayStatistics}. Must be an array of Number.
+   * The sum is NaN if any value is NaN.
+   */
   public static double sumDouble(Array<?> array) {
-    Array<Number> ddata = (Array<Number>) array;
-    double sum = 0;
-    for (Number val : ddata) {
-      sum += val.doubleValue();
-    }
-    return sum;
+    ArrayStatistics stats = ArrayStatistics.compute(array, null);
+    return (stats.missingCount() > 0) ? Double.NaN : stats.sum();
   }
 
   /** Convert a numeric array to double values. */
@@ -487,46 +575,19 @@ public class Arrays {
     if (array instanceof ArrayDouble) {
       return (Array<Double>) array;
     }
-    Array<Number> conv = (Array<Number>) array;
-    int n = (int) array.length();
-    double[] storage = new double[n];
-    int count = 0;
-    for (Number val : conv) {
-      storage[count++] = val.doubleValue();
-    }
+    double[] storage = new double[(int) array.length()];
+    array.copyTo(storage, 0);
     return factory(ArrayType.DOUBLE, array.getShape(), storage);
   }
 
   /** Get the min and max of the array, skipping missing data if eval.hasMissing(). */
   public static MinMax getMinMaxSkipMissingData(Array<? extends Number> a, @Nullable IsMissingEvaluator eval) {
     Preconditions.checkNotNull(a);
-    boolean hasEval = (eval != null && eval.hasMissing());
-    double max = -Double.MAX_VALUE;
-    double min = Double.MAX_VALUE;
-    if (a instanceof ArrayDouble) {
-      ArrayDouble ad = (ArrayDouble) a;
-      for (double val : ad) {
-        if ((hasEval && eval.isMissing(val)) || Double.isNaN(val)) {
-          continue;
-        }
-        if (val > max)
-          max = val;
-        if (val < min)
-          min = val;
-      }
-    } else {
-      for (Number number : a) {
-        double val = number.doubleValue();
-        if (hasEval && eval.isMissing(val) || Double.isNaN(val)) {
-          continue;
-        }
-        if (val > max)
-          max = val;
-        if (val < min)
-          min = val;
-      }
+    ArrayStatistics stats = ArrayStatistics.compute(a, eval);
+    if (stats.count() == 0) {
+      return MinMax.create(Double.MAX_VALUE, -Double.MAX_VALUE);
     }
-    return MinMax.create(min, max);
+    return stats.minMax();
   }
 
   /**
@@ -648,38 +709,14 @@ public class Arrays {
    * Compare values which must be equal to within {@link Misc#defaultMaxRelativeDiffDouble}.
    */
   public static boolean equalDoubles(Array<Double> arr1, Array<Double> arr2) {
-    if (arr1.length() != arr2.length()) {
-      return false;
-    }
-    Iterator<Double> iter1 = arr1.iterator();
-    Iterator<Double> iter2 = arr2.iterator();
-    while (iter1.hasNext() && iter2.hasNext()) {
-      double v1 = iter1.next();
-      double v2 = iter2.next();
-      if (!Misc.nearlyEquals(v1, v2)) {
-        return false;
-      }
-    }
-    return true;
+    return ArrayStatistics.nearlyEquals(arr1, arr2, false);
   }
 
   /**
    * Compare values which must be equal to within {@link Misc#defaultMaxRelativeDiffFloat}.
    */
   public static boolean equalFloats(Array<Float> arr1, Array<Float> arr2) {
-    if (arr1.length() != arr2.length()) {
-      return false;
-    }
-    Iterator<Float> iter1 = arr1.iterator();
-    Iterator<Float> iter2 = arr2.iterator();
-    while (iter1.hasNext() && iter2.hasNext()) {
-      float v1 = iter1.next();
-      float v2 = iter2.next();
-      if (!Misc.nearlyEquals(v1, v2)) {
-        return false;
-      }
-    }
-    return true;
+    return ArrayStatistics.nearlyEquals(arr1, arr2, true);
   }
 
   /**
@@ -689,11 +726,11 @@ public class Arrays {
     if (arr1.length() != arr2.length()) {
       return false;
     }
-    Iterator<Number> iter1 = arr1.iterator();
-    Iterator<Number> iter2 = arr2.iterator();
+    PrimitiveIterator.OfDouble iter1 = arr1.doubleIterator();
+    PrimitiveIterator.OfDouble iter2 = arr2.doubleIterator();
     while (iter1.hasNext() && iter2.hasNext()) {
-      float v1 = iter1.next().floatValue();
-      float v2 = iter2.next().floatValue();
+      float v1 = (float) iter1.nextDouble();
+      float v2 = (float) iter2.nextDouble();
       if (!Misc.nearlyEquals(v1, v2)) {
         return false;
       }
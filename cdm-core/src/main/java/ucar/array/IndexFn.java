@@ -6,27 +6,27 @@ package ucar.array;
 
 import com.google.common.base.Preconditions;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 import javax.annotation.concurrent.Immutable;
 
 /** Public by accident. Translate between multidimensional index and 1-d arrays. */
 @Immutable
-public final class IndexFn implements Iterable<Integer> {
+public final class IndexFn implements Iterable<Long> {
 
   /**
    * Get the 1-d index indicated by the list of multidimensional indices.
    *
    * @param index list of indices, one for each dimension. For vlen, the last is ignored.
    */
-  public int get(int... index) {
+  public long get(int... index) {
     // scalar case
     if (this.rank == 0 && index.length == 1 && index[0] == 0) {
       return 0;
     }
     Preconditions.checkArgument(this.rank == index.length, this.rank + " != " + index.length);
-    int value = offset;
+    long value = offset;
     for (int ii = 0; ii < rank; ii++) {
       if (index[ii] < 0 || index[ii] >= shape[ii]) {
         throw new IllegalArgumentException(String.format("IndexFn.get(%s) not inside of shape '%s'",
@@ -83,11 +83,13 @@ public final class IndexFn implements Iterable<Integer> {
     return shape[index];
   }
 
-  public Iterator<Integer> iterator() {
+  /** Iterate over the storage elements in canonical order. Use nextLong() to avoid boxing. */
+  public PrimitiveIterator.OfLong iterator() {
     return new Odometer();
   }
 
-  public Iterator<Integer> iterator(int start, long length) {
+  /** Iterate over length storage elements in canonical order, starting at the start-th. */
+  public PrimitiveIterator.OfLong iterator(long start, long length) {
     return new Odometer(start, length);
   }
 
@@ -99,7 +101,7 @@ public final class IndexFn implements Iterable<Integer> {
   public String toString2() {
     StringBuilder sbuff = new StringBuilder();
     boolean first = true;
-    for (int i : this) {
+    for (long i : this) {
       if (!first) {
         sbuff.append(", ");
       }
@@ -209,7 +211,7 @@ public final class IndexFn implements Iterable<Integer> {
     // allocate
     IndexFn.Builder newindex = builder(rank);
     newindex.offset = offset;
-    int[] newstride = new int[rank];
+    long[] newstride = new long[rank];
 
     // calc shape, size, and index transformations
     // calc strides into original (backing) store
@@ -262,7 +264,7 @@ public final class IndexFn implements Iterable<Integer> {
 
     IndexFn.Builder newindex = builder(rank - 1);
     newindex.offset = offset;
-    int[] newstride = new int[rank - 1];
+    long[] newstride = new long[rank - 1];
 
     int count = 0;
     for (int ii = 0; ii < rank; ii++) {
@@ -318,11 +320,11 @@ public final class IndexFn implements Iterable<Integer> {
 
   ////////////////////////////////////////////////////////////////////////////////////////////
   private final int[] shape;
-  private final int[] stride;
+  private final long[] stride;
   private final int rank;
 
   private final long length; // total number of elements
-  private final int offset; // element = offset + stride[0]*current[0] + ...
+  private final long offset; // element = offset + stride[0]*current[0] + ...
   private final boolean canonicalOrder; // can use fast iterator if in canonical order
 
   private IndexFn(Builder builder) {
@@ -333,11 +335,11 @@ public final class IndexFn implements Iterable<Integer> {
     System.arraycopy(builder.shape, 0, this.shape, 0, rank);
 
     if (builder.stride == null) {
-      stride = new int[rank];
+      stride = new long[rank];
       length = computeStrides(shape);
     } else {
       Preconditions.checkArgument(builder.stride.length == rank);
-      this.stride = new int[rank];
+      this.stride = new long[rank];
       System.arraycopy(builder.stride, 0, this.stride, 0, rank);
       this.length = Arrays.computeSize(shape);
     }
@@ -352,7 +354,7 @@ public final class IndexFn implements Iterable<Integer> {
       int thisDim = shape[ii];
       if (thisDim < 0)
         continue; // ignore vlen
-      this.stride[ii] = (int) product;
+      this.stride[ii] = product;
       product *= thisDim;
     }
     return product;
@@ -380,8 +382,8 @@ public final class IndexFn implements Iterable<Integer> {
 
   public static class Builder {
     int[] shape;
-    int[] stride;
-    int offset = 0;
+    long[] stride;
+    long offset = 0;
     boolean canonicalOrder = true;
 
     Builder(int rank) {
@@ -395,13 +397,13 @@ public final class IndexFn implements Iterable<Integer> {
     }
 
     /** Dimension strides (not Section strides) */
-    Builder setStride(int[] stride) {
-      this.stride = new int[stride.length];
+    Builder setStride(long[] stride) {
+      this.stride = new long[stride.length];
       System.arraycopy(stride, 0, this.stride, 0, stride.length);
       return this;
     }
 
-    Builder setOffset(int offset) {
+    Builder setOffset(long offset) {
       this.offset = offset;
       return this;
     }
@@ -426,11 +428,24 @@ public final class IndexFn implements Iterable<Integer> {
     return odometer;
   }
 
-  private class Odometer implements Iterator<Integer> {
+  // the n-dim index of the element'th element in canonical order, which does not depend on the strides
+  private int[] canonicalOdometer(long element) {
+    int[] result = new int[rank];
+    for (int dim = rank - 1; dim >= 0; dim--) {
+      if (shape[dim] <= 0) {
+        continue; // vlen
+      }
+      result[dim] = (int) (element % shape[dim]);
+      element /= shape[dim];
+    }
+    return result;
+  }
+
+  private class Odometer implements PrimitiveIterator.OfLong {
     private final long nelems;
     private final int[] current;
-    private int count = 0;
-    private int nextIndex;
+    private long count = 0;
+    private long nextIndex;
 
     private Odometer() {
       nelems = length; // all elements
@@ -438,36 +453,42 @@ public final class IndexFn implements Iterable<Integer> {
       nextIndex = get(current);
     }
 
-    private Odometer(int startElement, long nelems) {
+    private Odometer(long startElement, long nelems) {
       this.nelems = nelems; // this many elements
-      current = odometer(startElement); // starts here
+      current = canonicalOdometer(startElement); // starts here
       nextIndex = get(current);
     }
 
     public boolean hasNext() {
-      return count++ < nelems;
+      return count < nelems;
     }
 
-    public Integer next() {
-      int result = nextIndex;
-      nextIndex = incr();
+    public long nextLong() {
+      long result = nextIndex;
+      count++;
+      if (count < nelems) {
+        incr();
+      }
       return result;
     }
 
-    private int incr() {
+    // move to the next element, updating nextIndex by the strides rather than recomputing it
+    private void incr() {
       int digit = rank - 1;
       while (digit >= 0) {
         if (shape[digit] < 0) { // do not increment vlen
           current[digit] = -1;
+          digit--;
           continue;
         }
         current[digit]++;
+        nextIndex += stride[digit];
         if (current[digit] < shape[digit])
           break; // normal exit
+        nextIndex -= stride[digit] * current[digit];
         current[digit] = 0; // else, carry
         digit--;
       }
-      return get(current);
     }
   }
 
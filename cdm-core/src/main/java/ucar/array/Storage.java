@@ -13,6 +13,32 @@ public interface Storage<T> extends Iterable<T> {
   /** Get the ith element. */
   T get(long elem);
 
+  /**
+   * Get the ith element as a double, without boxing when the storage is primitive.
+   * 
+   * @throws IllegalArgumentException if the elements are not numbers.
+   */
+  default double getDouble(long elem) {
+    T val = get(elem);
+    if (val instanceof Number) {
+      return ((Number) val).doubleValue();
+    }
+    throw new IllegalArgumentException("Storage of " + val.getClass().getName() + " is not numeric");
+  }
+
+  /**
+   * Get the ith element as a float, without boxing when the storage is primitive.
+   * 
+   * @throws IllegalArgumentException if the elements are not numbers.
+   */
+  default float getFloat(long elem) {
+    T val = get(elem);
+    if (val instanceof Number) {
+      return ((Number) val).floatValue();
+    }
+    throw new IllegalArgumentException("Storage of " + val.getClass().getName() + " is not numeric");
+  }
+
   /**
    * Copy all or a portion to dest array.
    * Mimic of System.arraycopy(Object src, int srcPos, Object dest, int destPos, int length);
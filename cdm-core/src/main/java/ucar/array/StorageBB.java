@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Storage for numeric Arrays using a ByteBuffer with an explicit ByteOrder, instead of a primitive java array.
+ * When the ByteBuffer is direct or memory mapped, the data is not on the Java heap, and can be handed to native or
+ * network code without copying, see {@link #getByteBuffer()} and {@link Arrays#getByteBuffer(Array)}.
+ * <p>
+ * The ByteBuffer must not be changed after the Storage is created. A memory mapped ByteBuffer must not be used
+ * after the file it maps has been truncated.
+ */
+@Immutable
+public abstract class StorageBB<T> implements Storage<T> {
+
+  /**
+   * Create Storage for the remaining bytes of bb. The position, limit and byte order of bb are not changed.
+   *
+   * @param arrayType the type of the elements, must have a primitive class of byte, short, int, long, float or
+   *        double.
+   * @param bb the bytes, starting at its position. Any bytes after the last whole element are ignored.
+   * @param order the byte order of the elements.
+   */
+  public static StorageBB<?> create(ArrayType arrayType, ByteBuffer bb, ByteOrder order) {
+    Class<?> primitiveClass = arrayType.getPrimitiveClass();
+    if (primitiveClass == Byte.class) {
+      return new StorageBytes(bb, order);
+    } else if (primitiveClass == Short.class) {
+      return new StorageShorts(bb, order);
+    } else if (primitiveClass == Integer.class) {
+      return new StorageInts(bb, order);
+    } else if (primitiveClass == Long.class) {
+      return new StorageLongs(bb, order);
+    } else if (primitiveClass == Float.class) {
+      return new StorageFloats(bb, order);
+    } else if (primitiveClass == Double.class) {
+      return new StorageDoubles(bb, order);
+    }
+    throw new IllegalArgumentException("ByteBuffer storage not supported for " + arrayType);
+  }
+
+  // position 0, limit = nelems * elemSize, set to the byte order. Only absolute gets are used, so this is thread safe.
+  final ByteBuffer bb;
+  final int nelems;
+  private final int elemSize;
+
+  private StorageBB(ByteBuffer bb, ByteOrder order, int elemSize) {
+    Preconditions.checkNotNull(order);
+    this.elemSize = elemSize;
+    this.nelems = bb.remaining() / elemSize;
+    ByteBuffer view = bb.slice();
+    view.limit(nelems * elemSize);
+    this.bb = view.order(order);
+  }
+
+  @Override
+  public long length() {
+    return nelems;
+  }
+
+  /** The byte order of the elements. */
+  public ByteOrder getByteOrder() {
+    return bb.order();
+  }
+
+  /** If the bytes are outside the Java heap, ie in a direct or memory mapped ByteBuffer. */
+  public boolean isDirect() {
+    return bb.isDirect();
+  }
+
+  /**
+   * A read-only view of all the bytes in the byte order, positioned at 0. The bytes are not copied.
+   * The view is independent of any other, so its position and limit may be changed.
+   */
+  public ByteBuffer getByteBuffer() {
+    return bb.asReadOnlyBuffer().order(bb.order());
+  }
+
+  /** A read-only view of nelems elements starting at the first, in the byte order. The bytes are not copied. */
+  ByteBuffer getByteBuffer(long nelems) {
+    ByteBuffer view = getByteBuffer();
+    view.limit((int) nelems * elemSize);
+    return view;
+  }
+
+  /** A view starting at the srcPos-th element, in the byte order. */
+  ByteBuffer viewAt(int srcPos) {
+    ByteBuffer view = bb.duplicate();
+    view.position(srcPos * elemSize);
+    return view.slice().order(bb.order());
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new StorageIter();
+  }
+
+  private final class StorageIter implements Iterator<T> {
+    private int count = 0;
+
+    @Override
+    public final boolean hasNext() {
+      return count < nelems;
+    }
+
+    @Override
+    public final T next() {
+      return get(count++);
+    }
+  }
+
+  static final class StorageBytes extends StorageBB<Byte> {
+    StorageBytes(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 1);
+    }
+
+    @Override
+    public Byte get(long elem) {
+      return bb.get((int) elem);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.get((int) elem);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return bb.get((int) elem);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).get((byte[]) dest, destPos, (int) length);
+    }
+  }
+
+  static final class StorageShorts extends StorageBB<Short> {
+    StorageShorts(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 2);
+    }
+
+    @Override
+    public Short get(long elem) {
+      return bb.getShort((int) elem * 2);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.getShort((int) elem * 2);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return bb.getShort((int) elem * 2);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).asShortBuffer().get((short[]) dest, destPos, (int) length);
+    }
+  }
+
+  static final class StorageInts extends StorageBB<Integer> {
+    StorageInts(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 4);
+    }
+
+    @Override
+    public Integer get(long elem) {
+      return bb.getInt((int) elem * 4);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.getInt((int) elem * 4);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return bb.getInt((int) elem * 4);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).asIntBuffer().get((int[]) dest, destPos, (int) length);
+    }
+  }
+
+  static final class StorageLongs extends StorageBB<Long> {
+    StorageLongs(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 8);
+    }
+
+    @Override
+    public Long get(long elem) {
+      return bb.getLong((int) elem * 8);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.getLong((int) elem * 8);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return bb.getLong((int) elem * 8);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).asLongBuffer().get((long[]) dest, destPos, (int) length);
+    }
+  }
+
+  static final class StorageFloats extends StorageBB<Float> {
+    StorageFloats(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 4);
+    }
+
+    @Override
+    public Float get(long elem) {
+      return bb.getFloat((int) elem * 4);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.getFloat((int) elem * 4);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return bb.getFloat((int) elem * 4);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).asFloatBuffer().get((float[]) dest, destPos, (int) length);
+    }
+  }
+
+  static final class StorageDoubles extends StorageBB<Double> {
+    StorageDoubles(ByteBuffer bb, ByteOrder order) {
+      super(bb, order, 8);
+    }
+
+    @Override
+    public Double get(long elem) {
+      return bb.getDouble((int) elem * 8);
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return bb.getDouble((int) elem * 8);
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return (float) bb.getDouble((int) elem * 8);
+    }
+
+    @Override
+    public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+      viewAt(srcPos).asDoubleBuffer().get((double[]) dest, destPos, (int) length);
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import com.google.common.base.Preconditions;
+import java.util.Iterator;
+
+/**
+ * Storage for numeric Arrays with more elements than fit in a single java array, as pages of primitive arrays,
+ * indexed by long. Use it only when {@link #isNeeded(long)}: smaller Arrays use a single primitive array.
+ * <p>
+ * The pages are filled in place, eg by an IOSP, using {@link #getPage(int)}. They must not be changed after the
+ * Storage is used by an Array, see {@link Arrays#factory(ArrayType, int[], Object)}.
+ */
+public abstract class StoragePaged<T> implements Storage<T> {
+  /** The largest number of elements that are stored in a single java array. */
+  public static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+  // 128 Mi elements per page
+  private static final int defaultPageShift = 27;
+
+  /** If nelems is too many to store in a single java array. */
+  public static boolean isNeeded(long nelems) {
+    return nelems > MAX_ARRAY_LENGTH;
+  }
+
+  /**
+   * Create zeroed Storage with the default page size.
+   *
+   * @param arrayType the type of the elements, must have a primitive class of byte, short, int, long, float or
+   *        double.
+   * @param nelems the number of elements.
+   */
+  public static StoragePaged<?> create(ArrayType arrayType, long nelems) {
+    return create(arrayType, nelems, defaultPageShift);
+  }
+
+  /**
+   * Create zeroed Storage with pages of 2^pageShift elements.
+   *
+   * @param arrayType the type of the elements, must have a primitive class of byte, short, int, long, float or
+   *        double.
+   * @param nelems the number of elements.
+   * @param pageShift log2 of the number of elements in each page, from 1 to 30.
+   */
+  public static StoragePaged<?> create(ArrayType arrayType, long nelems, int pageShift) {
+    Preconditions.checkArgument(nelems >= 0);
+    Preconditions.checkArgument(pageShift > 0 && pageShift <= 30, "pageShift must be in [1, 30]");
+    Class<?> primitiveClass = arrayType.getPrimitiveClass();
+    if (primitiveClass == Byte.class) {
+      return new StorageBytes(nelems, pageShift);
+    } else if (primitiveClass == Short.class) {
+      return new StorageShorts(nelems, pageShift);
+    } else if (primitiveClass == Integer.class) {
+      return new StorageInts(nelems, pageShift);
+    } else if (primitiveClass == Long.class) {
+      return new StorageLongs(nelems, pageShift);
+    } else if (primitiveClass == Float.class) {
+      return new StorageFloats(nelems, pageShift);
+    } else if (primitiveClass == Double.class) {
+      return new StorageDoubles(nelems, pageShift);
+    }
+    throw new IllegalArgumentException("Paged storage not supported for " + arrayType);
+  }
+
+  final long nelems;
+  final int pageShift;
+  final long pageMask;
+  private final int npages;
+
+  private StoragePaged(long nelems, int pageShift) {
+    this.nelems = nelems;
+    this.pageShift = pageShift;
+    this.pageMask = (1L << pageShift) - 1;
+    this.npages = (int) ((nelems + pageMask) >>> pageShift);
+  }
+
+  // the number of elements in the ith page
+  int pageLength(int i) {
+    return (int) Math.min(1L << pageShift, nelems - ((long) i << pageShift));
+  }
+
+  @Override
+  public long length() {
+    return nelems;
+  }
+
+  /** The number of pages. */
+  public int getPageCount() {
+    return npages;
+  }
+
+  /** The number of elements in each page, except perhaps the last, which may be smaller. */
+  public int getPageSize() {
+    return 1 << pageShift;
+  }
+
+  /** The ith page, a primitive array. The element elem is in page elem / getPageSize(). */
+  public abstract Object getPage(int i);
+
+  /** Set all the elements to the given value. */
+  public abstract void fill(Number value);
+
+  /** Mimic of System.arraycopy, reading across pages. */
+  @Override
+  public void arraycopy(int srcPos, Object dest, int destPos, long length) {
+    long done = 0;
+    while (done < length) {
+      long src = srcPos + done;
+      int page = (int) (src >>> pageShift);
+      int offset = (int) (src & pageMask);
+      int n = (int) Math.min(length - done, pageLength(page) - offset);
+      System.arraycopy(getPage(page), offset, dest, (int) (destPos + done), n);
+      done += n;
+    }
+  }
+
+  /**
+   * Copy all the elements of src in canonical order, starting at destElem, writing across pages.
+   * src must have fewer elements than {@link #MAX_ARRAY_LENGTH}.
+   */
+  void copyFrom(Array<?> src, long destElem) {
+    long length = src.length();
+    long done = 0;
+    while (done < length) {
+      long dest = destElem + done;
+      int page = (int) (dest >>> pageShift);
+      int offset = (int) (dest & pageMask);
+      int n = (int) Math.min(length - done, pageLength(page) - offset);
+      src.arraycopy((int) done, getPage(page), offset, n);
+      done += n;
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new StorageIter();
+  }
+
+  private final class StorageIter implements Iterator<T> {
+    private long count = 0;
+
+    @Override
+    public final boolean hasNext() {
+      return count < nelems;
+    }
+
+    @Override
+    public final T next() {
+      return get(count++);
+    }
+  }
+
+  static final class StorageBytes extends StoragePaged<Byte> {
+    private final byte[][] pages;
+
+    StorageBytes(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new byte[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new byte[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Byte get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public byte[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (byte[] page : pages) {
+        java.util.Arrays.fill(page, value.byteValue());
+      }
+    }
+  }
+
+  static final class StorageShorts extends StoragePaged<Short> {
+    private final short[][] pages;
+
+    StorageShorts(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new short[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new short[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Short get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public short[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (short[] page : pages) {
+        java.util.Arrays.fill(page, value.shortValue());
+      }
+    }
+  }
+
+  static final class StorageInts extends StoragePaged<Integer> {
+    private final int[][] pages;
+
+    StorageInts(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new int[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new int[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Integer get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public int[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (int[] page : pages) {
+        java.util.Arrays.fill(page, value.intValue());
+      }
+    }
+  }
+
+  static final class StorageLongs extends StoragePaged<Long> {
+    private final long[][] pages;
+
+    StorageLongs(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new long[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new long[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Long get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public long[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (long[] page : pages) {
+        java.util.Arrays.fill(page, value.longValue());
+      }
+    }
+  }
+
+  static final class StorageFloats extends StoragePaged<Float> {
+    private final float[][] pages;
+
+    StorageFloats(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new float[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new float[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Float get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (float[] page : pages) {
+        java.util.Arrays.fill(page, value.floatValue());
+      }
+    }
+  }
+
+  static final class StorageDoubles extends StoragePaged<Double> {
+    private final double[][] pages;
+
+    StorageDoubles(long nelems, int pageShift) {
+      super(nelems, pageShift);
+      pages = new double[getPageCount()][];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new double[pageLength(i)];
+      }
+    }
+
+    @Override
+    public Double get(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double getDouble(long elem) {
+      return pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public float getFloat(long elem) {
+      return (float) pages[(int) (elem >>> pageShift)][(int) (elem & pageMask)];
+    }
+
+    @Override
+    public double[] getPage(int i) {
+      return pages[i];
+    }
+
+    @Override
+    public void fill(Number value) {
+      for (double[] page : pages) {
+        java.util.Arrays.fill(page, value.doubleValue());
+      }
+    }
+  }
+}
@@ -8,6 +8,7 @@ import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -105,7 +106,7 @@ public final class StructureDataArray extends Array<StructureData> {
 
   private class CanonicalIterator implements Iterator<StructureData> {
     // used when the data is not in canonical order
-    private final Iterator<Integer> iter = indexFn.iterator();
+    private final PrimitiveIterator.OfLong iter = indexFn.iterator();
 
     @Override
     public boolean hasNext() {
@@ -114,7 +115,7 @@ public final class StructureDataArray extends Array<StructureData> {
 
     @Override
     public StructureData next() {
-      return storage.get(iter.next());
+      return storage.get(iter.nextLong());
     }
   }
 
@@ -4,11 +4,12 @@
  */
 package ucar.nc2;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
@@ -23,6 +24,7 @@ public class AttributeContainerMutable implements AttributeContainer {
 
   private @Nullable String name;
   private final ArrayList<Attribute> atts;
+  private final ArrayList<Supplier<? extends Iterable<Attribute>>> deferred = new ArrayList<>();
 
   /** Constructor with container name. */
   public AttributeContainerMutable(@Nullable String name) {
@@ -50,9 +52,30 @@ public class AttributeContainerMutable implements AttributeContainer {
 
   @Override
   public Iterator<Attribute> iterator() {
+    addDeferredAttributes();
     return atts.iterator();
   }
 
+  /**
+   * Add Attributes that are made when they are first used, eg by an IOSP that reads attribute values lazily. They are
+   * added after the Attributes already in the container, before any other change or lookup, or when the immutable
+   * container made by {@link #toImmutable} is first used. The supplier may throw an unchecked exception, which is
+   * thrown by that use.
+   */
+  public AttributeContainerMutable addDeferred(Supplier<? extends Iterable<Attribute>> supplier) {
+    deferred.add(supplier);
+    return this;
+  }
+
+  // a supplier is removed only once its attributes are made, so that a failure is seen by every use
+  private void addDeferredAttributes() {
+    while (!deferred.isEmpty()) {
+      Iterable<Attribute> made = deferred.get(0).get();
+      deferred.remove(0);
+      addAll(made);
+    }
+  }
+
   /**
    * Add an attribute to the container. If an attrribute of the same name already exists, replace it with this one.
    * 
@@ -61,6 +84,7 @@ public class AttributeContainerMutable implements AttributeContainer {
   public Attribute addAttribute(Attribute att) {
     if (att == null)
       return null;
+    addDeferredAttributes();
     for (int i = 0; i < atts.size(); i++) {
       Attribute a = atts.get(i);
       if (att.getShortName().equals(a.getShortName())) {
@@ -115,6 +139,7 @@ public class AttributeContainerMutable implements AttributeContainer {
 
   @Override
   public Attribute findAttribute(String name) {
+    addDeferredAttributes();
     for (Attribute a : atts) {
       if (name.equals(a.getShortName())) {
         return a;
@@ -162,6 +187,7 @@ public class AttributeContainerMutable implements AttributeContainer {
    * @return true if was found and removed
    */
   public boolean remove(Attribute a) {
+    addDeferredAttributes();
     return a != null && atts.remove(a);
   }
 
@@ -172,6 +198,7 @@ public class AttributeContainerMutable implements AttributeContainer {
    * @return true if old attribute exists.
    */
   public boolean replace(Attribute a, String newName) {
+    addDeferredAttributes();
     boolean ok = atts.remove(a);
     Attribute newAtt = a.toBuilder().setName(newName).build();
     addAttribute(newAtt);
@@ -180,6 +207,7 @@ public class AttributeContainerMutable implements AttributeContainer {
 
   /** Remove all attributes. */
   public AttributeContainerMutable clear() {
+    deferred.clear();
     atts.clear();
     return this;
   }
@@ -208,45 +236,52 @@ public class AttributeContainerMutable implements AttributeContainer {
 
   /** Turn into an immutable AttributeContainer */
   public AttributeContainer toImmutable() {
-    return new AttributeContainerImmutable(name, atts);
+    if (deferred.isEmpty()) {
+      return new AttributeContainerImmutable(name, Suppliers.ofInstance(ImmutableList.copyOf(atts)));
+    }
+    // a copy, so that later changes to this container are not seen
+    AttributeContainerMutable copy = new AttributeContainerMutable(name, atts);
+    copy.deferred.addAll(deferred);
+    return new AttributeContainerImmutable(name, Suppliers.memoize(() -> ImmutableList.copyOf(copy)));
   }
 
   @Override
   public boolean isEmpty() {
+    addDeferredAttributes();
     return atts.isEmpty();
   }
 
   @Immutable
   private static class AttributeContainerImmutable implements AttributeContainer {
     private final String name;
-    private final ImmutableList<Attribute> atts;
+    private final Supplier<ImmutableList<Attribute>> atts; // memoized if any are deferred
 
-    private AttributeContainerImmutable(String name, List<Attribute> atts) {
+    private AttributeContainerImmutable(String name, Supplier<ImmutableList<Attribute>> atts) {
       this.name = name;
-      this.atts = ImmutableList.copyOf(atts);
+      this.atts = atts;
     }
 
     @Override
     public Iterator<Attribute> iterator() {
-      return atts.iterator();
+      return atts.get().iterator();
     }
 
     @Override
     public String findAttributeString(String attName, String defaultValue) {
-      return atts.stream().filter(a -> a.getShortName().equalsIgnoreCase(attName)).findFirst()
+      return atts.get().stream().filter(a -> a.getShortName().equalsIgnoreCase(attName)).findFirst()
           .map(Attribute::getStringValue).orElse(defaultValue);
     }
 
     @Override
     public Attribute findAttribute(String attName) {
-      return atts.stream().filter(a -> a.getShortName().equals(attName)).findFirst().orElse(null);
+      return atts.get().stream().filter(a -> a.getShortName().equals(attName)).findFirst().orElse(null);
     }
 
     @Override
     public Attribute findAttributeIgnoreCase(String attName) {
       Attribute result = findAttribute(attName);
       return (result != null) ? result
-          : atts.stream().filter(a -> a.getShortName().equalsIgnoreCase(attName)).findFirst().orElse(null);
+          : atts.get().stream().filter(a -> a.getShortName().equalsIgnoreCase(attName)).findFirst().orElse(null);
     }
 
     @Override
@@ -279,7 +314,7 @@ public class AttributeContainerMutable implements AttributeContainer {
 
     @Override
     public boolean isEmpty() {
-      return atts.isEmpty();
+      return atts.get().isEmpty();
     }
 
     @Override
@@ -289,19 +324,19 @@ public class AttributeContainerMutable implements AttributeContainer {
       if (o == null || getClass() != o.getClass())
         return false;
       AttributeContainerImmutable that = (AttributeContainerImmutable) o;
-      return Objects.equals(name, that.name) && Objects.equals(atts, that.atts);
+      return Objects.equals(name, that.name) && Objects.equals(atts.get(), that.atts.get());
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(name, atts);
+      return Objects.hash(name, atts.get());
     }
 
     @Override
     public String toString() {
       Formatter f = new Formatter();
       f.format("name ='%s'%n", name);
-      atts.forEach(a -> f.format(" %s%n", a));
+      atts.get().forEach(a -> f.format(" %s%n", a));
       return f.toString();
     }
   }
@@ -485,6 +485,20 @@ public class NetcdfFile implements FileCacheable, Closeable {
     return iosp.readArrayData(v, ranges);
   }
 
+  /**
+   * Do not call this directly, use Variable.readInto() !!
+   * Ranges must be filled (no nulls)
+   */
+  protected void readArrayDataInto(Variable v, ucar.array.Section ranges, Object dest, int destPos)
+      throws IOException, ucar.array.InvalidRangeException {
+    if (iosp == null) {
+      // a subclass that reads without an iosp, eg a remote file, overrides readArrayData
+      ucar.array.Arrays.copyPrimitiveArray(readArrayData(v, ranges), dest, destPos);
+      return;
+    }
+    iosp.readArrayDataInto(v, ranges, dest, destPos);
+  }
+
   /**
    * Read a variable using the given section specification.
    * The result is always an array of the type of the innermost variable.
@@ -5,6 +5,9 @@
 package ucar.nc2;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -26,18 +29,21 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import javax.annotation.Nullable;
+import ucar.nc2.internal.iosp.HeaderSnapshot;
 import ucar.nc2.internal.iosp.netcdf3.N3header;
 import ucar.nc2.internal.iosp.netcdf3.N3iosp;
 import ucar.nc2.internal.util.StringLocker;
 import ucar.nc2.internal.util.URLnaming;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.iosp.IOServiceProvider;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.internal.util.DiskCache;
 import ucar.nc2.internal.util.EscapeStrings;
 import ucar.nc2.util.IO;
+import ucar.unidata.io.CompressedRandomAccessFile;
 import ucar.unidata.io.UncompressInputStream;
-import ucar.unidata.io.bzip2.CBZip2InputStream;
+import ucar.unidata.io.bzip2.ParallelBZip2InputStream;
 import ucar.unidata.io.spi.RandomAccessFileProvider;
 import ucar.unidata.util.StringUtil2;
 
@@ -54,7 +60,15 @@ public class NetcdfFiles {
   private static final int default_buffersize = 8092;
   private static final StringLocker stringLocker = new StringLocker();
   private static final List<String> possibleCompressedSuffixes = Arrays.asList("Z", "zip", "gzip", "gz", "bz2");
+  // read gzip, bzip2 and zip files without uncompressing them to disk
+  private static final boolean randomAccessCompressed =
+      Boolean.parseBoolean(System.getProperty("ucar.nc2.NetcdfFiles.randomAccessCompressed", "true"));
   private static final boolean loadWarnings = false;
+  // ServiceLoader reads the jar manifests each time, so only do it once
+  private static final Supplier<List<IOServiceProvider>> loadedProviders =
+      Suppliers.memoize(() -> ImmutableList.copyOf(ServiceLoader.load(IOServiceProvider.class)));
+  private static final Supplier<List<RandomAccessFileProvider>> rafProviders =
+      Suppliers.memoize(() -> ImmutableList.copyOf(ServiceLoader.load(RandomAccessFileProvider.class)));
   private static final boolean userLoadsFirst;
 
   // load core service providers
@@ -180,6 +194,8 @@ public class NetcdfFiles {
    *        <li>local netcdf-4 filename (with a file: prefix or no prefix)
    *        <li>local hdf-5 filename (with a file: prefix or no prefix)
    *        <li>local iosp filename (with a file: prefix or no prefix)
+   *        <li>local filename with an mmap: prefix, to read the file through memory mapping
+   *        ({@link ucar.unidata.io.MMapRandomAccessFile})
    *        </ol>
    *        If file ends with ".Z", ".zip", ".gzip", ".gz", or ".bz2", it will uncompress/unzip and write to new file
    *        without the suffix,
@@ -187,6 +203,9 @@ public class NetcdfFiles {
    *        it prefers to
    *        place the uncompressed file in the same directory as the original file. If it does not have write permission
    *        on that directory, it will use the directory defined by ucar.nc2.util.DiskCache class.
+   *        Gzip, bzip2 and zip files are instead read directly with a
+   *        {@link ucar.unidata.io.CompressedRandomAccessFile}, which only writes a small index of seek points, unless
+   *        the system property "ucar.nc2.NetcdfFiles.randomAccessCompressed" is false.
    *
    * @param buffer_size RandomAccessFile buffer size, if &le; 0, use default size
    * @param cancelTask allow task to be cancelled; may be null.
@@ -283,7 +302,7 @@ public class NetcdfFiles {
     ucar.unidata.io.RandomAccessFile raf = null;
 
     // look for dynamically loaded RandomAccessFile Providers
-    for (RandomAccessFileProvider provider : ServiceLoader.load(RandomAccessFileProvider.class)) {
+    for (RandomAccessFileProvider provider : rafProviders.get()) {
       if (provider.isOwnerOf(location)) {
         raf = provider.open(location, buffer_size);
         Preconditions.checkNotNull(raf);
@@ -304,13 +323,12 @@ public class NetcdfFiles {
         uriString = StringUtil2.unescape(uriString.substring(5)); // 11/10/2010 from erussell@ngs.org
       }
 
-      String uncompressedFileName = null;
       if (looksCompressed(uriString)) {
         try {
           // Avoid race condition where the decompressed file is trying to be read by one
           // thread while another is decompressing it
           stringLocker.control(uriString);
-          uncompressedFileName = makeUncompressed(uriString);
+          raf = openCompressed(uriString, buffer_size);
         } catch (Exception e) {
           log.warn("Failed to uncompress {}, err= {}; try as a regular file.", uriString, e.getMessage());
           // allow to fall through to open the "compressed" file directly - may be a misnamed suffix
@@ -319,10 +337,7 @@ public class NetcdfFiles {
         }
       }
 
-      if (uncompressedFileName != null) {
-        // open uncompressed file as a RandomAccessFile.
-        raf = ucar.unidata.io.RandomAccessFile.acquire(uncompressedFileName, buffer_size);
-      } else {
+      if (raf == null) {
         // normal case - not compressed
         raf = ucar.unidata.io.RandomAccessFile.acquire(uriString, buffer_size);
       }
@@ -359,10 +374,9 @@ public class NetcdfFiles {
     uriString = DiskCache.getFileStandardPolicy(tmp + sep + filename).getPath();
     copy(raf, new FileOutputStream(uriString), 1 << 20);
     try {
-      String uncompressedFileName = makeUncompressed(uriString);
-      return ucar.unidata.io.RandomAccessFile.acquire(uncompressedFileName, buffer_size);
+      return openCompressed(uriString, buffer_size);
     } catch (Exception e) {
-      throw new IOException();
+      throw new IOException(e);
     }
   }
 
@@ -383,6 +397,29 @@ public class NetcdfFiles {
     }
   }
 
+  /**
+   * Open a compressed local file. Use the uncompressed file if it already exists, else read the compressed file
+   * directly if its format allows random access, else uncompress it to a new file.
+   *
+   * @return the opened file, or null if the compressed file does not exist.
+   */
+  @Nullable
+  private static ucar.unidata.io.RandomAccessFile openCompressed(String filename, int buffer_size) throws Exception {
+    if (randomAccessCompressed) {
+      File uncompressedFile = DiskCache.getFileStandardPolicy(filename.substring(0, filename.lastIndexOf('.')));
+      if (!(uncompressedFile.exists() && uncompressedFile.length() > 0)
+          && CompressedRandomAccessFile.canOpen(filename)) {
+        if (NetcdfFile.debugCompress) {
+          log.info("random access to compressed {}", filename);
+        }
+        return new CompressedRandomAccessFile(filename, buffer_size);
+      }
+    }
+    String uncompressedFileName = makeUncompressed(filename);
+    return (uncompressedFileName == null) ? null
+        : ucar.unidata.io.RandomAccessFile.acquire(uncompressedFileName, buffer_size);
+  }
+
   private static String makeUncompressed(String filename) throws Exception {
     int pos = filename.lastIndexOf('.');
     String suffix = filename.substring(pos + 1);
@@ -467,7 +504,7 @@ public class NetcdfFiles {
           }
 
         } else if (suffix.equalsIgnoreCase("bz2")) {
-          try (InputStream in = new CBZip2InputStream(new FileInputStream(filename), true)) {
+          try (InputStream in = new ParallelBZip2InputStream(new FileInputStream(filename))) {
             IO.copyBuffered(in, fout, 100000);
           }
           if (NetcdfFile.debugCompress) {
@@ -610,13 +647,16 @@ public class NetcdfFiles {
     if (NetcdfFile.debugSPI)
       log.info("NetcdfFile try to open = {}", raf.getLocation());
 
+    // read the start of the file once, to skip the providers whose magic numbers dont match
+    MagicNumber.Sniffer sniffer = new MagicNumber.Sniffer(raf);
+
     // Registered providers override defaults.
     for (IOServiceProvider registeredSpi : registeredProviders) {
       if (NetcdfFile.debugSPI) {
         log.info(" try iosp = {}", registeredSpi.getClass().getName());
       }
 
-      if (registeredSpi.isValidFile(raf)) {
+      if (MagicNumber.anyMatch(registeredSpi.getMagicNumbers(), sniffer) && registeredSpi.isValidFile(raf)) {
         // need a new instance for thread safety
         Class<?> c = registeredSpi.getClass();
         try {
@@ -627,13 +667,13 @@ public class NetcdfFiles {
       }
     }
 
-    if (N3header.isValidFile(raf)) {
+    if (MagicNumber.anyMatch(N3header.MAGIC_NUMBERS, sniffer) && N3header.isValidFile(raf)) {
       return new N3iosp();
 
     } else {
       // look for dynamically loaded IOSPs
-      for (IOServiceProvider loadedSpi : ServiceLoader.load(IOServiceProvider.class)) {
-        if (loadedSpi.isValidFile(raf)) {
+      for (IOServiceProvider loadedSpi : loadedProviders.get()) {
+        if (MagicNumber.anyMatch(loadedSpi.getMagicNumbers(), sniffer) && loadedSpi.isValidFile(raf)) {
           Class<?> c = loadedSpi.getClass();
           try {
             return (IOServiceProvider) c.getDeclaredConstructor().newInstance();
@@ -652,8 +692,12 @@ public class NetcdfFiles {
     NetcdfFile.Builder<?> builder = NetcdfFile.builder().setIosp((AbstractIOServiceProvider) spi).setLocation(location);
 
     try {
-      Group.Builder root = Group.builder().setName("");
-      spi.build(raf, root, cancelTask);
+      Group.Builder root = HeaderSnapshot.read(spi, raf);
+      if (root == null) {
+        root = Group.builder().setName("");
+        spi.build(raf, root, cancelTask);
+        HeaderSnapshot.write(spi, raf, root);
+      }
       builder.setRootGroup(root);
 
       String id = root.getAttributeContainer().findAttributeString("_Id", null);
@@ -606,6 +606,28 @@ public class Variable implements ProxyReader, Comparable<Variable> {
     return proxyReader.proxyReadArray(this, section, null);
   }
 
+  /**
+   * Read a section of the data for this Variable into a caller-supplied 1d primitive array, in canonical order,
+   * starting at destPos. Reusing the destination avoids allocating a new Array on each read, eg when reading the same
+   * section from many files or time steps. The destination type follows
+   * {@link Arrays#checkPrimitiveArray(ArrayType, Object, int, long)}.
+   *
+   * @param section The section of data to read, same as {@link #readArray(Section)}.
+   * @param dest 1d primitive array with room for the section's size, starting at destPos.
+   * @param destPos starting position in dest.
+   * @throws IllegalArgumentException if dest is the wrong type or too small.
+   */
+  public void readInto(@Nullable Section section, Object dest, int destPos)
+      throws java.io.IOException, InvalidRangeException {
+    section = Section.fill(section, getShape());
+    Arrays.checkPrimitiveArray(getArrayType(), dest, destPos, section.computeSize());
+    if (ncfile == null || proxyReader != this || isMemberOfStructure() || isCaching() || hasCachedData()) {
+      Arrays.copyPrimitiveArray(readArray(section), dest, destPos);
+      return;
+    }
+    ncfile.readArrayDataInto(this, section, dest, destPos);
+  }
+
   ////// ProxyReader
 
   /** public by accident, do not call directly. */
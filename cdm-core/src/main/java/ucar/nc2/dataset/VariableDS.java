@@ -249,6 +249,20 @@ public class VariableDS extends Variable implements VariableEnhanced {
     return convertArray(result);
   }
 
+  @Override
+  public void readInto(@Nullable ucar.array.Section section, Object dest, int destPos)
+      throws IOException, ucar.array.InvalidRangeException {
+    // read straight through to the original variable when there is nothing to convert
+    if (orgVar == null || hasCachedData() || proxyReader != this || convertNeeded()
+        || orgVar.getArrayType() != getArrayType() || !java.util.Arrays.equals(orgVar.getShape(), getShape())) {
+      Arrays.copyPrimitiveArray(readArray(section), dest, destPos);
+      return;
+    }
+    section = ucar.array.Section.fill(section, getShape());
+    Arrays.checkPrimitiveArray(getArrayType(), dest, destPos, section.computeSize());
+    orgVar.readInto(section, dest, destPos);
+  }
+
   @Override
   public ucar.array.Array<?> proxyReadArray(Variable client, ucar.array.Section section, CancelTask cancelTask)
       throws IOException, ucar.array.InvalidRangeException {
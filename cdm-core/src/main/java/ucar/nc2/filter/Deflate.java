@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/**
+ * The zlib deflate filter (HDF5 filter id 1). Uncompresses straight into the result, which is allocated once when the
+ * uncompressed size is known, using an Inflater kept by each thread.
+ */
+@Immutable
+class Deflate implements Filter {
+  static final int ID = 1;
+  static final String NAME = "deflate";
+
+  // Copied from ArrayList.
+  private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
+
+  // an Inflater holds native memory, so reuse one per thread rather than make one per chunk
+  private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] decode(byte[] compressed) throws IOException {
+    return Filters.toArray(decode(ByteBuffer.wrap(compressed), -1));
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer compressed, int decodedSize) throws IOException {
+    int capacity = (decodedSize >= 0) ? decodedSize : (int) Math.min(8L * compressed.remaining(), MAX_ARRAY_LEN);
+    byte[] result = new byte[capacity];
+    int n = 0;
+
+    Inflater inflater = inflaters.get();
+    inflater.reset();
+    if (compressed.hasArray()) {
+      inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(), compressed.remaining());
+    } else {
+      inflater.setInput(compressed.duplicate());
+    }
+    try {
+      while (!inflater.finished()) {
+        if (n == result.length) {
+          // the result is full, but the end of the stream has not been seen: is there more?
+          byte[] next = new byte[1];
+          if (inflate(inflater, next, 0) == 0)
+            break;
+          result = grow(result);
+          result[n++] = next[0];
+        }
+        n += inflate(inflater, result, n);
+      }
+    } catch (DataFormatException e) {
+      String s = e.getMessage();
+      throw new ZipException(s != null ? s : "Invalid ZLIB data format");
+    }
+    return ByteBuffer.wrap(result, 0, n);
+  }
+
+  // inflate into dest from pos; 0 only at the end of the stream
+  private static int inflate(Inflater inflater, byte[] dest, int pos) throws IOException, DataFormatException {
+    int count;
+    while ((count = inflater.inflate(dest, pos, dest.length - pos)) == 0) {
+      if (inflater.finished())
+        return 0;
+      if (inflater.needsDictionary())
+        throw new ZipException("ZLIB dictionaries are not supported");
+      if (inflater.needsInput())
+        throw new EOFException("Unexpected end of ZLIB input stream");
+    }
+    return count;
+  }
+
+  private static byte[] grow(byte[] result) throws IOException {
+    if (result.length >= MAX_ARRAY_LEN)
+      throw new IOException("Uncompressed data is larger than the maximum length of a byte array");
+    int capacity = (int) Math.min(MAX_ARRAY_LEN, Math.max(64, 2L * result.length));
+    return Arrays.copyOf(result, capacity);
+  }
+
+  static class Provider implements FilterProvider {
+    @Override
+    public int getId() {
+      return ID;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public Filter create(int[] clientValues) {
+      return new Deflate();
+    }
+  }
+}
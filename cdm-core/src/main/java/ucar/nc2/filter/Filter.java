@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Decodes a chunk of data that was encoded by a filter when it was written, eg uncompresses it.
+ * Chunks may be decoded concurrently, so implementations must be thread safe.
+ */
+@ThreadSafe
+public interface Filter {
+
+  /** The HDF5 filter id. */
+  int getId();
+
+  /** The name of the filter. */
+  String getName();
+
+  /**
+   * Decode a chunk.
+   *
+   * @param data the encoded chunk; may be modified or returned.
+   * @return the decoded chunk
+   * @throws IOException if the chunk can not be decoded
+   */
+  byte[] decode(byte[] data) throws IOException;
+
+  /**
+   * Decode a chunk held in a ByteBuffer, in place when the filter can, so that the chunk is not copied from one filter
+   * to the next. The default copies the bytes out of the ByteBuffer if needed, and calls {@link #decode(byte[])}.
+   *
+   * @param data the encoded chunk, from its position to its limit. If it is direct or read-only, a filter that needs
+   *        an array copies it.
+   * @param decodedSize size in bytes of the chunk when all its filters are decoded, or -1 if not known. A hint for
+   *        filters that allocate the result.
+   * @return the decoded chunk, from its position to its limit; may be data.
+   * @throws IOException if the chunk can not be decoded
+   */
+  default ByteBuffer decode(ByteBuffer data, int decodedSize) throws IOException {
+    return ByteBuffer.wrap(decode(Filters.toArray(data)));
+  }
+}
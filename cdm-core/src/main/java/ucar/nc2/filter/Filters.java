@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.Nullable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/**
+ * Finds the Filter for an HDF5 filter id. Filters are looked for in this order:
+ * <ol>
+ * <li>FilterProviders registered with {@link #registerProvider}, last registered first.</li>
+ * <li>The core filters: deflate (1), shuffle (2), fletcher32 (3), lz4 (32004) and zstd (32015).</li>
+ * <li>FilterProviders found with the ServiceLoader, listed in
+ * META-INF/services/ucar.nc2.filter.spi.FilterProvider.</li>
+ * </ol>
+ */
+public final class Filters {
+  private static final List<FilterProvider> registeredProviders = new CopyOnWriteArrayList<>();
+  private static final List<FilterProvider> coreProviders = ImmutableList.of(new Deflate.Provider(),
+      new Shuffle.Provider(), new Fletcher32.Provider(), new Lz4.Provider(), new Zstd.Provider());
+  // ServiceLoader reads the jar manifests each time, so only do it once
+  private static final Supplier<List<FilterProvider>> loadedProviders =
+      Suppliers.memoize(() -> ImmutableList.copyOf(ServiceLoader.load(FilterProvider.class)));
+
+  private Filters() {}
+
+  /** Register a FilterProvider, which is used before any others with the same filter id. */
+  public static void registerProvider(FilterProvider provider) {
+    registeredProviders.add(0, provider);
+  }
+
+  /** Remove a FilterProvider added with {@link #registerProvider}. */
+  public static void unregisterProvider(FilterProvider provider) {
+    registeredProviders.remove(provider);
+  }
+
+  /** Find the FilterProvider for an HDF5 filter id, or null if there is none. */
+  @Nullable
+  public static FilterProvider getProvider(int id) {
+    for (FilterProvider provider : registeredProviders) {
+      if (provider.getId() == id)
+        return provider;
+    }
+    for (FilterProvider provider : coreProviders) {
+      if (provider.getId() == id)
+        return provider;
+    }
+    for (FilterProvider provider : loadedProviders.get()) {
+      if (provider.getId() == id)
+        return provider;
+    }
+    return null;
+  }
+
+  /**
+   * Create the Filter for an HDF5 filter id.
+   *
+   * @param id the HDF5 filter id.
+   * @param clientValues the parameters stored with the filter in the file, may be null.
+   * @return the Filter, or null if there is no provider for the id.
+   */
+  @Nullable
+  public static Filter getFilter(int id, @Nullable int[] clientValues) {
+    FilterProvider provider = getProvider(id);
+    return (provider == null) ? null : provider.create(clientValues == null ? new int[0] : clientValues);
+  }
+
+  /**
+   * The bytes of a ByteBuffer from its position to its limit: its backing array if that is all of it, else a copy.
+   * Direct and read-only buffers are always copied.
+   */
+  public static byte[] toArray(ByteBuffer data) {
+    if (!data.hasArray()) {
+      byte[] result = new byte[data.remaining()];
+      data.duplicate().get(result);
+      return result;
+    }
+    byte[] array = data.array();
+    int start = data.arrayOffset() + data.position();
+    int end = data.arrayOffset() + data.limit();
+    return (start == 0 && end == array.length) ? array : Arrays.copyOfRange(array, start, end);
+  }
+}
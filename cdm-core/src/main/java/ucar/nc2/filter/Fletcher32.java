@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/** The fletcher32 checksum filter (HDF5 filter id 3). The checksum is not verified, just stripped off. */
+@Immutable
+class Fletcher32 implements Filter {
+  static final int ID = 3;
+  static final String NAME = "fletcher32";
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  // just strip off the 4-byte fletcher32 checksum at the end
+  @Override
+  public byte[] decode(byte[] data) {
+    return Arrays.copyOf(data, data.length - 4);
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data, int decodedSize) {
+    data.limit(data.limit() - 4);
+    return data;
+  }
+
+  static class Provider implements FilterProvider {
+    @Override
+    public int getId() {
+      return ID;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public Filter create(int[] clientValues) {
+      return new Fletcher32();
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/**
+ * The LZ4 filter (HDF5 filter id 32004). The chunk starts with the uncompressed size (8 bytes) and the block size
+ * (4 bytes), followed by the blocks, each with its compressed size (4 bytes), all big endian. A block whose
+ * compressed size is its uncompressed size is stored as is, otherwise it is an LZ4 block.
+ *
+ * @see "https://github.com/HDFGroup/hdf5_plugins/blob/master/LZ4/src/H5Zlz4.c"
+ * @see "https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md"
+ */
+@Immutable
+class Lz4 implements Filter {
+  static final int ID = 32004;
+  static final String NAME = "lz4";
+
+  private static final int MIN_MATCH = 4;
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] decode(byte[] data) throws IOException {
+    return decode(data, 0, data.length);
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data, int decodedSize) throws IOException {
+    if (!data.hasArray()) {
+      return ByteBuffer.wrap(decode(Filters.toArray(data)));
+    }
+    int start = data.arrayOffset() + data.position();
+    return ByteBuffer.wrap(decode(data.array(), start, start + data.remaining()));
+  }
+
+  private byte[] decode(byte[] data, int start, int end) throws IOException {
+    if (end - start < 12)
+      throw new IOException("LZ4 chunk is too short: " + (end - start));
+    long origSize = getLong(data, start);
+    int blockSize = getInt(data, start + 8);
+    if (origSize < 0 || origSize > Integer.MAX_VALUE - 8 || blockSize <= 0)
+      throw new IOException(String.format("Bad LZ4 header: size=%d blockSize=%d", origSize, blockSize));
+
+    byte[] result = new byte[(int) origSize];
+    int in = start + 12;
+    int out = 0;
+    while (out < result.length) {
+      int uncompressedSize = Math.min(blockSize, result.length - out);
+      if (in + 4 > end)
+        throw new IOException("LZ4 chunk is truncated");
+      int compressedSize = getInt(data, in);
+      in += 4;
+      if (compressedSize < 0 || in + compressedSize > end)
+        throw new IOException("Bad LZ4 block size: " + compressedSize);
+      if (compressedSize == uncompressedSize) {
+        System.arraycopy(data, in, result, out, uncompressedSize);
+      } else {
+        int n = decompressBlock(data, in, compressedSize, result, out, uncompressedSize);
+        if (n != uncompressedSize)
+          throw new IOException(String.format("LZ4 block uncompressed to %d bytes, expected %d", n, uncompressedSize));
+      }
+      in += compressedSize;
+      out += uncompressedSize;
+    }
+    return result;
+  }
+
+  /**
+   * Uncompress an LZ4 block.
+   *
+   * @return the number of bytes written to dest.
+   */
+  static int decompressBlock(byte[] src, int srcPos, int srcLen, byte[] dest, int destPos, int destLen)
+      throws IOException {
+    int in = srcPos;
+    int srcEnd = srcPos + srcLen;
+    int out = destPos;
+    int destEnd = destPos + destLen;
+    try {
+      while (in < srcEnd) {
+        int token = src[in++] & 0xff;
+
+        // literals
+        int literalLength = token >>> 4;
+        if (literalLength == 15) {
+          int b;
+          do {
+            b = src[in++] & 0xff;
+            literalLength += b;
+          } while (b == 255);
+        }
+        if (in + literalLength > srcEnd || out + literalLength > destEnd)
+          throw new IOException("Bad LZ4 block: literals overrun");
+        System.arraycopy(src, in, dest, out, literalLength);
+        in += literalLength;
+        out += literalLength;
+        if (in == srcEnd) // the last sequence has only literals
+          break;
+
+        // match
+        int offset = (src[in] & 0xff) | (src[in + 1] & 0xff) << 8;
+        in += 2;
+        int matchLength = token & 0xf;
+        if (matchLength == 15) {
+          int b;
+          do {
+            b = src[in++] & 0xff;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += MIN_MATCH;
+        int from = out - offset;
+        if (offset == 0 || from < destPos || out + matchLength > destEnd)
+          throw new IOException("Bad LZ4 block: bad match offset=" + offset);
+        copyMatch(dest, from, out, matchLength);
+        out += matchLength;
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Bad LZ4 block: truncated", e);
+    }
+    return out - destPos;
+  }
+
+  // copy within an array, the source may overlap the destination, repeating the pattern
+  static void copyMatch(byte[] buf, int from, int to, int length) {
+    int offset = to - from;
+    if (offset >= length) {
+      System.arraycopy(buf, from, buf, to, length);
+    } else {
+      // copy the pattern, then double it until done
+      int done = 0;
+      while (done < length) {
+        int n = Math.min(offset, length - done);
+        System.arraycopy(buf, from, buf, to + done, n);
+        done += n;
+        offset += n;
+      }
+    }
+  }
+
+  private static int getInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) << 24 | (b[pos + 1] & 0xff) << 16 | (b[pos + 2] & 0xff) << 8 | (b[pos + 3] & 0xff);
+  }
+
+  private static long getLong(byte[] b, int pos) {
+    return ((long) getInt(b, pos) << 32) | (getInt(b, pos + 4) & 0xffffffffL);
+  }
+
+  static class Provider implements FilterProvider {
+    @Override
+    public int getId() {
+      return ID;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public Filter create(int[] clientValues) {
+      return new Lz4();
+    }
+  }
+}
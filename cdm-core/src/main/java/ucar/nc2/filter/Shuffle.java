@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/**
+ * The shuffle filter (HDF5 filter id 2), which stores the first byte of all the elements, then the second byte,
+ * and so on. The client value is the element size in bytes. A ByteBuffer is unshuffled in place, through a buffer
+ * kept by each thread.
+ */
+@Immutable
+class Shuffle implements Filter {
+  static final int ID = 2;
+  static final String NAME = "shuffle";
+
+  // larger buffers are not kept
+  private static final int MAX_KEPT = 1 << 24;
+  private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+
+  private final int elemSize;
+
+  Shuffle(int elemSize) {
+    this.elemSize = elemSize;
+  }
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] decode(byte[] data) {
+    if (elemSize <= 1)
+      return data;
+    byte[] result = new byte[data.length];
+    unshuffle(data, 0, result, 0, data.length);
+    return result;
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data, int decodedSize) {
+    int length = data.remaining();
+    if (elemSize <= 1 || length == 0)
+      return data;
+    if (!data.hasArray()) { // can not unshuffle in place
+      return ByteBuffer.wrap(decode(Filters.toArray(data)));
+    }
+    byte[] array = data.array();
+    int start = data.arrayOffset() + data.position();
+
+    byte[] copy = scratch.get();
+    if (copy.length < length) {
+      copy = new byte[length];
+      if (length <= MAX_KEPT)
+        scratch.set(copy);
+    }
+    System.arraycopy(array, start, copy, 0, length);
+    unshuffle(copy, 0, array, start, length);
+    return data;
+  }
+
+  private void unshuffle(byte[] src, int srcPos, byte[] dest, int destPos, int length) {
+    int n = elemSize;
+    Preconditions.checkArgument(length % n == 0);
+    int m = length / n;
+    for (int j = 0; j < n; j++) {
+      int from = srcPos + j * m;
+      int to = destPos + j;
+      for (int i = 0; i < m; i++) {
+        dest[to + i * n] = src[from + i];
+      }
+    }
+  }
+
+  static class Provider implements FilterProvider {
+    @Override
+    public int getId() {
+      return ID;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public Filter create(int[] clientValues) {
+      Preconditions.checkArgument(clientValues != null && clientValues.length > 0, "shuffle needs the element size");
+      return new Shuffle(clientValues[0]);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.concurrent.Immutable;
+import ucar.nc2.filter.spi.FilterProvider;
+
+/**
+ * The Zstandard filter (HDF5 filter id 32015). The chunk is a Zstandard frame; the client value is the compression
+ * level, which is not needed to uncompress.
+ *
+ * @see "https://github.com/HDFGroup/hdf5_plugins/blob/master/ZSTD/src/H5Zzstd.c"
+ */
+@Immutable
+class Zstd implements Filter {
+  static final int ID = 32015;
+  static final String NAME = "zstd";
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] decode(byte[] data) throws IOException {
+    return ZstdDecoder.decompress(data, 0, data.length);
+  }
+
+  @Override
+  public ByteBuffer decode(ByteBuffer data, int decodedSize) throws IOException {
+    if (!data.hasArray()) {
+      return ByteBuffer.wrap(decode(Filters.toArray(data)));
+    }
+    int start = data.arrayOffset() + data.position();
+    return ByteBuffer.wrap(ZstdDecoder.decompress(data.array(), start, start + data.remaining()));
+  }
+
+  static class Provider implements FilterProvider {
+    @Override
+    public int getId() {
+      return ID;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public Filter create(int[] clientValues) {
+      return new Zstd();
+    }
+  }
+}
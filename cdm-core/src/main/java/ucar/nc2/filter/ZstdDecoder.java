@@ -0,0 +1,806 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Uncompresses Zstandard frames, as specified in RFC 8878. Dictionaries are not supported, and the optional content
+ * checksum is not verified. Not thread safe: a decoder keeps the entropy tables of the frame being decoded.
+ *
+ * @see "https://www.rfc-editor.org/rfc/rfc8878"
+ */
+class ZstdDecoder {
+  private static final int MAGIC = 0xFD2FB528;
+  private static final int SKIPPABLE_MAGIC = 0x184D2A50; // low 4 bits are any value
+  private static final int MAX_BLOCK_SIZE = 128 * 1024;
+  private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
+  private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private static final int MAX_HUFFMAN_BITS = 11;
+  private static final int MAX_LL_LOG = 9;
+  private static final int MAX_ML_LOG = 9;
+  private static final int MAX_OF_LOG = 8;
+
+  // literals length codes 16..35 have extra bits
+  private static final int[] LL_BASE = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 18, 20, 22, 24, 28,
+      32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+  private static final int[] LL_BITS = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 6,
+      7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+  // match length codes 32..52 have extra bits
+  private static final int[] ML_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24,
+      25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+      4099, 8195, 16387, 32771, 65539};
+  private static final int[] ML_BITS = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+      0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+  // the predefined distributions
+  private static final short[] LL_DEFAULT = {4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+      3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1};
+  private static final short[] ML_DEFAULT = {1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+      1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1};
+  private static final short[] OF_DEFAULT =
+      {1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1};
+
+  static final FseTable LL_PREDEFINED = predefined(LL_DEFAULT, 6);
+  static final FseTable ML_PREDEFINED = predefined(ML_DEFAULT, 6);
+  static final FseTable OF_PREDEFINED = predefined(OF_DEFAULT, 5);
+
+  private static FseTable predefined(short[] frequencies, int accuracyLog) {
+    try {
+      return FseTable.build(frequencies, frequencies.length, accuracyLog);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Uncompress all the frames in src.
+   *
+   * @param src one or more Zstandard or skippable frames, in src[start, end).
+   * @return the concatenated content of the frames.
+   */
+  static byte[] decompress(byte[] src, int start, int end) throws IOException {
+    try {
+      return new ZstdDecoder(src, start, end).decompressFrames();
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Bad zstd frame: truncated", e);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  private final byte[] src;
+  private final int end;
+  private int pos; // next byte to read in src
+
+  private byte[] out;
+  private int outPos;
+  private int frameStart; // start of the current frame in out; matches can not refer to anything before
+
+  // state that is kept across the blocks of a frame
+  private HuffmanTable huffman;
+  private FseTable llTable, ofTable, mlTable;
+  private final int[] repeatOffsets = new int[3];
+
+  private byte[] literals = new byte[0];
+  private int literalsSize;
+
+  private ZstdDecoder(byte[] src, int start, int end) {
+    this.src = src;
+    this.pos = start;
+    this.end = end;
+  }
+
+  private byte[] decompressFrames() throws IOException {
+    out = new byte[0];
+    while (pos < end) {
+      int magic = readIntLE();
+      if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+        long size = readIntLE() & 0xffffffffL;
+        if (pos + size > end)
+          throw new IOException("Bad zstd skippable frame size=" + size);
+        pos += (int) size;
+        continue;
+      }
+      if (magic != MAGIC)
+        throw new IOException(String.format("Bad zstd magic number=0x%x", magic));
+      decompressFrame();
+    }
+    return (outPos == out.length) ? out : Arrays.copyOf(out, outPos);
+  }
+
+  private void decompressFrame() throws IOException {
+    int descriptor = src[pos++] & 0xff;
+    int contentSizeFlag = descriptor >>> 6;
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    if ((descriptor & 0x08) != 0)
+      throw new IOException("Bad zstd frame header: reserved bit is set");
+    boolean hasChecksum = (descriptor & 0x04) != 0;
+    int dictionaryIdFlag = descriptor & 3;
+
+    if (!singleSegment)
+      pos++; // window descriptor: we keep the whole content, so we dont need the window size
+
+    int dictionaryIdSize = (dictionaryIdFlag == 3) ? 4 : dictionaryIdFlag;
+    long dictionaryId = readLE(dictionaryIdSize);
+    if (dictionaryId != 0)
+      throw new IOException("zstd dictionaries are not supported, dictionary id=" + dictionaryId);
+
+    int[] contentSizeBytes = {singleSegment ? 1 : 0, 2, 4, 8};
+    int n = contentSizeBytes[contentSizeFlag];
+    long contentSize = -1; // unknown
+    if (n > 0) {
+      contentSize = readLE(n);
+      if (n == 2)
+        contentSize += 256;
+      if (contentSize < 0 || outPos + contentSize > MAX_ARRAY_LEN)
+        throw new IOException("zstd frame content size is too large=" + contentSize);
+      ensureCapacity((int) contentSize);
+    }
+
+    frameStart = outPos;
+    huffman = null;
+    llTable = null;
+    ofTable = null;
+    mlTable = null;
+    repeatOffsets[0] = 1;
+    repeatOffsets[1] = 4;
+    repeatOffsets[2] = 8;
+
+    boolean last;
+    do {
+      int header = (int) readLE(3);
+      last = (header & 1) != 0;
+      int blockType = (header >>> 1) & 3;
+      int blockSize = header >>> 3;
+      switch (blockType) {
+        case 0: // raw
+          if (pos + blockSize > end)
+            throw new IOException("Bad zstd block size=" + blockSize);
+          ensureCapacity(blockSize);
+          System.arraycopy(src, pos, out, outPos, blockSize);
+          pos += blockSize;
+          outPos += blockSize;
+          break;
+        case 1: // RLE
+          if (pos >= end)
+            throw new IOException("Bad zstd RLE block");
+          ensureCapacity(blockSize);
+          Arrays.fill(out, outPos, outPos + blockSize, src[pos++]);
+          outPos += blockSize;
+          break;
+        case 2: // compressed
+          if (blockSize > MAX_BLOCK_SIZE || pos + blockSize > end)
+            throw new IOException("Bad zstd block size=" + blockSize);
+          decompressBlock(pos, pos + blockSize);
+          pos += blockSize;
+          break;
+        default:
+          throw new IOException("Bad zstd block type=" + blockType);
+      }
+    } while (!last);
+
+    if (contentSize >= 0 && outPos - frameStart != contentSize)
+      throw new IOException(String.format("zstd frame content is %d bytes, expected %d", outPos - frameStart,
+          contentSize));
+    if (hasChecksum)
+      pos += 4; // the low 4 bytes of the XXH64 of the content, not checked
+  }
+
+  // make room for n more bytes of output
+  private void ensureCapacity(int n) throws IOException {
+    long need = (long) outPos + n;
+    if (need > out.length) {
+      if (need > MAX_ARRAY_LEN)
+        throw new IOException("zstd content is too large");
+      int capacity = (int) Math.min(MAX_ARRAY_LEN, Math.max(need, 2L * out.length));
+      out = Arrays.copyOf(out, capacity);
+    }
+  }
+
+  private int readIntLE() {
+    return (int) readLE(4);
+  }
+
+  private long readLE(int n) {
+    long result = 0;
+    for (int i = 0; i < n; i++)
+      result |= (src[pos++] & 0xffL) << (8 * i);
+    return result;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  // compressed blocks
+
+  private void decompressBlock(int start, int end) throws IOException {
+    int p = decodeLiterals(start, end);
+    decodeSequences(p, end);
+  }
+
+  /** Decode the literals section into literals[0, literalsSize), return the position after the section. */
+  private int decodeLiterals(int start, int end) throws IOException {
+    int p = start;
+    int b0 = src[p] & 0xff;
+    int type = b0 & 3;
+    int sizeFormat = (b0 >>> 2) & 3;
+
+    if (type == 0 || type == 1) { // raw or RLE
+      int size;
+      if ((sizeFormat & 1) == 0) {
+        size = b0 >>> 3;
+        p += 1;
+      } else if (sizeFormat == 1) {
+        size = (b0 >>> 4) + ((src[p + 1] & 0xff) << 4);
+        p += 2;
+      } else {
+        size = (b0 >>> 4) + ((src[p + 1] & 0xff) << 4) + ((src[p + 2] & 0xff) << 12);
+        p += 3;
+      }
+      if (size > MAX_BLOCK_SIZE)
+        throw new IOException("Bad zstd literals size=" + size);
+      ensureLiterals(size);
+      if (type == 0) {
+        if (p + size > end)
+          throw new IOException("Bad zstd raw literals size=" + size);
+        System.arraycopy(src, p, literals, 0, size);
+        p += size;
+      } else {
+        Arrays.fill(literals, 0, size, src[p++]);
+      }
+      literalsSize = size;
+      return p;
+    }
+
+    // Huffman compressed, with a new tree or the previous one
+    int regeneratedSize;
+    int compressedSize;
+    boolean fourStreams = sizeFormat != 0;
+    if (sizeFormat <= 1) {
+      int h = b0 | (src[p + 1] & 0xff) << 8 | (src[p + 2] & 0xff) << 16;
+      regeneratedSize = (h >>> 4) & 0x3ff;
+      compressedSize = (h >>> 14) & 0x3ff;
+      p += 3;
+    } else if (sizeFormat == 2) {
+      int h = b0 | (src[p + 1] & 0xff) << 8 | (src[p + 2] & 0xff) << 16 | (src[p + 3] & 0xff) << 24;
+      regeneratedSize = (h >>> 4) & 0x3fff;
+      compressedSize = (h >>> 18) & 0x3fff;
+      p += 4;
+    } else {
+      long h = b0 | (src[p + 1] & 0xffL) << 8 | (src[p + 2] & 0xffL) << 16 | (src[p + 3] & 0xffL) << 24
+          | (src[p + 4] & 0xffL) << 32;
+      regeneratedSize = (int) ((h >>> 4) & 0x3ffff);
+      compressedSize = (int) ((h >>> 22) & 0x3ffff);
+      p += 5;
+    }
+    if (regeneratedSize > MAX_BLOCK_SIZE || p + compressedSize > end)
+      throw new IOException(
+          String.format("Bad zstd literals size=%d compressed size=%d", regeneratedSize, compressedSize));
+
+    int streamsEnd = p + compressedSize;
+    if (type == 2) {
+      p = readHuffmanTable(p, streamsEnd);
+    } else if (huffman == null) {
+      throw new IOException("Bad zstd block: treeless literals without a previous Huffman table");
+    }
+
+    ensureLiterals(regeneratedSize);
+    if (!fourStreams) {
+      huffman.decodeStream(src, p, streamsEnd, literals, 0, regeneratedSize);
+    } else {
+      int size1 = (src[p] & 0xff) | (src[p + 1] & 0xff) << 8;
+      int size2 = (src[p + 2] & 0xff) | (src[p + 3] & 0xff) << 8;
+      int size3 = (src[p + 4] & 0xff) | (src[p + 5] & 0xff) << 8;
+      int start1 = p + 6;
+      int start2 = start1 + size1;
+      int start3 = start2 + size2;
+      int start4 = start3 + size3;
+      if (start4 > streamsEnd)
+        throw new IOException("Bad zstd literals jump table");
+      int segment = (regeneratedSize + 3) / 4;
+      if (regeneratedSize - 3 * segment < 0)
+        throw new IOException("Bad zstd literals: too few for 4 streams=" + regeneratedSize);
+      huffman.decodeStream(src, start1, start2, literals, 0, segment);
+      huffman.decodeStream(src, start2, start3, literals, segment, segment);
+      huffman.decodeStream(src, start3, start4, literals, 2 * segment, segment);
+      huffman.decodeStream(src, start4, streamsEnd, literals, 3 * segment, regeneratedSize - 3 * segment);
+    }
+    literalsSize = regeneratedSize;
+    return streamsEnd;
+  }
+
+  private void ensureLiterals(int size) {
+    if (literals.length < size)
+      literals = new byte[Math.max(size, Math.min(MAX_BLOCK_SIZE, 2 * literals.length))];
+  }
+
+  /** Read a Huffman tree description into huffman, return the position after it. */
+  private int readHuffmanTable(int start, int end) throws IOException {
+    int p = start;
+    int headerByte = src[p++] & 0xff;
+    byte[] weights = new byte[256];
+    int numWeights;
+    if (headerByte >= 128) { // 4 bit weights
+      numWeights = headerByte - 127;
+      int nbytes = (numWeights + 1) / 2;
+      if (p + nbytes > end)
+        throw new IOException("Bad zstd Huffman weights");
+      for (int i = 0; i < numWeights; i++) {
+        int b = src[p + i / 2] & 0xff;
+        weights[i] = (byte) (((i & 1) == 0) ? b >>> 4 : b & 0xf);
+      }
+      p += nbytes;
+    } else { // FSE compressed weights
+      int compressedEnd = p + headerByte;
+      if (compressedEnd > end)
+        throw new IOException("Bad zstd Huffman weights size=" + headerByte);
+      ForwardBitReader header = new ForwardBitReader(src, p, compressedEnd);
+      FseTable table = FseTable.read(header, 6, MAX_HUFFMAN_BITS + 1);
+      p = header.bytePosition();
+      numWeights = decodeWeights(table, p, compressedEnd, weights);
+      p = compressedEnd;
+    }
+    huffman = HuffmanTable.build(weights, numWeights);
+    return p;
+  }
+
+  // two interleaved states share the table, until the bitstream is used up
+  private int decodeWeights(FseTable table, int start, int end, byte[] weights) throws IOException {
+    BackwardBitReader bits = new BackwardBitReader(src, start, end);
+    int state1 = bits.read(table.accuracyLog);
+    int state2 = bits.read(table.accuracyLog);
+    int n = 0;
+    while (true) {
+      if (n >= 255)
+        throw new IOException("Bad zstd Huffman weights: too many");
+      weights[n++] = table.symbols[state1];
+      state1 = table.update(state1, bits);
+      if (bits.isOverflowed()) {
+        weights[n++] = table.symbols[state2];
+        break;
+      }
+      if (n >= 255)
+        throw new IOException("Bad zstd Huffman weights: too many");
+      weights[n++] = table.symbols[state2];
+      state2 = table.update(state2, bits);
+      if (bits.isOverflowed()) {
+        weights[n++] = table.symbols[state1];
+        break;
+      }
+    }
+    return n;
+  }
+
+  private void decodeSequences(int start, int end) throws IOException {
+    int p = start;
+    int nseq = src[p++] & 0xff;
+    if (nseq >= 128) {
+      if (nseq < 255) {
+        nseq = ((nseq - 128) << 8) + (src[p++] & 0xff);
+      } else {
+        nseq = (src[p] & 0xff) + ((src[p + 1] & 0xff) << 8) + 0x7F00;
+        p += 2;
+      }
+    }
+
+    if (nseq == 0) { // just the literals
+      ensureCapacity(literalsSize);
+      System.arraycopy(literals, 0, out, outPos, literalsSize);
+      outPos += literalsSize;
+      return;
+    }
+
+    int modes = src[p++] & 0xff;
+    if ((modes & 3) != 0)
+      throw new IOException("Bad zstd sequences: reserved bits are set");
+    ForwardBitReader header = new ForwardBitReader(src, p, end);
+    llTable = readSequenceTable((modes >>> 6) & 3, llTable, LL_PREDEFINED, MAX_LL_LOG, LL_BASE.length, header);
+    ofTable = readSequenceTable((modes >>> 4) & 3, ofTable, OF_PREDEFINED, MAX_OF_LOG, 32, header);
+    mlTable = readSequenceTable((modes >>> 2) & 3, mlTable, ML_PREDEFINED, MAX_ML_LOG, ML_BASE.length, header);
+    p = header.bytePosition();
+
+    executeSequences(nseq, p, end);
+  }
+
+  private FseTable readSequenceTable(int mode, FseTable previous, FseTable predefined, int maxLog, int maxSymbols,
+      ForwardBitReader header) throws IOException {
+    switch (mode) {
+      case 0:
+        return predefined;
+      case 1:
+        int symbol = header.readByte();
+        if (symbol >= maxSymbols)
+          throw new IOException("Bad zstd RLE sequence symbol=" + symbol);
+        return FseTable.rle((byte) symbol);
+      case 2:
+        return FseTable.read(header, maxLog, maxSymbols);
+      default:
+        if (previous == null)
+          throw new IOException("Bad zstd block: repeat mode without a previous table");
+        return previous;
+    }
+  }
+
+  private void executeSequences(int nseq, int start, int end) throws IOException {
+    BackwardBitReader bits = new BackwardBitReader(src, start, end);
+    FseTable ll = llTable;
+    FseTable of = ofTable;
+    FseTable ml = mlTable;
+    int llState = bits.read(ll.accuracyLog);
+    int ofState = bits.read(of.accuracyLog);
+    int mlState = bits.read(ml.accuracyLog);
+
+    int lit = 0; // next literal
+    for (int i = 0; i < nseq; i++) {
+      int ofCode = of.symbols[ofState];
+      int llCode = ll.symbols[llState];
+      int mlCode = ml.symbols[mlState];
+      if (ofCode > 31 || llCode >= LL_BASE.length || mlCode >= ML_BASE.length)
+        throw new IOException("Bad zstd sequence codes");
+
+      long offsetValue = (1L << ofCode) + bits.readLong(ofCode);
+      int matchLength = ML_BASE[mlCode] + bits.read(ML_BITS[mlCode]);
+      int literalLength = LL_BASE[llCode] + bits.read(LL_BITS[llCode]);
+
+      if (i < nseq - 1) {
+        llState = ll.update(llState, bits);
+        mlState = ml.update(mlState, bits);
+        ofState = of.update(ofState, bits);
+      }
+
+      int offset = computeOffset(offsetValue, literalLength);
+
+      // copy the literals, then the match
+      if (lit + literalLength > literalsSize)
+        throw new IOException("Bad zstd sequence: literal length is too large");
+      ensureCapacity(literalLength + matchLength);
+      System.arraycopy(literals, lit, out, outPos, literalLength);
+      lit += literalLength;
+      outPos += literalLength;
+
+      if (offset <= 0 || offset > outPos - frameStart)
+        throw new IOException("Bad zstd sequence: offset=" + offset);
+      Lz4.copyMatch(out, outPos - offset, outPos, matchLength);
+      outPos += matchLength;
+    }
+    if (bits.bitsRemaining() != 0)
+      throw new IOException("Bad zstd sequences: bitstream not used up");
+
+    int rest = literalsSize - lit;
+    ensureCapacity(rest);
+    System.arraycopy(literals, lit, out, outPos, rest);
+    outPos += rest;
+  }
+
+  private int computeOffset(long offsetValue, int literalLength) throws IOException {
+    int offset;
+    if (offsetValue > 3) {
+      if (offsetValue - 3 > MAX_ARRAY_LEN)
+        throw new IOException("Bad zstd sequence: offset=" + offsetValue);
+      offset = (int) (offsetValue - 3);
+      repeatOffsets[2] = repeatOffsets[1];
+      repeatOffsets[1] = repeatOffsets[0];
+      repeatOffsets[0] = offset;
+    } else {
+      int index = (int) offsetValue - 1;
+      if (literalLength == 0)
+        index++;
+      if (index == 0) {
+        offset = repeatOffsets[0];
+      } else {
+        offset = (index < 3) ? repeatOffsets[index] : repeatOffsets[0] - 1;
+        if (index > 1)
+          repeatOffsets[2] = repeatOffsets[1];
+        repeatOffsets[1] = repeatOffsets[0];
+        repeatOffsets[0] = offset;
+      }
+    }
+    return offset;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  // entropy tables and bit streams
+
+  /** A finite state entropy decoding table. */
+  static class FseTable {
+    final int accuracyLog;
+    final byte[] symbols;
+    final byte[] numBits;
+    final short[] newStateBase;
+
+    private FseTable(int accuracyLog) {
+      this.accuracyLog = accuracyLog;
+      int size = 1 << accuracyLog;
+      this.symbols = new byte[size];
+      this.numBits = new byte[size];
+      this.newStateBase = new short[size];
+    }
+
+    int update(int state, BackwardBitReader bits) {
+      return newStateBase[state] + bits.read(numBits[state]);
+    }
+
+    static FseTable rle(byte symbol) {
+      FseTable table = new FseTable(0);
+      table.symbols[0] = symbol;
+      return table;
+    }
+
+    /** Read the normalized distribution from a forward bitstream, and build the table. */
+    static FseTable read(ForwardBitReader in, int maxAccuracyLog, int maxSymbols) throws IOException {
+      int accuracyLog = in.read(4) + 5;
+      if (accuracyLog > maxAccuracyLog)
+        throw new IOException("Bad zstd FSE accuracy log=" + accuracyLog);
+
+      short[] frequencies = new short[maxSymbols];
+      int remaining = 1 << accuracyLog;
+      int nsymbols = 0;
+      while (remaining > 0 && nsymbols < maxSymbols) {
+        // number of bits needed for the values 0 .. remaining + 1
+        int bits = highestSetBit(remaining + 1) + 1;
+        int value = in.read(bits);
+        int lowerMask = (1 << (bits - 1)) - 1;
+        int threshold = (1 << bits) - 1 - (remaining + 1);
+        if ((value & lowerMask) < threshold) {
+          in.rewind(1);
+          value &= lowerMask;
+        } else if (value > lowerMask) {
+          value -= threshold;
+        }
+        int probability = value - 1; // -1 means "less than 1"
+        remaining -= Math.abs(probability);
+        frequencies[nsymbols++] = (short) probability;
+
+        if (probability == 0) { // followed by repeat flags for more zeros
+          int repeat = in.read(2);
+          while (true) {
+            for (int i = 0; i < repeat && nsymbols < maxSymbols; i++)
+              frequencies[nsymbols++] = 0;
+            if (repeat != 3)
+              break;
+            repeat = in.read(2);
+          }
+        }
+      }
+      in.alignToByte();
+      if (remaining != 0)
+        throw new IOException("Bad zstd FSE distribution");
+      return build(frequencies, nsymbols, accuracyLog);
+    }
+
+    static FseTable build(short[] frequencies, int nsymbols, int accuracyLog) throws IOException {
+      FseTable table = new FseTable(accuracyLog);
+      int size = 1 << accuracyLog;
+      int[] next = new int[nsymbols];
+
+      // "less than 1" symbols go at the end of the table
+      int highThreshold = size;
+      for (int s = 0; s < nsymbols; s++) {
+        if (frequencies[s] == -1) {
+          table.symbols[--highThreshold] = (byte) s;
+          next[s] = 1;
+        }
+      }
+
+      // spread the other symbols
+      int step = (size >>> 1) + (size >>> 3) + 3;
+      int mask = size - 1;
+      int position = 0;
+      for (int s = 0; s < nsymbols; s++) {
+        int freq = frequencies[s];
+        if (freq <= 0)
+          continue;
+        next[s] = freq;
+        for (int i = 0; i < freq; i++) {
+          table.symbols[position] = (byte) s;
+          do {
+            position = (position + step) & mask;
+          } while (position >= highThreshold);
+        }
+      }
+      if (position != 0)
+        throw new IOException("Bad zstd FSE distribution");
+
+      for (int i = 0; i < size; i++) {
+        int symbol = table.symbols[i] & 0xff;
+        int nextState = next[symbol]++;
+        int nbits = accuracyLog - highestSetBit(nextState);
+        table.numBits[i] = (byte) nbits;
+        table.newStateBase[i] = (short) ((nextState << nbits) - size);
+      }
+      return table;
+    }
+  }
+
+  /** A Huffman decoding table, indexed by the next maxBits bits of the stream. */
+  static class HuffmanTable {
+    final int maxBits;
+    final byte[] symbols;
+    final byte[] numBits;
+
+    private HuffmanTable(int maxBits) {
+      this.maxBits = maxBits;
+      this.symbols = new byte[1 << maxBits];
+      this.numBits = new byte[1 << maxBits];
+    }
+
+    /** Build from the weights of all but the last symbol, whose weight is implied. */
+    static HuffmanTable build(byte[] weights, int numWeights) throws IOException {
+      int sum = 0;
+      for (int i = 0; i < numWeights; i++) {
+        if (weights[i] > MAX_HUFFMAN_BITS)
+          throw new IOException("Bad zstd Huffman weight=" + weights[i]);
+        if (weights[i] > 0)
+          sum += 1 << (weights[i] - 1);
+      }
+      if (sum == 0)
+        throw new IOException("Bad zstd Huffman weights: all zero");
+      int maxBits = highestSetBit(sum) + 1;
+      int left = (1 << maxBits) - sum;
+      if (maxBits > MAX_HUFFMAN_BITS || Integer.bitCount(left) != 1)
+        throw new IOException("Bad zstd Huffman weights");
+      int nsymbols = numWeights + 1;
+      weights[numWeights] = (byte) (highestSetBit(left) + 1);
+
+      int[] bits = new int[nsymbols];
+      int[] rankCount = new int[maxBits + 1];
+      for (int i = 0; i < nsymbols; i++) {
+        bits[i] = (weights[i] > 0) ? maxBits + 1 - weights[i] : 0;
+        rankCount[bits[i]]++;
+      }
+
+      // the longest codes come first, then symbols in order within a code length
+      HuffmanTable table = new HuffmanTable(maxBits);
+      int[] rankIndex = new int[maxBits + 1];
+      for (int i = maxBits; i >= 1; i--) {
+        int end = rankIndex[i] + rankCount[i] * (1 << (maxBits - i));
+        if (i > 1)
+          rankIndex[i - 1] = end;
+        Arrays.fill(table.numBits, rankIndex[i], end, (byte) i);
+      }
+      for (int s = 0; s < nsymbols; s++) {
+        if (bits[s] != 0) {
+          int code = rankIndex[bits[s]];
+          int len = 1 << (maxBits - bits[s]);
+          Arrays.fill(table.symbols, code, code + len, (byte) s);
+          rankIndex[bits[s]] += len;
+        }
+      }
+      return table;
+    }
+
+    /** Decode n symbols from the backward bitstream src[start, end), which must be used up exactly. */
+    void decodeStream(byte[] src, int start, int end, byte[] dest, int destPos, int n) throws IOException {
+      BackwardBitReader bits = new BackwardBitReader(src, start, end);
+      for (int i = 0; i < n; i++) {
+        int index = bits.peek(maxBits);
+        dest[destPos + i] = symbols[index];
+        bits.skip(numBits[index]);
+      }
+      if (bits.bitsRemaining() != 0)
+        throw new IOException("Bad zstd Huffman stream: not used up");
+    }
+  }
+
+  /** Reads bits from the start of a byte range, starting with the least significant bit of each byte. */
+  static class ForwardBitReader {
+    private final byte[] buf;
+    private final int end;
+    private long bitPos; // absolute bit position in buf
+
+    ForwardBitReader(byte[] buf, int start, int end) {
+      this.buf = buf;
+      this.end = end;
+      this.bitPos = 8L * start;
+    }
+
+    int read(int n) throws IOException {
+      int result = 0;
+      for (int i = 0; i < n; i++) {
+        int index = (int) (bitPos >>> 3);
+        if (index >= end)
+          throw new IOException("Bad zstd block: header overruns the block");
+        result |= ((buf[index] >>> (bitPos & 7)) & 1) << i;
+        bitPos++;
+      }
+      return result;
+    }
+
+    int readByte() throws IOException {
+      alignToByte();
+      return read(8);
+    }
+
+    void rewind(int n) {
+      bitPos -= n;
+    }
+
+    void alignToByte() {
+      bitPos = (bitPos + 7) & ~7L;
+    }
+
+    int bytePosition() {
+      return (int) ((bitPos + 7) >>> 3);
+    }
+  }
+
+  /**
+   * Reads bits from the end of a byte range toward its start, as the entropy coded bitstreams are written.
+   * The last byte has a 1 bit above the last bit written. Reading past the start gives zeros, and is detected by
+   * {@link #isOverflowed}.
+   */
+  static class BackwardBitReader {
+    private final byte[] buf;
+    private final int start;
+    private int bitPos; // number of bits left to read
+
+    BackwardBitReader(byte[] buf, int start, int end) throws IOException {
+      if (end <= start || buf[end - 1] == 0)
+        throw new IOException("Bad zstd bitstream: no end mark");
+      this.buf = buf;
+      this.start = start;
+      this.bitPos = 8 * (end - start - 1) + highestSetBit(buf[end - 1] & 0xff);
+    }
+
+    /** Read n <= 32 bits. */
+    int read(int n) {
+      int result = peek(n);
+      bitPos -= n;
+      return result;
+    }
+
+    long readLong(int n) {
+      if (n <= 31)
+        return read(n);
+      long high = read(n - 16);
+      return (high << 16) | read(16);
+    }
+
+    /** The next n <= 32 bits, without consuming them. */
+    int peek(int n) {
+      if (n == 0)
+        return 0;
+      int low = bitPos - n; // bit position of the least significant bit
+      if (low < 0) { // zeros below the start
+        return (bitPos <= 0) ? 0 : get(0, bitPos) << -low;
+      }
+      return get(low, n);
+    }
+
+    void skip(int n) {
+      bitPos -= n;
+    }
+
+    private int get(int low, int n) {
+      int index = start + (low >>> 3);
+      int shift = low & 7;
+      if (index + 8 <= buf.length) { // one unaligned read
+        long value = (long) LONG_LE.get(buf, index);
+        return (int) ((value >>> shift) & ((1L << n) - 1));
+      }
+      int nbytes = (shift + n + 7) >>> 3;
+      long value = 0;
+      for (int i = 0; i < nbytes; i++)
+        value |= (buf[index + i] & 0xffL) << (8 * i);
+      return (int) ((value >>> shift) & ((1L << n) - 1));
+    }
+
+    boolean isOverflowed() {
+      return bitPos < 0;
+    }
+
+    int bitsRemaining() {
+      return bitPos;
+    }
+  }
+
+  private static int highestSetBit(int n) {
+    return 31 - Integer.numberOfLeadingZeros(n);
+  }
+}
@@ -0,0 +1,9 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+/**
+ * Filters that decode chunks of data, found by their HDF5 filter id.
+ */
+package ucar.nc2.filter;
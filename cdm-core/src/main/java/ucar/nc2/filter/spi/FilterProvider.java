@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter.spi;
+
+import ucar.nc2.filter.Filter;
+
+/**
+ * A Service Provider of a data Filter, identified by its HDF5 filter id.
+ * Registered filter ids are listed at https://portal.hdfgroup.org/display/support/Registered+Filter+Plugins.
+ */
+public interface FilterProvider {
+
+  /** The HDF5 filter id. */
+  int getId();
+
+  /** The name of the filter. */
+  String getName();
+
+  /**
+   * Create a Filter for a variable.
+   *
+   * @param clientValues the parameters stored with the filter in the file, may be empty.
+   */
+  Filter create(int[] clientValues);
+}
@@ -0,0 +1,9 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+/**
+ * Service Provider interfaces for data filters.
+ */
+package ucar.nc2.filter.spi;
@@ -42,6 +42,7 @@ public final class RafHttp extends RemoteRandomAccessFile {
 
   private HttpClient session;
   private long total_length;
+  private String version; // from the ETag or Last-Modified header, may be null
 
   public RafHttp(String url) throws IOException {
     this(url, httpBufferSize, httpMaxCacheSize);
@@ -84,6 +85,10 @@ public final class RafHttp extends RemoteRandomAccessFile {
       needtest = true;
     }
 
+    // weak ETags (W/...) do not guarantee identical bytes
+    version = responseHeaders.firstValue("ETag").filter(etag -> !etag.startsWith("W/")).map(etag -> "ETag=" + etag)
+        .orElse(responseHeaders.firstValue("Last-Modified").map(lm -> "Last-Modified=" + lm).orElse(null));
+
     if (needtest && !rangeOk(url)) {
       throw new IOException("Server does not support byte Ranges");
     }
@@ -200,6 +205,12 @@ public final class RafHttp extends RemoteRandomAccessFile {
     return 0;
   }
 
+  /** The ETag, or if none, the Last-Modified header of the response when the file was opened. */
+  @Override
+  protected String getRemoteVersion() {
+    return version;
+  }
+
   /**
    * Hook into service provider interface for RandomAccessFileProvider.
    */
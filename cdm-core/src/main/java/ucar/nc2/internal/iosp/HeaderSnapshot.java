@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import ucar.array.Array;
+import ucar.array.ArrayType;
+import ucar.array.Arrays;
+import ucar.nc2.Attribute;
+import ucar.nc2.AttributeContainer;
+import ucar.nc2.AttributeContainerMutable;
+import ucar.nc2.Dimension;
+import ucar.nc2.EnumTypedef;
+import ucar.nc2.Group;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.util.DiskCache2;
+import ucar.nc2.iosp.IOServiceProvider;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Saves the header of a file, as built by its IOSP, so that the file can be opened again without reading the header.
+ * A snapshot has the Group, Dimension, EnumTypedef, Variable and Attribute tree, and what the IOSP needs to read the
+ * data, including the SPobject of each Variable. It is kept in the directory set by the system property
+ * "ucar.nc2.NetcdfFiles.headerSnapshotDir" or {@link #setSnapshotCache}, and used when the same IOSP opens a file with
+ * the same location, length and last modified time. IOSPs opt in by implementing {@link Provider}.
+ */
+public final class HeaderSnapshot {
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HeaderSnapshot.class);
+
+  private static final int MAGIC = 0x43444d48; // "CDMH"
+  private static final int VERSION = 1;
+  private static final byte VARIABLE = 0;
+  private static final byte STRUCTURE = 1;
+
+  // The directory where snapshots are saved, if any.
+  private static final DiskCache2.PropertyCache snapshotCache =
+      new DiskCache2.PropertyCache("ucar.nc2.NetcdfFiles.headerSnapshotDir");
+
+  /** An IOSP that can write its header to a snapshot, and open a file from one instead of reading its header. */
+  public interface Provider {
+
+    /**
+     * The settings of this IOSP that change the header it builds, eg set by IOSP messages before the file is opened.
+     * Snapshots are kept separately for each value.
+     */
+    String getSnapshotSettings();
+
+    /**
+     * Write the header that {@link IOServiceProvider#build} just made, usually with {@link #writeGroup}.
+     *
+     * @param root the root group, as built.
+     * @param out write to this.
+     */
+    void writeSnapshot(Group.Builder root, DataOutputStream out) throws IOException;
+
+    /**
+     * Used instead of {@link IOServiceProvider#build}, to open the file from a snapshot made by {@link #writeSnapshot}.
+     *
+     * @param raf the file to open.
+     * @param root the root group to populate.
+     * @param in read from this.
+     */
+    void readSnapshot(RandomAccessFile raf, Group.Builder root, DataInputStream in) throws IOException;
+  }
+
+  /** Writes the SPobject of a Variable. */
+  public interface SPobjectWriter {
+    void write(Object spObject, DataOutputStream out) throws IOException;
+  }
+
+  /** Reads an SPobject written by a {@link SPobjectWriter}. */
+  public interface SPobjectReader {
+    Object read(DataInputStream in) throws IOException;
+  }
+
+  private HeaderSnapshot() {}
+
+  /**
+   * Set the directory where snapshots are saved.
+   *
+   * @param cache use this cache's root directory, or null to not save snapshots.
+   */
+  public static void setSnapshotCache(@Nullable DiskCache2 cache) {
+    snapshotCache.set(cache);
+  }
+
+  /**
+   * Open a file from its snapshot, if there is one.
+   *
+   * @param spi the IOSP that opens the file.
+   * @param raf the file to open.
+   * @return the root group, or null if the IOSP is not a {@link Provider}, or there is no usable snapshot.
+   */
+  @Nullable
+  public static Group.Builder read(IOServiceProvider spi, RandomAccessFile raf) {
+    File file;
+    try {
+      file = getSnapshotFile(spi, raf);
+    } catch (IOException e) {
+      return null;
+    }
+    if (file == null) {
+      return null;
+    }
+    try (InputStream is = Files.newInputStream(file.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !raf.getLocation().equals(readString(in))
+          || in.readLong() != raf.length() || in.readLong() != raf.getLastModified()
+          || !spi.getClass().getName().equals(readString(in))
+          || !((Provider) spi).getSnapshotSettings().equals(readString(in))) {
+        return null;
+      }
+      Group.Builder root = Group.builder().setName("");
+      ((Provider) spi).readSnapshot(raf, root, in);
+      return root;
+
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | RuntimeException e) {
+      log.debug("Failed to read header snapshot of {} from {}", raf.getLocation(), file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Save the header of a file that was just built, if the IOSP is a {@link Provider} and snapshots are saved.
+   * Failures are logged and otherwise ignored.
+   *
+   * @param spi the IOSP that built the file.
+   * @param raf the file.
+   * @param root the root group, as built.
+   */
+  public static void write(IOServiceProvider spi, RandomAccessFile raf, Group.Builder root) {
+    File file = null;
+    Path tmp = null;
+    try {
+      file = getSnapshotFile(spi, raf);
+      if (file == null) {
+        return;
+      }
+      Path target = file.toPath().toAbsolutePath();
+      Files.createDirectories(target.getParent());
+      tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+      try (OutputStream os = Files.newOutputStream(tmp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(raf.getLocation(), out);
+        out.writeLong(raf.length());
+        out.writeLong(raf.getLastModified());
+        writeString(spi.getClass().getName(), out);
+        writeString(((Provider) spi).getSnapshotSettings(), out);
+        ((Provider) spi).writeSnapshot(root, out);
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+    } catch (IOException | RuntimeException e) {
+      log.debug("Failed to write header snapshot of {} to {}", raf.getLocation(), file, e);
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          log.debug("Failed to delete {}", tmp, e);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private static File getSnapshotFile(IOServiceProvider spi, RandomAccessFile raf) throws IOException {
+    DiskCache2 cache = snapshotCache.get();
+    if (cache == null || !(spi instanceof Provider)) {
+      return null;
+    }
+    long lastModified = raf.getLastModified();
+    if (lastModified <= 0) {
+      return null;
+    }
+    String version = raf.getLocation() + '\n' + raf.length() + '\n' + lastModified + '\n' + spi.getClass().getName()
+        + '\n' + ((Provider) spi).getSnapshotSettings();
+    String object = Hashing.sha256().hashString(version, StandardCharsets.UTF_8).toString();
+    return new File(cache.getRootDirectory(), object.substring(0, 2) + "/" + object + ".cdmh");
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Write a Group and everything in it.
+   *
+   * @param group write this group.
+   * @param include only write the Variables for which this is true, eg to leave out those the IOSP makes itself.
+   * @param spWriter writes the SPobject of each Variable that has one.
+   * @throws IOException on write error, or if the group has something that cant be written, eg an opaque Attribute.
+   */
+  public static void writeGroup(Group.Builder group, Predicate<Variable.Builder<?>> include, SPobjectWriter spWriter,
+      DataOutputStream out) throws IOException {
+    writeString(group.shortName, out);
+
+    List<Dimension> dims = ImmutableList.copyOf(group.getDimensions());
+    out.writeInt(dims.size());
+    for (Dimension dim : dims) {
+      writeDimension(dim, out);
+    }
+
+    out.writeInt(group.enumTypedefs.size());
+    for (EnumTypedef typedef : group.enumTypedefs) {
+      writeString(typedef.getShortName(), out);
+      writeString(typedef.getBaseArrayType().name(), out);
+      out.writeInt(typedef.getMap().size());
+      for (Map.Entry<Integer, String> entry : typedef.getMap().entrySet()) {
+        out.writeInt(entry.getKey());
+        writeString(entry.getValue(), out);
+      }
+    }
+
+    writeAttributes(group.getAttributeContainer(), out);
+
+    int nvars = 0;
+    for (Variable.Builder<?> vb : group.vbuilders) {
+      if (include.test(vb)) {
+        nvars++;
+      }
+    }
+    out.writeInt(nvars);
+    for (Variable.Builder<?> vb : group.vbuilders) {
+      if (include.test(vb)) {
+        writeVariable(vb, spWriter, out);
+      }
+    }
+
+    out.writeInt(group.gbuilders.size());
+    for (Group.Builder nested : group.gbuilders) {
+      writeGroup(nested, include, spWriter, out);
+    }
+  }
+
+  /**
+   * Read a Group written by {@link #writeGroup}.
+   *
+   * @param group add everything to this group.
+   * @param spReader reads the SPobject of each Variable that has one.
+   */
+  public static void readGroup(Group.Builder group, SPobjectReader spReader, DataInputStream in) throws IOException {
+    group.setName(readString(in));
+
+    int ndims = in.readInt();
+    for (int i = 0; i < ndims; i++) {
+      group.addDimension(readDimension(in));
+    }
+
+    int ntypedefs = in.readInt();
+    for (int i = 0; i < ntypedefs; i++) {
+      String name = readString(in);
+      ArrayType basetype = ArrayType.valueOf(readString(in));
+      int n = in.readInt();
+      Map<Integer, String> map = new HashMap<>(2 * n);
+      for (int j = 0; j < n; j++) {
+        map.put(in.readInt(), readString(in));
+      }
+      group.addEnumTypedef(new EnumTypedef(name, map, basetype));
+    }
+
+    readAttributes(group.getAttributeContainer(), in);
+
+    int nvars = in.readInt();
+    for (int i = 0; i < nvars; i++) {
+      group.addVariable(readVariable(group, spReader, in));
+    }
+
+    int ngroups = in.readInt();
+    for (int i = 0; i < ngroups; i++) {
+      Group.Builder nested = Group.builder();
+      group.addGroup(nested);
+      readGroup(nested, spReader, in);
+    }
+  }
+
+  private static void writeVariable(Variable.Builder<?> vb, SPobjectWriter spWriter, DataOutputStream out)
+      throws IOException {
+    if (vb.proxyReader != null) {
+      throw new IOException("Cant write Variable with a ProxyReader: " + vb.shortName);
+    }
+    boolean isStructure = vb instanceof Structure.Builder;
+    out.writeByte(isStructure ? STRUCTURE : VARIABLE);
+    writeString(vb.shortName, out);
+    writeString(vb.dataType == null ? null : vb.dataType.name(), out);
+    writeString(vb.getEnumTypeName(), out);
+
+    List<Dimension> dims = vb.getDimensions();
+    out.writeInt(dims.size());
+    for (Dimension dim : dims) {
+      writeDimension(dim, out);
+    }
+
+    writeAttributes(vb.getAttributeContainer(), out);
+
+    out.writeBoolean(vb.spiObject != null);
+    if (vb.spiObject != null) {
+      spWriter.write(vb.spiObject, out);
+    }
+
+    if (isStructure) {
+      List<Variable.Builder<?>> members = ((Structure.Builder<?>) vb).vbuilders;
+      out.writeInt(members.size());
+      for (Variable.Builder<?> member : members) {
+        writeVariable(member, spWriter, out);
+      }
+    }
+  }
+
+  private static Variable.Builder<?> readVariable(Group.Builder parent, SPobjectReader spReader, DataInputStream in)
+      throws IOException {
+    boolean isStructure = in.readByte() == STRUCTURE;
+    Variable.Builder<?> vb = isStructure ? Structure.builder() : Variable.builder();
+    vb.setName(readString(in));
+    vb.setParentGroupBuilder(parent);
+    String dataType = readString(in);
+    if (dataType != null) {
+      vb.setArrayType(ArrayType.valueOf(dataType));
+    }
+    String enumTypeName = readString(in);
+    if (enumTypeName != null) {
+      vb.setEnumTypeName(enumTypeName);
+    }
+
+    int ndims = in.readInt();
+    for (int i = 0; i < ndims; i++) {
+      vb.addDimension(readDimension(in));
+    }
+
+    readAttributes(vb.getAttributeContainer(), in);
+
+    if (in.readBoolean()) {
+      vb.setSPobject(spReader.read(in));
+    }
+
+    if (isStructure) {
+      int nmembers = in.readInt();
+      for (int i = 0; i < nmembers; i++) {
+        ((Structure.Builder<?>) vb).addMemberVariable(readVariable(parent, spReader, in));
+      }
+    }
+    return vb;
+  }
+
+  private static void writeDimension(Dimension dim, DataOutputStream out) throws IOException {
+    writeString(dim.getShortName(), out);
+    out.writeInt(dim.getLength());
+    out.writeBoolean(dim.isShared());
+    out.writeBoolean(dim.isUnlimited());
+    out.writeBoolean(dim.isVariableLength());
+  }
+
+  private static Dimension readDimension(DataInputStream in) throws IOException {
+    String name = readString(in);
+    int length = in.readInt();
+    boolean isShared = in.readBoolean();
+    boolean isUnlimited = in.readBoolean();
+    boolean isVariableLength = in.readBoolean();
+    // the flags must be set first, since they change what lengths are allowed
+    return Dimension.builder().setName(name).setIsShared(isShared).setIsUnlimited(isUnlimited)
+        .setIsVariableLength(isVariableLength).setLength(length).build();
+  }
+
+  private static void writeAttributes(AttributeContainer atts, DataOutputStream out) throws IOException {
+    List<Attribute> list = ImmutableList.copyOf(atts);
+    out.writeInt(list.size());
+    for (Attribute att : list) {
+      writeAttribute(att, out);
+    }
+  }
+
+  private static void readAttributes(AttributeContainerMutable atts, DataInputStream in) throws IOException {
+    int n = in.readInt();
+    for (int i = 0; i < n; i++) {
+      atts.addAttribute(readAttribute(in));
+    }
+  }
+
+  // String or numeric values, with no EnumTypedef
+  private static void writeAttribute(Attribute att, DataOutputStream out) throws IOException {
+    ArrayType type = att.getArrayType();
+    if (att.getEnumType() != null || !(type == ArrayType.STRING || type.isNumeric())) {
+      throw new IOException("Cant write " + type + " Attribute " + att.getShortName());
+    }
+    writeString(att.getShortName(), out);
+    writeString(type.name(), out);
+    Array<?> values = att.getArrayValues();
+    if (values == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt((int) values.length());
+    for (Object value : values) {
+      if (type == ArrayType.STRING) {
+        writeString((String) value, out);
+      } else if (type.getPrimitiveClass() == Byte.class) {
+        out.writeByte(((Number) value).byteValue());
+      } else if (type.getPrimitiveClass() == Short.class) {
+        out.writeShort(((Number) value).shortValue());
+      } else if (type.getPrimitiveClass() == Integer.class) {
+        out.writeInt(((Number) value).intValue());
+      } else if (type.getPrimitiveClass() == Long.class) {
+        out.writeLong(((Number) value).longValue());
+      } else if (type == ArrayType.FLOAT) {
+        out.writeFloat(((Number) value).floatValue());
+      } else {
+        out.writeDouble(((Number) value).doubleValue());
+      }
+    }
+  }
+
+  private static Attribute readAttribute(DataInputStream in) throws IOException {
+    String name = readString(in);
+    ArrayType type = ArrayType.valueOf(readString(in));
+    int n = in.readInt();
+    if (n < 0) {
+      return Attribute.emptyValued(name, type);
+    }
+    Object values;
+    if (type == ArrayType.STRING) {
+      String[] pa = new String[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = readString(in);
+      }
+      values = pa;
+    } else if (type.getPrimitiveClass() == Byte.class) {
+      byte[] pa = new byte[n];
+      in.readFully(pa);
+      values = pa;
+    } else if (type.getPrimitiveClass() == Short.class) {
+      short[] pa = new short[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = in.readShort();
+      }
+      values = pa;
+    } else if (type.getPrimitiveClass() == Integer.class) {
+      int[] pa = new int[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = in.readInt();
+      }
+      values = pa;
+    } else if (type.getPrimitiveClass() == Long.class) {
+      long[] pa = new long[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = in.readLong();
+      }
+      values = pa;
+    } else if (type == ArrayType.FLOAT) {
+      float[] pa = new float[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = in.readFloat();
+      }
+      values = pa;
+    } else {
+      double[] pa = new double[n];
+      for (int i = 0; i < n; i++) {
+        pa[i] = in.readDouble();
+      }
+      values = pa;
+    }
+    return Attribute.fromArray(name, Arrays.factory(type, new int[] {n}, values));
+  }
+
+  /** Write a String that may be null or longer than {@link DataOutputStream#writeUTF} allows. */
+  public static void writeString(@Nullable String s, DataOutputStream out) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  /** Read a String written by {@link #writeString}. */
+  @Nullable
+  public static String readString(DataInputStream in) throws IOException {
+    int n = in.readInt();
+    if (n < 0) {
+      return null;
+    }
+    byte[] b = new byte[n];
+    in.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+}
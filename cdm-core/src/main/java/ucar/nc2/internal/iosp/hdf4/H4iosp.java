@@ -5,15 +5,16 @@
 package ucar.nc2.internal.iosp.hdf4;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import ucar.array.ArrayType;
 import ucar.array.Arrays;
 import ucar.array.Storage;
@@ -25,32 +26,50 @@ import ucar.nc2.Group;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.constants.DataFormatType;
+import ucar.nc2.filter.Filter;
+import ucar.nc2.filter.Filters;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.ChunkCache;
 import ucar.nc2.iosp.IospArrayHelper;
 import ucar.nc2.iosp.Layout;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.iosp.LayoutRegular;
 import ucar.nc2.iosp.LayoutSegmented;
 import ucar.nc2.iosp.LayoutTiled;
 import ucar.nc2.util.CancelTask;
-import ucar.nc2.util.IO;
 import ucar.unidata.io.PositioningDataInputStream;
 import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.Nullable;
 
-/** HDF4 iosp */
+/**
+ * HDF4 iosp.
+ * <p>
+ * Uncompressed chunks, and whole compressed objects that are not chunked, are kept in the {@link ChunkCache}, so that
+ * reading a section of one does not inflate it again. Compressed chunks are inflated concurrently by
+ * {@link LayoutBBTiled}.
+ */
 public class H4iosp extends AbstractIOServiceProvider {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(H4iosp.class);
+  private static final int DEFLATE_FILTER_ID = 1; // the HDF5 filter id of zlib deflate
 
   private H4header header;
   private Charset valueCharset;
+  private final ChunkCache chunkCache = ChunkCache.getDefault();
+  private final Filter deflate = Filters.getFilter(DEFLATE_FILTER_ID, null);
+  private String chunkCacheFileId;
 
   @Override
   public boolean isValidFile(RandomAccessFile raf) throws IOException {
     return H4header.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return ImmutableList.of(H4header.MAGIC);
+  }
+
   @Override
   public String getFileTypeId() {
     if (header != null && header.isEos()) {
@@ -85,6 +104,7 @@ public class H4iosp extends AbstractIOServiceProvider {
   @Override
   public void build(RandomAccessFile raf, Group.Builder rootGroup, CancelTask cancelTask) throws IOException {
     setRaf(raf);
+    chunkCacheFileId = ChunkCache.newFileId(raf.getLocation());
 
     raf.order(RandomAccessFile.BIG_ENDIAN);
     header = new H4header(this);
@@ -113,8 +133,7 @@ public class H4iosp extends AbstractIOServiceProvider {
     section = Section.fill(section, v.getShape());
 
     if (vinfo.hasNoData) {
-      return (vinfo.fillValue == null) ? IospArrayHelper.makePrimitiveArray((int) section.computeSize(), dataType)
-          : IospArrayHelper.makePrimitiveArray((int) section.computeSize(), dataType, vinfo.fillValue);
+      return IospArrayHelper.makeStorage(section.computeSize(), dataType, vinfo.fillValue);
     }
 
     if (!vinfo.isCompressed) {
@@ -133,20 +152,14 @@ public class H4iosp extends AbstractIOServiceProvider {
       }
 
     } else {
-      if (!vinfo.isLinked && !vinfo.isChunked) {
+      if (!vinfo.isChunked) { // linked or not
         Layout index = new LayoutRegular(0, vinfo.getElementSize(), v.getShape(), section);
-        InputStream is = getCompressedInputStream(vinfo);
+        InputStream is = getUncompressedInputStream(v, vinfo);
         PositioningDataInputStream dataSource = new PositioningDataInputStream(is);
         return IospArrayHelper.readDataFill(dataSource, index, dataType, vinfo.fillValue);
 
-      } else if (vinfo.isLinked) {
-        Layout index = new LayoutRegular(0, vinfo.getElementSize(), v.getShape(), section);
-        InputStream is = getLinkedCompressedInputStream(vinfo);
-        PositioningDataInputStream dataSource = new PositioningDataInputStream(is);
-        return IospArrayHelper.readDataFill(dataSource, index, dataType, vinfo.fillValue);
-
-      } else if (vinfo.isChunked) {
-        LayoutBBTiled.DataChunkIterator chunkIterator = new H4CompressedChunkIterator(vinfo);
+      } else {
+        LayoutBBTiled.DataChunkIterator chunkIterator = new H4CompressedChunkIterator(v.getFullName(), vinfo);
         LayoutBB layout = new LayoutBBTiled(chunkIterator, vinfo.chunkSize, vinfo.getElementSize(), section);
         return IospArrayHelper.readDataFill(layout, dataType, vinfo.fillValue);
       }
@@ -192,14 +205,8 @@ public class H4iosp extends AbstractIOServiceProvider {
       Layout layout = new LayoutRegular(0, recsize, s.getShape(), section);
       IospArrayHelper.readData(dataSource, layout, ArrayType.STRUCTURE, result);
 
-    } else if (!vinfo.isLinked && vinfo.isCompressed) {
-      InputStream is = getCompressedInputStream(vinfo);
-      PositioningDataInputStream dataSource = new PositioningDataInputStream(is);
-      Layout layout = new LayoutRegular(0, recsize, s.getShape(), section);
-      IospArrayHelper.readData(dataSource, layout, ArrayType.STRUCTURE, result);
-
-    } else if (vinfo.isLinked && vinfo.isCompressed) {
-      InputStream is = getLinkedCompressedInputStream(vinfo);
+    } else if (vinfo.isCompressed) { // linked or not
+      InputStream is = getUncompressedInputStream(s, vinfo);
       PositioningDataInputStream dataSource = new PositioningDataInputStream(is);
       Layout layout = new LayoutRegular(0, recsize, s.getShape(), section);
       IospArrayHelper.readData(dataSource, layout, ArrayType.STRUCTURE, result);
@@ -224,6 +231,51 @@ public class H4iosp extends AbstractIOServiceProvider {
     return null;
   }
 
+  /**
+   * The uncompressed data of a compressed object that is not chunked. When it fits in the chunk cache, it is inflated
+   * once and kept there, instead of inflating from the start of the object on each read.
+   */
+  private InputStream getUncompressedInputStream(Variable v, H4header.Vinfo vinfo) throws IOException {
+    H4header.SpecialComp compress = vinfo.data.compress;
+    if (!chunkCache.isEnabled() || compress.compress_type != TagEnum.COMP_CODE_DEFLATE || compress.uncomp_length <= 0
+        || compress.uncomp_length > chunkCache.getMaxBytes()) {
+      return vinfo.isLinked ? getLinkedCompressedInputStream(vinfo) : getCompressedInputStream(vinfo);
+    }
+
+    ChunkCache.Key key = new ChunkCache.Key(chunkCacheFileId, v.getFullName(), new int[0]);
+    byte[] data = chunkCache.getIfPresent(key);
+    if (data == null) {
+      byte[] cbuffer =
+          vinfo.isLinked ? readSegments(vinfo.segPos, vinfo.segSize) : readBytes(vinfo.start, vinfo.length);
+      data = Filters.toArray(deflate.decode(ByteBuffer.wrap(cbuffer), compress.uncomp_length));
+      chunkCache.put(key, data);
+    }
+    return new ByteArrayInputStream(data);
+  }
+
+  private byte[] readBytes(long start, int length) throws IOException {
+    byte[] buffer = new byte[length];
+    raf.seek(start);
+    raf.readFully(buffer);
+    return buffer;
+  }
+
+  // the linked blocks, one after the other
+  private byte[] readSegments(long[] segPos, int[] segSize) throws IOException {
+    int total = 0;
+    for (int size : segSize) {
+      total += size;
+    }
+    byte[] buffer = new byte[total];
+    int pos = 0;
+    for (int i = 0; i < segPos.length; i++) {
+      raf.seek(segPos[i]);
+      raf.readFully(buffer, pos, segSize[i]);
+      pos += segSize[i];
+    }
+    return buffer;
+  }
+
   private InputStream getCompressedInputStream(H4header.Vinfo vinfo) throws IOException {
     // probably could construct an input stream from a channel from a raf for now, just read it in.
     byte[] buffer = new byte[vinfo.length];
@@ -325,10 +377,12 @@ public class H4iosp extends AbstractIOServiceProvider {
   }
 
   private class H4CompressedChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    final String varName;
     final List<H4header.DataChunk> chunks;
     int chunkNo;
 
-    H4CompressedChunkIterator(H4header.Vinfo vinfo) {
+    H4CompressedChunkIterator(String varName, H4header.Vinfo vinfo) {
+      this.varName = varName;
       this.chunks = vinfo.chunks;
       this.chunkNo = 0;
     }
@@ -343,16 +397,18 @@ public class H4iosp extends AbstractIOServiceProvider {
       Preconditions.checkArgument(chunkData.ext_type == TagEnum.SPECIAL_COMP);
       chunkNo++;
 
-      return new DataChunk(chunk.origin, chunkData.compress);
+      return new DataChunk(varName, chunk.origin, chunkData.compress);
     }
   }
 
   private class DataChunk implements LayoutBBTiled.DataChunk {
+    private final String varName;
     private final int[] offset; // offset index of this chunk, reletive to entire array
     private final H4header.SpecialComp compress;
     private ByteBuffer bb; // the data is placed into here
 
-    DataChunk(int[] offset, H4header.SpecialComp compress) {
+    DataChunk(String varName, int[] offset, H4header.SpecialComp compress) {
+      this.varName = varName;
       this.offset = offset;
       this.compress = compress;
     }
@@ -363,44 +419,75 @@ public class H4iosp extends AbstractIOServiceProvider {
 
     public ByteBuffer getByteBuffer() throws IOException {
       if (bb == null) {
-        // read compressed data in
-        H4header.TagData cdata = compress.getDataTag();
-        InputStream in;
-
-        // compressed data stored in one place
-        if (cdata.linked == null) {
-          byte[] cbuffer = new byte[cdata.length];
-          raf.seek(cdata.offset);
-          raf.readFully(cbuffer);
-          in = new ByteArrayInputStream(cbuffer);
-
-        } else { // or compressed data stored in linked storage
-          in = new LinkedInputStream(cdata.linked);
-        }
-
-        // uncompress it
-        if (compress.compress_type == TagEnum.COMP_CODE_DEFLATE) {
-          // read the stream in and uncompress
-          InputStream zin = new java.util.zip.InflaterInputStream(in);
-          ByteArrayOutputStream out = new ByteArrayOutputStream(compress.uncomp_length);
-          IO.copy(zin, out);
-          byte[] buffer = out.toByteArray();
-          bb = ByteBuffer.wrap(buffer);
-
-        } else if (compress.compress_type == TagEnum.COMP_CODE_NONE) {
-          // just read the stream in
-          ByteArrayOutputStream out = new ByteArrayOutputStream(compress.uncomp_length);
-          IO.copy(in, out);
-          byte[] buffer = out.toByteArray();
-          bb = ByteBuffer.wrap(buffer);
-        } else {
-          throw new IllegalStateException("unknown compression type =" + compress.compress_type);
-        }
+        byte[] cached = chunkCache.getIfPresent(cacheKey());
+        bb = (cached != null) ? wrap(cached) : uncompress(readCompressed(compress.getDataTag()));
       }
-
       return bb;
     }
 
+    // read on the calling thread, uncompress on the one that runs the task
+    @Override
+    public Callable<ByteBuffer> readChunk() throws IOException {
+      byte[] cached = chunkCache.getIfPresent(cacheKey());
+      if (cached != null) {
+        return () -> wrap(cached);
+      }
+      byte[] cbuffer = readCompressed(compress.getDataTag());
+      return () -> uncompress(cbuffer);
+    }
+
+    private ChunkCache.Key cacheKey() {
+      return new ChunkCache.Key(chunkCacheFileId, varName, offset);
+    }
+
+    // read-only, since the data is shared through the chunk cache
+    private ByteBuffer wrap(byte[] data) {
+      return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    // does not use the RandomAccessFile, so may be called from any thread
+    private ByteBuffer uncompress(byte[] cbuffer) throws IOException {
+      if (compress.compress_type == TagEnum.COMP_CODE_DEFLATE) {
+        // straight into a buffer of the uncompressed size
+        byte[] data = Filters.toArray(deflate.decode(ByteBuffer.wrap(cbuffer), compress.uncomp_length));
+        chunkCache.put(cacheKey(), data);
+        return wrap(data);
+
+      } else if (compress.compress_type == TagEnum.COMP_CODE_NONE) {
+        return ByteBuffer.wrap(cbuffer);
+      } else {
+        throw new IllegalStateException("unknown compression type =" + compress.compress_type);
+      }
+    }
+
+    // the compressed data, stored in one place or in linked storage
+    private byte[] readCompressed(H4header.TagData cdata) throws IOException {
+      if (cdata.linked == null) {
+        return readBytes(cdata.offset, cdata.length);
+      }
+
+      List<H4header.TagLinkedBlock> blocks = cdata.linked.getLinkedDataBlocks();
+      long[] segPos = new long[blocks.size()];
+      int[] segSize = new int[blocks.size()];
+      for (int i = 0; i < blocks.size(); i++) {
+        segPos[i] = blocks.get(i).offset;
+        segSize[i] = blocks.get(i).length;
+      }
+      return readSegments(segPos, segSize);
+    }
+
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunkCache.invalidate(chunkCacheFileId);
+    super.close();
+  }
+
+  @Override
+  public void release() throws IOException {
+    chunkCache.invalidate(chunkCacheFileId); // the file may change before it is reacquired
+    super.release();
   }
 
   @Override
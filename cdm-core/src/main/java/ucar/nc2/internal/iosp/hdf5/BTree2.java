@@ -15,7 +15,8 @@ import java.util.List;
 /**
  * // Level 1A2
  *
- * These are used for symbols, not data i think. Version 1 is H5header.GroupBTree.
+ * These are used for symbols, and (types 10 and 11) as the chunk index of chunked datasets in files written with the
+ * 1.10 format. Version 1 is H5header.GroupBTree.
  *
  * Version 2 B-trees are "traditional" B-trees, with one major difference. Instead of just using a simple pointer
  * (or address in the file) to a child of an internal node, the pointer to the child node contains two additional
@@ -35,8 +36,14 @@ public class BTree2 {
   private final java.io.PrintStream debugOut = System.out;
 
   public final byte btreeType;
+  private static final int METADATA_PREFIX_SIZE = 10; // signature, version, type, checksum
+
   private final int nodeSize; // size in bytes of btree nodes
   private final short recordSize; // size in bytes of btree records
+  private final int chunkRank; // types 10 and 11: number of chunk dimensions, without the element size
+  private final int chunkSizeLength; // type 11: size in bytes of the filtered chunk size
+  private int maxNumRecordsSize; // size in bytes of the number of records in a child node
+  private int[] cumMaxNumRecordsSize; // size in bytes of the total number of records below a child node, by depth
 
   private final String owner;
   private final H5header h5;
@@ -45,9 +52,21 @@ public class BTree2 {
   public final List<Entry2> entryList = new ArrayList<>();
 
   public BTree2(H5header h5, String owner, long address) throws IOException {
+    this(h5, owner, address, 0, 0);
+  }
+
+  /**
+   * Read a B-tree that may be the chunk index of a chunked dataset.
+   *
+   * @param chunkRank number of chunk dimensions, without the element size
+   * @param chunkSizeLength size in bytes of the filtered chunk sizes
+   */
+  BTree2(H5header h5, String owner, long address, int chunkRank, int chunkSizeLength) throws IOException {
     this.h5 = h5;
     this.raf = h5.getRandomAccessFile();
     this.owner = owner;
+    this.chunkRank = chunkRank;
+    this.chunkSizeLength = chunkSizeLength;
 
     raf.seek(h5.getFileOffset(address));
 
@@ -77,6 +96,7 @@ public class BTree2 {
           rootNodeAddress);
     }
 
+    initNodeInfo(treeDepth);
     if (treeDepth > 0) {
       InternalNode node = new InternalNode(rootNodeAddress, numRecordsRootNode, recordSize, treeDepth);
       node.recurse();
@@ -86,6 +106,27 @@ public class BTree2 {
     }
   }
 
+  // The sizes of the number of records in the child pointers of the internal nodes depend on the maximum number of
+  // records that fit in a node, see H5B2__hdr_init()
+  private void initNodeInfo(int treeDepth) {
+    long maxNumRecords = (nodeSize - METADATA_PREFIX_SIZE) / recordSize; // leaf
+    maxNumRecordsSize = limitEncodedSize(maxNumRecords);
+    cumMaxNumRecordsSize = new int[treeDepth + 1];
+    long cumMaxNumRecords = maxNumRecords;
+    for (int depth = 1; depth <= treeDepth; depth++) {
+      int pointerSize = h5.getSizeOffsets() + maxNumRecordsSize + (depth > 1 ? cumMaxNumRecordsSize[depth - 1] : 0);
+      long nodeMaxNumRecords = (nodeSize - (METADATA_PREFIX_SIZE + pointerSize)) / (recordSize + pointerSize);
+      cumMaxNumRecords = (nodeMaxNumRecords + 1) * cumMaxNumRecords + nodeMaxNumRecords;
+      cumMaxNumRecordsSize[depth] = limitEncodedSize(cumMaxNumRecords);
+    }
+  }
+
+  // number of bytes needed to encode values up to limit
+  private static int limitEncodedSize(long limit) {
+    int log2 = (limit <= 0) ? 0 : 63 - Long.numberOfLeadingZeros(limit);
+    return log2 / 8 + 1;
+  }
+
   BTree2.Record1 getEntry1(int hugeObjectID) {
     for (Entry2 entry : entryList) {
       BTree2.Record1 record1 = (BTree2.Record1) entry.record;
@@ -134,14 +175,12 @@ public class BTree2 {
       }
       entries[nrecords] = new Entry2();
 
-      int maxNumRecords = nodeSize / recordSize; // guessing
-      int maxNumRecordsPlusDesc = nodeSize / recordSize; // guessing
       for (int i = 0; i < nrecords + 1; i++) {
         Entry2 e = entries[i];
         e.childAddress = h5.readOffset();
-        e.nrecords = h5.readVariableSizeUnsigned(1); // readVariableSizeMax(maxNumRecords);
+        e.nrecords = h5.readVariableSizeUnsigned(maxNumRecordsSize);
         if (depth > 1)
-          e.totNrecords = h5.readVariableSizeUnsigned(2); // readVariableSizeMax(maxNumRecordsPlusDesc);
+          e.totNrecords = h5.readVariableSizeUnsigned(cumMaxNumRecordsSize[depth - 1]);
 
         if (debugBtree2)
           debugOut.println(" BTree2 entry childAddress=" + e.childAddress + " nrecords=" + e.nrecords + " totNrecords="
@@ -228,6 +267,10 @@ public class BTree2 {
         return new Record8();
       case 9:
         return new Record9();
+      case 10:
+        return new Record10();
+      case 11:
+        return new Record11();
       default:
         throw new IllegalStateException();
     }
@@ -371,4 +414,37 @@ public class BTree2 {
     }
   }
 
+  /** Type 10: a chunk of a dataset without filters. */
+  class Record10 {
+    final long address;
+    final long[] scaledOffset; // chunk offset divided by the chunk size
+
+    Record10() throws IOException {
+      address = h5.readOffset();
+      scaledOffset = readScaledOffset();
+    }
+  }
+
+  /** Type 11: a chunk of a dataset with filters. */
+  class Record11 {
+    final long address;
+    final long chunkSize;
+    final int filterMask;
+    final long[] scaledOffset; // chunk offset divided by the chunk size
+
+    Record11() throws IOException {
+      address = h5.readOffset();
+      chunkSize = h5.readVariableSizeUnsigned(chunkSizeLength);
+      filterMask = raf.readInt();
+      scaledOffset = readScaledOffset();
+    }
+  }
+
+  private long[] readScaledOffset() throws IOException {
+    long[] scaled = new long[chunkRank];
+    for (int i = 0; i < chunkRank; i++)
+      scaled[i] = raf.readLong();
+    return scaled;
+  }
+
 } // BTree2
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The chunks of one chunked variable, in the order of their tiles, as read once from the chunk index (a version 1 or
+ * version 2 B-tree, fixed array, extensible array, or the implicit and single chunk indexes). Kept in primitive arrays,
+ * with O(log n) lookup of the first chunk needed for a section. Can be written to and read from a file, so that the
+ * chunk index need not be read again.
+ */
+@Immutable
+final class ChunkTable {
+  private static final int MAGIC = 0x48354349; // "H5CI"
+  private static final int VERSION = 1;
+
+  private final int ndim; // length of each offset, may include the element size dimension
+  private final int nchunks;
+  private final int[] offsets; // int[nchunks * ndim]
+  private final long[] filePos;
+  private final int[] sizes;
+  private final int[] filterMasks;
+  private final int[] order; // tile order of each chunk, non decreasing
+
+  /** Collects the chunks in tile order. */
+  static class Builder {
+    private final int ndim;
+    private int nchunks;
+    private int[] offsets;
+    private long[] filePos;
+    private int[] sizes;
+    private int[] filterMasks;
+
+    Builder(int ndim) {
+      this.ndim = ndim;
+      int initial = 16;
+      this.offsets = new int[initial * ndim];
+      this.filePos = new long[initial];
+      this.sizes = new int[initial];
+      this.filterMasks = new int[initial];
+    }
+
+    Builder add(int[] offset, long pos, int size, int filterMask) {
+      if (nchunks == filePos.length) {
+        int capacity = 2 * nchunks;
+        offsets = Arrays.copyOf(offsets, capacity * ndim);
+        filePos = Arrays.copyOf(filePos, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        filterMasks = Arrays.copyOf(filterMasks, capacity);
+      }
+      System.arraycopy(offset, 0, offsets, nchunks * ndim, ndim);
+      filePos[nchunks] = pos;
+      sizes[nchunks] = size;
+      filterMasks[nchunks] = filterMask;
+      nchunks++;
+      return this;
+    }
+
+    /** Make the table, sorting the chunks into tile order if they were not added in that order. */
+    ChunkTable build(Tiling tiling) {
+      int[] order = new int[nchunks];
+      boolean sorted = true;
+      for (int i = 0; i < nchunks; i++) {
+        order[i] = tiling.order(Arrays.copyOfRange(offsets, i * ndim, (i + 1) * ndim));
+        sorted &= (i == 0) || order[i - 1] <= order[i];
+      }
+      if (sorted) {
+        return new ChunkTable(ndim, nchunks, Arrays.copyOf(offsets, nchunks * ndim), Arrays.copyOf(filePos, nchunks),
+            Arrays.copyOf(sizes, nchunks), Arrays.copyOf(filterMasks, nchunks), order);
+      }
+
+      // sort (order, index) pairs, then permute
+      long[] keys = new long[nchunks];
+      for (int i = 0; i < nchunks; i++) {
+        keys[i] = ((long) order[i] << 32) | i;
+      }
+      Arrays.sort(keys);
+      int[] sortedOffsets = new int[nchunks * ndim];
+      long[] sortedFilePos = new long[nchunks];
+      int[] sortedSizes = new int[nchunks];
+      int[] sortedFilterMasks = new int[nchunks];
+      int[] sortedOrder = new int[nchunks];
+      for (int i = 0; i < nchunks; i++) {
+        int from = (int) keys[i];
+        System.arraycopy(offsets, from * ndim, sortedOffsets, i * ndim, ndim);
+        sortedFilePos[i] = filePos[from];
+        sortedSizes[i] = sizes[from];
+        sortedFilterMasks[i] = filterMasks[from];
+        sortedOrder[i] = order[from];
+      }
+      return new ChunkTable(ndim, nchunks, sortedOffsets, sortedFilePos, sortedSizes, sortedFilterMasks, sortedOrder);
+    }
+  }
+
+  private ChunkTable(int ndim, int nchunks, int[] offsets, long[] filePos, int[] sizes, int[] filterMasks,
+      int[] order) {
+    this.ndim = ndim;
+    this.nchunks = nchunks;
+    this.offsets = offsets;
+    this.filePos = filePos;
+    this.sizes = sizes;
+    this.filterMasks = filterMasks;
+    this.order = order;
+  }
+
+  int getNumberOfChunks() {
+    return nchunks;
+  }
+
+  int getRank() {
+    return ndim;
+  }
+
+  int[] getOffset(int i) {
+    return Arrays.copyOfRange(offsets, i * ndim, (i + 1) * ndim);
+  }
+
+  long getFilePos(int i) {
+    return filePos[i];
+  }
+
+  int getSize(int i) {
+    return sizes[i];
+  }
+
+  int getFilterMask(int i) {
+    return filterMasks[i];
+  }
+
+  /**
+   * Find the first chunk that may hold data at or after wantOrigin: the last chunk whose tile is not after the tile
+   * of wantOrigin, or the first chunk if there is none.
+   *
+   * @param wantOrigin index point, or null for the first chunk
+   * @param tiling the tiling of the variable
+   */
+  int findFirst(@Nullable int[] wantOrigin, Tiling tiling) {
+    if (wantOrigin == null || nchunks == 0) {
+      return 0;
+    }
+    int want = tiling.order(wantOrigin);
+    // number of chunks with order <= want
+    int lo = 0;
+    int hi = nchunks;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (order[mid] <= want) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return Math.max(0, lo - 1);
+  }
+
+  /** Write to a file, replacing it atomically. */
+  void write(File file, long fileLength, long lastModified, long indexAddress) throws IOException {
+    Path target = file.toPath();
+    Files.createDirectories(target.toAbsolutePath().getParent());
+    Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+    try {
+      try (OutputStream os = Files.newOutputStream(tmp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fileLength);
+        out.writeLong(lastModified);
+        out.writeLong(indexAddress);
+        out.writeInt(ndim);
+        out.writeInt(nchunks);
+        for (int offset : offsets) {
+          out.writeInt(offset);
+        }
+        for (int i = 0; i < nchunks; i++) {
+          out.writeLong(filePos[i]);
+          out.writeInt(sizes[i]);
+          out.writeInt(filterMasks[i]);
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Read a table written by {@link #write}.
+   *
+   * @return the table, or null if the file does not exist or is not the table of the given file and chunk index.
+   */
+  @Nullable
+  static ChunkTable read(File file, long fileLength, long lastModified, long indexAddress, int ndim, Tiling tiling)
+      throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    try (InputStream is = Files.newInputStream(file.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fileLength
+          || in.readLong() != lastModified || in.readLong() != indexAddress || in.readInt() != ndim) {
+        return null;
+      }
+      int nchunks = in.readInt();
+      int[] offsets = new int[nchunks * ndim];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = in.readInt();
+      }
+      long[] filePos = new long[nchunks];
+      int[] sizes = new int[nchunks];
+      int[] filterMasks = new int[nchunks];
+      for (int i = 0; i < nchunks; i++) {
+        filePos[i] = in.readLong();
+        sizes[i] = in.readInt();
+        filterMasks[i] = in.readInt();
+      }
+      int[] order = new int[nchunks];
+      for (int i = 0; i < nchunks; i++) {
+        order[i] = tiling.order(Arrays.copyOfRange(offsets, i * ndim, (i + 1) * ndim));
+      }
+      return new ChunkTable(ndim, nchunks, offsets, filePos, sizes, filterMasks, order);
+    }
+  }
+}
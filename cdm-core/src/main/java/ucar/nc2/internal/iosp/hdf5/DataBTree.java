@@ -4,10 +4,14 @@
  */
 package ucar.nc2.internal.iosp.hdf5;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
 import ucar.array.Section;
+import ucar.nc2.internal.util.DiskCache2;
 import ucar.nc2.iosp.LayoutTiled;
 import ucar.unidata.io.RandomAccessFile;
 import java.io.IOException;
@@ -26,14 +30,44 @@ import java.util.List;
  * In other words, each child pointer out of a B-tree node has a left key and a right key.
  * The pointers out of internal nodes point to sub-trees while the pointers out of leaf nodes point to symbol nodes and
  * raw data chunks. Aside from that difference, internal nodes and leaf nodes are identical.
+ * <p>
+ * Files written with the 1.10 format (layout message version 4) may use other chunk indexes instead: a single chunk,
+ * an implicit index (chunks allocated contiguously), a {@link FixedArray}, an {@link ExtensibleArray}, or a
+ * {@link BTree2}, which are also handled here.
+ * <p>
+ * The leaf entries are read once, the first time the chunks are needed, into a {@link ChunkTable} that is kept for
+ * the life of the open file. If the system property "unidata.h5iosp.chunkIndexDir" is set, the table is also saved
+ * in that directory, and read from there when the same file is opened again, so the B-tree is not read at all.
  *
  * @see "http://www.hdfgroup.org/HDF5/doc/H5.format.html#Btrees"
  */
 public class DataBTree {
+  // chunk index types of the version 4 layout message
+  static final int INDEX_BTREE1 = 0;
+  static final int INDEX_SINGLE_CHUNK = 1;
+  static final int INDEX_IMPLICIT = 2;
+  static final int INDEX_FIXED_ARRAY = 3;
+  static final int INDEX_EXTENSIBLE_ARRAY = 4;
+  static final int INDEX_BTREE2 = 5;
+
   private static final boolean debugDataBtree = false;
   private static final boolean debugDataChunk = false;
   private static final boolean debugChunkOrder = false;
   private static final java.io.PrintStream debugOut = System.out;
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DataBTree.class);
+
+  // The directory where chunk tables are saved, if any.
+  private static final DiskCache2.PropertyCache chunkIndexCache =
+      new DiskCache2.PropertyCache("unidata.h5iosp.chunkIndexDir");
+
+  /**
+   * Set the directory where chunk tables are saved.
+   *
+   * @param cache use this cache's root directory, or null to not save chunk tables.
+   */
+  public static void setChunkIndexCache(DiskCache2 cache) {
+    chunkIndexCache.set(cache);
+  }
 
   private final H5header h5;
   private final RandomAccessFile raf;
@@ -43,15 +77,44 @@ public class DataBTree {
   private final Tiling tiling;
   private final int ndimStorage, wantType;
 
+  // version 4 layout message only
+  private final int indexType;
+  private final H5objects.MessageLayout layout;
+  private final int[] storageSize;
+  private final int[] dims, maxDims; // dataspace; maxDims is -1 if unlimited
+
   private Object owner;
+  private ChunkTable chunkTable;
 
   public DataBTree(H5header h5, long rootNodeAddress, int[] varShape, int[] storageSize, MemTracker memTracker) {
+    this(h5, rootNodeAddress, varShape, storageSize, null, null, null, memTracker);
+  }
+
+  /**
+   * Constructor for any chunk index.
+   *
+   * @param layout the layout message, has the chunk index type and address
+   * @param dims dataspace dimension lengths
+   * @param maxDims dataspace maximum dimension lengths, -1 if unlimited
+   */
+  DataBTree(H5header h5, H5objects.MessageLayout layout, int[] varShape, int[] dims, int[] maxDims,
+      MemTracker memTracker) {
+    this(h5, layout.dataAddress, varShape, layout.chunkSize, layout, dims, maxDims, memTracker);
+  }
+
+  private DataBTree(H5header h5, long rootNodeAddress, int[] varShape, int[] storageSize,
+      H5objects.MessageLayout layout, int[] dims, int[] maxDims, MemTracker memTracker) {
     this.h5 = h5;
     this.raf = h5.getRandomAccessFile();
     this.rootNodeAddress = rootNodeAddress;
     this.tiling = new Tiling(varShape, storageSize);
     this.ndimStorage = storageSize.length;
     this.memTracker = memTracker;
+    this.storageSize = storageSize;
+    this.layout = layout;
+    this.indexType = (layout == null) ? INDEX_BTREE1 : layout.chunkIndexType;
+    this.dims = dims;
+    this.maxDims = maxDims;
 
     wantType = 1;
   }
@@ -70,12 +133,233 @@ public class DataBTree {
     return new DataChunkIteratorNoFilter(want, nChunkDim);
   }
 
+  /** The number of chunks, reading the B-tree if needed. */
+  public int getNumberOfChunks() throws IOException {
+    return getChunkTable().getNumberOfChunks();
+  }
+
+  // read the chunk table the first time its needed
+  synchronized ChunkTable getChunkTable() throws IOException {
+    if (chunkTable == null) {
+      File file = getChunkTableFile();
+      if (file != null) {
+        try {
+          chunkTable = ChunkTable.read(file, raf.length(), raf.getLastModified(), rootNodeAddress, ndimStorage, tiling);
+        } catch (IOException e) {
+          log.debug("Failed to read chunk table of {} from {}", raf.getLocation(), file, e);
+        }
+      }
+      if (chunkTable == null) {
+        chunkTable = readChunkTable();
+        if (file != null) {
+          try {
+            chunkTable.write(file, raf.length(), raf.getLastModified(), rootNodeAddress);
+          } catch (IOException e) {
+            log.debug("Failed to write chunk table of {} to {}", raf.getLocation(), file, e);
+          }
+        }
+      }
+    }
+    return chunkTable;
+  }
+
+  // read all the chunks in the chunk index
+  private ChunkTable readChunkTable() throws IOException {
+    ChunkTable.Builder builder = new ChunkTable.Builder(ndimStorage);
+    long chunkBytes = 1;
+    for (int size : storageSize)
+      chunkBytes *= size;
+    String name = String.valueOf(owner);
+
+    switch (indexType) {
+      case INDEX_SINGLE_CHUNK: {
+        boolean filtered = (layout.chunkFlags & 2) != 0;
+        addChunk(builder, new long[ndimStorage - 1], rootNodeAddress, filtered ? layout.singleChunkSize : chunkBytes,
+            filtered ? layout.singleChunkFilterMask : 0);
+        break;
+      }
+      case INDEX_IMPLICIT: {
+        long[] maxChunks = maxChunks(false);
+        long nchunks = 1;
+        for (long n : maxChunks)
+          nchunks *= n;
+        for (long index = 0; index < nchunks; index++)
+          addChunk(builder, scaledOffset(index, maxChunks), rootNodeAddress + index * chunkBytes, chunkBytes, 0);
+        break;
+      }
+      case INDEX_FIXED_ARRAY: {
+        long[] maxChunks = maxChunks(false);
+        new FixedArray(h5, name, rootNodeAddress).readElements(chunkBytes, (index, address, size,
+            filterMask) -> addChunk(builder, scaledOffset(index, maxChunks), address, size, filterMask));
+        break;
+      }
+      case INDEX_EXTENSIBLE_ARRAY: {
+        // elements are in row major order with the unlimited dimension moved first
+        int unlimited = unlimitedDimension();
+        long[] maxChunks = swizzle(maxChunks(true), unlimited);
+        new ExtensibleArray(h5, name, rootNodeAddress).readElements(chunkBytes, (index, address, size,
+            filterMask) -> addChunk(builder, unswizzle(scaledOffset(index, maxChunks), unlimited), address, size,
+                filterMask));
+        break;
+      }
+      case INDEX_BTREE2: {
+        raf.order(RandomAccessFile.LITTLE_ENDIAN);
+        BTree2 btree = new BTree2(h5, name, rootNodeAddress, ndimStorage - 1, chunkSizeLength(chunkBytes));
+        for (BTree2.Entry2 entry : btree.entryList) {
+          if (entry.record instanceof BTree2.Record11) {
+            BTree2.Record11 record = (BTree2.Record11) entry.record;
+            addChunk(builder, record.scaledOffset, record.address, record.chunkSize, record.filterMask);
+          } else {
+            BTree2.Record10 record = (BTree2.Record10) entry.record;
+            addChunk(builder, record.scaledOffset, record.address, chunkBytes, 0);
+          }
+        }
+        break;
+      }
+      default: {
+        // walk all the leaf nodes of the version 1 B-tree
+        Node root = new Node(rootNodeAddress, -1);
+        root.first(null);
+        while (root.hasNext()) {
+          DataChunk dc = root.next();
+          builder.add(dc.offset, dc.filePos, dc.size, dc.filterMask);
+        }
+      }
+    }
+    return builder.build(tiling);
+  }
+
+  /** Gets the chunks of a version 4 chunk index. */
+  interface ChunkEntryConsumer {
+    /**
+     * Accept a chunk.
+     *
+     * @param index element index in the chunk index
+     * @param address chunk address, not yet shifted by the base address
+     * @param size size of the chunk in bytes
+     * @param filterMask filters that were skipped for this chunk
+     */
+    void accept(long index, long address, long size, int filterMask) throws IOException;
+  }
+
+  /**
+   * Read an element of a fixed or extensible array chunk index, at the current file position.
+   * Elements with an undefined address are for chunks that were not written, and are skipped.
+   *
+   * @param clientId 0 = chunks without filters, 1 = chunks with filters
+   * @param elementSize size in bytes of the element
+   * @param chunkBytes size of unfiltered chunks
+   */
+  static void readArrayElement(H5header h5, int clientId, int elementSize, long chunkBytes, long index,
+      ChunkEntryConsumer consumer) throws IOException {
+    long address = h5.readOffset();
+    long size = chunkBytes;
+    int filterMask = 0;
+    if (clientId == 1) {
+      size = h5.readVariableSizeUnsigned(elementSize - h5.getSizeOffsets() - 4);
+      filterMask = h5.getRandomAccessFile().readInt();
+    }
+    if (address != -1)
+      consumer.accept(index, address, size, filterMask);
+  }
+
+  // add a chunk of a version 4 chunk index, unless it is outside the current dataspace
+  private void addChunk(ChunkTable.Builder builder, long[] scaledOffset, long address, long size, int filterMask) {
+    int[] offset = new int[ndimStorage]; // last one is the element size dimension, always 0
+    boolean partialEdge = false;
+    for (int i = 0; i < scaledOffset.length; i++) {
+      long start = scaledOffset[i] * storageSize[i];
+      if (start >= dims[i])
+        return;
+      offset[i] = (int) start;
+      partialEdge |= start + storageSize[i] > dims[i];
+    }
+    Preconditions.checkArgument(size <= Integer.MAX_VALUE, "chunk too large %s", size);
+    if (partialEdge && (layout.chunkFlags & 1) != 0) // partial edge chunks are not filtered
+      filterMask = -1;
+    long filePos = h5.getFileOffset(address);
+    if (memTracker != null)
+      memTracker.addByLen("Chunked Data (" + owner + ")", filePos, size);
+    builder.add(offset, filePos, (int) size, filterMask);
+  }
+
+  // number of chunks in each dimension at the maximum dimension lengths
+  private long[] maxChunks(boolean allowUnlimited) {
+    long[] result = new long[ndimStorage - 1];
+    for (int i = 0; i < result.length; i++) {
+      if (maxDims[i] < 0) {
+        Preconditions.checkArgument(allowUnlimited, "unlimited dimension not allowed for chunk index %s", indexType);
+        result[i] = Long.MAX_VALUE;
+      } else {
+        result[i] = (maxDims[i] + (long) storageSize[i] - 1) / storageSize[i];
+      }
+    }
+    return result;
+  }
+
+  private int unlimitedDimension() {
+    for (int i = 0; i < ndimStorage - 1; i++) {
+      if (maxDims[i] < 0)
+        return i;
+    }
+    return 0;
+  }
+
+  /** The chunk coordinates of the index'th chunk, in row major order. The first dimension may be unlimited. */
+  static long[] scaledOffset(long index, long[] chunks) {
+    long[] result = new long[chunks.length];
+    for (int i = chunks.length - 1; i > 0; i--) {
+      result[i] = index % chunks[i];
+      index /= chunks[i];
+    }
+    if (chunks.length > 0)
+      result[0] = index;
+    return result;
+  }
+
+  /** Move dimension dim to the front. */
+  static long[] swizzle(long[] coords, int dim) {
+    long[] result = new long[coords.length];
+    result[0] = coords[dim];
+    System.arraycopy(coords, 0, result, 1, dim);
+    System.arraycopy(coords, dim + 1, result, dim + 1, coords.length - dim - 1);
+    return result;
+  }
+
+  /** Move the front dimension back to dim, the inverse of swizzle. */
+  static long[] unswizzle(long[] coords, int dim) {
+    long[] result = new long[coords.length];
+    result[dim] = coords[0];
+    System.arraycopy(coords, 1, result, 0, dim);
+    System.arraycopy(coords, dim + 1, result, dim + 1, coords.length - dim - 1);
+    return result;
+  }
+
+  /** Size in bytes of the size of a filtered chunk in a version 2 B-tree, see H5D__bt2_idx_create() */
+  static int chunkSizeLength(long chunkBytes) {
+    int log2 = 63 - Long.numberOfLeadingZeros(Math.max(1, chunkBytes));
+    return Math.min(8, 1 + (log2 + 8) / 8);
+  }
+
+  // one directory per file version, one file per B-tree
+  private File getChunkTableFile() {
+    DiskCache2 cache = chunkIndexCache.get();
+    long lastModified = raf.getLastModified();
+    if (cache == null || lastModified <= 0 || indexType == INDEX_SINGLE_CHUNK || indexType == INDEX_IMPLICIT) {
+      return null;
+    }
+    String version = raf.getLocation() + '\n' + lastModified;
+    String object = Hashing.sha256().hashString(version, StandardCharsets.UTF_8).toString();
+    return new File(cache.getRootDirectory(), object.substring(0, 2) + "/" + object + "/" + rootNodeAddress);
+  }
+
   // An Iterator over the DataChunks in the btree.
   // returns the actual data from the btree leaf (level 0) nodes.
   // used by H5tiledLayout, when there are no filters
   class DataChunkIteratorNoFilter implements LayoutTiled.DataChunkIterator {
-    private final Node root;
+    private final ChunkTable table;
     private final int nChunkDim;
+    private int current;
 
     /**
      * Constructor
@@ -86,26 +370,24 @@ public class DataBTree {
      */
     DataChunkIteratorNoFilter(Section want, int nChunkDim) throws IOException {
       this.nChunkDim = nChunkDim;
-      root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
+      this.table = getChunkTable();
       int[] wantOrigin = (want != null) ? want.getOrigin() : null;
-      root.first(wantOrigin);
+      this.current = table.findFirst(wantOrigin, tiling);
     }
 
     public boolean hasNext() {
-      return root.hasNext(); // && !node.greaterThan(wantOrigin);
+      return current < table.getNumberOfChunks();
     }
 
     public LayoutTiled.DataChunk next() throws IOException {
-      DataChunk dc = root.next();
-      int[] offset = dc.offset;
+      int[] offset = table.getOffset(current);
       if (offset.length > nChunkDim) { // may have to eliminate last offset
-        offset = new int[nChunkDim];
-        System.arraycopy(dc.offset, 0, offset, 0, nChunkDim);
+        offset = Arrays.copyOf(offset, nChunkDim);
       }
       if (debugChunkOrder)
-        System.out.printf("LayoutTiled.DataChunk next order %d%n", tiling.order(dc.offset));
+        System.out.printf("LayoutTiled.DataChunk next order %d%n", tiling.order(offset));
 
-      return new LayoutTiled.DataChunk(offset, dc.filePos);
+      return new LayoutTiled.DataChunk(offset, table.getFilePos(current++));
     }
   }
 
@@ -113,8 +395,8 @@ public class DataBTree {
   // returns the data chunck info from the btree leaf (level 0) nodes
   // used by H5tiledLayoutBB, when there are filters
   public class DataChunkIterator {
-    private final Node root;
-    private final int[] wantOrigin;
+    private final ChunkTable table;
+    private int current;
 
     /**
      * Constructor
@@ -123,17 +405,20 @@ public class DataBTree {
      * @throws IOException on error
      */
     DataChunkIterator(Section want) throws IOException {
-      root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
-      wantOrigin = (want != null) ? want.getOrigin() : null;
-      root.first(wantOrigin);
+      this.table = getChunkTable();
+      int[] wantOrigin = (want != null) ? want.getOrigin() : null;
+      this.current = table.findFirst(wantOrigin, tiling);
     }
 
     public boolean hasNext() {
-      return root.hasNext(); // && !node.greaterThan(wantOrigin);
+      return current < table.getNumberOfChunks();
     }
 
     public DataChunk next() throws IOException {
-      return root.next();
+      DataChunk dc = new DataChunk(table.getSize(current), table.getFilterMask(current), table.getOffset(current),
+          table.getFilePos(current));
+      current++;
+      return dc;
     }
   }
 
@@ -312,6 +597,13 @@ public class DataBTree {
         memTracker.addByLen("Chunked Data (" + owner + ")", filePos, size);
     }
 
+    DataChunk(int size, int filterMask, int[] offset, long filePos) {
+      this.size = size;
+      this.filterMask = filterMask;
+      this.offset = offset;
+      this.filePos = filePos;
+    }
+
     public String toString() {
       StringBuilder sbuff = new StringBuilder();
       sbuff.append("  ChunkedDataNode size=").append(size).append(" filterMask=").append(filterMask).append(" filePos=")
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import ucar.unidata.io.RandomAccessFile;
+import java.io.IOException;
+
+/**
+ * Level 1I "Extensible Array Index", the chunk index of a dataset with one unlimited dimension, in files written
+ * with the 1.10 format.
+ * <p>
+ * The first elements are in the index block, followed by data blocks whose addresses are in the index block, then
+ * data blocks whose addresses are in secondary blocks. Data blocks and secondary blocks are grouped into "super
+ * blocks", whose number of data blocks and number of elements per data block double every other super block.
+ * Blocks that were never written have an undefined address, and large data blocks are divided into pages.
+ *
+ * @see "https://docs.hdfgroup.org/hdf5/develop/_f_m_t3.html#ExtensibleArray"
+ */
+class ExtensibleArray {
+  private static final boolean debug = false;
+  private static final java.io.PrintStream debugOut = System.out;
+
+  private final H5header h5;
+  private final RandomAccessFile raf;
+  private final String owner;
+
+  final int clientId; // 0 = chunks without filters, 1 = chunks with filters
+  final int elementSize;
+  final int maxNelemsBits;
+  final int indexBlockElems;
+  final int dataBlockMinElems;
+  final int secondaryBlockMinDataPtrs;
+  final int maxDataBlockPageNelemsBits;
+  final long maxIndexSet; // one more than the largest element index that was set
+  final long indexBlockAddress;
+
+  private final int arrayOffsetSize; // size in bytes of the block offsets
+  private final SuperBlockInfo[] superBlocks;
+
+  /** The data blocks of one super block. */
+  static class SuperBlockInfo {
+    final long ndataBlocks;
+    final long dataBlockNelems;
+    final long startIndex; // index of the first element, after those in the index block
+
+    SuperBlockInfo(long ndataBlocks, long dataBlockNelems, long startIndex) {
+      this.ndataBlocks = ndataBlocks;
+      this.dataBlockNelems = dataBlockNelems;
+      this.startIndex = startIndex;
+    }
+  }
+
+  ExtensibleArray(H5header h5, String owner, long address) throws IOException {
+    this.h5 = h5;
+    this.raf = h5.getRandomAccessFile();
+    this.owner = owner;
+
+    raf.order(RandomAccessFile.LITTLE_ENDIAN);
+    raf.seek(h5.getFileOffset(address));
+    String magic = raf.readString(4);
+    if (!magic.equals("EAHD"))
+      throw new IllegalStateException(magic + " should equal EAHD");
+
+    byte version = raf.readByte();
+    clientId = raf.readByte();
+    elementSize = raf.readByte() & 0xff;
+    maxNelemsBits = raf.readByte();
+    indexBlockElems = raf.readByte() & 0xff;
+    dataBlockMinElems = raf.readByte() & 0xff;
+    secondaryBlockMinDataPtrs = raf.readByte() & 0xff;
+    maxDataBlockPageNelemsBits = raf.readByte();
+    h5.readLength(); // number of secondary blocks created
+    h5.readLength(); // size of secondary blocks created
+    h5.readLength(); // number of data blocks created
+    h5.readLength(); // size of data blocks created
+    maxIndexSet = h5.readLength();
+    h5.readLength(); // number of elements realized
+    indexBlockAddress = h5.readOffset();
+    raf.readInt(); // checksum
+
+    arrayOffsetSize = (maxNelemsBits + 7) / 8;
+    superBlocks = makeSuperBlocks(maxNelemsBits, dataBlockMinElems);
+
+    if (debug)
+      debugOut.printf("ExtensibleArray (%s) version=%d clientId=%d elementSize=%d maxIndexSet=%d nsuper=%d%n", owner,
+          version, clientId, elementSize, maxIndexSet, superBlocks.length);
+  }
+
+  // see H5EA__hdr_init()
+  static SuperBlockInfo[] makeSuperBlocks(int maxNelemsBits, int dataBlockMinElems) {
+    int nsuper = 1 + maxNelemsBits - log2(dataBlockMinElems);
+    SuperBlockInfo[] result = new SuperBlockInfo[nsuper];
+    long startIndex = 0;
+    for (int i = 0; i < nsuper; i++) {
+      long ndataBlocks = 1L << (i / 2);
+      long dataBlockNelems = (1L << ((i + 1) / 2)) * dataBlockMinElems;
+      result[i] = new SuperBlockInfo(ndataBlocks, dataBlockNelems, startIndex);
+      startIndex += ndataBlocks * dataBlockNelems;
+    }
+    return result;
+  }
+
+  // log2 of a power of 2
+  private static int log2(long n) {
+    return 63 - Long.numberOfLeadingZeros(n);
+  }
+
+  /**
+   * Read all the elements that are stored, below maxIndexSet.
+   *
+   * @param chunkBytes size in bytes of an unfiltered chunk
+   * @param consumer gets each chunk, with its element index
+   */
+  void readElements(long chunkBytes, DataBTree.ChunkEntryConsumer consumer) throws IOException {
+    if (indexBlockAddress == -1) // nothing written yet
+      return;
+
+    raf.order(RandomAccessFile.LITTLE_ENDIAN);
+    raf.seek(h5.getFileOffset(indexBlockAddress));
+    String magic = raf.readString(4);
+    if (!magic.equals("EAIB"))
+      throw new IllegalStateException(magic + " should equal EAIB");
+    raf.readByte(); // version
+    raf.readByte(); // clientId
+    h5.readOffset(); // header address
+
+    long n = Math.min(indexBlockElems, maxIndexSet);
+    for (long index = 0; index < indexBlockElems; index++) {
+      if (index < n) {
+        DataBTree.readArrayElement(h5, clientId, elementSize, chunkBytes, index, consumer);
+      } else {
+        raf.skipBytes(elementSize);
+      }
+    }
+
+    // the index block has the data blocks of the first super blocks, and the secondary blocks of the rest
+    int indexBlockSuperBlocks = 2 * log2(secondaryBlockMinDataPtrs);
+    long[] dataBlockAddress = new long[2 * (secondaryBlockMinDataPtrs - 1)];
+    for (int i = 0; i < dataBlockAddress.length; i++)
+      dataBlockAddress[i] = h5.readOffset();
+    long[] secondaryBlockAddress = new long[Math.max(0, superBlocks.length - indexBlockSuperBlocks)];
+    for (int i = 0; i < secondaryBlockAddress.length; i++)
+      secondaryBlockAddress[i] = h5.readOffset();
+
+    int dataBlock = 0;
+    for (int s = 0; s < Math.min(indexBlockSuperBlocks, superBlocks.length); s++) {
+      SuperBlockInfo info = superBlocks[s];
+      for (int d = 0; d < info.ndataBlocks; d++, dataBlock++) {
+        long start = indexBlockElems + info.startIndex + d * info.dataBlockNelems;
+        if (start >= maxIndexSet)
+          return;
+        readDataBlock(dataBlockAddress[dataBlock], info.dataBlockNelems, start, null, 0, chunkBytes, consumer);
+      }
+    }
+
+    for (int s = indexBlockSuperBlocks; s < superBlocks.length; s++) {
+      SuperBlockInfo info = superBlocks[s];
+      long start = indexBlockElems + info.startIndex;
+      if (start >= maxIndexSet)
+        return;
+      if (secondaryBlockAddress[s - indexBlockSuperBlocks] != -1)
+        readSecondaryBlock(secondaryBlockAddress[s - indexBlockSuperBlocks], info, start, chunkBytes, consumer);
+    }
+  }
+
+  private void readSecondaryBlock(long address, SuperBlockInfo info, long start, long chunkBytes,
+      DataBTree.ChunkEntryConsumer consumer) throws IOException {
+    raf.seek(h5.getFileOffset(address));
+    String magic = raf.readString(4);
+    if (!magic.equals("EASB"))
+      throw new IllegalStateException(magic + " should equal EASB");
+    raf.readByte(); // version
+    raf.readByte(); // clientId
+    h5.readOffset(); // header address
+    raf.skipBytes(arrayOffsetSize); // block offset
+
+    // which pages of the data blocks are initialized, if they are paged
+    long npages = numberOfPages(info.dataBlockNelems);
+    byte[] pageInit = null;
+    if (npages > 0) {
+      pageInit = new byte[(int) ((info.ndataBlocks * npages + 7) / 8)];
+      raf.readFully(pageInit);
+    }
+    long[] dataBlockAddress = new long[(int) info.ndataBlocks];
+    for (int d = 0; d < dataBlockAddress.length; d++)
+      dataBlockAddress[d] = h5.readOffset();
+
+    for (int d = 0; d < dataBlockAddress.length; d++) {
+      long dataBlockStart = start + d * info.dataBlockNelems;
+      if (dataBlockStart >= maxIndexSet)
+        return;
+      readDataBlock(dataBlockAddress[d], info.dataBlockNelems, dataBlockStart, pageInit, d * npages, chunkBytes,
+          consumer);
+    }
+  }
+
+  // number of pages of a data block, 0 if not paged
+  private long numberOfPages(long dataBlockNelems) {
+    long pageNelems = 1L << maxDataBlockPageNelemsBits;
+    return (dataBlockNelems > pageNelems) ? dataBlockNelems / pageNelems : 0;
+  }
+
+  /**
+   * Read the elements of a data block.
+   *
+   * @param pageInit page initialized bitmap from the secondary block, or null if all pages are initialized
+   * @param firstPage index in pageInit of the first page of this data block
+   */
+  private void readDataBlock(long address, long nelems, long start, byte[] pageInit, long firstPage, long chunkBytes,
+      DataBTree.ChunkEntryConsumer consumer) throws IOException {
+    if (address == -1) // not written
+      return;
+    raf.seek(h5.getFileOffset(address));
+    String magic = raf.readString(4);
+    if (!magic.equals("EADB"))
+      throw new IllegalStateException(magic + " should equal EADB");
+    raf.readByte(); // version
+    raf.readByte(); // clientId
+    h5.readOffset(); // header address
+    raf.skipBytes(arrayOffsetSize); // block offset
+
+    long npages = numberOfPages(nelems);
+    if (npages == 0) {
+      long end = Math.min(start + nelems, maxIndexSet);
+      for (long index = start; index < end; index++)
+        DataBTree.readArrayElement(h5, clientId, elementSize, chunkBytes, index, consumer);
+      return;
+    }
+
+    // paged: the checksum, then the pages, each with its own checksum
+    raf.readInt();
+    long pagesStart = raf.getFilePointer();
+    long pageNelems = 1L << maxDataBlockPageNelemsBits;
+    long pageSize = pageNelems * elementSize + 4;
+    for (long page = 0; page < npages; page++) {
+      long pageStart = start + page * pageNelems;
+      if (pageStart >= maxIndexSet)
+        return;
+      if (pageInit != null && !FixedArray.isBitSet(pageInit, firstPage + page))
+        continue;
+      raf.seek(pagesStart + page * pageSize);
+      long end = Math.min(pageStart + pageNelems, maxIndexSet);
+      for (long index = pageStart; index < end; index++)
+        DataBTree.readArrayElement(h5, clientId, elementSize, chunkBytes, index, consumer);
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import ucar.unidata.io.RandomAccessFile;
+import java.io.IOException;
+
+/**
+ * Level 1H "Fixed Array Index", the chunk index of a dataset with more than one chunk and fixed maximum dimension
+ * sizes, in files written with the 1.10 format. There is one element per chunk over the maximum dimension sizes,
+ * in row major order. The elements are in one data block, which is divided into pages when there are many of them;
+ * pages that were never written are not allocated.
+ *
+ * @see "https://docs.hdfgroup.org/hdf5/develop/_f_m_t3.html#FixedArray"
+ */
+class FixedArray {
+  private static final boolean debug = false;
+  private static final java.io.PrintStream debugOut = System.out;
+
+  private final H5header h5;
+  private final RandomAccessFile raf;
+  private final String owner;
+
+  final int clientId; // 0 = chunks without filters, 1 = chunks with filters
+  final int elementSize;
+  final int pageBits;
+  final long maxNumEntries;
+  final long dataBlockAddress;
+
+  FixedArray(H5header h5, String owner, long address) throws IOException {
+    this.h5 = h5;
+    this.raf = h5.getRandomAccessFile();
+    this.owner = owner;
+
+    raf.order(RandomAccessFile.LITTLE_ENDIAN);
+    raf.seek(h5.getFileOffset(address));
+    String magic = raf.readString(4);
+    if (!magic.equals("FAHD"))
+      throw new IllegalStateException(magic + " should equal FAHD");
+
+    byte version = raf.readByte();
+    clientId = raf.readByte();
+    elementSize = raf.readByte() & 0xff;
+    pageBits = raf.readByte();
+    maxNumEntries = h5.readLength();
+    dataBlockAddress = h5.readOffset();
+    raf.readInt(); // checksum
+
+    if (debug)
+      debugOut.printf("FixedArray (%s) version=%d clientId=%d elementSize=%d pageBits=%d maxNumEntries=%d%n", owner,
+          version, clientId, elementSize, pageBits, maxNumEntries);
+  }
+
+  /**
+   * Read all the elements that are stored.
+   *
+   * @param chunkBytes size in bytes of an unfiltered chunk
+   * @param consumer gets each chunk, with its element index
+   */
+  void readElements(long chunkBytes, DataBTree.ChunkEntryConsumer consumer) throws IOException {
+    if (dataBlockAddress == -1) // nothing written yet
+      return;
+
+    raf.order(RandomAccessFile.LITTLE_ENDIAN);
+    raf.seek(h5.getFileOffset(dataBlockAddress));
+    String magic = raf.readString(4);
+    if (!magic.equals("FADB"))
+      throw new IllegalStateException(magic + " should equal FADB");
+    raf.readByte(); // version
+    raf.readByte(); // clientId
+    h5.readOffset(); // header address
+
+    long pageNelems = 1L << pageBits;
+    if (maxNumEntries <= pageNelems) {
+      for (long index = 0; index < maxNumEntries; index++)
+        DataBTree.readArrayElement(h5, clientId, elementSize, chunkBytes, index, consumer);
+      return;
+    }
+
+    // paged: a bitmap of the pages that are initialized, the checksum, then the pages, each with its own checksum
+    long npages = (maxNumEntries + pageNelems - 1) / pageNelems;
+    byte[] pageInit = new byte[(int) ((npages + 7) / 8)];
+    raf.readFully(pageInit);
+    raf.readInt(); // checksum
+    long pagesStart = raf.getFilePointer();
+    long pageSize = pageNelems * elementSize + 4;
+    for (long page = 0; page < npages; page++) {
+      if (!isBitSet(pageInit, page))
+        continue;
+      raf.seek(pagesStart + page * pageSize);
+      long start = page * pageNelems;
+      long end = Math.min(start + pageNelems, maxNumEntries);
+      for (long index = start; index < end; index++)
+        DataBTree.readArrayElement(h5, clientId, elementSize, chunkBytes, index, consumer);
+    }
+  }
+
+  // bitmaps are most significant bit first
+  static boolean isBitSet(byte[] bitmap, long bit) {
+    return (bitmap[(int) (bit / 8)] & (0x80 >>> (int) (bit % 8))) != 0;
+  }
+
+}
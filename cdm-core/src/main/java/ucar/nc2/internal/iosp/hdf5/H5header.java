@@ -6,6 +6,7 @@
 package ucar.nc2.internal.iosp.hdf5;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
@@ -25,8 +26,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import ucar.array.ArrayType;
 import ucar.array.Array;
 import ucar.array.ArrayVlen;
@@ -143,7 +146,7 @@ public class H5header implements HdfHeaderIF {
 
   private static final int KNOWN_FILTERS = 3;
 
-  private final RandomAccessFile raf;
+  private RandomAccessFile raf;
   private final Group.Builder root;
   private final H5iosp h5iosp;
 
@@ -167,12 +170,14 @@ public class H5header implements HdfHeaderIF {
   private MemTracker memTracker;
 
   private final Charset valueCharset;
+  private final boolean lazyAttributes;
 
   H5header(RandomAccessFile myRaf, Group.Builder root, H5iosp h5iosp) {
     this.raf = myRaf;
     this.root = root;
     this.h5iosp = h5iosp;
     valueCharset = h5iosp.getValueCharset().orElse(StandardCharsets.UTF_8);
+    lazyAttributes = Boolean.parseBoolean(System.getProperty("unidata.h5iosp.lazyAttributes"));
   }
 
   /** Return defined {@link Charset value charset} that will be used when reading HDF5 header. */
@@ -228,7 +233,7 @@ public class H5header implements HdfHeaderIF {
 
     if (versionSB < 2) {
       readSuperBlock1(superblockStart, versionSB);
-    } else if (versionSB == 2) {
+    } else if (versionSB == 2 || versionSB == 3) { // version 3 only adds file consistency flags
       readSuperBlock2(superblockStart);
     } else {
       throw new IOException("Unknown superblock version= " + versionSB);
@@ -555,17 +560,7 @@ public class H5header implements HdfHeaderIF {
     } // loop over nested objects
 
     // create group attributes last. need enums to be found first
-    List<MessageAttribute> fatts = filterAttributes(h5group.facade.dobj.attributes);
-    for (MessageAttribute matt : fatts) {
-      try {
-        makeAttributes(null, matt, parentGroup.getAttributeContainer());
-      } catch (InvalidRangeException e) {
-        throw new IOException(e.getMessage());
-      }
-    }
-
-    // add system attributes
-    processSystemAttributes(h5group.facade.dobj.messages, parentGroup.getAttributeContainer());
+    addAttributes(null, h5group.facade.dobj, null, ImmutableList.of(), parentGroup.getAttributeContainer());
     return allHaveSharedDimensions;
   }
 
@@ -892,6 +887,71 @@ public class H5header implements HdfHeaderIF {
     return result;
   }
 
+  /**
+   * Add the attributes of a variable or group: those of the attribute messages, then the comment, then the fill value
+   * if there is no _FillValue attribute, then the attributes made from the header. In lazy mode, the attributes of
+   * groups and non-Structure variables are made when they are first used, after the file is open.
+   *
+   * @param sb if attributes of a Structure, add some of them to the member variables
+   * @param dobj the data object of the variable or group
+   * @param fillAttribute made from the fill value message, or null
+   * @param headerAtts other attributes made from the header
+   * @param attContainer add Attributes to this
+   */
+  private void addAttributes(@Nullable Structure.Builder<?> sb, DataObject dobj, @Nullable Attribute fillAttribute,
+      List<Attribute> headerAtts, AttributeContainerMutable attContainer) throws IOException {
+    List<MessageAttribute> fatts = filterAttributes(dobj.attributes);
+    if (lazyAttributes && sb == null && !fatts.isEmpty()) {
+      attContainer.addDeferred(() -> makeDeferredAttributes(dobj, fatts, fillAttribute, headerAtts));
+    } else {
+      addAttributes(sb, fatts, dobj.messages, fillAttribute, headerAtts, attContainer);
+    }
+  }
+
+  private void addAttributes(@Nullable Structure.Builder<?> sb, List<MessageAttribute> fatts,
+      List<HeaderMessage> messages, @Nullable Attribute fillAttribute, List<Attribute> headerAtts,
+      AttributeContainerMutable attContainer) throws IOException {
+    for (MessageAttribute matt : fatts) {
+      try {
+        makeAttributes(sb, matt, attContainer);
+      } catch (InvalidRangeException e) {
+        throw new IOException(e.getMessage());
+      }
+    }
+    processSystemAttributes(messages, attContainer);
+    if (fillAttribute != null && attContainer.findAttribute(CDM.FILL_VALUE) == null)
+      attContainer.addAttribute(fillAttribute);
+    attContainer.addAll(headerAtts);
+  }
+
+  // Called on first use of the attributes of a variable or group in lazy mode. Holds the iosp lock, which data reads
+  // also hold, since both move the file pointer. The iosp reacquires the file for the read if it was released or
+  // closed.
+  private List<Attribute> makeDeferredAttributes(DataObject dobj, List<MessageAttribute> fatts,
+      @Nullable Attribute fillAttribute, List<Attribute> headerAtts) {
+    AttributeContainerMutable atts = new AttributeContainerMutable(null);
+    synchronized (h5iosp) {
+      try {
+        boolean reopen = !h5iosp.isOpen();
+        if (reopen) {
+          h5iosp.reacquire();
+        }
+        try {
+          raf.order(RandomAccessFile.LITTLE_ENDIAN);
+          addAttributes(null, fatts, dobj.messages, fillAttribute, headerAtts, atts);
+        } finally {
+          if (reopen) {
+            h5iosp.release();
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("failed to read attributes of " + dobj.who + " HDF5 file=" + raf.getLocation(),
+            e);
+      }
+    }
+    return ImmutableList.copyOf(atts);
+  }
+
   /**
    * Create Attribute objects from the MessageAttribute and add to list
    *
@@ -1347,37 +1407,26 @@ public class H5header implements HdfHeaderIF {
 
     vb.setSPobject(vinfo);
 
-    // look for attributes
-    List<MessageAttribute> fatts = filterAttributes(facade.dobj.attributes);
-    for (MessageAttribute matt : fatts) {
-      try {
-        makeAttributes(sb, matt, vb.getAttributeContainer());
-      } catch (InvalidRangeException e) {
-        throw new IOException(e.getMessage());
-      }
-    }
-
-    AttributeContainerMutable atts = vb.getAttributeContainer();
-    processSystemAttributes(facade.dobj.messages, atts);
-    if (fillAttribute != null && atts.findAttribute(CDM.FILL_VALUE) == null)
-      vb.addAttribute(fillAttribute);
+    // attributes made from the header, added after the attribute messages
+    List<Attribute> headerAtts = new ArrayList<>();
     // if (vinfo.typeInfo.unsigned)
     // v.addAttribute(new Attribute(CDM.UNSIGNED, "true"));
     if (facade.dobj.mdt.type == 5) {
       String desc = facade.dobj.mdt.opaque_desc;
       if ((desc != null) && (!desc.isEmpty()))
-        vb.addAttribute(new Attribute("_opaqueDesc", desc));
+        headerAtts.add(new Attribute("_opaqueDesc", desc));
     }
 
     int[] shape = makeVariableShape(facade.dobj.mdt, facade.dobj.mds, facade.dimList);
     if (vinfo.isChunked) { // make the data btree, but entries are not read in
-      vinfo.btree = new DataBTree(this, dataAddress, shape, vinfo.storageSize, memTracker);
+      vinfo.btree = new DataBTree(this, facade.dobj.msl, shape, facade.dobj.mds.dimLength, facade.dobj.mds.maxLength,
+          memTracker);
 
       if (vinfo.isChunked) { // add an attribute describing the chunk size
         List<Integer> chunksize = new ArrayList<>();
         for (int i = 0; i < vinfo.storageSize.length - 1; i++) // skip last one - its the element size
           chunksize.add(vinfo.storageSize[i]);
-        vb.addAttribute(Attribute.builder(CDM.CHUNK_SIZES).setValues(chunksize, true).build());
+        headerAtts.add(Attribute.builder(CDM.CHUNK_SIZES).setValues(chunksize, true).build());
       }
     }
 
@@ -1387,7 +1436,7 @@ public class H5header implements HdfHeaderIF {
       Array<Long> rawData = (Array<Long>) vinfo.readArray();
       Array<String> refData = findReferenceObjectNames(rawData);
       vb.setSourceData(refData); // so H5iosp.read() is never called
-      vb.addAttribute(new Attribute("_HDF5ReferenceType", "values are names of referenced Variables"));
+      headerAtts.add(new Attribute("_HDF5ReferenceType", "values are names of referenced Variables"));
     }
 
     if (transformReference && (facade.dobj.mdt.type == 7) && (facade.dobj.mdt.referenceType == 1)) { // region reference
@@ -1407,9 +1456,11 @@ public class H5header implements HdfHeaderIF {
       vb.setArrayType(ArrayType.LONG);
       Array<?> newData = Arrays.factory(ArrayType.LONG, shape, new long[(int) Arrays.computeSize(shape)]);
       vb.setSourceData(newData); // so H5iosp.read() is never called
-      vb.addAttribute(new Attribute("_HDF5ReferenceType", "values are regions of referenced Variables"));
+      headerAtts.add(new Attribute("_HDF5ReferenceType", "values are regions of referenced Variables"));
     }
 
+    addAttributes(sb, facade.dobj, fillAttribute, headerAtts, vb.getAttributeContainer());
+
     // debugging
     vinfo.setOwner(vb);
     if ((vinfo.mfp != null) && warnings) {
@@ -2148,6 +2199,14 @@ public class H5header implements HdfHeaderIF {
     return raf;
   }
 
+  /** Read the header from this file from now on, when the iosp has reacquired it or it is reopened. */
+  void setRandomAccessFile(RandomAccessFile raf) {
+    this.raf = raf;
+    if (h5objects != null) {
+      h5objects.setRandomAccessFile(raf);
+    }
+  }
+
   public long getFileOffset(long address) {
     return baseAddress + address;
   }
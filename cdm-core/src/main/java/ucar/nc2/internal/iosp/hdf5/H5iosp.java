@@ -10,9 +10,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Optional;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import ucar.array.ArrayType;
 import ucar.array.Arrays;
 import ucar.array.Array;
@@ -30,10 +32,12 @@ import ucar.nc2.constants.CDM;
 import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.internal.iosp.hdf4.HdfEos;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.ChunkCache;
 import ucar.nc2.iosp.IospArrayHelper;
 import ucar.nc2.iosp.Layout;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutRegular;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.iosp.NetcdfFileFormat;
 import ucar.nc2.iosp.NetcdfFormatUtils;
 import ucar.nc2.calendar.CalendarDate;
@@ -81,10 +85,13 @@ public class H5iosp extends AbstractIOServiceProvider {
   boolean isEos;
   boolean includeOriginalAttributes;
   private Charset valueCharset;
+  private final ChunkCache chunkCache = ChunkCache.getDefault();
+  private String chunkCacheFileId;
 
   @Override
   public void build(RandomAccessFile raf, Group.Builder rootGroup, CancelTask cancelTask) throws IOException {
     setRaf(raf);
+    chunkCacheFileId = ChunkCache.newFileId(raf.getLocation());
 
     raf.order(RandomAccessFile.BIG_ENDIAN);
     header = new H5header(raf, rootGroup, this);
@@ -107,6 +114,11 @@ public class H5iosp extends AbstractIOServiceProvider {
     return H5header.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return ImmutableList.of(NetcdfFileFormat.HDF5_MAGIC);
+  }
+
   @Override
   public String getFileTypeId() {
     if (isEos) {
@@ -147,16 +159,29 @@ public class H5iosp extends AbstractIOServiceProvider {
     return super.sendIospMessage(message);
   }
 
+  // Reads that move the file pointer, and the header reading deferred attributes, synchronize on this iosp.
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    chunkCache.invalidate(chunkCacheFileId);
     super.close();
     header.close();
   }
 
   @Override
-  public void reacquire() throws IOException {
+  public synchronized void release() throws IOException {
+    chunkCache.invalidate(chunkCacheFileId); // the file may change before it is reacquired
+    super.release();
+  }
+
+  @Override
+  public synchronized void reacquire() throws IOException {
     super.reacquire();
-    // TODO headerParser.raf = this.raf;
+    header.setRandomAccessFile(raf);
+  }
+
+  /** False after the file is released or closed, until it is reacquired. */
+  synchronized boolean isOpen() {
+    return raf != null;
   }
 
   @Override
@@ -268,7 +293,8 @@ public class H5iosp extends AbstractIOServiceProvider {
   ///////////////////////////////////////////////////////////////////////////////////////////////
 
   @Override
-  public Array<?> readArrayData(Variable v2, Section section) throws java.io.IOException, InvalidRangeException {
+  public Array<?> readArrayData(Variable v2, Section section)
+      throws java.io.IOException, InvalidRangeException {
     H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
     Preconditions.checkNotNull(vinfo);
     if (debugRead) {
@@ -277,7 +303,54 @@ public class H5iosp extends AbstractIOServiceProvider {
     return readArrayData(v2, vinfo.dataPos, section);
   }
 
-  // all the work is here, so it can be called recursively
+  @Override
+  public void readArrayDataInto(Variable v2, Section section, Object dest, int destPos)
+      throws IOException, InvalidRangeException {
+    H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
+    Preconditions.checkNotNull(vinfo);
+    ArrayType dataType = v2.getArrayType();
+    boolean isNumber = vinfo.typeInfo.hdfType == 0 || vinfo.typeInfo.hdfType == 1; // fixed point, floating point
+    if (v2 instanceof Structure || !isNumber || vinfo.typeInfo.isVlen || vinfo.typeInfo.isVString
+        || vinfo.elementSize != dataType.getSize()) {
+      super.readArrayDataInto(v2, section, dest, destPos);
+      return;
+    }
+
+    Section want = Section.fill(section, v2.getShape());
+    int nelems = (int) want.computeSize();
+    Arrays.checkPrimitiveArray(dataType, dest, destPos, nelems);
+    Object fillValue = vinfo.getFillValue();
+    if (vinfo.useFillValue || vinfo.isChunked) {
+      // chunks that were never written are not in the layout
+      IospArrayHelper.fill(dest, destPos, destPos + nelems, fillValue);
+      if (vinfo.useFillValue) {
+        return;
+      }
+    }
+
+    ByteOrder endian = vinfo.typeInfo.endian;
+    if (vinfo.mfp == null && !vinfo.isChunked) {
+      LayoutRegular layout = new LayoutRegular(vinfo.dataPos, vinfo.elementSize, v2.getShape(), want);
+      if (IospArrayHelper.usePositionalReads(raf, layout, dataType)) {
+        // does not move the file pointer, so does not need the lock
+        IospArrayHelper.readDataAt(raf, IospArrayHelper.shiftDest(layout, destPos), dataType, dest, endian);
+        return;
+      }
+    }
+    synchronized (this) {
+      if (vinfo.mfp != null) { // filtered
+        LayoutBB layout =
+            new H5tiledLayoutBB(v2, want, raf, vinfo.mfp.getFilters(), endian, chunkCache, chunkCacheFileId);
+        IospArrayHelper.readData(IospArrayHelper.shiftDest(layout, destPos), dataType, dest);
+        return;
+      }
+      Layout layout = vinfo.isChunked ? new H5tiledLayout(vinfo, dataType, want)
+          : new LayoutRegular(vinfo.dataPos, vinfo.elementSize, v2.getShape(), want);
+      IospArrayHelper.readData(raf, IospArrayHelper.shiftDest(layout, destPos), dataType, dest, endian);
+    }
+  }
+
+  // all the work is here, so it can be called recursively. Reads that move the file pointer hold the lock.
   private Array<?> readArrayData(Variable v2, long dataPos, Section wantSection)
       throws IOException, InvalidRangeException {
     H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
@@ -286,7 +359,7 @@ public class H5iosp extends AbstractIOServiceProvider {
     Layout layout;
 
     if (vinfo.useFillValue) { // fill value only
-      Object pa = IospArrayHelper.makePrimitiveArray((int) wantSection.computeSize(), dataType, vinfo.getFillValue());
+      Object pa = IospArrayHelper.makeStorage(wantSection.computeSize(), dataType, vinfo.getFillValue());
       return Arrays.factory(dataType, wantSection.getShape(), pa);
     }
 
@@ -295,11 +368,14 @@ public class H5iosp extends AbstractIOServiceProvider {
       if (debugFilter)
         System.out.println("read variable filtered " + v2.getFullName() + " vinfo = " + vinfo);
       Preconditions.checkArgument(vinfo.isChunked);
-      layout = new H5tiledLayoutBB(v2, wantSection, raf, vinfo.mfp.getFilters(), endian);
-      if (vinfo.typeInfo.isVString) {
-        data = readFilteredStringData((LayoutBB) layout);
-      } else {
-        data = IospArrayHelper.readDataFill((LayoutBB) layout, v2.getArrayType(), vinfo.getFillValue());
+      synchronized (this) {
+        layout =
+            new H5tiledLayoutBB(v2, wantSection, raf, vinfo.mfp.getFilters(), endian, chunkCache, chunkCacheFileId);
+        if (vinfo.typeInfo.isVString) {
+          data = readFilteredStringData((LayoutBB) layout);
+        } else {
+          data = IospArrayHelper.readDataFill((LayoutBB) layout, v2.getArrayType(), vinfo.getFillValue());
+        }
       }
 
     } else { // normal case
@@ -332,11 +408,30 @@ public class H5iosp extends AbstractIOServiceProvider {
       }
 
       if (vinfo.isChunked) {
-        layout = new H5tiledLayout((H5header.Vinfo) v2.getSPobject(), readDtype, wantSection);
+        synchronized (this) {
+          layout = new H5tiledLayout((H5header.Vinfo) v2.getSPobject(), readDtype, wantSection);
+          data = readArrayOrPrimitive(vinfo, v2, layout, readDtype, wantSection.getShape(), fillValue, endian);
+        }
       } else {
-        layout = new LayoutRegular(dataPos, elemSize, v2.getShape(), wantSection);
+        boolean isNumber = vinfo.typeInfo.hdfType == 0 || vinfo.typeInfo.hdfType == 1; // fixed point, floating point
+        boolean isPlainNumber = isNumber && !vinfo.typeInfo.isVlen && elemSize == readDtype.getSize();
+        if (isPlainNumber) {
+          Array<?> offHeap = IospArrayHelper.readOffHeap(raf, dataPos, readDtype, v2.getShape(), wantSection, endian);
+          if (offHeap != null) {
+            return offHeap;
+          }
+        }
+        LayoutRegular regular = new LayoutRegular(dataPos, elemSize, v2.getShape(), wantSection);
+        layout = regular;
+        if (isPlainNumber && IospArrayHelper.usePositionalReads(raf, regular, readDtype)) {
+          // does not move the file pointer, so does not need the lock
+          data = IospArrayHelper.readDataFillAt(raf, regular, readDtype, fillValue, endian);
+        } else {
+          synchronized (this) {
+            data = readArrayOrPrimitive(vinfo, v2, layout, readDtype, wantSection.getShape(), fillValue, endian);
+          }
+        }
       }
-      data = readArrayOrPrimitive(vinfo, v2, layout, readDtype, wantSection.getShape(), fillValue, endian);
     }
 
     if (data instanceof Array) {
@@ -447,6 +542,9 @@ public class H5iosp extends AbstractIOServiceProvider {
     }
 
     // normal case
+    if (layout instanceof LayoutRegular) {
+      return IospArrayHelper.readDataFillRegular(raf, (LayoutRegular) layout, dataType, fillValue, endian);
+    }
     return IospArrayHelper.readDataFill(raf, layout, dataType, fillValue, endian);
   }
 
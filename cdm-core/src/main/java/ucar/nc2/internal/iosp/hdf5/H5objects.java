@@ -39,7 +39,7 @@ public class H5objects {
   private static boolean debugDimensionScales;
 
   private final H5header header;
-  private final RandomAccessFile raf;
+  private RandomAccessFile raf;
 
   private final PrintWriter debugOut;
   private final MemTracker memTracker;
@@ -53,6 +53,10 @@ public class H5objects {
     this.memTracker = memTracker;
   }
 
+  void setRandomAccessFile(RandomAccessFile raf) {
+    this.raf = raf;
+  }
+
   H5Group readRootSymbolTable(long pos) throws IOException {
     // The root object's SymbolTableEntry
     SymbolTableEntry rootEntry = new SymbolTableEntry(pos);
@@ -1555,6 +1559,12 @@ public class H5objects {
     int[] chunkSize; // only for chunked, otherwise must use Dataspace
     int dataSize;
 
+    // version 4 chunked only
+    byte chunkFlags; // bit 0: partial edge chunks are not filtered, bit 1: the single chunk is filtered
+    byte chunkIndexType; // see DataBTree; 0 = version 1 B-tree (versions 1-3)
+    long singleChunkSize; // filtered size of the single chunk
+    int singleChunkFilterMask;
+
     public String toString() {
       StringBuilder sbuff = new StringBuilder();
       sbuff.append(" type= ").append(+type).append(" (");
@@ -1585,6 +1595,8 @@ public class H5objects {
 
       sbuff.append(" dataSize=").append(dataSize);
       sbuff.append(" dataAddress=").append(dataAddress);
+      if (chunkIndexType != 0)
+        sbuff.append(" chunkIndexType=").append(chunkIndexType);
       return sbuff.toString();
     }
 
@@ -1649,12 +1661,15 @@ public class H5objects {
           dataAddress = header.readOffset();
           contiguousSize = header.readLength();
 
-        } else if (type == 2) {
+        } else if (type == 2 && version < 4) {
           ndims = raf.readByte();
           dataAddress = header.readOffset();
           chunkSize = new int[ndims];
           for (int i = 0; i < ndims; i++)
             chunkSize[i] = raf.readInt();
+
+        } else if (type == 2) {
+          readChunkedVersion4();
         }
       }
 
@@ -1662,6 +1677,45 @@ public class H5objects {
         log.debug("   StorageLayout version= " + version + this);
       }
     }
+
+    // version 4 chunked layout: the dimension sizes are variable length, followed by the chunk index type and its
+    // parameters. The parameters of the fixed array, extensible array and B-tree indexes are also in their headers.
+    private void readChunkedVersion4() throws IOException {
+      chunkFlags = raf.readByte();
+      int ndims = raf.readByte();
+      int dimSizeLength = raf.readByte();
+      chunkSize = new int[ndims];
+      for (int i = 0; i < ndims; i++) {
+        long size = header.readVariableSizeUnsigned(dimSizeLength);
+        if (size > Integer.MAX_VALUE)
+          throw new IllegalStateException("Chunk dimension size too large: " + size);
+        chunkSize[i] = (int) size;
+      }
+
+      chunkIndexType = raf.readByte();
+      switch (chunkIndexType) {
+        case DataBTree.INDEX_SINGLE_CHUNK:
+          if ((chunkFlags & 2) != 0) {
+            singleChunkSize = header.readLength();
+            singleChunkFilterMask = raf.readInt();
+          }
+          break;
+        case DataBTree.INDEX_IMPLICIT:
+          break;
+        case DataBTree.INDEX_FIXED_ARRAY:
+          raf.skipBytes(1); // page bits
+          break;
+        case DataBTree.INDEX_EXTENSIBLE_ARRAY:
+          raf.skipBytes(5); // max bits, index elements, min pointers, min elements, page bits
+          break;
+        case DataBTree.INDEX_BTREE2:
+          raf.skipBytes(6); // node size, split percent, merge percent
+          break;
+        default:
+          throw new IllegalStateException("Unknown chunk index type " + chunkIndexType);
+      }
+      dataAddress = header.readOffset();
+    }
   }
 
   // Message Type 11/0xB "Filter Pipeline" : apply a filter to the "data stream"
@@ -7,48 +7,62 @@ package ucar.nc2.internal.iosp.hdf5;
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import ucar.array.ArrayType;
 import ucar.array.InvalidRangeException;
 import ucar.array.Section;
 import ucar.nc2.Variable;
+import ucar.nc2.filter.Filters;
 import ucar.nc2.internal.iosp.hdf5.H5objects.Filter;
+import ucar.nc2.iosp.ChunkCache;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
-import ucar.nc2.util.IO;
+import ucar.unidata.io.ByteRange;
 import ucar.unidata.io.RandomAccessFile;
 
 /**
  * Iterator to read/write subsets of an array.
  * This calculates byte offsets for HD5 chunked datasets.
  * Assumes that the data is stored in chunks, indexed by a Btree.
- * Used for filtered data
+ * Used for filtered data. The chunks are read in Btree order and may be unfiltered concurrently, see
+ * {@link LayoutBBTiled}. Unfiltered chunks may be kept in a {@link ChunkCache}.
+ * The filters are found by their id in {@link Filters}.
+ * <p>
+ * The raw bytes of the next wanted chunks, up to readAheadBytes, are read together with
+ * {@link RandomAccessFile#readRanges}, so chunks that are close together in the file take one physical read.
  */
 public class H5tiledLayoutBB implements LayoutBB {
   static boolean debugFilter;
-
-  private static final int DEFAULTZIPBUFFERSIZE = 512;
-  // System property name for -D flag
-  private static final String INFLATEBUFFERSIZE_PROPERTY = "unidata.h5iosp.inflate.buffersize";
   private static boolean debug;
 
+  // read ahead the raw bytes of the wanted chunks up to about this many bytes at a time
+  private static final int readAheadBytes = 1 << 20;
+
   private final LayoutBBTiled delegate;
 
   private final RandomAccessFile raf;
   private final Filter[] filters;
+  private final ucar.nc2.filter.Filter[] decoders; // null if there is no provider for the filter id
   private final ByteOrder byteOrder;
 
+  @Nullable
+  private final ChunkCache chunkCache;
+  private final String chunkCacheFileId;
+  private final String varName;
+
   private final Section want;
   private final int[] chunkSize; // from the StorageLayout message (exclude the elemSize)
   private final int elemSize; // last dimension of the StorageLayout message
   private final int nChunkDims;
-
-  private int inflatebuffersize = DEFAULTZIPBUFFERSIZE;
+  private final int chunkBytes; // size of an unfiltered chunk, or -1 if too large
 
   /**
    * Constructor.
@@ -63,6 +77,23 @@ public class H5tiledLayoutBB implements LayoutBB {
    */
   public H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, Filter[] filters, ByteOrder byteOrder)
       throws InvalidRangeException, IOException {
+    this(v2, wantSection, raf, filters, byteOrder, null, null);
+  }
+
+  /**
+   * Constructor that uses a cache of unfiltered chunks.
+   *
+   * @param v2 Variable to index over; assumes that vinfo is the data object
+   * @param wantSection the wanted section of data, contains a List of Range objects. must be complete
+   * @param raf the RandomAccessFile
+   * @param filters set of filters that have been applied to the data
+   * @param chunkCache keep unfiltered chunks here, or null for no cache
+   * @param chunkCacheFileId id of the open file in the chunkCache
+   * @throws InvalidRangeException if section invalid for this variable
+   * @throws IOException on io error
+   */
+  public H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, Filter[] filters, ByteOrder byteOrder,
+      @Nullable ChunkCache chunkCache, @Nullable String chunkCacheFileId) throws InvalidRangeException, IOException {
     wantSection = Section.fill(wantSection, v2.getShape());
 
     H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
@@ -72,7 +103,14 @@ public class H5tiledLayoutBB implements LayoutBB {
 
     this.raf = raf;
     this.filters = filters;
+    this.decoders = new ucar.nc2.filter.Filter[filters.length];
+    for (int i = 0; i < filters.length; i++) {
+      decoders[i] = Filters.getFilter(filters[i].id & 0xffff, filters[i].data);
+    }
     this.byteOrder = byteOrder;
+    this.chunkCache = (chunkCache != null && chunkCache.isEnabled() && chunkCacheFileId != null) ? chunkCache : null;
+    this.chunkCacheFileId = chunkCacheFileId;
+    this.varName = v2.getFullName();
 
     // we have to translate the want section into the same rank as the storageSize, in order to be able to call
     // Section.intersect(). It appears that storageSize (actually msl.chunkSize) may have an extra dimension, reletive
@@ -89,26 +127,17 @@ public class H5tiledLayoutBB implements LayoutBB {
     this.chunkSize = new int[nChunkDims];
     System.arraycopy(vinfo.storageSize, 0, chunkSize, 0, nChunkDims);
     this.elemSize = vinfo.storageSize[vinfo.storageSize.length - 1]; // last one is always the elements size
+    long nbytes = 1;
+    for (int size : vinfo.storageSize) {
+      nbytes *= size;
+    }
+    this.chunkBytes = (nbytes <= Integer.MAX_VALUE) ? (int) nbytes : -1;
 
     // create the data chunk iterator
     DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIteratorFilter(this.want);
     DataChunkIterator dcIter = new DataChunkIterator(iter);
     delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
 
-    if (System.getProperty(INFLATEBUFFERSIZE_PROPERTY) != null) {
-      try {
-        int size = Integer.parseInt(System.getProperty(INFLATEBUFFERSIZE_PROPERTY));
-        if (size <= 0)
-          H5iosp.log.warn(String.format("-D%s must be > 0", INFLATEBUFFERSIZE_PROPERTY));
-        else
-          this.inflatebuffersize = size;
-      } catch (NumberFormatException nfe) {
-        H5iosp.log.warn(String.format("-D%s is not an integer", INFLATEBUFFERSIZE_PROPERTY));
-      }
-    }
-    if (debugFilter)
-      System.out.printf("inflate buffer size -D%s = %d%n", INFLATEBUFFERSIZE_PROPERTY, this.inflatebuffersize);
-
     if (debug)
       System.out.println(" H5tiledLayout: " + this);
   }
@@ -145,17 +174,49 @@ public class H5tiledLayoutBB implements LayoutBB {
 
   private class DataChunkIterator implements LayoutBBTiled.DataChunkIterator {
     final DataBTree.DataChunkIterator delegate;
+    private final long wantNelems;
+    private final ArrayDeque<DataChunk> readAhead = new ArrayDeque<>();
+    private long nelemsReadAhead; // the number of wanted elements in chunks that have been read ahead
 
     DataChunkIterator(DataBTree.DataChunkIterator delegate) {
       this.delegate = delegate;
+      this.wantNelems = want.computeSize();
     }
 
     public boolean hasNext() {
-      return delegate.hasNext();
+      return !readAhead.isEmpty() || delegate.hasNext();
     }
 
     public LayoutBBTiled.DataChunk next() throws IOException {
-      return new DataChunk(delegate.next());
+      if (readAhead.isEmpty()) {
+        readAhead();
+      }
+      return readAhead.poll();
+    }
+
+    // take the next chunks from the btree, and read the raw bytes of the wanted ones that are not cached
+    private void readAhead() throws IOException {
+      List<DataChunk> toRead = new ArrayList<>();
+      List<ByteRange> ranges = new ArrayList<>();
+      long nbytes = 0;
+      do {
+        DataChunk chunk = new DataChunk(delegate.next());
+        readAhead.add(chunk);
+        long nelems = chunk.getWantedNelems();
+        nelemsReadAhead += nelems;
+        if (nelems > 0 && chunk.delegate.filePos >= 0 && chunk.getCached() == null) {
+          toRead.add(chunk);
+          ranges.add(new ByteRange(chunk.delegate.filePos, chunk.delegate.size));
+          nbytes += chunk.delegate.size;
+        }
+      } while (delegate.hasNext() && nbytes < readAheadBytes && nelemsReadAhead < wantNelems);
+
+      if (toRead.size() > 1) { // a single chunk is read when it is needed
+        List<ByteBuffer> raw = raf.readRanges(ranges);
+        for (int i = 0; i < toRead.size(); i++) {
+          toRead.get(i).raw = raw.get(i).order(ByteOrder.BIG_ENDIAN); // as ByteBuffer.wrap()
+        }
+      }
     }
   }
 
@@ -164,6 +225,7 @@ public class H5tiledLayoutBB implements LayoutBB {
     private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
 
     final DataBTree.DataChunk delegate;
+    private ByteBuffer raw; // read ahead by the DataChunkIterator, or null
 
     DataChunk(DataBTree.DataChunk delegate) {
       this.delegate = delegate;
@@ -198,14 +260,69 @@ public class H5tiledLayoutBB implements LayoutBB {
       return offset;
     }
 
+    // the number of elements of this chunk in the wanted section
+    private long getWantedNelems() {
+      try {
+        Section dataSection = new Section(getOffset(), chunkSize);
+        return dataSection.intersects(want) ? dataSection.intersect(want).computeSize() : 0;
+      } catch (InvalidRangeException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
     public ByteBuffer getByteBuffer() throws IOException {
+      byte[] cached = getCached();
+      return (cached != null) ? wrap(cached) : filter(readRaw());
+    }
+
+    // read on the calling thread, filter on the one that runs the task
+    @Override
+    public Callable<ByteBuffer> readChunk() throws IOException {
+      byte[] cached = getCached();
+      if (cached != null) {
+        return () -> wrap(cached);
+      }
+      ByteBuffer raw = readRaw();
+      return () -> filter(raw);
+    }
+
+    @Nullable
+    private byte[] getCached() {
+      return (chunkCache == null) ? null : chunkCache.getIfPresent(cacheKey());
+    }
+
+    private ChunkCache.Key cacheKey() {
+      return new ChunkCache.Key(chunkCacheFileId, varName, delegate.offset);
+    }
+
+    // read-only, since the data may be shared through the chunk cache
+    private ByteBuffer wrap(byte[] data) {
+      ByteBuffer result = ByteBuffer.wrap(data).asReadOnlyBuffer();
+      result.order(byteOrder);
+      return result;
+    }
+
+    private ByteBuffer readRaw() throws IOException {
+      if (raw != null) {
+        ByteBuffer result = raw;
+        raw = null;
+        return result;
+      }
       try {
-        // read the data
         byte[] data = new byte[delegate.size];
         raf.seek(delegate.filePos);
         raf.readFully(data);
+        return ByteBuffer.wrap(data);
+      } catch (OutOfMemoryError e) {
+        throw outOfMemory(e);
+      }
+    }
 
-        // apply filters backwards
+    // does not use the RandomAccessFile, so may be called from any thread
+    private ByteBuffer filter(ByteBuffer raw) throws IOException {
+      try {
+        // apply filters backwards, in place when they can
+        ByteBuffer data = raw;
         for (int i = filters.length - 1; i >= 0; i--) {
           Filter f = filters[i];
           if (isBitSet(delegate.filterMask, i)) {
@@ -213,84 +330,30 @@ public class H5tiledLayoutBB implements LayoutBB {
               System.out.println("skip for chunk " + delegate);
             continue;
           }
-          if (f.id == 1) {
-            data = inflate(data);
-          } else if (f.id == 2) {
-            data = shuffle(data, f.data[0]);
-          } else if (f.id == 3) {
-            data = checkfletcher32(data);
-            /*
-             * } else if (f.id == 307) {
-             * data = unbzip2(data);
-             */
-          } else
+          ucar.nc2.filter.Filter decoder = decoders[i];
+          if (decoder == null)
             throw new RuntimeException("Unknown filter type=" + f.id);
+          int nbytes = data.remaining();
+          data = decoder.decode(data, chunkBytes);
+          if (debug || debugFilter)
+            System.out.println(" " + decoder.getName() + " bytes in= " + nbytes + " bytes out= " + data.remaining());
         }
 
-        ByteBuffer result = ByteBuffer.wrap(data);
-        result.order(byteOrder);
-        return result;
+        byte[] result = Filters.toArray(data);
+        if (chunkCache != null) {
+          chunkCache.put(cacheKey(), result);
+        }
+        return wrap(result);
       } catch (OutOfMemoryError e) {
-        Error oom = new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the "
-            + "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
-        oom.initCause(e); // OutOfMemoryError lacks a constructor with a cause parameter.
-        throw oom;
+        throw outOfMemory(e);
       }
     }
 
-    /**
-     * inflate data
-     *
-     * @param compressed compressed data
-     * @return uncompressed data
-     * @throws IOException on I/O error
-     */
-    private byte[] inflate(byte[] compressed) throws IOException {
-      // run it through the Inflator
-      ByteArrayInputStream in = new ByteArrayInputStream(compressed);
-      java.util.zip.Inflater inflater = new java.util.zip.Inflater();
-      java.util.zip.InflaterInputStream inflatestream =
-          new java.util.zip.InflaterInputStream(in, inflater, inflatebuffersize);
-      int len = Math.min(8 * compressed.length, MAX_ARRAY_LEN);
-      ByteArrayOutputStream out = new ByteArrayOutputStream(len); // Fixes KXL-349288
-      IO.copyB(inflatestream, out, len);
-
-      byte[] uncomp = out.toByteArray();
-      if (debug || debugFilter)
-        System.out.println(" inflate bytes in= " + compressed.length + " bytes out= " + uncomp.length);
-      return uncomp;
-    }
-
-    // just strip off the 4-byte fletcher32 checksum at the end
-    private byte[] checkfletcher32(byte[] org) {
-      byte[] result = new byte[org.length - 4];
-      System.arraycopy(org, 0, result, 0, result.length);
-      if (debug)
-        System.out.println(" checkfletcher32 bytes in= " + org.length + " bytes out= " + result.length);
-      return result;
-    }
-
-    private byte[] shuffle(byte[] data, int n) {
-      if (debug)
-        System.out.println(" shuffle bytes in= " + data.length + " n= " + n);
-
-      Preconditions.checkArgument(data.length % n == 0);
-      if (n <= 1)
-        return data;
-
-      int m = data.length / n;
-      int[] count = new int[n];
-      for (int k = 0; k < n; k++)
-        count[k] = k * m;
-
-      byte[] result = new byte[data.length];
-      for (int i = 0; i < m; i++) {
-        for (int j = 0; j < n; j++) {
-          result[i * n + j] = data[i + count[j]];
-        }
-      }
-
-      return result;
+    private Error outOfMemory(OutOfMemoryError e) {
+      Error oom = new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the "
+          + "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
+      oom.initCause(e); // OutOfMemoryError lacks a constructor with a cause parameter.
+      return oom;
     }
 
     boolean isBitSet(int val, int bitno) {
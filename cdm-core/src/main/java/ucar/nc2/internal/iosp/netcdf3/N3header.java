@@ -7,11 +7,16 @@ package ucar.nc2.internal.iosp.netcdf3;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
+import com.google.common.collect.ImmutableList;
 import ucar.array.ArrayType;
 import ucar.nc2.*;
+import ucar.nc2.internal.iosp.HeaderSnapshot;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.iosp.NetcdfFileFormat;
 import ucar.unidata.io.RandomAccessFile;
 import java.util.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 /** Netcdf version 3 header. Read-only version using Builders for immutablility. */
@@ -25,6 +30,10 @@ public class N3header {
   static final int MAGIC_VAR = 11;
   static final int MAGIC_ATT = 12;
 
+  /** The magic numbers of the files that isValidFile() accepts. */
+  public static final List<MagicNumber> MAGIC_NUMBERS =
+      ImmutableList.of(NetcdfFileFormat.CDF1_MAGIC, NetcdfFileFormat.CDF2_MAGIC);
+
   public static boolean disallowFileTruncation; // see NetcdfFile.setDebugFlags
   public static boolean debugHeaderSize; // see NetcdfFile.setDebugFlags
 
@@ -71,6 +80,7 @@ public class N3header {
   Dimension udim; // the unlimited dimension
   private final List<Vinfo> vars = new ArrayList<>();
   long dataStart = Long.MAX_VALUE; // where the data starts
+  private boolean isTruncated; // file is smaller than the header says
 
   private final Charset valueCharset;
 
@@ -317,6 +327,7 @@ public class N3header {
         throw new IOException("File is truncated, calculated size= " + calcSize + " actual = " + actualSize);
       else {
         // log.info("File is truncated calculated size= "+calcSize+" actual = "+actualSize);
+        isTruncated = true;
         raf.setExtendMode();
       }
     }
@@ -327,6 +338,67 @@ public class N3header {
     }
   }
 
+  /**
+   * Write the header to a snapshot, leaving out the record structure, which is made again when the snapshot is read.
+   */
+  void writeSnapshot(Group.Builder root, DataOutputStream out) throws IOException {
+    out.writeBoolean(useLongOffset);
+    out.writeBoolean(isStreaming);
+    out.writeBoolean(isTruncated);
+    out.writeInt(numrecs);
+    out.writeLong(recsize);
+    out.writeLong(recStart);
+    out.writeLong(nonRecordDataSize);
+    out.writeLong(dataStart);
+    HeaderSnapshot.writeString(udim == null ? null : udim.getShortName(), out);
+    HeaderSnapshot.writeGroup(root, v -> !(v instanceof Structure.Builder), (spObject, vout) -> {
+      Vinfo vinfo = (Vinfo) spObject;
+      HeaderSnapshot.writeString(vinfo.name, vout);
+      vout.writeLong(vinfo.vsize);
+      vout.writeLong(vinfo.begin);
+      vout.writeBoolean(vinfo.isRecord);
+      vout.writeLong(vinfo.attsPos);
+    }, out);
+  }
+
+  /** Populate the root group from a snapshot made by writeSnapshot, instead of reading the header. */
+  void readSnapshot(RandomAccessFile raf, Group.Builder root, DataInputStream in) throws IOException {
+    this.raf = raf;
+    useLongOffset = in.readBoolean();
+    isStreaming = in.readBoolean();
+    isTruncated = in.readBoolean();
+    numrecs = in.readInt();
+    recsize = in.readLong();
+    recStart = in.readLong();
+    nonRecordDataSize = in.readLong();
+    dataStart = in.readLong();
+    String udimName = HeaderSnapshot.readString(in);
+    HeaderSnapshot.readGroup(root, vin -> {
+      Vinfo vinfo = new Vinfo(HeaderSnapshot.readString(vin), vin.readLong(), vin.readLong(), vin.readBoolean(),
+          vin.readLong());
+      vars.add(vinfo);
+      return vinfo;
+    }, in);
+
+    if (udimName != null) {
+      udim = root.findDimensionLocal(udimName).orElseThrow(() -> new IOException("missing dimension " + udimName));
+    }
+    if (isTruncated) {
+      raf.setExtendMode();
+    }
+
+    // add a record structure if asked to do so
+    List<Variable.Builder<?>> uvars = new ArrayList<>();
+    for (Variable.Builder<?> v : root.vbuilders) {
+      if (((Vinfo) v.spiObject).isRecord) {
+        uvars.add(v);
+      }
+    }
+    if (n3iospNew.useRecordStructure && uvars.size() > 0) {
+      makeRecordStructure(root, uvars);
+    }
+  }
+
   /**
    * Check if the given bytes correspond to
    * {@link #MAGIC magic bytes} of the header.
@@ -4,11 +4,15 @@ package ucar.nc2.internal.iosp.netcdf3;
 import static ucar.nc2.NetcdfFile.IOSP_MESSAGE_GET_NETCDF_FILE_FORMAT;
 
 import com.google.common.base.Preconditions;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Optional;
 
 import ucar.array.ArrayType;
@@ -25,12 +29,14 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 import ucar.nc2.constants.DataFormatType;
+import ucar.nc2.internal.iosp.HeaderSnapshot;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.iosp.IospArrayHelper;
 import ucar.nc2.iosp.Layout;
 import ucar.nc2.iosp.LayoutRegular;
 import ucar.nc2.iosp.LayoutRegularSegmented;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.internal.iosp.netcdf3.N3header.Vinfo;
 import ucar.nc2.iosp.NetcdfFileFormat;
 import ucar.nc2.util.CancelTask;
@@ -38,7 +44,7 @@ import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.Nullable;
 
 /** Netcdf 3 version iosp, using Builders for immutability. */
-public class N3iosp extends AbstractIOServiceProvider implements IOServiceProvider {
+public class N3iosp extends AbstractIOServiceProvider implements IOServiceProvider, HeaderSnapshot.Provider {
   protected static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(N3iosp.class);
 
   /*
@@ -88,6 +94,11 @@ public class N3iosp extends AbstractIOServiceProvider implements IOServiceProvid
     return N3header.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return N3header.MAGIC_NUMBERS;
+  }
+
   @Override
   public String getDetailInfo() {
     Formatter f = new Formatter();
@@ -197,6 +208,25 @@ public class N3iosp extends AbstractIOServiceProvider implements IOServiceProvid
     header.read(raf, rootGroup, null);
   }
 
+  @Override
+  public String getSnapshotSettings() {
+    return valueCharset == null ? "" : "charset=" + valueCharset.name();
+  }
+
+  @Override
+  public void writeSnapshot(Group.Builder rootGroup, DataOutputStream out) throws IOException {
+    header.writeSnapshot(rootGroup, out);
+  }
+
+  @Override
+  public void readSnapshot(RandomAccessFile raf, Group.Builder rootGroup, DataInputStream in) throws IOException {
+    setRaf(raf);
+    lastModified = raf.getLastModified();
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+    header = createHeader();
+    header.readSnapshot(raf, rootGroup, in);
+  }
+
   /** Create header for reading netcdf file. */
   private N3header createHeader() {
     return new N3header(this);
@@ -212,17 +242,55 @@ public class N3iosp extends AbstractIOServiceProvider implements IOServiceProvid
       return readStructureDataArray((Structure) v2, section);
     }
 
+    if (!v2.isUnlimited()) {
+      Vinfo vinfo = (Vinfo) v2.getSPobject();
+      Section want = Section.fill(section, v2.getShape());
+      Array<?> offHeap =
+          IospArrayHelper.readOffHeap(raf, vinfo.begin, v2.getArrayType(), v2.getShape(), want, ByteOrder.BIG_ENDIAN);
+      if (offHeap != null) {
+        return offHeap;
+      }
+    }
+
     Object data = readDataObject(v2, section);
     return Arrays.factory(v2.getArrayType(), section.getShape(), data);
   }
 
+  @Override
+  public void readArrayDataInto(Variable v2, ucar.array.Section section, Object dest, int destPos)
+      throws java.io.IOException, ucar.array.InvalidRangeException {
+    if (v2 instanceof Structure) {
+      super.readArrayDataInto(v2, section, dest, destPos);
+      return;
+    }
+    Arrays.checkPrimitiveArray(v2.getArrayType(), dest, destPos, section.computeSize());
+    Vinfo vinfo = (Vinfo) v2.getSPobject();
+    ArrayType dataType = v2.getArrayType();
+    if (!v2.isUnlimited()) {
+      LayoutRegular layout = new LayoutRegular(vinfo.begin, v2.getElementSize(), v2.getShape(), section);
+      if (IospArrayHelper.usePositionalReads(raf, layout, dataType)) {
+        IospArrayHelper.readDataAt(raf, IospArrayHelper.shiftDest(layout, destPos), dataType, dest, null);
+      } else {
+        IospArrayHelper.readData(raf, IospArrayHelper.shiftDest(layout, destPos), dataType, dest, null);
+      }
+      return;
+    }
+    Layout layout =
+        new LayoutRegularSegmented(vinfo.begin, v2.getElementSize(), header.recsize, v2.getShape(), section);
+    IospArrayHelper.readData(raf, IospArrayHelper.shiftDest(layout, destPos), dataType, dest, null);
+  }
+
   /** Read data subset from file for a variable, create primitive array. */
   private Object readDataObject(Variable v2, Section section) throws java.io.IOException, InvalidRangeException {
     Vinfo vinfo = (Vinfo) v2.getSPobject();
     ArrayType dataType = v2.getArrayType();
 
-    Layout layout = (!v2.isUnlimited()) ? new LayoutRegular(vinfo.begin, v2.getElementSize(), v2.getShape(), section)
-        : new LayoutRegularSegmented(vinfo.begin, v2.getElementSize(), header.recsize, v2.getShape(), section);
+    if (!v2.isUnlimited()) {
+      LayoutRegular layout = new LayoutRegular(vinfo.begin, v2.getElementSize(), v2.getShape(), section);
+      return IospArrayHelper.readDataFillRegular(raf, layout, dataType, null, null);
+    }
+    Layout layout =
+        new LayoutRegularSegmented(vinfo.begin, v2.getElementSize(), header.recsize, v2.getShape(), section);
     return IospArrayHelper.readDataFill(raf, layout, dataType, null, null);
   }
 
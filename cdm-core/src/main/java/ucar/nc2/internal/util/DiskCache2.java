@@ -8,6 +8,7 @@ import ucar.nc2.calendar.CalendarDate;
 import ucar.nc2.calendar.CalendarDateFormatter;
 import ucar.unidata.util.Format;
 import ucar.unidata.util.StringUtil2;
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
@@ -95,6 +96,53 @@ public class DiskCache2 {
     return noop;
   }
 
+  // files of fromSystemProperty() caches not modified for a week are deleted, scouring every hour
+  private static final int propertyPersistMinutes = 7 * 24 * 60;
+  private static final int propertyScourEveryMinutes = 60;
+
+  /**
+   * A cache for files that are kept between runs, eg indexes, in the root directory named by a system property.
+   * Files not modified for a week are deleted, scouring every hour.
+   *
+   * @param dirProperty name of the system property with the root directory.
+   * @return the cache, or null if the system property is not set.
+   */
+  @Nullable
+  static public DiskCache2 fromSystemProperty(String dirProperty) {
+    String dir = System.getProperty(dirProperty);
+    return (dir == null) ? null : new DiskCache2(dir, false, propertyPersistMinutes, propertyScourEveryMinutes);
+  }
+
+  /**
+   * Holds a {@link #fromSystemProperty} cache, made when it is first used, which may be replaced. Thread safe.
+   */
+  public static final class PropertyCache {
+    private final String dirProperty;
+    private DiskCache2 cache;
+    private boolean init;
+
+    /** @param dirProperty name of the system property with the root directory. */
+    public PropertyCache(String dirProperty) {
+      this.dirProperty = dirProperty;
+    }
+
+    /** The cache set with {@link #set}, else made from the system property, or null if that is not set. */
+    @Nullable
+    public synchronized DiskCache2 get() {
+      if (!init) {
+        cache = fromSystemProperty(dirProperty);
+        init = true;
+      }
+      return cache;
+    }
+
+    /** Replace the cache, null for none. */
+    public synchronized void set(@Nullable DiskCache2 cache) {
+      this.cache = cache;
+      this.init = true;
+    }
+  }
+
   private DiskCache2() {}
 
   /**
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A process wide cache of uncompressed (or otherwise processed) data chunks, shared by all open files.
+ * <p>
+ * Chunks are kept in memory up to a total size in bytes, evicting the least recently used chunks first.
+ * Chunks are keyed by the open file, the variable, and the chunk offset. An IOSP gets a file id with
+ * {@link #newFileId(String)} when it opens the file, and calls {@link #invalidate(String)} when the file is closed
+ * or released, so chunks are never used after the file may have changed.
+ * <p>
+ * The default cache is configured with the system property "ucar.nc2.iosp.chunkCacheSize" (bytes); 0 disables it.
+ */
+@ThreadSafe
+public final class ChunkCache {
+  // 64 MiB default memory budget
+  private static final long defaultMaxBytes = 1L << 26;
+
+  private static final AtomicLong fileCount = new AtomicLong();
+
+  private static ChunkCache defaultCache;
+
+  /** Get the process wide cache used by the IOSPs. */
+  public static synchronized ChunkCache getDefault() {
+    if (defaultCache == null) {
+      long maxBytes =
+          Long.parseLong(System.getProperty("ucar.nc2.iosp.chunkCacheSize", String.valueOf(defaultMaxBytes)));
+      defaultCache = new ChunkCache(maxBytes);
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Replace the process wide cache. Files that are already open keep using the previous one.
+   *
+   * @param cache use this cache, or null to create a default cache on next use.
+   */
+  public static synchronized void setDefault(@Nullable ChunkCache cache) {
+    if (defaultCache != null) {
+      defaultCache.invalidateAll();
+    }
+    defaultCache = cache;
+  }
+
+  /** Make an id for an open file, unique in this process. */
+  public static String newFileId(String location) {
+    return location + "#" + fileCount.incrementAndGet();
+  }
+
+  /** Identifies a chunk of a variable in an open file. */
+  @Immutable
+  public static final class Key {
+    private final String fileId;
+    private final String variable;
+    private final int[] offset;
+
+    /**
+     * Constructor.
+     *
+     * @param fileId from {@link #newFileId(String)}
+     * @param variable full name of the variable
+     * @param offset index of the first element of the chunk
+     */
+    public Key(String fileId, String variable, int[] offset) {
+      this.fileId = fileId;
+      this.variable = variable;
+      this.offset = offset.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return fileId.equals(that.fileId) && variable.equals(that.variable) && Arrays.equals(offset, that.offset);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * fileId.hashCode() + variable.hashCode()) + Arrays.hashCode(offset);
+    }
+
+    @Override
+    public String toString() {
+      return fileId + " " + variable + Arrays.toString(offset);
+    }
+  }
+
+  private final long maxBytes;
+  private final Cache<Key, byte[]> memory;
+  // the keys in memory of each open file, so invalidate does not scan the whole cache
+  private final Map<String, Set<Key>> keysByFile = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes memory budget in bytes, 0 to not cache anything.
+   */
+  public ChunkCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.memory = CacheBuilder.newBuilder().maximumWeight(Math.max(0, maxBytes))
+        .weigher((Key key, byte[] chunk) -> chunk.length).removalListener(notification -> {
+          // a replaced key is still in the cache
+          if (notification.getCause() != RemovalCause.REPLACED) {
+            removeKey(notification.getKey());
+          }
+        }).recordStats().build();
+  }
+
+  /** If this cache keeps anything. */
+  public boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /** Get a chunk if it is in the cache, else null. The chunk must not be modified, wrap it read-only to pass it on. */
+  @Nullable
+  public byte[] getIfPresent(Key key) {
+    return isEnabled() ? memory.getIfPresent(key) : null;
+  }
+
+  /** Add a chunk to the cache. The chunk must not be modified afterwards. */
+  public void put(Key key, byte[] chunk) {
+    if (isEnabled() && chunk.length <= maxBytes) {
+      keysByFile.computeIfAbsent(key.fileId, k -> ConcurrentHashMap.newKeySet()).add(key);
+      memory.put(key, chunk);
+    }
+  }
+
+  /** Remove all chunks of an open file. */
+  public void invalidate(String fileId) {
+    Set<Key> keys = keysByFile.remove(fileId);
+    if (keys != null) {
+      memory.invalidateAll(keys);
+    }
+  }
+
+  /** Remove all chunks. */
+  public void invalidateAll() {
+    memory.invalidateAll();
+    keysByFile.clear();
+  }
+
+  private void removeKey(Key key) {
+    keysByFile.computeIfPresent(key.fileId, (fileId, keys) -> {
+      // the key may have been put again since it was removed
+      if (!memory.asMap().containsKey(key)) {
+        keys.remove(key);
+      }
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  /** The memory budget in bytes. */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Total size in bytes of the chunks in the cache. */
+  public long getSizeInBytes() {
+    return memory.asMap().values().stream().mapToLong(chunk -> chunk.length).sum();
+  }
+
+  /** Number of chunks of an open file that invalidate would remove. */
+  @VisibleForTesting
+  int getKeyCount(String fileId) {
+    Set<Key> keys = keysByFile.get(fileId);
+    return (keys == null) ? 0 : keys.size();
+  }
+
+  /** Cache statistics. */
+  public CacheStats getStats() {
+    return memory.stats();
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkCache{maxBytes=" + maxBytes + ", sizeInBytes=" + getSizeInBytes() + ", " + memory.stats() + '}';
+  }
+}
@@ -4,9 +4,11 @@
  */
 package ucar.nc2.iosp;
 
+import com.google.common.collect.ImmutableList;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 
 import ucar.nc2.Group;
@@ -27,7 +29,7 @@ import ucar.unidata.io.RandomAccessFile;
  * <ol>
  * <li>the file is opened as a ucar.unidata.io.RandomAccessFile;</li>
  * <li>the file is handed to the isValidFile() method of each registered
- * IOServiceProvider class (until one returns true, which means it can read the file).</li>
+ * IOServiceProvider class whose magic numbers match (until one returns true, which means it can read the file).</li>
  * <li>the open() method on the resulting IOServiceProvider class is handed the file.</li>
  */
 public interface IOServiceProvider extends Closeable {
@@ -42,6 +44,17 @@ public interface IOServiceProvider extends Closeable {
    */
   boolean isValidFile(RandomAccessFile raf) throws IOException;
 
+  /**
+   * The magic numbers of the files that this IOServiceProvider can read. When opening a file, isValidFile() is only
+   * called if one of them matches, so that files of other formats are rejected without reading them again.
+   * Each must be a necessary condition for isValidFile() to return true.
+   *
+   * @return magic numbers, or an empty list (default) to always call isValidFile().
+   */
+  default List<MagicNumber> getMagicNumbers() {
+    return ImmutableList.of();
+  }
+
   /**
    * Read an existing RandomAccessFile, and populate rootGroup.
    * Note that you cannot reference the NetcdfFile within this routine, since it hasnt been created yet.
@@ -68,6 +81,22 @@ public interface IOServiceProvider extends Closeable {
   ucar.array.Array<?> readArrayData(Variable v2, ucar.array.Section section)
       throws java.io.IOException, ucar.array.InvalidRangeException;
 
+  /**
+   * Read data from a top level Variable into a caller-supplied 1d primitive array, in canonical order. The default
+   * reads with {@link #readArrayData} and copies; IOSPs that can decode directly into the destination should override.
+   *
+   * @param v2 a top-level Variable
+   * @param section the section of data to read. There must be a Range for each Dimension in the variable, in order.
+   *        Note: no nulls allowed. IOSP may not modify.
+   * @param dest 1d primitive array of the Variable's type, see
+   *        {@link ucar.array.Arrays#checkPrimitiveArray(ucar.array.ArrayType, Object, int, long)}.
+   * @param destPos starting position in dest.
+   */
+  default void readArrayDataInto(Variable v2, ucar.array.Section section, Object dest, int destPos)
+      throws java.io.IOException, ucar.array.InvalidRangeException {
+    ucar.array.Arrays.copyPrimitiveArray(readArrayData(v2, section), dest, destPos);
+  }
+
   /**
    * Get the structure iterator. Iosps with top level sequences must override.
    *
@@ -79,8 +79,8 @@ public class IndexChunker {
     this.done = 0;
     this.start = 0;
 
-    // see if this is a "want all of it" single chunk
-    if (wantSection.equivalent(srcShape)) {
+    // see if this is a "want all of it" single chunk, which must fit in a java array
+    if (wantSection.equivalent(srcShape) && this.total <= Integer.MAX_VALUE) {
       this.nelems = (int) this.total;
       chunkIndex = new IndexLong();
       return;
@@ -98,12 +98,14 @@ public class IndexChunker {
     if (debugMerge)
       System.out.println("merge= " + this);
 
-    // count how many merge dimensions
+    // count how many merge dimensions, keeping the number of elements in a chunk within an int
     int merge = 0;
+    long mergedSize = dimList.isEmpty() ? 0 : dimList.get(0).wantSize;
     for (int i = 0; i < dimList.size() - 1; i++) {
       Dim elem = dimList.get(i);
       Dim elem2 = dimList.get(i + 1);
-      if (elem.maxSize == elem.wantSize && (elem2.want.stride() == 1)) {
+      mergedSize *= elem2.wantSize;
+      if (elem.maxSize == elem.wantSize && (elem2.want.stride() == 1) && mergedSize <= Integer.MAX_VALUE) {
         merge++;
       } else {
         break;
@@ -116,8 +118,6 @@ public class IndexChunker {
       Dim elem2 = dimList.get(i + 1);
       elem2.maxSize *= elem.maxSize;
       elem2.wantSize *= elem.wantSize;
-      if (elem2.wantSize < 0)
-        throw new IllegalArgumentException("array size may not exceed 2^31");
       if (debugMerge)
         System.out.println(" ----" + this);
     }
@@ -188,6 +188,11 @@ public class IndexChunker {
     return total;
   }
 
+  /** Get the number of elements in each chunk, which are contiguous in both the source and the destination. */
+  public int getChunkNelems() {
+    return nelems;
+  }
+
   /** If there are more chunks to process */
   public boolean hasNext() {
     return done < total;
@@ -4,10 +4,16 @@
  */
 package ucar.nc2.iosp;
 
+import ucar.array.Array;
 import ucar.array.ArrayType;
+import ucar.array.Arrays;
+import ucar.array.Range;
+import ucar.array.Section;
+import ucar.array.StoragePaged;
 import ucar.unidata.io.PositioningDataInputStream;
 import ucar.unidata.io.RandomAccessFile;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
@@ -15,10 +21,82 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
 
 /** Helper methods for IOSP's for reading data. */
 public class IospArrayHelper {
   private static final boolean showLayoutTypes = false;
+  // largest temporary buffer used by the positional reads
+  private static final int maxPositionalReadBytes = 1 << 20;
+
+  // reads of contiguous data at least this many bytes return Arrays stored outside the heap; 0 disables
+  private static volatile long offHeapThreshold =
+      Long.parseLong(System.getProperty("ucar.nc2.iosp.offHeapThreshold", "0"));
+
+  /**
+   * Set the size in bytes at and above which reads of contiguous numeric data return Arrays whose storage is outside
+   * the Java heap, see {@link #readOffHeap}. 0 disables. The default is set by the system property
+   * "ucar.nc2.iosp.offHeapThreshold".
+   */
+  public static void setOffHeapThreshold(long nbytes) {
+    offHeapThreshold = nbytes;
+  }
+
+  /** Get the size in bytes at and above which contiguous reads are stored outside the Java heap, 0 if disabled. */
+  public static long getOffHeapThreshold() {
+    return offHeapThreshold;
+  }
+
+  // contiguous runs of at least this many bytes in a LayoutRegular are read with positional reads
+  private static volatile int positionalReadThreshold =
+      Integer.parseInt(System.getProperty("ucar.nc2.iosp.positionalReadThreshold", "8192"));
+
+  /**
+   * Set the size in bytes at and above which contiguous runs of a LayoutRegular are read with thread safe positional
+   * reads, see {@link #readDataFillRegular}. Integer.MAX_VALUE disables. The default is set by the system property
+   * "ucar.nc2.iosp.positionalReadThreshold".
+   */
+  public static void setPositionalReadThreshold(int nbytes) {
+    positionalReadThreshold = nbytes;
+  }
+
+  /** Get the size in bytes at and above which contiguous runs are read with positional reads. */
+  public static int getPositionalReadThreshold() {
+    return positionalReadThreshold;
+  }
+
+  /**
+   * If the chunks of layout should be read with positional reads ({@link #readDataAt}) rather than through the
+   * buffer of raf ({@link #readData}): raf is read only, the elements have the size of arrayType, and each chunk is
+   * at least {@link #getPositionalReadThreshold()} bytes. Small chunks are cheaper to read from the buffer.
+   */
+  public static boolean usePositionalReads(RandomAccessFile raf, LayoutRegular layout, ArrayType arrayType) {
+    int elemSize = layout.getElemSize();
+    return raf.isReadOnly() && isPrimitive(arrayType) && elemSize == arrayType.getSize()
+        && (long) layout.getChunkNelems() * elemSize >= positionalReadThreshold;
+  }
+
+  /**
+   * Read data subset from RandomAccessFile for a LayoutRegular, create primitive array of size
+   * Layout.getTotalNelems. Uses positional reads, which several threads may do at once on the same raf, when
+   * {@link #usePositionalReads}, otherwise the buffered reads of {@link #readDataFill}.
+   *
+   * @param raf read from here.
+   * @param layout the wanted section of a variable stored contiguously in the file.
+   * @param arrayType ArrayType of the variable
+   * @param fillValue must be Number if ArrayType.isNumeric(), or null for none
+   * @param byteOrder byte order of the data, or null to use the current byte order of raf
+   * @return primitive array with data read in
+   * @throws IOException on read error
+   */
+  public static Object readDataFillRegular(RandomAccessFile raf, LayoutRegular layout, ArrayType arrayType,
+      @Nullable Object fillValue, @Nullable ByteOrder byteOrder) throws IOException {
+    if (usePositionalReads(raf, layout, arrayType)) {
+      return readDataFillAt(raf, layout, arrayType, fillValue, byteOrder);
+    }
+    return readDataFill(raf, layout, arrayType, fillValue, byteOrder);
+  }
 
   /**
    * Read data subset from RandomAccessFile, create primitive array of size Layout.getTotalNelems.
@@ -35,8 +113,7 @@ public class IospArrayHelper {
    */
   public static Object readDataFill(RandomAccessFile raf, Layout index, ArrayType arrayType, Object fillValue,
       ByteOrder byteOrder) throws IOException {
-    Object arr = (fillValue == null) ? makePrimitiveArray((int) index.getTotalNelems(), arrayType)
-        : makePrimitiveArray((int) index.getTotalNelems(), arrayType, fillValue);
+    Object arr = makeStorage(index.getTotalNelems(), arrayType, fillValue);
     return readData(raf, index, arrayType, arr, byteOrder);
   }
 
@@ -47,7 +124,7 @@ public class IospArrayHelper {
    * @param raf read from here.
    * @param layout handles skipping around in the file.
    * @param arrayType ArrayType of the variable
-   * @param arr primitive array to read data into
+   * @param arr primitive array to read data into, or {@link StoragePaged}, see {@link #makeStorage}
    * @param byteOrder if equal to RandomAccessFile.ORDER_XXXX, set the byte order just before reading
    * @return primitive array with data read in
    * @throws IOException on read error
@@ -57,6 +134,10 @@ public class IospArrayHelper {
     if (showLayoutTypes)
       System.out.println("***RAF LayoutType=" + layout.getClass().getName());
 
+    if (arr instanceof StoragePaged) {
+      return readDataPaged(raf, layout, (StoragePaged<?>) arr, byteOrder);
+    }
+
     if (arrayType.getPrimitiveClass() == Byte.class || arrayType == ArrayType.CHAR) {
       byte[] pa = (byte[]) arr;
       while (layout.hasNext()) {
@@ -147,6 +228,231 @@ public class IospArrayHelper {
     throw new IllegalStateException("unknown type= " + arrayType);
   }
 
+  // chunks may span pages, so split them at page boundaries
+  private static StoragePaged<?> readDataPaged(RandomAccessFile raf, Layout layout, StoragePaged<?> paged,
+      ByteOrder byteOrder) throws IOException {
+    int pageSize = paged.getPageSize();
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      raf.order(byteOrder);
+      raf.seek(chunk.getSrcPos());
+      long dest = chunk.getDestElem();
+      int remaining = chunk.getNelems();
+      while (remaining > 0) {
+        Object pa = paged.getPage((int) (dest / pageSize));
+        int offset = (int) (dest % pageSize);
+        int n = Math.min(remaining, pageSize - offset);
+        if (pa instanceof byte[]) {
+          raf.readFully((byte[]) pa, offset, n);
+        } else if (pa instanceof short[]) {
+          raf.readShort((short[]) pa, offset, n);
+        } else if (pa instanceof int[]) {
+          raf.readInt((int[]) pa, offset, n);
+        } else if (pa instanceof float[]) {
+          raf.readFloat((float[]) pa, offset, n);
+        } else if (pa instanceof double[]) {
+          raf.readDouble((double[]) pa, offset, n);
+        } else {
+          raf.readLong((long[]) pa, offset, n);
+        }
+        dest += n;
+        remaining -= n;
+      }
+    }
+    return paged;
+  }
+
+  /**
+   * Read data subset from RandomAccessFile using positional reads, create primitive array of size
+   * Layout.getTotalNelems. Thread safe, see {@link #readDataAt}.
+   *
+   * @param raf read from here.
+   * @param index handles skipping around in the file.
+   * @param arrayType ArrayType of the variable
+   * @param fillValue must be Number if ArrayType.isNumeric(), or String for STRING, byte[] for Structure, or null for
+   *        none
+   * @param byteOrder byte order of the data, or null to use the current byte order of raf
+   * @return primitive array with data read in
+   * @throws IOException on read error
+   */
+  public static Object readDataFillAt(RandomAccessFile raf, Layout index, ArrayType arrayType, Object fillValue,
+      @Nullable ByteOrder byteOrder) throws IOException {
+    Object arr = makeStorage(index.getTotalNelems(), arrayType, fillValue);
+    return readDataAt(raf, index, arrayType, arr, byteOrder);
+  }
+
+  /**
+   * Read data subset from RandomAccessFile using positional reads, place in given primitive array.
+   * Reading is controlled by the Layout object, whose chunks must have absolute file positions, eg LayoutRegular.
+   * Unlike readData(), this does not use or change the file position, buffer or byte order of raf
+   * (see {@link RandomAccessFile#readFullyAt}), so multiple threads may read from the same raf at once.
+   *
+   * @param raf read from here.
+   * @param layout handles skipping around in the file.
+   * @param arrayType ArrayType of the variable
+   * @param arr primitive array to read data into, or {@link StoragePaged}, see {@link #makeStorage}
+   * @param byteOrder byte order of the data, or null to use the current byte order of raf
+   * @return primitive array with data read in
+   * @throws IOException on read error
+   */
+  public static Object readDataAt(RandomAccessFile raf, Layout layout, ArrayType arrayType, Object arr,
+      @Nullable ByteOrder byteOrder) throws IOException {
+    if (showLayoutTypes)
+      System.out.println("***RAF positional LayoutType=" + layout.getClass().getName());
+
+    ByteOrder order = (byteOrder != null) ? byteOrder : raf.getByteOrder();
+    int elemSize = layout.getElemSize();
+
+    if (arrayType == ArrayType.STRING) {
+      StringBuilder sb = new StringBuilder((int) layout.getTotalNelems());
+      byte[] b = new byte[elemSize];
+      while (layout.hasNext()) {
+        Layout.Chunk chunk = layout.next();
+        long pos = chunk.getSrcPos();
+        for (int i = 0; i < chunk.getNelems(); i++) {
+          raf.readFullyAt(pos, b, 0, elemSize);
+          sb.append(new String(b, StandardCharsets.UTF_8));
+          pos += elemSize;
+        }
+      }
+      return sb.toString();
+    }
+
+    ByteBuffer bb = null;
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      if (arr instanceof StoragePaged) {
+        // chunks may span pages, so split them at page boundaries
+        StoragePaged<?> paged = (StoragePaged<?>) arr;
+        int pageSize = paged.getPageSize();
+        long pos = chunk.getSrcPos();
+        long dest = chunk.getDestElem();
+        int remaining = chunk.getNelems();
+        while (remaining > 0) {
+          int offset = (int) (dest % pageSize);
+          int n = Math.min(remaining, pageSize - offset);
+          bb = readAt(raf, pos, paged.getPage((int) (dest / pageSize)), offset, n, elemSize, order, bb);
+          pos += (long) n * elemSize;
+          dest += n;
+          remaining -= n;
+        }
+      } else {
+        bb = readAt(raf, chunk.getSrcPos(), arr, (int) chunk.getDestElem(), chunk.getNelems(), elemSize, order, bb);
+      }
+    }
+    return arr;
+  }
+
+  // positional read of nelems elements at pos into the primitive array pa, starting at element dest.
+  // Returns the buffer used, to be reused by the next call.
+  private static ByteBuffer readAt(RandomAccessFile raf, long pos, Object pa, int dest, int nelems, int elemSize,
+      ByteOrder order, @Nullable ByteBuffer bb) throws IOException {
+    if (pa instanceof byte[]) { // includes CHAR, OPAQUE and STRUCTURE
+      raf.readFullyAt(pos, (byte[]) pa, dest * elemSize, nelems * elemSize);
+      return bb;
+    }
+
+    int maxElems = Math.max(1, maxPositionalReadBytes / elemSize);
+    int remaining = nelems;
+    while (remaining > 0) {
+      int n = Math.min(remaining, maxElems);
+      int nbytes = n * elemSize;
+      if (bb == null || bb.capacity() < nbytes) {
+        bb = ByteBuffer.allocate(Math.min(maxElems, nelems) * elemSize);
+      }
+      bb.clear().limit(nbytes);
+      raf.readFullyAt(pos, bb);
+      bb.flip();
+      bb.order(order);
+
+      if (pa instanceof short[]) {
+        bb.asShortBuffer().get((short[]) pa, dest, n);
+      } else if (pa instanceof int[]) {
+        bb.asIntBuffer().get((int[]) pa, dest, n);
+      } else if (pa instanceof float[]) {
+        bb.asFloatBuffer().get((float[]) pa, dest, n);
+      } else if (pa instanceof double[]) {
+        bb.asDoubleBuffer().get((double[]) pa, dest, n);
+      } else if (pa instanceof long[]) {
+        bb.asLongBuffer().get((long[]) pa, dest, n);
+      } else {
+        throw new IllegalStateException("unknown primitive array " + pa.getClass().getName());
+      }
+      pos += nbytes;
+      dest += n;
+      remaining -= n;
+    }
+    return bb;
+  }
+
+  /**
+   * Read a section of a variable stored contiguously in the file, in canonical order, into an Array whose storage
+   * is outside the Java heap: a memory mapped view of the file for local files (see
+   * {@link RandomAccessFile#readOffHeap}), so the data is not copied. Only done when the wanted data is one contiguous
+   * run of at least {@link #getOffHeapThreshold()} bytes, of a type with a primitive class of byte, short, int, long,
+   * float or double. The Array can be handed to native or network code with {@link Arrays#getByteBuffer(Array)}.
+   *
+   * @param raf read from here.
+   * @param dataPos file position of the first element of the variable.
+   * @param arrayType ArrayType of the variable
+   * @param varShape the shape of the variable.
+   * @param wantSection the section wanted, must be filled, see {@link Section#fill}.
+   * @param byteOrder byte order of the data, or null for BIG_ENDIAN.
+   * @return the Array, or null if it can't be read this way, and the data must be read normally.
+   * @throws IOException on read error
+   */
+  @Nullable
+  public static Array<?> readOffHeap(RandomAccessFile raf, long dataPos, ArrayType arrayType, int[] varShape,
+      Section wantSection, @Nullable ByteOrder byteOrder) throws IOException {
+    long threshold = offHeapThreshold;
+    if (threshold <= 0 || !isPrimitive(arrayType)) {
+      return null;
+    }
+    long nbytes = wantSection.computeSize() * arrayType.getSize();
+    if (nbytes < threshold || nbytes > Integer.MAX_VALUE) {
+      return null;
+    }
+    long start = contiguousStart(varShape, wantSection);
+    if (start < 0) {
+      return null;
+    }
+    long pos = dataPos + start * arrayType.getSize();
+    if (pos < 0 || pos + nbytes > raf.length()) { // eg a truncated file, which is read with fill values
+      return null;
+    }
+    ByteBuffer bb = raf.readOffHeap(pos, (int) nbytes);
+    bb.order(byteOrder != null ? byteOrder : ByteOrder.BIG_ENDIAN);
+    return Arrays.factory(arrayType, wantSection.getShape(), bb);
+  }
+
+  private static boolean isPrimitive(ArrayType arrayType) {
+    Class<?> primitiveClass = arrayType.getPrimitiveClass();
+    return primitiveClass == Byte.class || primitiveClass == Short.class || primitiveClass == Integer.class
+        || primitiveClass == Long.class || primitiveClass == Float.class || primitiveClass == Double.class;
+  }
+
+  // the index of the first element of the section, if its elements are contiguous in canonical order, else -1
+  private static long contiguousStart(int[] varShape, Section section) {
+    if (section.getRank() != varShape.length) {
+      return -1;
+    }
+    boolean inner = true; // are all the dimensions to the right complete
+    long start = 0;
+    long stride = 1;
+    for (int i = varShape.length - 1; i >= 0; i--) {
+      Range r = section.getRange(i);
+      if (r.length() > 1 && (!inner || r.stride() != 1)) {
+        return -1;
+      }
+      if (r.length() != varShape[i]) {
+        inner = false;
+      }
+      start += r.first() * stride;
+      stride *= varShape[i];
+    }
+    return start;
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
@@ -252,8 +558,9 @@ public class IospArrayHelper {
    * @param fillValue must be Number if ArrayType.isNumeric(), or String for STRING, byte[] for Structure, or null for
    *        none
    * @return primitive array with data read in
+   * @throws IOException on read error
    */
-  public static Object readDataFill(LayoutBB layout, ArrayType arrayType, Object fillValue) {
+  public static Object readDataFill(LayoutBB layout, ArrayType arrayType, Object fillValue) throws IOException {
     long size = layout.getTotalNelems();
     if (arrayType == ArrayType.STRUCTURE) {
       size *= layout.getElemSize();
@@ -274,11 +581,22 @@ public class IospArrayHelper {
    * @param arrayType ArrayType of the variable
    * @param arr primitive array to read data into
    * @return the primitive array with data read in
+   * @throws IOException on read error, eg of a chunk by {@link LayoutBBTiled}
    */
-  public static Object readData(LayoutBB layout, ArrayType arrayType, Object arr) {
+  public static Object readData(LayoutBB layout, ArrayType arrayType, Object arr) throws IOException {
     if (showLayoutTypes)
       System.out.println("***BB LayoutType=" + layout.getClass().getName());
 
+    try {
+      return readDataBB(layout, arrayType, arr);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  // LayoutBB.hasNext() cannot throw an IOException, so it is thrown unchecked
+  private static Object readDataBB(LayoutBB layout, ArrayType arrayType, Object arr) {
+
     if (arrayType.getPrimitiveClass() == Byte.class || (arrayType == ArrayType.CHAR)) {
       byte[] pa = (byte[]) arr;
       while (layout.hasNext()) {
@@ -368,6 +686,157 @@ public class IospArrayHelper {
     throw new IllegalStateException();
   }
 
+  /**
+   * Wrap a Layout so that its chunks are stored starting at destPos in the destination, eg to read into a
+   * caller-supplied primitive array with {@link #readData(RandomAccessFile, Layout, ArrayType, Object, ByteOrder)}.
+   */
+  public static Layout shiftDest(Layout layout, long destPos) {
+    if (destPos == 0) {
+      return layout;
+    }
+    return new Layout() {
+      @Override
+      public long getTotalNelems() {
+        return layout.getTotalNelems();
+      }
+
+      @Override
+      public int getElemSize() {
+        return layout.getElemSize();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return layout.hasNext();
+      }
+
+      @Override
+      public Chunk next() {
+        Chunk chunk = layout.next();
+        return new Chunk() {
+          @Override
+          public long getSrcPos() {
+            return chunk.getSrcPos();
+          }
+
+          @Override
+          public int getNelems() {
+            return chunk.getNelems();
+          }
+
+          @Override
+          public long getDestElem() {
+            return destPos + chunk.getDestElem();
+          }
+        };
+      }
+    };
+  }
+
+  /** Wrap a LayoutBB so that its chunks are stored starting at destPos in the destination. */
+  public static LayoutBB shiftDest(LayoutBB layout, long destPos) {
+    if (destPos == 0) {
+      return layout;
+    }
+    return new LayoutBB() {
+      @Override
+      public long getTotalNelems() {
+        return layout.getTotalNelems();
+      }
+
+      @Override
+      public int getElemSize() {
+        return layout.getElemSize();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return layout.hasNext();
+      }
+
+      @Override
+      public LayoutBB.Chunk next() {
+        LayoutBB.Chunk chunk = layout.next();
+        return new LayoutBB.Chunk() {
+          @Override
+          public long getSrcPos() {
+            return chunk.getSrcPos();
+          }
+
+          @Override
+          public int getNelems() {
+            return chunk.getNelems();
+          }
+
+          @Override
+          public long getDestElem() {
+            return destPos + chunk.getDestElem();
+          }
+
+          @Override
+          public int getSrcElem() {
+            return chunk.getSrcElem();
+          }
+
+          @Override
+          public ByteBuffer getByteBuffer() {
+            return chunk.getByteBuffer();
+          }
+
+          @Override
+          public ShortBuffer getShortBuffer() {
+            return chunk.getShortBuffer();
+          }
+
+          @Override
+          public IntBuffer getIntBuffer() {
+            return chunk.getIntBuffer();
+          }
+
+          @Override
+          public FloatBuffer getFloatBuffer() {
+            return chunk.getFloatBuffer();
+          }
+
+          @Override
+          public DoubleBuffer getDoubleBuffer() {
+            return chunk.getDoubleBuffer();
+          }
+
+          @Override
+          public LongBuffer getLongBuffer() {
+            return chunk.getLongBuffer();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Set dest[from, to) of a primitive array to fillValue.
+   *
+   * @param dest primitive array of byte, short, int, long, float or double.
+   * @param fillValue a Number, or null for zero.
+   */
+  public static void fill(Object dest, int from, int to, @Nullable Object fillValue) {
+    Number val = (fillValue == null) ? 0 : (Number) fillValue;
+    if (dest instanceof byte[]) {
+      java.util.Arrays.fill((byte[]) dest, from, to, val.byteValue());
+    } else if (dest instanceof short[]) {
+      java.util.Arrays.fill((short[]) dest, from, to, val.shortValue());
+    } else if (dest instanceof int[]) {
+      java.util.Arrays.fill((int[]) dest, from, to, val.intValue());
+    } else if (dest instanceof long[]) {
+      java.util.Arrays.fill((long[]) dest, from, to, val.longValue());
+    } else if (dest instanceof float[]) {
+      java.util.Arrays.fill((float[]) dest, from, to, val.floatValue());
+    } else if (dest instanceof double[]) {
+      java.util.Arrays.fill((double[]) dest, from, to, val.doubleValue());
+    } else {
+      throw new IllegalArgumentException("Cant fill " + dest.getClass().getName());
+    }
+  }
+
   /**
    * Create 1D primitive array of the given size and type
    *
@@ -404,6 +873,32 @@ public class IospArrayHelper {
     return arr;
   }
 
+  /**
+   * Create storage for size elements to read into with readData or readDataAt: a primitive array, or when there are
+   * more elements than fit in a java array, {@link StoragePaged} for types with a primitive class of byte, short,
+   * int, long, float or double. Either may be passed to {@link Arrays#factory(ArrayType, int[], Object)}.
+   *
+   * @param size number of elements
+   * @param arrayType ArrayType of the variable
+   * @param fillValue must be Number if ArrayType.isNumeric(), or String for STRING, byte[] for Structure, or null for
+   *        none
+   * @throws IllegalArgumentException if size is too large for arrayType.
+   */
+  public static Object makeStorage(long size, ArrayType arrayType, @Nullable Object fillValue) {
+    if (StoragePaged.isNeeded(size) && isPrimitive(arrayType)) {
+      StoragePaged<?> storage = StoragePaged.create(arrayType, size);
+      if (fillValue != null) {
+        storage.fill((Number) fillValue);
+      }
+      return storage;
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Read request too large for " + arrayType + ", nelems=" + size);
+    }
+    return (fillValue == null) ? makePrimitiveArray((int) size, arrayType)
+        : makePrimitiveArray((int) size, arrayType, fillValue);
+  }
+
 
   /**
    * Create 1D primitive array of the given size and type, fill it with the given value
@@ -4,10 +4,19 @@
  */
 package ucar.nc2.iosp;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import ucar.array.InvalidRangeException;
 import ucar.array.Section;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 /**
  * For datasets where the data are stored in chunks, and must be processed, eg compressed or filtered.
@@ -15,14 +24,54 @@ import java.nio.*;
  * "Tiled" means that all chunks are assumed to be equal size.
  * Chunks do not necessarily cover the array, missing data is possible.
  * Used by HDF4 and HDF5.
+ * <p>
+ * When maxConcurrency is greater than one, the chunks that intersect the wanted section are read ahead, in the
+ * order of the chunk iterator, and processed (eg uncompressed) concurrently on a shared executor, at most
+ * maxConcurrency at a time. This is off by default, set "ucar.nc2.iosp.chunkThreads" to turn it on. The chunks are
+ * still placed in the result in iterator order, so the result is the same as when they are processed one at a time.
+ * <p>
+ * Since hasNext() cannot throw an IOException, one from the chunk iterator or a chunk is thrown as an
+ * UncheckedIOException. IospArrayHelper.readData(LayoutBB, ...) rethrows its cause.
  */
 public class LayoutBBTiled implements LayoutBB {
   private static final boolean debug = false, debugIntersection = false;
 
+  // default maximum number of chunks of one read processed at the same time, 1 to process them on the calling thread
+  private static final int defaultMaxConcurrency =
+      Integer.parseInt(System.getProperty("ucar.nc2.iosp.chunkThreads", "1"));
+
+  private static Executor executor;
+
+  /**
+   * Set the executor used to process chunks concurrently. Default is a fixed pool of daemon threads, of size
+   * "ucar.nc2.iosp.chunkThreads" if that is greater than one, otherwise the number of processors. It is only created
+   * when chunks are first processed concurrently.
+   *
+   * @param exec use this executor, or null to use the default.
+   */
+  public static synchronized void setExecutor(Executor exec) {
+    executor = exec;
+  }
+
+  private static synchronized Executor getExecutor() {
+    if (executor == null) {
+      int nthreads = (defaultMaxConcurrency > 1) ? defaultMaxConcurrency : Runtime.getRuntime().availableProcessors();
+      executor = Executors.newFixedThreadPool(nthreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("LayoutBBTiled-%d").build());
+    }
+    return executor;
+  }
+
   private final Section want;
   private final int[] chunkSize; // all chunks assumed to be the same size
   private final int elemSize;
   private final DataChunkIterator chunkIterator; // iterate across chunks
+  private final int maxConcurrency;
+
+  // chunks read ahead and being processed, in iterator order; only used when maxConcurrency > 1
+  private final ArrayDeque<PendingChunk> pending = new ArrayDeque<>();
+  private long totalNelemsPending; // the number of wanted elements in chunks that have been read ahead
+  private boolean chunkIteratorDone;
 
   // track the overall iteration
   private final long totalNelems;
@@ -40,7 +89,23 @@ public class LayoutBBTiled implements LayoutBB {
    * @param wantSection the wanted section of data, contains a List of Range objects. Must be complete.
    */
   public LayoutBBTiled(DataChunkIterator chunkIterator, int[] chunkSize, int elemSize, Section wantSection) {
+    this(chunkIterator, chunkSize, elemSize, wantSection, defaultMaxConcurrency);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param chunkIterator iterator over all data chunks
+   * @param chunkSize all chunks assumed to be the same size
+   * @param elemSize size of an element in bytes.
+   * @param wantSection the wanted section of data, contains a List of Range objects. Must be complete.
+   * @param maxConcurrency maximum number of chunks processed at the same time; 1 to process each chunk on the
+   *        calling thread when it is needed. Default is the "ucar.nc2.iosp.chunkThreads" system property, or 1.
+   */
+  public LayoutBBTiled(DataChunkIterator chunkIterator, int[] chunkSize, int elemSize, Section wantSection,
+      int maxConcurrency) {
     this.chunkIterator = chunkIterator;
+    this.maxConcurrency = maxConcurrency;
     this.chunkSize = chunkSize;
     this.elemSize = elemSize;
     this.want = wantSection;
@@ -67,6 +132,9 @@ public class LayoutBBTiled implements LayoutBB {
       return false;
 
     if ((index == null) || !index.hasNext()) { // get new data node
+      if (maxConcurrency > 1) {
+        return nextPending() && hasNext();
+      }
       try {
         Section dataSection;
         DataChunk dataChunk;
@@ -78,13 +146,7 @@ public class LayoutBBTiled implements LayoutBB {
           }
 
           // get next dataChunk
-          try {
-            dataChunk = chunkIterator.next();
-          } catch (IOException e) {
-            e.printStackTrace();
-            next = null;
-            return false;
-          }
+          dataChunk = chunkIterator.next();
 
           // make the dataSection for this chunk
           dataSection = new Section(dataChunk.getOffset(), chunkSize);
@@ -101,8 +163,10 @@ public class LayoutBBTiled implements LayoutBB {
         index = new IndexChunkerTiled(dataSection, want); // new indexer into this chunk
         next = new Chunk(dataChunk.getByteBuffer()); // this does the uncompression
 
-      } catch (InvalidRangeException | IOException e) {
+      } catch (InvalidRangeException e) {
         throw new IllegalStateException(e);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
     }
 
@@ -117,6 +181,50 @@ public class LayoutBBTiled implements LayoutBB {
     return next;
   }
 
+  // Read ahead, then wait for the first pending chunk and make it current. Return false if there are no more.
+  private boolean nextPending() {
+    try {
+      readAhead();
+      PendingChunk pendingChunk = pending.poll();
+      if (pendingChunk == null) {
+        next = null;
+        return false;
+      }
+      readAhead(); // keep maxConcurrency chunks in process while this one is placed
+
+      index = new IndexChunkerTiled(pendingChunk.dataSection, want); // new indexer into this chunk
+      next = new Chunk(pendingChunk.get());
+
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return true;
+  }
+
+  // Read intersecting chunks, stopping when the read ahead chunks hold all the wanted elements.
+  private void readAhead() throws InvalidRangeException, IOException {
+    while (pending.size() < maxConcurrency && totalNelemsPending < totalNelems && !chunkIteratorDone) {
+      if (!chunkIterator.hasNext()) {
+        chunkIteratorDone = true;
+        return;
+      }
+
+      DataChunk dataChunk = chunkIterator.next();
+      Section dataSection = new Section(dataChunk.getOffset(), chunkSize);
+      if (debugIntersection)
+        System.out.println(" test intersecting: " + dataSection + " want: " + want);
+      if (!dataSection.intersects(want))
+        continue;
+
+      totalNelemsPending += dataSection.intersect(want).computeSize();
+      FutureTask<ByteBuffer> task = new FutureTask<>(dataChunk.readChunk());
+      getExecutor().execute(task);
+      pending.add(new PendingChunk(dataSection, task));
+    }
+  }
+
   public String toString() {
     StringBuilder sbuff = new StringBuilder();
     sbuff.append("want=").append(want).append("; ");
@@ -141,6 +249,45 @@ public class LayoutBBTiled implements LayoutBB {
     int[] getOffset();
 
     ByteBuffer getByteBuffer() throws IOException;
+
+    /**
+     * Read the raw data of this chunk on the calling thread, and return a task that processes it and returns the
+     * same as getByteBuffer(). The task may be run on another thread, so must not use the RandomAccessFile.
+     * The default calls getByteBuffer() on the calling thread; override this so that the processing is done by the
+     * task.
+     */
+    default Callable<ByteBuffer> readChunk() throws IOException {
+      ByteBuffer bb = getByteBuffer();
+      return () -> bb;
+    }
+  }
+
+  private static class PendingChunk {
+    private final Section dataSection;
+    private final FutureTask<ByteBuffer> task;
+
+    PendingChunk(Section dataSection, FutureTask<ByteBuffer> task) {
+      this.dataSection = dataSection;
+      this.task = task;
+    }
+
+    ByteBuffer get() throws IOException {
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for chunk " + dataSection);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
   }
 
   /**
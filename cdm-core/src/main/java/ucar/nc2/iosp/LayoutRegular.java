@@ -51,6 +51,11 @@ public class LayoutRegular implements Layout {
     return elemSize;
   }
 
+  /** Get the number of elements in each chunk, see {@link IndexChunker#getChunkNelems()}. */
+  public int getChunkNelems() {
+    return chunker.getChunkNelems();
+  }
+
   @Override
   public boolean hasNext() {
     return chunker.hasNext();
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * A byte sequence that a file must contain at a known place for an {@link IOServiceProvider} to be able to read it.
+ * See {@link IOServiceProvider#getMagicNumbers()}. This is a quick, necessary test; isValidFile() makes the full one.
+ */
+@Immutable
+public final class MagicNumber {
+  private static final int MAX_OFFSET_READ = 16;
+
+  /**
+   * The bytes must be at one of the given offsets.
+   *
+   * @param bytes the magic number.
+   * @param offsets where it may be in the file.
+   */
+  public static MagicNumber at(byte[] bytes, long... offsets) {
+    return new MagicNumber(bytes, offsets, -1);
+  }
+
+  /** The string, encoded as UTF-8, must be at one of the given offsets. */
+  public static MagicNumber at(String magic, long... offsets) {
+    return at(magic.getBytes(StandardCharsets.UTF_8), offsets);
+  }
+
+  /**
+   * The bytes must be at offset 0, 512, 1024, 2048, ..., below maxOffset; where HDF files have their superblock when
+   * they start with a user block.
+   */
+  public static MagicNumber atSuperblockOffsets(byte[] bytes, long maxOffset) {
+    int n = 1;
+    for (long pos = 512; pos < maxOffset; pos *= 2) {
+      n++;
+    }
+    long[] offsets = new long[n];
+    for (int i = 1; i < n; i++) {
+      offsets[i] = 512L << (i - 1);
+    }
+    return at(bytes, offsets);
+  }
+
+  /** The bytes must start somewhere in the first searchLength bytes of the file. */
+  public static MagicNumber within(byte[] bytes, int searchLength) {
+    return new MagicNumber(bytes, new long[0], searchLength);
+  }
+
+  /** The string, encoded as UTF-8, must start somewhere in the first searchLength bytes of the file. */
+  public static MagicNumber within(String magic, int searchLength) {
+    return within(magic.getBytes(StandardCharsets.UTF_8), searchLength);
+  }
+
+  private final byte[] bytes;
+  private final long[] offsets;
+  private final int searchLength; // -1 if at offsets
+
+  private MagicNumber(byte[] bytes, long[] offsets, int searchLength) {
+    this.bytes = bytes.clone();
+    this.offsets = offsets.clone();
+    this.searchLength = searchLength;
+  }
+
+  /** Check if the file has this magic number. */
+  public boolean matches(Sniffer sniffer) throws IOException {
+    if (searchLength >= 0) {
+      return sniffer.contains(bytes, searchLength);
+    }
+    for (long offset : offsets) {
+      if (sniffer.hasBytesAt(bytes, offset)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check if a file may be read by an IOServiceProvider with these magic numbers.
+   *
+   * @return true if any of them match, or there are none.
+   */
+  public static boolean anyMatch(List<MagicNumber> magicNumbers, Sniffer sniffer) throws IOException {
+    if (magicNumbers.isEmpty()) {
+      return true;
+    }
+    for (MagicNumber magic : magicNumbers) {
+      if (magic.matches(sniffer)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "MagicNumber{" + Arrays.toString(bytes)
+        + ((searchLength < 0) ? " at " + Arrays.toString(offsets) : " within " + searchLength) + '}';
+  }
+
+  /**
+   * Reads the start of a file once, and the bytes at other offsets as needed, so that the magic numbers of all
+   * IOServiceProviders can be checked without reading the file again for each one. Does not change the file
+   * position. Not thread safe.
+   */
+  public static final class Sniffer {
+    /** Size of the first read. */
+    public static final int PREFIX_SIZE = 8192;
+
+    private final RandomAccessFile raf;
+    private byte[] prefix;
+    private int prefixLength;
+    private boolean prefixComplete; // the whole file is in prefix
+    private final Map<Long, byte[]> offsetReads = new HashMap<>();
+
+    public Sniffer(RandomAccessFile raf) throws IOException {
+      this.raf = raf;
+      this.prefix = new byte[0];
+      readPrefix(PREFIX_SIZE);
+    }
+
+    private void readPrefix(int size) throws IOException {
+      if (prefixComplete || size <= prefixLength) {
+        return;
+      }
+      prefix = Arrays.copyOf(prefix, size);
+      prefixLength += read(prefixLength, prefix, prefixLength, size - prefixLength);
+      prefixComplete = prefixLength < size;
+    }
+
+    // read up to len bytes, fewer only at the end of the file
+    private int read(long pos, byte[] b, int off, int len) throws IOException {
+      ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+      while (dst.hasRemaining()) {
+        if (raf.readAt(pos + dst.position() - off, dst) < 0) {
+          break;
+        }
+      }
+      return dst.position() - off;
+    }
+
+    boolean hasBytesAt(byte[] magic, long offset) throws IOException {
+      if (offset + magic.length <= prefixLength) {
+        return regionMatches(prefix, (int) offset, magic);
+      }
+      if (prefixComplete) {
+        return false;
+      }
+      if (magic.length > MAX_OFFSET_READ) {
+        byte[] b = new byte[magic.length];
+        return read(offset, b, 0, b.length) == b.length && regionMatches(b, 0, magic);
+      }
+      byte[] b = offsetReads.get(offset);
+      if (b == null) {
+        byte[] buff = new byte[MAX_OFFSET_READ];
+        b = Arrays.copyOf(buff, read(offset, buff, 0, buff.length));
+        offsetReads.put(offset, b);
+      }
+      return b.length >= magic.length && regionMatches(b, 0, magic);
+    }
+
+    boolean contains(byte[] magic, int searchLength) throws IOException {
+      readPrefix(searchLength + magic.length - 1);
+      int end = Math.min(searchLength, prefixLength - magic.length + 1);
+      for (int start = 0; start < end; start++) {
+        if (regionMatches(prefix, start, magic)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean regionMatches(byte[] b, int start, byte[] magic) {
+      for (int i = 0; i < magic.length; i++) {
+        if (b[start + i] != magic[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
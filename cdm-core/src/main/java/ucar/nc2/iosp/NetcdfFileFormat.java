@@ -131,6 +131,15 @@ public enum NetcdfFileFormat {
   private static final byte[] CDF2HEAD = {(byte) 'C', (byte) 'D', (byte) 'F', (byte) 0x02};
   private static final byte[] CDF5HEAD = {(byte) 'C', (byte) 'D', (byte) 'F', (byte) 0x05};
 
+  /** Magic number of HDF5 files, including netCDF-4. It may follow a user block. */
+  public static final MagicNumber HDF5_MAGIC = MagicNumber.atSuperblockOffsets(H5HEAD, MAXHEADERPOS);
+  /** Magic number of classic netCDF-3 files. */
+  public static final MagicNumber CDF1_MAGIC = MagicNumber.at(CDF1HEAD, 0);
+  /** Magic number of 64-bit offset netCDF-3 files. */
+  public static final MagicNumber CDF2_MAGIC = MagicNumber.at(CDF2HEAD, 0);
+  /** Magic number of 64-bit data netCDF-3 files. */
+  public static final MagicNumber CDF5_MAGIC = MagicNumber.at(CDF5HEAD, 0);
+
   private final int version;
   private final String formatName;
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A pool of byte arrays, used for the buffers of {@link RandomAccessFile}s, so that opening and closing many files
+ * does not allocate a new buffer each time.
+ * <p>
+ * Arrays are pooled in power of two size classes, so an array may be larger than was asked for, and requests of
+ * nearby sizes share arrays. Arrays smaller than 1 KiB or larger than 16 MiB are not pooled. The total size of the
+ * free arrays kept is limited by the system property "ucar.unidata.io.bufferPool.maxBytes" (default 64 MiB); arrays
+ * released beyond that are left to the garbage collector.
+ * <p>
+ * An array must not be used after it is released. When leak debugging is on
+ * ({@link RandomAccessFile#setDebugLeaks(boolean)}), the pool remembers who acquired each array, and
+ * {@link #getLeaks()} lists the owners that have not released them.
+ */
+@ThreadSafe
+public final class BufferPool {
+  // smaller arrays are cheap to allocate
+  private static final int minPooledSize = 1024;
+  private static final int maxPooledSize = 1 << 24;
+  // 64 MiB default maximum of free arrays
+  private static final long defaultMaxBytes = 1L << 26;
+
+  private static final BufferPool defaultPool = new BufferPool(
+      Long.parseLong(System.getProperty("ucar.unidata.io.bufferPool.maxBytes", String.valueOf(defaultMaxBytes))));
+
+  /** The pool used by RandomAccessFile. */
+  public static BufferPool getDefault() {
+    return defaultPool;
+  }
+
+  private final long maxBytes;
+  private final Map<Integer, Queue<byte[]>> free = new ConcurrentHashMap<>();
+  private final AtomicLong freeBytes = new AtomicLong();
+  private final AtomicLong nallocated = new AtomicLong();
+  private final AtomicLong nreused = new AtomicLong();
+
+  // owners of acquired arrays, only tracked when debugLeaks is on
+  private final Map<byte[], Object> acquired = Collections.synchronizedMap(new IdentityHashMap<>());
+  private volatile boolean debugLeaks;
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes maximum total size of the free arrays kept in the pool.
+   */
+  public BufferPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get an array of at least the given size. Sizes that are pooled are rounded up to a power of two, others are
+   * exact. Its contents are undefined.
+   *
+   * @param size minimum length of the array
+   * @param owner who is using the array, eg the RandomAccessFile. Its toString() is used for leak debugging.
+   * @return an array from the pool, or a new one.
+   */
+  public byte[] acquire(int size, Object owner) {
+    byte[] result = null;
+    if (size >= minPooledSize && size <= maxPooledSize) {
+      size = sizeClass(size);
+      Queue<byte[]> queue = free.get(size);
+      result = (queue == null) ? null : queue.poll();
+    }
+    if (result != null) {
+      freeBytes.addAndGet(-size);
+      nreused.incrementAndGet();
+    } else {
+      result = new byte[size];
+      nallocated.incrementAndGet();
+    }
+    if (debugLeaks) {
+      acquired.put(result, owner);
+    }
+    return result;
+  }
+
+  /**
+   * Return an array to the pool. The caller must not use it afterwards.
+   *
+   * @param buffer an array from {@link #acquire}.
+   */
+  public void release(byte[] buffer) {
+    acquired.remove(buffer);
+    int size = buffer.length;
+    if (size < minPooledSize || size > maxPooledSize || size != sizeClass(size)) {
+      return;
+    }
+    if (freeBytes.addAndGet(size) > maxBytes) {
+      freeBytes.addAndGet(-size);
+      return;
+    }
+    free.computeIfAbsent(size, k -> new ConcurrentLinkedQueue<>()).add(buffer);
+  }
+
+  // the smallest power of two that is >= size
+  private static int sizeClass(int size) {
+    return Integer.highestOneBit(size - 1) << 1;
+  }
+
+  /** Turn tracking of acquired arrays on or off. Turning it off forgets the arrays already tracked. */
+  public void setDebugLeaks(boolean debugLeaks) {
+    this.debugLeaks = debugLeaks;
+    if (!debugLeaks) {
+      acquired.clear();
+    }
+  }
+
+  /** The owners of arrays that were acquired while leak debugging was on, and not yet released. */
+  public List<String> getLeaks() {
+    List<String> result = new ArrayList<>();
+    synchronized (acquired) {
+      for (Object owner : acquired.values()) {
+        result.add(String.valueOf(owner));
+      }
+    }
+    return result;
+  }
+
+  /** Total size of the free arrays in the pool. */
+  public long getFreeBytes() {
+    return freeBytes.get();
+  }
+
+  /** Number of arrays that were newly allocated by acquire(). */
+  public long getAllocatedCount() {
+    return nallocated.get();
+  }
+
+  /** Number of arrays that were reused from the pool by acquire(). */
+  public long getReusedCount() {
+    return nreused.get();
+  }
+
+  /** Discard all free arrays. */
+  public void clear() {
+    for (Queue<byte[]> queue : free.values()) {
+      byte[] buffer;
+      while ((buffer = queue.poll()) != null) {
+        freeBytes.addAndGet(-buffer.length);
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import com.google.common.base.Preconditions;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A contiguous range of bytes in a file, used with {@link RandomAccessFile#readRanges}.
+ */
+@Immutable
+public final class ByteRange implements Comparable<ByteRange> {
+  private final long offset;
+  private final int length;
+
+  /**
+   * Constructor.
+   *
+   * @param offset starting position in the file, must be &gt;= 0.
+   * @param length number of bytes, must be &gt;= 0.
+   */
+  public ByteRange(long offset, int length) {
+    Preconditions.checkArgument(offset >= 0, "offset must be >= 0: %s", offset);
+    Preconditions.checkArgument(length >= 0, "length must be >= 0: %s", length);
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /** Starting position in the file. */
+  public long getOffset() {
+    return offset;
+  }
+
+  /** Number of bytes. */
+  public int getLength() {
+    return length;
+  }
+
+  /** Position in the file following the last byte of this range. */
+  public long getEnd() {
+    return offset + length;
+  }
+
+  /** Order by offset, then by length. */
+  @Override
+  public int compareTo(ByteRange o) {
+    int c = Long.compare(offset, o.offset);
+    return (c != 0) ? c : Integer.compare(length, o.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ByteRange)) {
+      return false;
+    }
+    ByteRange that = (ByteRange) o;
+    return offset == that.offset && length == that.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(offset) + length;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + offset + ", " + getEnd() + ")";
+  }
+}
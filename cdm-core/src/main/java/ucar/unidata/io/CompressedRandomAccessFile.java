@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.nc2.internal.util.DiskCache;
+import ucar.unidata.io.SeekPointIndex.SeekPoint;
+import ucar.unidata.io.bzip2.BZip2ReadException;
+import ucar.unidata.io.bzip2.CBZip2InputStream;
+import ucar.unidata.io.bzip2.ParallelBZip2InputStream;
+
+/**
+ * A read only RandomAccessFile over the uncompressed contents of a gzip, bzip2 or zip file, that does not write the
+ * uncompressed data to disk.
+ * <p>
+ * The first time a file is opened, it is decompressed once to find seek points where decompression can start: deflate
+ * block boundaries about every "ucar.unidata.io.compressed.seekPointSpacing" bytes for gzip and zip, together with the
+ * 32 KiB of output they may refer back to, and block boundaries for bzip2. The seek points are saved in a file with
+ * the suffix {@link #INDEX_SUFFIX} next to the compressed file, or in the {@link DiskCache} if that directory is not
+ * writable, and are used as long as the compressed file does not change. Reads then decompress from the nearest seek
+ * point before the data.
+ * <p>
+ * Only the first entry of a zip file is read, and it must be deflated.
+ */
+public class CompressedRandomAccessFile extends RandomAccessFile {
+  private static final Logger logger = LoggerFactory.getLogger(CompressedRandomAccessFile.class);
+
+  /** Suffix of the file that the seek points are saved in. */
+  public static final String INDEX_SUFFIX = ".zidx";
+
+  private static final int defaultSeekPointSpacing = 1 << 20;
+  private static final int seekPointSpacing = Integer.parseInt(
+      System.getProperty("ucar.unidata.io.compressed.seekPointSpacing", String.valueOf(defaultSeekPointSpacing)));
+
+  private static final int GZIP = 1;
+  private static final int BZIP2 = 2;
+  private static final int ZIP = 3;
+
+  private static final int ZIP_LOCAL_HEADER = 0x04034b50;
+  private static final int ZIP_DEFLATED = 8;
+
+  /**
+   * Check if a file is compressed in a format that this class can read.
+   *
+   * @param location local file
+   * @return true if it is a gzip or bzip2 file, or a zip file whose first entry is deflated.
+   */
+  public static boolean canOpen(String location) {
+    if (!new File(location).isFile()) {
+      return false;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(location, "r", 0)) {
+      return findFormat(raf) != 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  // returns 0 if not a known format
+  private static int findFormat(RandomAccessFile raf) throws IOException {
+    ByteBuffer magic = ByteBuffer.allocate(4);
+    raf.readAt(0, magic);
+    if (magic.position() < 4) {
+      return 0;
+    }
+    byte[] b = magic.array();
+    if (b[0] == (byte) 0x1f && b[1] == (byte) 0x8b && b[2] == 8) {
+      return GZIP;
+    }
+    if (b[0] == 'B' && b[1] == 'Z' && b[2] == 'h' && b[3] >= '1' && b[3] <= '9') {
+      return BZIP2;
+    }
+    if (findZipData(raf) >= 0) {
+      return ZIP;
+    }
+    return 0;
+  }
+
+  // position of the data of the first zip entry, or -1 if its not a zip file or the entry is not deflated
+  private static long findZipData(RandomAccessFile raf) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+    raf.readAt(0, header);
+    if (header.position() < 30 || header.getInt(0) != ZIP_LOCAL_HEADER || header.getShort(8) != ZIP_DEFLATED) {
+      return -1;
+    }
+    int nameLength = header.getShort(26) & 0xffff;
+    int extraLength = header.getShort(28) & 0xffff;
+    return 30L + nameLength + extraLength;
+  }
+
+  private final RandomAccessFile compressed;
+  private final int format;
+  private final SeekPointIndex index;
+
+  // the decoder of the last read, which continues sequential reads
+  @Nullable
+  private Decoder decoder;
+  private RawInflater inflater;
+  private CBZip2InputStream bzip;
+  private byte[] skipBuffer;
+
+  /**
+   * Open a compressed file. If no saved seek points are found, the whole file is decompressed once to find them.
+   *
+   * @param location local compressed file
+   * @param bufferSize size of the read buffer
+   * @throws IOException if the file can not be read, or is not in a supported format.
+   */
+  public CompressedRandomAccessFile(String location, int bufferSize) throws IOException {
+    super(bufferSize);
+    this.location = location;
+    // only read with readAt(), so it needs no buffer
+    this.compressed = new RandomAccessFile(location, "r", 0);
+    try {
+      this.format = findFormat(compressed);
+      if (format == 0) {
+        throw new IOException("Not a gzip, bzip2 or zip file: " + location);
+      }
+      this.index = getIndex();
+    } catch (IOException | RuntimeException e) {
+      compressed.close();
+      throw e;
+    }
+
+    if (debugLeaks) {
+      openFiles.add(location);
+    }
+  }
+
+  private SeekPointIndex getIndex() throws IOException {
+    long compressedLength = compressed.length();
+    long lastModified = compressed.getLastModified();
+    File indexFile = DiskCache.getFileStandardPolicy(location + INDEX_SUFFIX);
+    try {
+      SeekPointIndex saved = SeekPointIndex.read(indexFile, format, compressedLength, lastModified);
+      if (saved != null) {
+        return saved;
+      }
+    } catch (IOException e) {
+      logger.debug("Failed to read seek points of {} from {}", location, indexFile, e);
+    }
+
+    List<SeekPoint> points = new ArrayList<>();
+    long uncompressedLength = (format == BZIP2) ? scanBzip2(points) : scanDeflate(points);
+    SeekPointIndex result = new SeekPointIndex(format, compressedLength, lastModified, uncompressedLength, points);
+    try {
+      result.write(indexFile);
+    } catch (IOException e) {
+      logger.debug("Failed to write seek points of {} to {}", location, indexFile, e);
+    }
+    return result;
+  }
+
+  private long scanDeflate(List<SeekPoint> points) throws IOException {
+    RawInflater scanner = new RawInflater(compressed, format == GZIP);
+    scanner.start(format == GZIP ? 0 : findZipData(compressed));
+    byte[] buff = new byte[1 << 16];
+    long lastPoint = 0;
+    do {
+      if (scanner.isAtBlockBoundary() && (points.isEmpty() || scanner.position() - lastPoint >= seekPointSpacing)) {
+        lastPoint = scanner.position();
+        points.add(new SeekPoint(lastPoint, scanner.getBitPosition(), 0,
+            SeekPoint.compressHistory(scanner.getHistory())));
+      }
+    } while (scanner.read(buff, 0, buff.length) >= 0);
+    return scanner.position();
+  }
+
+  private long scanBzip2(List<SeekPoint> points) throws IOException {
+    // there may be several concatenated streams, eg from pbzip2
+    try (ParallelBZip2InputStream scanner = new ParallelBZip2InputStream(new RafInputStream(compressed, 0))) {
+      byte[] buff = new byte[1 << 16];
+      long out = 0;
+      long lastBlock = -1;
+      int n;
+      while ((n = scanner.read(buff, 0, buff.length)) >= 0) {
+        if (scanner.getBlockOutputOffset() != lastBlock) {
+          lastBlock = scanner.getBlockOutputOffset();
+          points.add(new SeekPoint(lastBlock, scanner.getBlockBitOffset(), scanner.getBlockSize100k(), new byte[0]));
+        }
+        out += n;
+      }
+      return out;
+    } catch (IOException e) {
+      throw new IOException("Failed to read bzip2 file " + location, e);
+    }
+  }
+
+  @Override
+  public long length() {
+    return index.uncompressedLength;
+  }
+
+  @Override
+  public void setExtendMode() {
+    // read only
+  }
+
+  /** The number of seek points. */
+  public int getSeekPointCount() {
+    return index.points.size();
+  }
+
+  @Override
+  protected synchronized int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (pos >= index.uncompressedLength) {
+      return -1;
+    }
+    len = (int) Math.min(len, index.uncompressedLength - pos);
+
+    // continue with the current decoder if it has not passed pos, and is no further from it than the seek point
+    SeekPoint point = index.floor(pos);
+    if (decoder == null || decoder.position() > pos || decoder.position() < point.outPos) {
+      decoder = newDecoder(point);
+    }
+    while (decoder.position() < pos) {
+      if (skipBuffer == null) {
+        skipBuffer = new byte[8192];
+      }
+      decode(skipBuffer, 0, (int) Math.min(skipBuffer.length, pos - decoder.position()));
+    }
+
+    int done = 0;
+    while (done < len) {
+      done += decode(b, offset + done, len - done);
+    }
+    return done;
+  }
+
+  // decode at least one byte, moving to the next seek point at the end of a bzip2 stream
+  private int decode(byte[] b, int offset, int len) throws IOException {
+    int n = decoder.read(b, offset, len);
+    if (n <= 0) {
+      SeekPoint next = index.floor(decoder.position());
+      if (next.outPos == decoder.position()) {
+        decoder = newDecoder(next);
+        n = decoder.read(b, offset, len);
+      }
+      if (n <= 0) {
+        throw new EOFException("Unexpected end of compressed data at " + decoder.position() + " in " + location);
+      }
+    }
+    return n;
+  }
+
+  private Decoder newDecoder(SeekPoint point) throws IOException {
+    if (format == BZIP2) {
+      if (bzip == null) {
+        bzip = new CBZip2InputStream();
+      }
+      return new Bzip2Decoder(bzip, point, compressed);
+    }
+    if (inflater == null) {
+      inflater = new RawInflater(compressed, format == GZIP);
+    }
+    inflater.resume(point.inBitPos, point.getHistory(), point.outPos);
+    RawInflater current = inflater;
+    return new Decoder() {
+      public long position() {
+        return current.position();
+      }
+
+      public int read(byte[] b, int offset, int len) throws IOException {
+        return current.read(b, offset, len);
+      }
+    };
+  }
+
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    byte[] buff = BufferPool.getDefault().acquire((int) Math.min(nbytes, 1 << 16), this);
+    try {
+      long done = 0;
+      while (done < nbytes) {
+        int n = read_(offset + done, buff, 0, (int) Math.min(buff.length, nbytes - done));
+        if (n <= 0) {
+          break;
+        }
+        dest.write(ByteBuffer.wrap(buff, 0, n));
+        done += n;
+      }
+      return done;
+    } finally {
+      BufferPool.getDefault().release(buff);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    decoder = null;
+    inflater = null;
+    bzip = null;
+    super.close();
+    compressed.close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private interface Decoder {
+    /** Position in the uncompressed data of the next byte read. */
+    long position();
+
+    /** Read up to len bytes, return -1 at the end of the compressed data or bzip2 stream. */
+    int read(byte[] b, int offset, int len) throws IOException;
+  }
+
+  private static class Bzip2Decoder implements Decoder {
+    private final CBZip2InputStream bzip;
+    private long position;
+
+    Bzip2Decoder(CBZip2InputStream bzip, SeekPoint point, RandomAccessFile compressed) throws IOException {
+      this.bzip = bzip;
+      this.position = point.outPos;
+      try {
+        bzip.setBlockStream(new RafInputStream(compressed, point.inBitPos >>> 3), point.param,
+            (int) (point.inBitPos & 7));
+      } catch (BZip2ReadException e) {
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int len) throws IOException {
+      try {
+        int n = bzip.read(b, offset, len);
+        if (n > 0) {
+          position += n;
+        }
+        return n;
+      } catch (BZip2ReadException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /** Reads a file from a given position with readAt(), so that the file position is not used. */
+  private static class RafInputStream extends InputStream {
+    private final RandomAccessFile raf;
+    private final byte[] buff = new byte[8192];
+    private long pos;
+    private int buffPos;
+    private int buffLen;
+
+    RafInputStream(RandomAccessFile raf, long pos) {
+      this.raf = raf;
+      this.pos = pos;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (buffPos == buffLen) {
+        int n = raf.readAt(pos, ByteBuffer.wrap(buff));
+        if (n <= 0) {
+          return -1;
+        }
+        pos += n;
+        buffPos = 0;
+        buffLen = n;
+      }
+      return buff[buffPos++] & 0xff;
+    }
+  }
+}
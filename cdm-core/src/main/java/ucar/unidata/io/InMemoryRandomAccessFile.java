@@ -25,6 +25,7 @@ public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
       throw new IllegalArgumentException("data array is null");
 
     buffer = data;
+    bufferSize = data.length;
     bufferStart = 0;
     dataSize = buffer.length;
     dataEnd = buffer.length;
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import ucar.unidata.io.spi.RandomAccessFileProvider;
+import ucar.unidata.util.StringUtil2;
+
+/**
+ * A read-only RandomAccessFile for local files that reads through memory mapped windows of the file,
+ * rather than through read system calls.
+ * <p>
+ * The file is mapped lazily, one window at a time, using {@link FileChannel#map}. The window slides to follow the
+ * reads, so files larger than the address space of a single mapping (2 GB) are handled. The bulk primitive reads
+ * ({@link #readFloat(float[], int, int)} etc.) decode directly from the mapping, without copying through the
+ * heap buffer.
+ * <p>
+ * Use the "mmap:" prefix on a local file location to have {@link ucar.nc2.NetcdfFiles} open it with this class.
+ * The window size may be set with the system property "ucar.unidata.io.mmap.windowSize" (bytes).
+ */
+public class MMapRandomAccessFile extends RandomAccessFile {
+  public static final String PREFIX = "mmap:";
+
+  // 256 MiB default window size
+  protected static final long defaultWindowSize = 1L << 28;
+  // windows start on a multiple of this, which must be a multiple of the OS page size
+  private static final long windowAlignment = 1L << 16;
+
+  private static final long mmapWindowSize =
+      Long.parseLong(System.getProperty("ucar.unidata.io.mmap.windowSize", String.valueOf(defaultWindowSize)));
+
+  private final long windowSize;
+  private final long fileLength;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long windowEnd;
+
+  public MMapRandomAccessFile(String location) throws IOException {
+    this(location, defaultBufferSize, mmapWindowSize);
+  }
+
+  public MMapRandomAccessFile(String location, int bufferSize) throws IOException {
+    this(location, bufferSize, mmapWindowSize);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param location location of the local file
+   * @param bufferSize size of the heap buffer, used for single value reads.
+   * @param windowSize size of the mapped window, in bytes. Must be larger than 64 KiB.
+   * @throws IOException on open error
+   */
+  public MMapRandomAccessFile(String location, int bufferSize, long windowSize) throws IOException {
+    super(location, "r", bufferSize);
+    if (windowSize <= windowAlignment) {
+      throw new IllegalArgumentException("mmap window size must be larger than " + windowAlignment);
+    }
+    this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+    this.fileChannel = file.getChannel();
+    this.fileLength = fileChannel.size();
+  }
+
+  @Override
+  public long length() {
+    return fileLength;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    // the mapping is released when the buffer is garbage collected
+    window = null;
+    windowStart = 0;
+    windowEnd = 0;
+    super.close();
+  }
+
+  /**
+   * Get a view of the mapped file starting at pos, with at least min(minBytes, bytes to EOF) remaining.
+   * The returned buffer is positioned at pos, and uses the current byte order.
+   */
+  private synchronized ByteBuffer mapped(long pos, int minBytes) throws IOException {
+    if (file == null) {
+      throw new IOException("File is closed: " + location);
+    }
+    long want = Math.min(pos + minBytes, fileLength);
+    if (window == null || pos < windowStart || want > windowEnd) {
+      long start = pos - (pos % windowAlignment);
+      long size = Math.min(windowSize, fileLength - start);
+      window = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      windowStart = start;
+      windowEnd = start + size;
+    }
+    ByteBuffer view = window.duplicate();
+    view.position((int) (pos - windowStart));
+    view.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    return view;
+  }
+
+  /** Read directly from the mapped file, without going through the heap buffer. */
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (pos >= fileLength) {
+      return -1;
+    }
+    len = (int) Math.min(len, fileLength - pos);
+    int done = 0;
+    while (done < len) {
+      ByteBuffer view = mapped(pos + done, 1);
+      int n = Math.min(len - done, view.remaining());
+      view.get(b, offset + done, n);
+      done += n;
+    }
+    if (debugAccess && showRead) {
+      System.out.printf(" **read_ %s = %d bytes at %d; mmap%n", location, len, pos);
+    }
+    return done;
+  }
+
+  /** Positional read from the mapped file. Thread safe. */
+  @Override
+  public int readAt(long pos, ByteBuffer dst) throws IOException {
+    if (pos < 0) {
+      throw new IOException("Negative seek offset");
+    }
+    if (pos >= fileLength) {
+      return -1;
+    }
+    ByteBuffer view = mapped(pos, 1);
+    int n = Math.min(dst.remaining(), view.remaining());
+    view.limit(view.position() + n);
+    dst.put(view);
+    return n;
+  }
+
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    long need = Math.min(nbytes, fileLength - offset);
+    long done = 0;
+    while (done < need) {
+      ByteBuffer view = mapped(offset + done, 1);
+      view.limit((int) Math.min(view.limit(), view.position() + need - done));
+      int count = dest.write(view);
+      if (count == 0)
+        break;
+      done += count;
+    }
+    return done;
+  }
+
+  /**
+   * Set up a bulk read of nbytes at the current file position.
+   * Checks for EOF, and leaves the heap buffer empty at the position following the read.
+   */
+  private long startBulkRead(long nbytes) throws IOException {
+    long pos = filePosition;
+    if (pos + nbytes > fileLength) {
+      throw new EOFException("Reading " + location + " at " + pos + " file length = " + fileLength);
+    }
+    long next = pos + nbytes;
+    if (next >= bufferStart && next < dataEnd) {
+      filePosition = next;
+    } else {
+      bufferStart = next;
+      filePosition = next;
+      dataSize = 0;
+      dataEnd = next;
+      endOfFile = false;
+    }
+    return pos;
+  }
+
+  @Override
+  public void readShort(short[] pa, int start, int n) throws IOException {
+    long pos = startBulkRead(2L * n);
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = mapped(pos, 2);
+      int count = Math.min(n - done, view.remaining() / 2);
+      view.asShortBuffer().get(pa, start + done, count);
+      done += count;
+      pos += 2L * count;
+    }
+  }
+
+  @Override
+  public void readInt(int[] pa, int start, int n) throws IOException {
+    long pos = startBulkRead(4L * n);
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = mapped(pos, 4);
+      int count = Math.min(n - done, view.remaining() / 4);
+      view.asIntBuffer().get(pa, start + done, count);
+      done += count;
+      pos += 4L * count;
+    }
+  }
+
+  @Override
+  public void readLong(long[] pa, int start, int n) throws IOException {
+    long pos = startBulkRead(8L * n);
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = mapped(pos, 8);
+      int count = Math.min(n - done, view.remaining() / 8);
+      view.asLongBuffer().get(pa, start + done, count);
+      done += count;
+      pos += 8L * count;
+    }
+  }
+
+  @Override
+  public void readFloat(float[] pa, int start, int n) throws IOException {
+    long pos = startBulkRead(4L * n);
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = mapped(pos, 4);
+      int count = Math.min(n - done, view.remaining() / 4);
+      view.asFloatBuffer().get(pa, start + done, count);
+      done += count;
+      pos += 4L * count;
+    }
+  }
+
+  @Override
+  public void readDouble(double[] pa, int start, int n) throws IOException {
+    long pos = startBulkRead(8L * n);
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = mapped(pos, 8);
+      int count = Math.min(n - done, view.remaining() / 8);
+      view.asDoubleBuffer().get(pa, start + done, count);
+      done += count;
+      pos += 8L * count;
+    }
+  }
+
+  @Override
+  public void flush() {
+    // read only
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only: " + location);
+  }
+
+  @Override
+  public void writeBytes(byte[] b, int off, int len) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only: " + location);
+  }
+
+  /** Hook into service provider interface for RandomAccessFileProvider. Uses the "mmap:" prefix. */
+  public static class Provider implements RandomAccessFileProvider {
+
+    @Override
+    public boolean isOwnerOf(String location) {
+      return location.startsWith(PREFIX);
+    }
+
+    @Override
+    public RandomAccessFile open(String location) throws IOException {
+      return new MMapRandomAccessFile(stripPrefix(location));
+    }
+
+    @Override
+    public RandomAccessFile open(String location, int bufferSize) throws IOException {
+      return new MMapRandomAccessFile(stripPrefix(location), bufferSize);
+    }
+
+    private static String stripPrefix(String location) {
+      String path = StringUtil2.replace(location.substring(PREFIX.length()), '\\', "/");
+      if (path.startsWith("file:")) {
+        path = StringUtil2.unescape(path.substring(5));
+      }
+      return path;
+    }
+  }
+}
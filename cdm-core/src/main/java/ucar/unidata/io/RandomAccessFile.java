@@ -17,6 +17,7 @@ import ucar.nc2.internal.cache.FileFactory;
 import ucar.unidata.util.StringUtil2;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
@@ -41,6 +42,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * Freeware Java Classes</a>.
  * <p/>
  * Mutable, must be thread confined - that is, can only be used by a single thread at a time.
+ * The exception are the positional reads ({@link #readAt(long, ByteBuffer)} and {@link #readFullyAt}), which do not
+ * use the file position or buffer, and may be called by multiple threads at once.
  *
  * @author Alex McManus
  * @author Russ Rew
@@ -54,6 +57,14 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
 
   protected static final int defaultBufferSize = 8092; // The default buffer size, in bytes.
 
+  // readRanges() merges ranges separated by no more than this many bytes
+  protected static final int defaultReadRangesMaxGap =
+      Integer.parseInt(System.getProperty("ucar.unidata.io.readRanges.maxGap", "4096"));
+  // Copied from ArrayList.
+  private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
+  // bulk primitive reads larger than the buffer are read from the file in pieces of at most this many bytes
+  private static final int maxBulkReadBytes = 1 << 20;
+
   ///////////////////////////////////////////////////////////////////////
   // debug leaks - keep track of open files
   protected static boolean debugLeaks;
@@ -84,6 +95,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
       allFiles = new HashSet<>(1000);
     }
     debugLeaks = b;
+    BufferPool.getDefault().setDebugLeaks(b);
   }
 
   /** @deprecated do not use. */
@@ -218,6 +230,27 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   protected byte[] buffer;
 
+  /**
+   * The number of bytes of the buffer that are used. An array from the BufferPool may be longer.
+   */
+  protected int bufferSize;
+
+  /**
+   * The buffer acquired from the BufferPool, returned on close() or release(). Null if none.
+   */
+  private byte[] pooledBuffer;
+
+  /**
+   * Size of the pooled buffer returned by release(), to be acquired again by reacquire().
+   */
+  private int releasedBufferSize;
+
+  /**
+   * The buffer for bulk primitive reads larger than the buffer, acquired from the BufferPool when first needed, and
+   * returned on close() or release(). Null if none.
+   */
+  private byte[] bulkBuffer;
+
   /**
    * The offset in bytes of the start of the buffer, from the start of the file.
    */
@@ -267,6 +300,11 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   private boolean extendMode;
 
+  /**
+   * readRanges() merges ranges separated by no more than this many bytes.
+   */
+  protected int readRangesMaxGap = defaultReadRangesMaxGap;
+
   /**
    * Constructor, for subclasses
    *
@@ -351,11 +389,38 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     dataEnd = 0;
     dataSize = 0;
     filePosition = 0;
-    buffer = new byte[bufferSize];
+    releaseBuffer();
+    buffer = BufferPool.getDefault().acquire(bufferSize, this);
+    this.bufferSize = bufferSize;
+    pooledBuffer = buffer;
     endOfFile = false;
     bigEndian = true;
   }
 
+  /** Return the pooled buffer, if any. Leaves an empty buffer at the current file position. */
+  private void releaseBuffer() {
+    if (pooledBuffer != null) {
+      if (buffer == pooledBuffer) {
+        buffer = new byte[0];
+        bufferSize = 0;
+        bufferStart = filePosition;
+        dataEnd = filePosition;
+        dataSize = 0;
+        endOfFile = false;
+      }
+      BufferPool.getDefault().release(pooledBuffer);
+      pooledBuffer = null;
+    }
+    releaseBulkBuffer();
+  }
+
+  private void releaseBulkBuffer() {
+    if (bulkBuffer != null) {
+      BufferPool.getDefault().release(bulkBuffer);
+      bulkBuffer = null;
+    }
+  }
+
   /**
    * Set the buffer size.
    * If writing, call flush() first.
@@ -372,7 +437,29 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @return bufferSize length in bytes
    */
   public int getBufferSize() {
-    return buffer.length;
+    return bufferSize;
+  }
+
+  /**
+   * Set the largest gap between two byte ranges that {@link #readRanges} will read through in order to merge them
+   * into a single read.
+   *
+   * @param maxGap gap in bytes, must be &gt;= 0.
+   */
+  public void setReadRangesMaxGap(int maxGap) {
+    if (maxGap < 0) {
+      throw new IllegalArgumentException("maxGap must be >= 0: " + maxGap);
+    }
+    this.readRangesMaxGap = maxGap;
+  }
+
+  /**
+   * Get the largest gap between two byte ranges that {@link #readRanges} will read through.
+   *
+   * @return gap in bytes
+   */
+  public int getReadRangesMaxGap() {
+    return readRangesMaxGap;
   }
 
   /**
@@ -401,8 +488,10 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
         System.out.println("  close " + location);
     }
 
-    if (file == null)
+    if (file == null) {
+      releaseBuffer();
       return;
+    }
 
     // If we are writing and the buffer has been modified, flush the contents of the buffer.
     flush();
@@ -418,16 +507,30 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     // Close the underlying file object.
     file.close();
     file = null; // help the gc
+    releaseBuffer();
   }
 
+  /** Called by the FileCache when this file is no longer in use. The buffer is returned to the BufferPool. */
   @Override
   public void release() { // one to one with java.io.RandomAccessFile
     cacheState = 2;
+    if (pooledBuffer != null && buffer == pooledBuffer && !bufferModified) {
+      releasedBufferSize = bufferSize;
+      releaseBuffer();
+    }
+    releaseBulkBuffer();
   }
 
+  /** Called by the FileCache when this file is used again. */
   @Override
   public void reacquire() {
     cacheState = 1;
+    if (releasedBufferSize > 0) {
+      buffer = BufferPool.getDefault().acquire(releasedBufferSize, this);
+      bufferSize = releasedBufferSize;
+      pooledBuffer = buffer;
+      releasedBufferSize = 0;
+    }
   }
 
   @Override
@@ -442,6 +545,11 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     return file.lastModified();
   }
 
+  /** If the file was opened for reading only, so its contents do not change while it is open. */
+  public boolean isReadOnly() {
+    return readonly;
+  }
+
   /**
    * Return true if file pointer is at end of file.
    *
@@ -481,7 +589,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     bufferStart = pos;
     filePosition = pos;
 
-    dataSize = read_(pos, buffer, 0, buffer.length);
+    dataSize = read_(pos, buffer, 0, bufferSize);
 
     if (dataSize <= 0) {
       dataSize = 0;
@@ -550,6 +658,11 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     this.bigEndian = bo.equals(ByteOrder.BIG_ENDIAN);
   }
 
+  /** The current endian mode, set by {@link #order(ByteOrder)}. */
+  public ByteOrder getByteOrder() {
+    return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+  }
+
   /**
    * Copy the contents of the buffer to the disk.
    *
@@ -649,7 +762,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
 
       // If the amount remaining is more than a buffer's length, read it
       // directly from the file.
-      if (extraCopy > buffer.length) {
+      if (extraCopy > bufferSize) {
         extraCopy = read_(filePosition, b, off + copyLength, len - copyLength);
 
         // ...or read a new buffer full, and copy as much as possible...
@@ -719,7 +832,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     int n = file.read(b, offset, len);
     if (debugAccess) {
       if (showRead)
-        System.out.printf(" **read_ %s = %d bytes at %d; block = %d%n", location, len, pos, (pos / buffer.length));
+        System.out.printf(" **read_ %s = %d bytes at %d; block = %d%n", location, len, pos, (pos / bufferSize));
       debug_nseeks.incrementAndGet();
       debug_nbytes.addAndGet(len);
     }
@@ -730,6 +843,188 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     return n;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // Positional reads: these do not use or change the file position, the buffer, or the byte order,
+  // so they are safe to call from multiple threads at once.
+
+  /**
+   * Read up to <code>dst.remaining()</code> bytes into dst, starting at the given position in the file.
+   * For local files this uses {@link java.nio.channels.FileChannel#read(ByteBuffer, long)}, ie pread.
+   * Does not see data that has been written but not yet flushed.
+   * <p>
+   * Note that interrupting a thread blocked in this method closes the underlying file channel.
+   *
+   * @param pos start here in the file
+   * @param dst put data into this buffer, starting at its position.
+   * @return the number of bytes read, or -1 if pos is at or beyond the end of the file.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int readAt(long pos, ByteBuffer dst) throws IOException {
+    if (pos < 0) {
+      throw new IOException("Negative seek offset");
+    }
+    if (file != null) {
+      return file.getChannel().read(dst, pos);
+    }
+
+    // Subclasses without a local file read through read_, which must not depend on the file position.
+    if (pos >= length()) {
+      return -1;
+    }
+    int len = dst.remaining();
+    int n;
+    if (dst.hasArray()) {
+      n = Math.min(read_(pos, dst.array(), dst.arrayOffset() + dst.position(), len), len);
+      if (n > 0) {
+        dst.position(dst.position() + n);
+      }
+    } else {
+      // the pooled array may be longer than len
+      byte[] b = BufferPool.getDefault().acquire(len, this);
+      try {
+        n = Math.min(read_(pos, b, 0, len), len);
+        if (n > 0) {
+          dst.put(b, 0, n);
+        }
+      } finally {
+        BufferPool.getDefault().release(b);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Read exactly <code>dst.remaining()</code> bytes into dst, starting at the given position in the file.
+   * Thread safe, see {@link #readAt(long, ByteBuffer)}.
+   *
+   * @param pos start here in the file
+   * @param dst put data into this buffer, starting at its position.
+   * @throws EOFException if the end of file is reached before dst is filled.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void readFullyAt(long pos, ByteBuffer dst) throws IOException {
+    while (dst.hasRemaining()) {
+      int n = readAt(pos, dst);
+      if (n < 0) {
+        throw new EOFException("Reading " + location + " at " + pos + " file length = " + length());
+      }
+      pos += n;
+    }
+  }
+
+  /**
+   * Read exactly <code>len</code> bytes into b, starting at the given position in the file.
+   * Thread safe, see {@link #readAt(long, ByteBuffer)}.
+   *
+   * @param pos start here in the file
+   * @param b put data into this array
+   * @param off starting at b[off]
+   * @param len the number of bytes to read.
+   * @throws EOFException if the end of file is reached before len bytes are read.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void readFullyAt(long pos, byte[] b, int off, int len) throws IOException {
+    readFullyAt(pos, ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Get <code>nbytes</code> bytes starting at the given position in the file, in a ByteBuffer outside the Java heap.
+   * A local file opened read-only is memory mapped, so the bytes are only read when they are used, and the buffer
+   * must not be used after the file has been truncated. Other files are read into a direct buffer; a file opened for
+   * writing is flushed first, so that case is not thread safe. Otherwise thread safe, see
+   * {@link #readAt(long, ByteBuffer)}.
+   *
+   * @param pos start here in the file
+   * @param nbytes the number of bytes.
+   * @return read-only buffer with position 0 and limit nbytes, in BIG_ENDIAN order.
+   * @throws EOFException if the range extends past the end of the file.
+   * @throws IOException if an I/O error occurs.
+   */
+  public ByteBuffer readOffHeap(long pos, int nbytes) throws IOException {
+    if (pos < 0 || nbytes < 0) {
+      throw new IllegalArgumentException("Negative position or length");
+    }
+    if (pos + nbytes > length()) {
+      throw new EOFException("Reading " + location + " at " + pos + " file length = " + length());
+    }
+    if (!readonly) {
+      flush();
+    } else if (file != null) {
+      return file.getChannel().map(java.nio.channels.FileChannel.MapMode.READ_ONLY, pos, nbytes);
+    }
+    ByteBuffer dst = ByteBuffer.allocateDirect(nbytes);
+    readFullyAt(pos, dst);
+    dst.flip();
+    return dst.asReadOnlyBuffer();
+  }
+
+  /**
+   * Read a list of byte ranges, using as few physical reads as possible.
+   * The ranges are sorted by offset, and ranges that overlap or are separated by no more than
+   * {@link #getReadRangesMaxGap()} bytes are merged and read together. The bytes in the gaps are read and discarded.
+   * Thread safe, see {@link #readAt(long, ByteBuffer)}.
+   *
+   * @param ranges the byte ranges to read, in any order. May overlap.
+   * @return one buffer for each range, in the same order as ranges. Each buffer holds exactly the bytes of its range,
+   *         from position 0, and has the current byte order of this file. Buffers may share backing arrays.
+   * @throws EOFException if a range extends past the end of the file.
+   * @throws IOException if an I/O error occurs.
+   */
+  public List<ByteBuffer> readRanges(List<ByteRange> ranges) throws IOException {
+    int n = ranges.size();
+    Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, Comparator.comparing(ranges::get));
+
+    ByteOrder byteOrder = getByteOrder();
+    int maxGap = readRangesMaxGap;
+    ByteBuffer[] result = new ByteBuffer[n];
+    int first = 0;
+    while (first < n) {
+      // extend the merged read while the next range is close enough
+      long start = ranges.get(sorted[first]).getOffset();
+      long end = ranges.get(sorted[first]).getEnd();
+      int last = first + 1;
+      while (last < n) {
+        ByteRange next = ranges.get(sorted[last]);
+        long mergedEnd = Math.max(end, next.getEnd());
+        if (next.getOffset() - end > maxGap || mergedEnd - start > MAX_ARRAY_LEN) {
+          break;
+        }
+        end = mergedEnd;
+        last++;
+      }
+
+      byte[] merged = new byte[(int) (end - start)];
+      readMergedRange(start, merged);
+      ByteBuffer whole = ByteBuffer.wrap(merged);
+      for (int i = first; i < last; i++) {
+        ByteRange range = ranges.get(sorted[i]);
+        ByteBuffer slice = whole.duplicate();
+        slice.position((int) (range.getOffset() - start));
+        slice.limit(slice.position() + range.getLength());
+        result[sorted[i]] = slice.slice().order(byteOrder);
+      }
+      first = last;
+    }
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Read one merged range for {@link #readRanges}. Must be thread safe, and must not use the file position.
+   * Subclasses may override to issue a single request to the underlying storage.
+   *
+   * @param pos start here in the file
+   * @param dst fill this array
+   * @throws EOFException if the end of file is reached before dst is filled.
+   * @throws IOException if an I/O error occurs.
+   */
+  protected void readMergedRange(long pos, byte[] dst) throws IOException {
+    readFullyAt(pos, dst, 0, dst.length);
+  }
+
   /**
    * Read up to <code>len</code> bytes into an array, at a specified
    * offset. This will block until at least one byte has been read.
@@ -879,7 +1174,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     } else {
 
       // If there is room in the buffer, expand it...
-      if (dataSize != buffer.length) {
+      if (dataSize != bufferSize) {
         int pos = (int) (filePosition - bufferStart);
         buffer[pos] = (byte) b;
         bufferModified = true;
@@ -905,13 +1200,13 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    */
   public void writeBytes(byte[] b, int off, int len) throws IOException {
     // If the amount of data is small (less than a full buffer)...
-    if (len < buffer.length) {
+    if (len < bufferSize) {
 
       // If any of the data fits within the buffer...
       int spaceInBuffer = 0;
       int copyLength = 0;
       if (filePosition >= bufferStart) {
-        spaceInBuffer = (int) ((bufferStart + buffer.length) - filePosition);
+        spaceInBuffer = (int) ((bufferStart + bufferSize) - filePosition);
       }
 
       if (spaceInBuffer > 0) {
@@ -1090,9 +1385,13 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n read this many elements
    * @throws IOException on read error
    */
-  public final void readShort(short[] pa, int start, int n) throws IOException {
-    for (int i = 0; i < n; i++) {
-      pa[start + i] = readShort();
+  public void readShort(short[] pa, int start, int n) throws IOException {
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = bulkView(2, n - done);
+      int count = view.remaining() / 2;
+      view.asShortBuffer().get(pa, start + done, count);
+      done += count;
     }
   }
 
@@ -1249,9 +1548,13 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n read this many elements
    * @throws IOException on read error
    */
-  public final void readInt(int[] pa, int start, int n) throws IOException {
-    for (int i = 0; i < n; i++) {
-      pa[start + i] = readInt();
+  public void readInt(int[] pa, int start, int n) throws IOException {
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = bulkView(4, n - done);
+      int count = view.remaining() / 4;
+      view.asIntBuffer().get(pa, start + done, count);
+      done += count;
     }
   }
 
@@ -1323,9 +1626,13 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n read this many elements
    * @throws IOException on read error
    */
-  public final void readLong(long[] pa, int start, int n) throws IOException {
-    for (int i = 0; i < n; i++) {
-      pa[start + i] = readLong();
+  public void readLong(long[] pa, int start, int n) throws IOException {
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = bulkView(8, n - done);
+      int count = view.remaining() / 8;
+      view.asLongBuffer().get(pa, start + done, count);
+      done += count;
     }
   }
 
@@ -1360,9 +1667,13 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n read this many elements
    * @throws IOException on read error
    */
-  public final void readFloat(float[] pa, int start, int n) throws IOException {
-    for (int i = 0; i < n; i++) {
-      pa[start + i] = Float.intBitsToFloat(readInt());
+  public void readFloat(float[] pa, int start, int n) throws IOException {
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = bulkView(4, n - done);
+      int count = view.remaining() / 4;
+      view.asFloatBuffer().get(pa, start + done, count);
+      done += count;
     }
   }
 
@@ -1397,10 +1708,49 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n read this many elements
    * @throws IOException on read error
    */
-  public final void readDouble(double[] pa, int start, int n) throws IOException {
-    for (int i = 0; i < n; i++) {
-      pa[start + i] = Double.longBitsToDouble(readLong());
+  public void readDouble(double[] pa, int start, int n) throws IOException {
+    int done = 0;
+    while (done < n) {
+      ByteBuffer view = bulkView(8, n - done);
+      int count = view.remaining() / 8;
+      view.asDoubleBuffer().get(pa, start + done, count);
+      done += count;
+    }
+  }
+
+  /**
+   * Get a view of the next elements at the file position, for the bulk primitive reads, and move the file position
+   * past them. The view is in the current byte order, and holds between 1 and maxElems whole elements.
+   * Elements that are in the buffer are decoded from it in place. When more than a buffer full is wanted, they are read
+   * from the file in large pieces into the bulk buffer, bypassing the buffer. The view is only good until the next
+   * call.
+   *
+   * @param elemSize size of an element in bytes
+   * @param maxElems the number of elements still wanted
+   * @throws EOFException if the file ends before the next element
+   */
+  private ByteBuffer bulkView(int elemSize, int maxElems) throws IOException {
+    long nbytes = (long) elemSize * maxElems;
+    int available = (int) Math.max(0, dataEnd - filePosition);
+    if (available < elemSize && nbytes - available <= bufferSize) {
+      readBuffer(filePosition); // the rest fits in a buffer
+      available = (int) Math.max(0, dataEnd - filePosition);
+    }
+
+    ByteBuffer view;
+    if (available >= elemSize) {
+      int count = (int) Math.min(maxElems, available / elemSize) * elemSize;
+      view = ByteBuffer.wrap(buffer, (int) (filePosition - bufferStart), count);
+      filePosition += count;
+    } else {
+      if (bulkBuffer == null) {
+        bulkBuffer = BufferPool.getDefault().acquire(maxBulkReadBytes, this);
+      }
+      int count = (int) Math.min(nbytes, maxBulkReadBytes / elemSize * elemSize);
+      readFully(bulkBuffer, 0, count);
+      view = ByteBuffer.wrap(bulkBuffer, 0, count);
     }
+    return view.order(getByteOrder());
   }
 
   /**
@@ -2317,7 +2667,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     while (needToScan > matchLen) {
       readBuffer(dataEnd - matchLen); // force new buffer
 
-      scanBytes = (int) Math.min(buffer.length, needToScan);
+      scanBytes = (int) Math.min(bufferSize, needToScan);
       pos = match.indexOf(buffer, 0, scanBytes);
       if (pos > 0) {
         seek(bufferStart + pos);
@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A DEFLATE (RFC 1951) decoder that reads from a RandomAccessFile, optionally with GZIP (RFC 1952) framing.
+ * <p>
+ * Unlike java.util.zip.Inflater, decoding can be stopped at any deflate block boundary and later resumed there, given
+ * the bit position in the compressed file and the last 32 KiB of uncompressed output (the "zran" technique).
+ * Not thread safe. Compressed data is read with {@link RandomAccessFile#readAt}, so several decoders may share one
+ * file.
+ */
+final class RawInflater {
+  /** Back references reach at most this far into the uncompressed output. */
+  static final int HISTORY_SIZE = 32768;
+
+  private static final int MAX_BITS = 15;
+  private static final int FAST_BITS = 10;
+  private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+  // output window: HISTORY_SIZE of history, plus up to HISTORY_SIZE of output not yet returned to the caller
+  private static final int WINDOW_MASK = 2 * HISTORY_SIZE - 1;
+  private static final int MAX_PENDING = HISTORY_SIZE - 258;
+
+  private static final short[] LENGTH_BASE =
+      {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+  private static final byte[] LENGTH_EXTRA =
+      {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+  private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+      769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  private static final byte[] DIST_EXTRA =
+      {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+  private static final byte[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+  private static final Huffman fixedLengthCode = new Huffman(288);
+  private static final Huffman fixedDistCode = new Huffman(30);
+
+  static {
+    byte[] lengths = new byte[288];
+    Arrays.fill(lengths, 0, 144, (byte) 8);
+    Arrays.fill(lengths, 144, 256, (byte) 9);
+    Arrays.fill(lengths, 256, 280, (byte) 7);
+    Arrays.fill(lengths, 280, 288, (byte) 8);
+    fixedLengthCode.build(lengths, 0, 288);
+    Arrays.fill(lengths, 0, 30, (byte) 5);
+    fixedDistCode.build(lengths, 0, 30);
+  }
+
+  /** Canonical Huffman code, decoded with a lookup table for short codes. */
+  private static final class Huffman {
+    final short[] count = new short[MAX_BITS + 1];
+    final short[] symbol;
+    // (symbol << 4) | code length, for codes of at most FAST_BITS; 0 if longer
+    final int[] fast = new int[1 << FAST_BITS];
+
+    Huffman(int nsymbols) {
+      symbol = new short[nsymbols];
+    }
+
+    /** @return false if the code is over-subscribed. */
+    boolean build(byte[] lengths, int start, int n) {
+      Arrays.fill(count, (short) 0);
+      for (int i = 0; i < n; i++) {
+        count[lengths[start + i]]++;
+      }
+      int left = 1;
+      for (int len = 1; len <= MAX_BITS; len++) {
+        left = (left << 1) - count[len];
+        if (left < 0) {
+          return false;
+        }
+      }
+
+      short[] offset = new short[MAX_BITS + 2];
+      for (int len = 1; len <= MAX_BITS; len++) {
+        offset[len + 1] = (short) (offset[len] + count[len]);
+      }
+      for (int i = 0; i < n; i++) {
+        if (lengths[start + i] != 0) {
+          symbol[offset[lengths[start + i]]++] = (short) i;
+        }
+      }
+
+      Arrays.fill(fast, 0);
+      int code = 0;
+      int index = 0;
+      for (int len = 1; len <= FAST_BITS; len++) {
+        for (int i = 0; i < count[len]; i++, code++, index++) {
+          int reversed = Integer.reverse(code) >>> (32 - len);
+          for (int j = reversed; j <= FAST_MASK; j += 1 << len) {
+            fast[j] = (symbol[index] << 4) | len;
+          }
+        }
+        code <<= 1;
+      }
+      return true;
+    }
+  }
+
+  private enum State {
+    HEADER, STORED, CODES, MEMBER_END, END
+  }
+
+  private final RandomAccessFile in;
+  private final boolean gzip;
+
+  // compressed input
+  private final byte[] inBuf = new byte[1 << 16];
+  private long inBufStart;
+  private int inBufLen;
+  private int inBufPos;
+  private long bitBuf;
+  private int bitCount;
+
+  // decoder state
+  private State state = State.END;
+  private boolean finalBlock;
+  private int storedLeft;
+  private Huffman lengthCode;
+  private Huffman distCode;
+  private final Huffman dynamicLengthCode = new Huffman(288);
+  private final Huffman dynamicDistCode = new Huffman(30);
+  private final Huffman codeLengthCode = new Huffman(19);
+  private final byte[] lengths = new byte[288 + 32];
+
+  // uncompressed output
+  private final byte[] window = new byte[WINDOW_MASK + 1];
+  private int windowPos;
+  private int pending; // bytes in the window not yet returned
+  private long produced; // uncompressed position of windowPos
+  private long memberStart; // uncompressed position where the current gzip member starts
+
+  // the CRC is only checked for gzip members that were decoded from their start
+  private final CRC32 crc = new CRC32();
+  private boolean checkCrc;
+
+  /**
+   * Constructor.
+   *
+   * @param in the compressed file
+   * @param gzip if the data has GZIP framing, else it is raw DEFLATE data.
+   */
+  RawInflater(RandomAccessFile in, boolean gzip) {
+    this.in = in;
+    this.gzip = gzip;
+  }
+
+  /**
+   * Start decoding at the start of the compressed data: a gzip header or the first deflate block.
+   *
+   * @param pos byte position in the compressed file.
+   */
+  void start(long pos) throws IOException {
+    setInput(pos);
+    produced = 0;
+    pending = 0;
+    memberStart = 0;
+    if (gzip) {
+      if (!readGzipHeader()) {
+        throw new IOException("Not a gzip file: " + in.getLocation());
+      }
+    } else {
+      state = State.HEADER;
+    }
+  }
+
+  /**
+   * Resume decoding at a deflate block boundary previously found with {@link #isAtBlockBoundary()}.
+   *
+   * @param bitPos the value of {@link #getBitPosition()} at the block boundary.
+   * @param history the value of {@link #getHistory()} at the block boundary.
+   * @param outPos the value of {@link #position()} at the block boundary.
+   */
+  void resume(long bitPos, byte[] history, long outPos) throws IOException {
+    setInput(bitPos >>> 3);
+    getBits((int) (bitPos & 7));
+    System.arraycopy(history, 0, window, 0, history.length);
+    windowPos = history.length;
+    pending = 0;
+    produced = outPos;
+    memberStart = outPos - history.length;
+    checkCrc = false;
+    state = State.HEADER;
+  }
+
+  /** Uncompressed position of the next byte returned by read(). */
+  long position() {
+    return produced - pending;
+  }
+
+  /** Bit position in the compressed file of the next bit to be decoded. */
+  long getBitPosition() {
+    return (inBufStart + inBufPos) * 8 - bitCount;
+  }
+
+  /** If decoding is stopped between two deflate blocks, and all decoded bytes have been returned. */
+  boolean isAtBlockBoundary() {
+    return state == State.HEADER && pending == 0;
+  }
+
+  /** The uncompressed bytes that later blocks of the current member may refer back to. */
+  byte[] getHistory() {
+    int n = (int) Math.min(HISTORY_SIZE, produced - memberStart);
+    byte[] result = new byte[n];
+    int start = (windowPos - n) & WINDOW_MASK;
+    int first = Math.min(n, window.length - start);
+    System.arraycopy(window, start, result, 0, first);
+    System.arraycopy(window, 0, result, first, n - first);
+    return result;
+  }
+
+  /**
+   * Read uncompressed bytes. Returns early at deflate block boundaries, so that callers can note them.
+   *
+   * @return number of bytes read, or -1 at the end of the compressed data.
+   */
+  int read(byte[] b, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      if (pending > 0) {
+        int start = (windowPos - pending) & WINDOW_MASK;
+        int count = Math.min(Math.min(pending, len - n), window.length - start);
+        System.arraycopy(window, start, b, off + n, count);
+        pending -= count;
+        n += count;
+      } else if (n > 0 && state == State.HEADER) {
+        break;
+      } else if (state == State.END) {
+        break;
+      } else {
+        decode();
+      }
+    }
+    return (n == 0 && len > 0) ? -1 : n;
+  }
+
+  // decode until MAX_PENDING bytes are waiting, or a block ends
+  private void decode() throws IOException {
+    int startPos = windowPos;
+    switch (state) {
+      case HEADER:
+        readBlockHeader();
+        break;
+      case STORED:
+        decodeStored();
+        break;
+      case CODES:
+        decodeCodes();
+        break;
+      case MEMBER_END:
+        readMemberEnd();
+        break;
+      default:
+        break;
+    }
+    if (checkCrc && windowPos != startPos) {
+      if (windowPos > startPos) {
+        crc.update(window, startPos, windowPos - startPos);
+      } else {
+        crc.update(window, startPos, window.length - startPos);
+        crc.update(window, 0, windowPos);
+      }
+    }
+  }
+
+  private void readBlockHeader() throws IOException {
+    finalBlock = getBits(1) == 1;
+    int type = getBits(2);
+    switch (type) {
+      case 0:
+        dropBitsToByte();
+        int len = getBits(16);
+        int nlen = getBits(16);
+        if (len != (~nlen & 0xffff)) {
+          throw new IOException("Invalid stored block lengths in " + in.getLocation());
+        }
+        storedLeft = len;
+        state = State.STORED;
+        break;
+      case 1:
+        lengthCode = fixedLengthCode;
+        distCode = fixedDistCode;
+        state = State.CODES;
+        break;
+      case 2:
+        readDynamicCodes();
+        lengthCode = dynamicLengthCode;
+        distCode = dynamicDistCode;
+        state = State.CODES;
+        break;
+      default:
+        throw new IOException("Invalid deflate block type in " + in.getLocation());
+    }
+  }
+
+  private void readDynamicCodes() throws IOException {
+    int nlen = getBits(5) + 257;
+    int ndist = getBits(5) + 1;
+    int ncode = getBits(4) + 4;
+    if (nlen > 286 || ndist > 30) {
+      throw new IOException("Invalid deflate code lengths in " + in.getLocation());
+    }
+
+    Arrays.fill(lengths, 0, 19, (byte) 0);
+    for (int i = 0; i < ncode; i++) {
+      lengths[CODE_LENGTH_ORDER[i]] = (byte) getBits(3);
+    }
+    if (!codeLengthCode.build(lengths, 0, 19)) {
+      throw new IOException("Invalid deflate code lengths code in " + in.getLocation());
+    }
+
+    int index = 0;
+    while (index < nlen + ndist) {
+      int sym = decodeSymbol(codeLengthCode);
+      if (sym < 16) {
+        lengths[index++] = (byte) sym;
+        continue;
+      }
+      byte value = 0;
+      int repeat;
+      if (sym == 16) {
+        if (index == 0) {
+          throw new IOException("Invalid deflate repeat with no previous length in " + in.getLocation());
+        }
+        value = lengths[index - 1];
+        repeat = 3 + getBits(2);
+      } else if (sym == 17) {
+        repeat = 3 + getBits(3);
+      } else {
+        repeat = 11 + getBits(7);
+      }
+      if (index + repeat > nlen + ndist) {
+        throw new IOException("Invalid deflate code lengths repeat in " + in.getLocation());
+      }
+      Arrays.fill(lengths, index, index + repeat, value);
+      index += repeat;
+    }
+
+    if (lengths[256] == 0) {
+      throw new IOException("Deflate block has no end of block code in " + in.getLocation());
+    }
+    if (!dynamicLengthCode.build(lengths, 0, nlen) || !dynamicDistCode.build(lengths, nlen, ndist)) {
+      throw new IOException("Invalid deflate literal/length or distance code in " + in.getLocation());
+    }
+  }
+
+  private void decodeStored() throws IOException {
+    while (storedLeft > 0 && pending < MAX_PENDING) {
+      int count;
+      if (bitCount >= 8) {
+        window[windowPos] = (byte) getBits(8);
+        count = 1;
+      } else {
+        if (inBufPos == inBufLen && !fillInput()) {
+          throw new EOFException("Unexpected end of compressed data in " + in.getLocation());
+        }
+        count = Math.min(Math.min(storedLeft, MAX_PENDING - pending), inBufLen - inBufPos);
+        count = Math.min(count, window.length - windowPos);
+        System.arraycopy(inBuf, inBufPos, window, windowPos, count);
+        inBufPos += count;
+      }
+      windowPos = (windowPos + count) & WINDOW_MASK;
+      storedLeft -= count;
+      pending += count;
+      produced += count;
+    }
+    if (storedLeft == 0) {
+      endBlock();
+    }
+  }
+
+  private void decodeCodes() throws IOException {
+    final byte[] window = this.window;
+    int wpos = windowPos;
+    int npending = pending;
+    long available = Math.min(HISTORY_SIZE, produced - memberStart);
+    try {
+      while (npending < MAX_PENDING) {
+        int sym = decodeSymbol(lengthCode);
+        if (sym < 256) {
+          window[wpos] = (byte) sym;
+          wpos = (wpos + 1) & WINDOW_MASK;
+          npending++;
+          available++;
+          continue;
+        }
+        if (sym == 256) {
+          endBlock();
+          return;
+        }
+        sym -= 257;
+        if (sym >= 29) {
+          throw new IOException("Invalid deflate length code in " + in.getLocation());
+        }
+        int len = LENGTH_BASE[sym] + getBits(LENGTH_EXTRA[sym]);
+        int dsym = decodeSymbol(distCode);
+        if (dsym >= 30) {
+          throw new IOException("Invalid deflate distance code in " + in.getLocation());
+        }
+        int dist = DIST_BASE[dsym] + getBits(DIST_EXTRA[dsym]);
+        if (dist > available) {
+          throw new IOException("Invalid deflate distance too far back in " + in.getLocation());
+        }
+        int from = (wpos - dist) & WINDOW_MASK;
+        if (from + len <= window.length && wpos + len <= window.length) {
+          if (dist >= len) {
+            System.arraycopy(window, from, window, wpos, len);
+          } else {
+            // overlapping copy repeats the last dist bytes
+            for (int i = 0; i < len; i++) {
+              window[wpos + i] = window[from + i];
+            }
+          }
+          wpos = (wpos + len) & WINDOW_MASK;
+        } else {
+          for (int i = 0; i < len; i++) {
+            window[wpos] = window[from];
+            wpos = (wpos + 1) & WINDOW_MASK;
+            from = (from + 1) & WINDOW_MASK;
+          }
+        }
+        npending += len;
+        available += len;
+      }
+    } finally {
+      produced += npending - pending;
+      windowPos = wpos;
+      pending = npending;
+    }
+  }
+
+  private void endBlock() {
+    state = finalBlock ? State.MEMBER_END : State.HEADER;
+  }
+
+  private void readMemberEnd() throws IOException {
+    if (!gzip) {
+      state = State.END;
+      return;
+    }
+    dropBitsToByte();
+    int storedCrc = getBits(32);
+    int storedSize = getBits(32);
+    if (checkCrc && (storedCrc != (int) crc.getValue() || storedSize != (int) (produced - memberStart))) {
+      throw new IOException("CRC error in gzip member ending at byte " + (getBitPosition() >>> 3) + " of "
+          + in.getLocation());
+    }
+    // another member may follow
+    memberStart = produced;
+    if (!readGzipHeader()) {
+      state = State.END;
+    }
+  }
+
+  /** @return false if there is no gzip header at the current position. */
+  private boolean readGzipHeader() throws IOException {
+    refill();
+    if (bitCount < 24 || (bitBuf & 0xffffff) != 0x088b1f) {
+      return false;
+    }
+    getBits(24); // magic and method
+    int flags = getBits(8);
+    getBits(32); // mtime
+    getBits(16); // xfl and os
+    if ((flags & 4) != 0) { // FEXTRA
+      int xlen = getBits(16);
+      for (int i = 0; i < xlen; i++) {
+        getBits(8);
+      }
+    }
+    if ((flags & 8) != 0) { // FNAME
+      while (getBits(8) != 0) {
+      }
+    }
+    if ((flags & 16) != 0) { // FCOMMENT
+      while (getBits(8) != 0) {
+      }
+    }
+    if ((flags & 2) != 0) { // FHCRC
+      getBits(16);
+    }
+    crc.reset();
+    checkCrc = true;
+    state = State.HEADER;
+    return true;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // bit input, least significant bit first
+
+  private void setInput(long pos) {
+    inBufStart = pos;
+    inBufLen = 0;
+    inBufPos = 0;
+    bitBuf = 0;
+    bitCount = 0;
+  }
+
+  private boolean fillInput() throws IOException {
+    inBufStart += inBufLen;
+    inBufPos = 0;
+    inBufLen = 0;
+    int n = in.readAt(inBufStart, ByteBuffer.wrap(inBuf));
+    if (n <= 0) {
+      return false;
+    }
+    inBufLen = n;
+    return true;
+  }
+
+  private void refill() throws IOException {
+    if (bitCount <= 32 && inBufLen - inBufPos >= 4) {
+      bitBuf |= ((inBuf[inBufPos] & 0xffL) | (inBuf[inBufPos + 1] & 0xffL) << 8 | (inBuf[inBufPos + 2] & 0xffL) << 16
+          | (inBuf[inBufPos + 3] & 0xffL) << 24) << bitCount;
+      inBufPos += 4;
+      bitCount += 32;
+    }
+    while (bitCount <= 56) {
+      if (inBufPos == inBufLen && !fillInput()) {
+        return;
+      }
+      bitBuf |= (inBuf[inBufPos++] & 0xffL) << bitCount;
+      bitCount += 8;
+    }
+  }
+
+  private int getBits(int n) throws IOException {
+    if (bitCount < n) {
+      refill();
+      if (bitCount < n) {
+        throw new EOFException("Unexpected end of compressed data in " + in.getLocation());
+      }
+    }
+    int value = (int) (bitBuf & ((1L << n) - 1));
+    bitBuf >>>= n;
+    bitCount -= n;
+    return value;
+  }
+
+  private void dropBitsToByte() {
+    int n = bitCount & 7;
+    bitBuf >>>= n;
+    bitCount -= n;
+  }
+
+  private int decodeSymbol(Huffman h) throws IOException {
+    if (bitCount < MAX_BITS) {
+      refill();
+    }
+    int entry = h.fast[(int) bitBuf & FAST_MASK];
+    int len;
+    int sym;
+    if (entry != 0) {
+      len = entry & 15;
+      sym = entry >>> 4;
+    } else {
+      // canonical decoding, one bit at a time
+      int code = 0;
+      int first = 0;
+      int index = 0;
+      sym = -1;
+      for (len = 1; len <= MAX_BITS; len++) {
+        code |= (int) (bitBuf >>> (len - 1)) & 1;
+        int count = h.count[len];
+        if (code - count < first) {
+          sym = h.symbol[index + (code - first)];
+          break;
+        }
+        index += count;
+        first = (first + count) << 1;
+        code <<= 1;
+      }
+      if (sym < 0) {
+        throw new IOException("Invalid deflate Huffman code in " + in.getLocation());
+      }
+    }
+    if (len > bitCount) {
+      throw new EOFException("Unexpected end of compressed data in " + in.getLocation());
+    }
+    bitBuf >>>= len;
+    bitCount -= len;
+    return sym;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.nc2.internal.util.DiskCache2;
+
+/**
+ * A process wide cache of blocks of remote files, shared by all open {@link RemoteRandomAccessFile}s.
+ * <p>
+ * Blocks are kept in memory up to a total size in bytes, evicting the least recently used blocks first.
+ * Blocks are keyed by the location and version (eg HTTP ETag) of the remote object, so that files opened more than
+ * once share the same blocks, and blocks of an object that has changed are never used.
+ * <p>
+ * Optionally, blocks of versioned objects are also written under the root directory of a {@link DiskCache2}, and
+ * read from there on a memory miss, so that they survive the JVM. The DiskCache2 scouring policy controls how long
+ * they are kept.
+ * <p>
+ * The default cache is configured with the system properties "ucar.unidata.io.remote.blockCacheSize" (bytes) and
+ * "ucar.unidata.io.remote.blockCacheDir" (directory of the disk tier, none if not set).
+ */
+@ThreadSafe
+public final class RemoteBlockCache {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteBlockCache.class);
+
+  // 64 MiB default memory budget
+  private static final long defaultMaxBytes = 1L << 26;
+
+  private static RemoteBlockCache defaultCache;
+
+  /** Get the process wide cache used by RemoteRandomAccessFile. */
+  public static synchronized RemoteBlockCache getDefault() {
+    if (defaultCache == null) {
+      long maxBytes = Long.parseLong(
+          System.getProperty("ucar.unidata.io.remote.blockCacheSize", String.valueOf(defaultMaxBytes)));
+      DiskCache2 diskCache = DiskCache2.fromSystemProperty("ucar.unidata.io.remote.blockCacheDir");
+      defaultCache = new RemoteBlockCache(maxBytes, diskCache);
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Replace the process wide cache. Files that are already open keep using the previous one.
+   *
+   * @param cache use this cache, or null to create a default cache on next use.
+   */
+  public static synchronized void setDefault(@Nullable RemoteBlockCache cache) {
+    if (defaultCache != null) {
+      defaultCache.invalidateAll();
+    }
+    defaultCache = cache;
+  }
+
+  /** Reads one block from the remote object on a cache miss. */
+  public interface BlockLoader {
+    byte[] load() throws IOException;
+  }
+
+  /** Identifies a block of a remote object. */
+  @Immutable
+  public static final class BlockKey {
+    private final String location;
+    private final String version;
+    private final boolean persistent;
+    private final int blockSize;
+    private final long blockNumber;
+
+    /**
+     * Constructor.
+     *
+     * @param location location of the remote object
+     * @param version version of the remote object, eg its ETag.
+     * @param persistent if the version reliably identifies the contents of the object, so that the block may be kept
+     *        on disk. Otherwise the version should be unique to the open file.
+     * @param blockSize size in bytes of all blocks of this object, except the last
+     * @param blockNumber number of this block, starting at 0
+     */
+    public BlockKey(String location, String version, boolean persistent, int blockSize, long blockNumber) {
+      this.location = location;
+      this.version = version;
+      this.persistent = persistent;
+      this.blockSize = blockSize;
+      this.blockNumber = blockNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof BlockKey)) {
+        return false;
+      }
+      BlockKey that = (BlockKey) o;
+      return blockSize == that.blockSize && blockNumber == that.blockNumber && location.equals(that.location)
+          && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(location, version, blockSize, blockNumber);
+    }
+
+    @Override
+    public String toString() {
+      return location + "[" + version + "] block " + blockNumber + " of size " + blockSize;
+    }
+  }
+
+  private final long maxBytes;
+  private final Cache<BlockKey, byte[]> memory;
+  @Nullable
+  private final DiskCache2 diskCache;
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes memory budget in bytes
+   * @param diskCache if not null, also keep versioned blocks under this cache's root directory.
+   */
+  public RemoteBlockCache(long maxBytes, @Nullable DiskCache2 diskCache) {
+    this.maxBytes = maxBytes;
+    this.memory = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+        .weigher((BlockKey key, byte[] block) -> block.length).recordStats().build();
+    this.diskCache = diskCache;
+  }
+
+  /**
+   * Get a block from the cache, or if not present, from the disk tier or the loader.
+   * Concurrent requests for the same block wait for a single load.
+   *
+   * @param key identifies the block
+   * @param loader reads the block from the remote object
+   * @return the block, which must not be modified.
+   * @throws IOException if the loader fails.
+   */
+  public byte[] get(BlockKey key, BlockLoader loader) throws IOException {
+    try {
+      return memory.get(key, () -> load(key, loader));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Error obtaining data from the remote block cache: " + key, cause);
+    }
+  }
+
+  /** Get a block if it is in memory, else null. */
+  @Nullable
+  public byte[] getIfPresent(BlockKey key) {
+    return memory.getIfPresent(key);
+  }
+
+  /** Remove from memory all blocks of the given version of an object. Blocks on disk are kept. */
+  public void invalidate(String location, String version) {
+    memory.asMap().keySet().removeIf(key -> key.location.equals(location) && key.version.equals(version));
+  }
+
+  /** Remove all blocks from memory. Blocks on disk are kept. */
+  public void invalidateAll() {
+    memory.invalidateAll();
+  }
+
+  /** The memory budget in bytes. */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Total size in bytes of the blocks in memory. */
+  public long getSizeInBytes() {
+    return memory.asMap().values().stream().mapToLong(block -> block.length).sum();
+  }
+
+  /** Memory cache statistics. Disk tier hits count as misses. */
+  public CacheStats getStats() {
+    return memory.stats();
+  }
+
+  private byte[] load(BlockKey key, BlockLoader loader) throws IOException {
+    File diskFile = (key.persistent && diskCache != null) ? getDiskFile(key) : null;
+    if (diskFile != null && diskFile.exists()) {
+      try {
+        return Files.readAllBytes(diskFile.toPath());
+      } catch (IOException e) {
+        logger.debug("Failed to read cached block {} from {}", key, diskFile, e);
+      }
+    }
+
+    byte[] block = loader.load();
+
+    if (diskFile != null) {
+      // write to a temporary file and rename, so that readers never see a partial block
+      Path target = diskFile.toPath();
+      try {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), diskFile.getName(), ".tmp");
+        Files.write(tmp, block);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        logger.debug("Failed to write cached block {} to {}", key, diskFile, e);
+      }
+    }
+    return block;
+  }
+
+  // one directory per object version, one file per block
+  private File getDiskFile(BlockKey key) {
+    String object = Hashing.sha256().hashString(key.location + '\n' + key.version, StandardCharsets.UTF_8).toString();
+    return new File(diskCache.getRootDirectory(),
+        object.substring(0, 2) + "/" + object + "/" + key.blockSize + "_" + key.blockNumber);
+  }
+}
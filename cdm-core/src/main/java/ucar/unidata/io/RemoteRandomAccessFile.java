@@ -4,36 +4,87 @@
  */
 package ucar.unidata.io;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
-import java.time.Duration;
-import java.util.concurrent.ExecutionException;
-import javax.annotation.Nonnull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** An abstract superclass for remote RandomAccessFile. */
+/**
+ * An abstract superclass for remote RandomAccessFile.
+ * <p>
+ * When the read cache is enabled, the file is read in blocks of the buffer size, which are kept in the process wide
+ * {@link RemoteBlockCache}. If the subclass can identify the version of the remote object (see
+ * {@link #getRemoteVersion()}), blocks are shared by all open files of that object and stay cached after close.
+ * <p>
+ * When the read cache is enabled, sequential access to the cache blocks is detected, and the following blocks are
+ * read ahead on a background executor. The read-ahead window starts at one block, and doubles on each sequential
+ * access up to a maximum (system property "ucar.unidata.io.remote.maxPrefetchBlocks"). Non-sequential access turns
+ * read-ahead off until sequential access is seen again.
+ */
 // not immutable because RandomAccessFile is not immutable.
 public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAccessFile implements ReadableRemoteFile {
   private static final Logger logger = LoggerFactory.getLogger(RemoteRandomAccessFile.class);
 
-  // 10 MiB default maximum loading cache size
+  // 10 MiB default read cache size; the cache is only enabled if this is at least twice the buffer size
   protected static final long defaultMaxReadCacheSize = 10485760;
   // 256 KiB default remote file buffer size
   protected static final int defaultRemoteFileBufferSize = 262144;
   // default connection timeout in milliseconds (10 seconds)
   protected static final int defaultRemoteFileTimeout = 10 * 1000;
-  // default cache time to live in milliseconds
-  private static final long defaultReadCacheTimeToLive = 30 * 1000;
+  // maximum number of cache blocks to read ahead when access is sequential, 0 to disable read-ahead
+  private static final int defaultMaxPrefetchBlocks =
+      Integer.parseInt(System.getProperty("ucar.unidata.io.remote.maxPrefetchBlocks", "8"));
+  // number of threads in the default read-ahead executor
+  private static final int prefetchThreads =
+      Integer.parseInt(System.getProperty("ucar.unidata.io.remote.prefetchThreads", "4"));
+  // readRanges() merges ranges separated by no more than this many bytes; a round trip costs more than the gap
+  private static final int defaultRemoteReadRangesMaxGap = Integer.parseInt(System
+      .getProperty("ucar.unidata.io.remote.readRanges.maxGap", String.valueOf(defaultRemoteFileBufferSize)));
 
   protected final String url;
   private final boolean readCacheEnabled;
   private final int readCacheBlockSize;
-  private final LoadingCache<Long, byte[]> readCache;
+  private final RemoteBlockCache readCache;
+  // version of the remote object used in the block cache keys, set on first use
+  private volatile String readCacheVersion;
+  private volatile boolean readCacheVersionPersistent;
+
+  // distinguishes open files of objects without a version
+  private static final AtomicLong unversionedCount = new AtomicLong();
+
+  private static Executor prefetchExecutor;
+
+  /**
+   * Set the executor used to read ahead cache blocks. Default is a fixed pool of daemon threads.
+   *
+   * @param exec use this executor, or null to use the default.
+   */
+  public static synchronized void setPrefetchExecutor(Executor exec) {
+    prefetchExecutor = exec;
+  }
+
+  private static synchronized Executor getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RemoteRandomAccessFile-prefetch-%d").build());
+    }
+    return prefetchExecutor;
+  }
+
+  private final int maxPrefetchBlocks;
+  // access pattern, guarded by this
+  private long lastBlockRead = -1; // so that reading from the start of the file is sequential
+  private int prefetchBlocks; // current read-ahead window
+  private long prefetchedThrough = -1; // last block number sent to the read-ahead executor
+  private volatile boolean closed;
 
   protected RemoteRandomAccessFile(String url, int bufferSize, long maxRemoteCacheSize) {
     super(bufferSize);
@@ -41,6 +92,7 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     this.url = url;
     file = null;
     location = url;
+    readRangesMaxGap = defaultRemoteReadRangesMaxGap;
 
     // Only enable cache if its maximum size is at least 2x the buffer size, both of which are configurable
     // at runtime
@@ -48,31 +100,49 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     if (maxRemoteCacheSize >= minimumCacheActivationSize) {
       // have each cache block hold a 1 buffer sized chunk
       this.readCacheBlockSize = bufferSize;
-      // user set max cache size in bytes
-      // guava cache set as number of objects
-      // The question here is, how many readCacheBlockSize objects would there be in maxRemoteCacheSize bytes?
-      // total max cache size in bytes / size of one cache block, rounded up.
-      long numberOfCacheBlocks = (maxRemoteCacheSize / readCacheBlockSize) + 1;
-      this.readCache = initCache(numberOfCacheBlocks, Duration.ofMillis(defaultReadCacheTimeToLive));
+      this.readCache = RemoteBlockCache.getDefault();
       readCacheEnabled = true;
+      // leave at least half of the cache size for blocks that have been asked for
+      long numberOfCacheBlocks = Math.min(maxRemoteCacheSize, readCache.getMaxBytes()) / readCacheBlockSize;
+      this.maxPrefetchBlocks = (int) Math.min(defaultMaxPrefetchBlocks, numberOfCacheBlocks / 2);
     } else {
       this.readCacheBlockSize = -1;
       readCacheEnabled = false;
       readCache = null;
+      this.maxPrefetchBlocks = 0;
     }
   }
 
-  private LoadingCache<Long, byte[]> initCache(long maximumNumberOfCacheBlocks, java.time.Duration timeToLive) {
-    CacheBuilder<Object, Object> cb =
-        CacheBuilder.newBuilder().maximumSize(maximumNumberOfCacheBlocks).expireAfterWrite(timeToLive);
-    if (debugAccess) {
-      cb.recordStats();
-    }
-    return cb.build(new CacheLoader<Long, byte[]>() {
-      public byte[] load(@Nonnull Long key) throws IOException {
-        return readRemoteCacheSizedChunk(key);
+  /**
+   * A string that changes whenever the contents of the remote object change, such as an HTTP ETag.
+   * Blocks of an object with a version are shared in the {@link RemoteBlockCache} by all open files of that object,
+   * and may be kept on disk. Default uses {@link #getLastModified()}, if known.
+   *
+   * @return the version, or null if not known.
+   */
+  @Nullable
+  protected String getRemoteVersion() {
+    long lastModified = getLastModified();
+    return lastModified > 0 ? "lastModified=" + lastModified : null;
+  }
+
+  private RemoteBlockCache.BlockKey blockKey(long cacheBlockNumber) {
+    if (readCacheVersion == null) {
+      synchronized (this) {
+        if (readCacheVersion == null) {
+          String version = getRemoteVersion();
+          readCacheVersionPersistent = (version != null);
+          // without a version, blocks are private to this open file
+          readCacheVersion = (version != null) ? version : "unversioned-" + unversionedCount.incrementAndGet();
+        }
       }
-    });
+    }
+    return new RemoteBlockCache.BlockKey(url, readCacheVersion, readCacheVersionPersistent, readCacheBlockSize,
+        cacheBlockNumber);
+  }
+
+  private byte[] getCacheBlock(long cacheBlockNumber) throws IOException {
+    return readCache.get(blockKey(cacheBlockNumber), () -> readRemoteCacheSizedChunk(cacheBlockNumber));
   }
 
   /**
@@ -113,13 +183,16 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     // file and the length of read.
     long firstCacheBlockNumber = pos / readCacheBlockSize;
     long lastCacheBlockNumber = (pos + len) / readCacheBlockSize;
+    if (maxPrefetchBlocks > 0 && len > 0) {
+      readAhead(firstCacheBlockNumber, (pos + len - 1) / readCacheBlockSize);
+    }
     int totalBytesRead = 0;
     int currentOffsetIntoBuffer = offset;
 
     // Read cacheBlock containing pos, and fill the buffer from the effective location of pos in the cache block
     // up to the smaller of these three lengths: 1. bytes remaining in the cache block, 2. bytes remaining in the file,
-    // or 3. bytes remaining in the destination array.
-    totalBytesRead += readCacheBlockPartial(pos, buff, currentOffsetIntoBuffer, true);
+    // or 3. bytes remaining in the request.
+    totalBytesRead += readCacheBlockPartial(pos, buff, currentOffsetIntoBuffer, len);
     currentOffsetIntoBuffer += totalBytesRead;
     // If we have read everything we have been asked to read, skip the rest of the read logic.
     // Otherwise, keep going.
@@ -137,85 +210,105 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
       logger.debug("Number of full cache block reads: {}", currentCacheBlockNumber - firstCacheBlockNumber - 1);
 
       // If there are still bytes to read, read last cacheBlock from the start of the cache block to the
-      // smaller of these two lengths: 1. bytes remaining in the file, or 2. bytes remaining in the destination array.
+      // smaller of these two lengths: 1. bytes remaining in the file, or 2. bytes remaining in the request.
       if (totalBytesRead < len) {
-        totalBytesRead += readCacheBlockPartial(pos + totalBytesRead, buff, currentOffsetIntoBuffer, false);
+        totalBytesRead += readCacheBlockPartial(pos + totalBytesRead, buff, currentOffsetIntoBuffer,
+            len - totalBytesRead);
       }
     }
 
     return totalBytesRead;
   }
 
-  private int readCacheBlockPartial(long pos, byte[] buff, int positionInBuffer, boolean fillForward)
-      throws IOException {
-
-    long cacheBlockNumber = pos / readCacheBlockSize;
+  /**
+   * Track the access pattern, and when access is sequential, submit the blocks following lastBlock to the read-ahead
+   * executor. The cache loads each block only once, so a read that needs a block already being read ahead waits for
+   * that load.
+   *
+   * @param firstBlock first cache block of the current read
+   * @param lastBlock last cache block of the current read
+   */
+  private synchronized void readAhead(long firstBlock, long lastBlock) {
+    if (firstBlock == lastBlockRead && lastBlock == lastBlockRead) {
+      return; // still in the same block
+    }
+    boolean sequential = (firstBlock == lastBlockRead) || (firstBlock == lastBlockRead + 1);
+    lastBlockRead = lastBlock;
+    if (!sequential) {
+      prefetchBlocks = 0;
+      prefetchedThrough = lastBlock;
+      return;
+    }
 
-    // read in the cache block
-    byte[] src;
+    prefetchBlocks = Math.min(Math.max(1, 2 * prefetchBlocks), maxPrefetchBlocks);
+    long lastBlockInFile;
     try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
+      lastBlockInFile = (length() - 1) / readCacheBlockSize;
+    } catch (IOException e) {
+      return;
     }
+    long start = Math.max(lastBlock, prefetchedThrough) + 1;
+    long end = Math.min(lastBlock + prefetchBlocks, lastBlockInFile);
+    for (long block = start; block <= end; block++) {
+      if (readCache.getIfPresent(blockKey(block)) == null) {
+        long key = block;
+        try {
+          getPrefetchExecutor().execute(() -> prefetch(key));
+        } catch (RejectedExecutionException e) {
+          logger.debug("Read-ahead of block {} rejected for {}", key, url);
+          return;
+        }
+      }
+    }
+    prefetchedThrough = Math.max(prefetchedThrough, end);
+  }
 
-    // Careful - we are doing a partial read from the cache block. The pos in the file is some offset into the cache
-    // block, so let's start by calculating the pos of the first block
-    long posCacheBlockStart = cacheBlockNumber * readCacheBlockSize;
-
-    // Now, there are two possible cases. We either need to read from this position in the cache block to the end of
-    // the cache block (i.e. "fill buffer forward from the offset into the cache block"), or read from the beginning
-    // of the cache block up to the offset in the cache block (useful if reading last cache block in a series of cache
-    // blocks). Basically,the question is where do we start reading in the cache block, and what size read do we use?
-    int offsetIntoCacheBlock;
-    int sizeToCopy;
-    if (fillForward) {
-      // .....size to copy (assuming we will want to read until the end of the cache block)
-      // .....<-------->
-      // X ---|------- X
-      // ^____^
-      // ..|
-      // Offset Into Cache Block
-      offsetIntoCacheBlock = Math.toIntExact(pos - posCacheBlockStart);
-      sizeToCopy = readCacheBlockSize - offsetIntoCacheBlock;
-    } else {
-      // size to copy
-      // <---->
-      // X ---|------- X
-      // ^
-      // Offset Into Cache Block
-      offsetIntoCacheBlock = 0;
-      sizeToCopy = Math.toIntExact(pos - posCacheBlockStart);
+  private void prefetch(long cacheBlockNumber) {
+    if (closed) {
+      return;
     }
+    try {
+      getCacheBlock(cacheBlockNumber);
+    } catch (IOException | RuntimeException e) {
+      // the block is not cached, so a read that needs it will try again and report the error
+      logger.debug("Read-ahead of block {} failed for {}", cacheBlockNumber, url, e);
+    }
+  }
+
+  /**
+   * Copy from the cache block containing pos, starting at pos, up to the end of the cache block, the end of the file,
+   * or maxBytes, whichever comes first.
+   */
+  private int readCacheBlockPartial(long pos, byte[] buff, int positionInBuffer, int maxBytes) throws IOException {
+    long cacheBlockNumber = pos / readCacheBlockSize;
+
+    // read in the cache block
+    byte[] src = getCacheBlock(cacheBlockNumber);
+
+    // pos is some offset into the cache block
+    int offsetIntoCacheBlock = Math.toIntExact(pos - cacheBlockNumber * readCacheBlockSize);
+    int sizeToCopy = readCacheBlockSize - offsetIntoCacheBlock;
 
     // We don't want to read past the end of the file, so let's check sizeToCopy against how much of the file
     // is left to read
     long toEof = length() - pos;
     sizeToCopy = Math.toIntExact(Math.min(sizeToCopy, toEof));
 
-    // Finally, check to make sure we are not reading more than buff will hold
-    sizeToCopy = Math.toIntExact(Math.min(sizeToCopy, buff.length - positionInBuffer));
+    // Finally, do not copy more than was asked for, even if buff has room for it
+    sizeToCopy = Math.max(0, Math.min(sizeToCopy, maxBytes));
 
     // Copy byte array fulfilling the request as obtained from the cache into the destination buffer
     logger.debug("Requested {} bytes from the cache block (cache block size upper limit: {} bytes.)", sizeToCopy,
         readCacheBlockSize);
     logger.debug("Actual size of the cache block: {} bytes.", src.length);
     logger.debug("Offset into cache block to begin copy: {} bytes.", offsetIntoCacheBlock);
-    logger.debug("Total size of the destination buffer: {} bytes.", buff.length);
     logger.debug("Position in buffer to place the copy from the cache: {} bytes.", positionInBuffer);
-    logger.debug("Trying to fit {} bytes from the cache into {} bytes of the destination.",
-        src.length - offsetIntoCacheBlock, buff.length - positionInBuffer);
     System.arraycopy(src, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy);
     return sizeToCopy;
   }
 
   private int readCacheBlockFull(long cacheBlockNumber, int positionInBuffer, byte[] buff) throws IOException {
-    byte[] src;
-    try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
-    }
+    byte[] src = getCacheBlock(cacheBlockNumber);
     System.arraycopy(src, 0, buff, positionInBuffer, readCacheBlockSize);
     return readCacheBlockSize;
   }
@@ -231,28 +324,63 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     int bytes = Math.toIntExact(bytesToRead);
     byte[] buffer = new byte[bytes];
 
-    readRemote(position, buffer, 0, bytes);
+    // blocks are shared and may be kept on disk, so they must be complete
+    int done = 0;
+    while (done < bytes) {
+      int n = readRemote(position + done, buffer, done, bytes - done);
+      if (n <= 0) {
+        throw new EOFException("Reading " + location + " at " + (position + done) + " file length = " + length());
+      }
+      done += n;
+    }
     return buffer;
   }
 
+  /**
+   * Merged ranges that are larger than a cache block are read with a single remote request, bypassing the read cache.
+   */
+  @Override
+  protected void readMergedRange(long pos, byte[] dst) throws IOException {
+    if (readCacheEnabled && dst.length <= readCacheBlockSize) {
+      super.readMergedRange(pos, dst);
+      return;
+    }
+    int done = 0;
+    while (done < dst.length) {
+      int n = readRemote(pos + done, dst, done, dst.length - done);
+      if (n <= 0) {
+        throw new EOFException("Reading " + location + " at " + (pos + done) + " file length = " + length());
+      }
+      done += n;
+    }
+  }
+
   @Override
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
     int n = (int) nbytes;
-    byte[] buff = new byte[n];
-    int done = read_(offset, buff, 0, n);
-    dest.write(ByteBuffer.wrap(buff));
-    return done;
+    // the pooled array may be longer than n
+    byte[] buff = BufferPool.getDefault().acquire(n, this);
+    try {
+      int done = Math.min(read_(offset, buff, 0, n), n);
+      dest.write(ByteBuffer.wrap(buff, 0, Math.max(done, 0)));
+      return done;
+    } finally {
+      BufferPool.getDefault().release(buff);
+    }
   }
 
   @Override
   public void close() throws IOException {
+    closed = true;
     closeRemote();
     super.close();
-    // clean out the cache when closing the Remote Random Access File
+    // blocks without a version can not be used by other files, so clean them out of the cache
     if (readCache != null) {
-      readCache.invalidateAll();
+      if (readCacheVersion != null && !readCacheVersionPersistent) {
+        readCache.invalidate(url, readCacheVersion);
+      }
       if (debugAccess) {
-        logger.info(readCache.stats().toString());
+        logger.info(readCache.getStats().toString());
       }
     }
   }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The positions in a compressed file where decompression can start, used by {@link CompressedRandomAccessFile}.
+ * Saved to a file, so that the compressed file does not have to be scanned each time it is opened.
+ */
+@Immutable
+final class SeekPointIndex {
+  private static final int MAGIC = 0x43444d5a; // "CDMZ"
+  private static final int VERSION = 1;
+
+  /** A position where decompression can start. */
+  @Immutable
+  static final class SeekPoint {
+    final long outPos;
+    final long inBitPos;
+    final int param; // bzip2 block size
+    private final byte[] history; // deflated
+
+    /**
+     * Constructor.
+     *
+     * @param outPos position in the uncompressed data
+     * @param inBitPos position in the compressed file, in bits
+     * @param param format specific: the block size of a bzip2 stream
+     * @param history deflated history needed to resume decompression, eg the last 32 KiB of gzip output.
+     */
+    SeekPoint(long outPos, long inBitPos, int param, byte[] history) {
+      this.outPos = outPos;
+      this.inBitPos = inBitPos;
+      this.param = param;
+      this.history = history;
+    }
+
+    /** Get the uncompressed history. */
+    byte[] getHistory() throws IOException {
+      if (history.length == 0) {
+        return history;
+      }
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(history);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(RawInflater.HISTORY_SIZE);
+        byte[] buff = new byte[RawInflater.HISTORY_SIZE];
+        while (!inflater.finished()) {
+          int n = inflater.inflate(buff);
+          if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            throw new IOException("Truncated seek point history");
+          }
+          out.write(buff, 0, n);
+        }
+        return out.toByteArray();
+      } catch (DataFormatException e) {
+        throw new IOException("Invalid seek point history", e);
+      } finally {
+        inflater.end();
+      }
+    }
+
+    /** Compress history for the constructor. */
+    static byte[] compressHistory(byte[] history) {
+      if (history.length == 0) {
+        return history;
+      }
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(history);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(history.length / 2);
+        byte[] buff = new byte[8192];
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buff);
+          out.write(buff, 0, n);
+        }
+        return out.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  final int format;
+  final long compressedLength;
+  final long lastModified;
+  final long uncompressedLength;
+  final ImmutableList<SeekPoint> points;
+
+  /**
+   * Constructor.
+   *
+   * @param format identifies the compression format
+   * @param compressedLength length of the compressed file
+   * @param lastModified last modified time of the compressed file
+   * @param uncompressedLength length of the uncompressed data
+   * @param points seek points in increasing order; the first one is at the start of the uncompressed data.
+   */
+  SeekPointIndex(int format, long compressedLength, long lastModified, long uncompressedLength,
+      List<SeekPoint> points) {
+    this.format = format;
+    this.compressedLength = compressedLength;
+    this.lastModified = lastModified;
+    this.uncompressedLength = uncompressedLength;
+    this.points = ImmutableList.copyOf(points);
+  }
+
+  /** The last seek point at or before pos. */
+  SeekPoint floor(long pos) {
+    int lo = 0;
+    int hi = points.size() - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (points.get(mid).outPos <= pos) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return points.get(lo);
+  }
+
+  /** Write to a file, replacing it atomically. */
+  void write(File file) throws IOException {
+    Path target = file.toPath();
+    Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+    try {
+      try (OutputStream os = Files.newOutputStream(tmp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(format);
+        out.writeLong(compressedLength);
+        out.writeLong(lastModified);
+        out.writeLong(uncompressedLength);
+        out.writeInt(points.size());
+        for (SeekPoint point : points) {
+          out.writeLong(point.outPos);
+          out.writeLong(point.inBitPos);
+          out.writeInt(point.param);
+          out.writeInt(point.history.length);
+          out.write(point.history);
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Read an index written by {@link #write}.
+   *
+   * @return the index, or null if the file does not exist or is not an index of the given format and file.
+   */
+  @Nullable
+  static SeekPointIndex read(File file, int format, long compressedLength, long lastModified) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    try (InputStream is = Files.newInputStream(file.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != format
+          || in.readLong() != compressedLength || in.readLong() != lastModified) {
+        return null;
+      }
+      long uncompressedLength = in.readLong();
+      int npoints = in.readInt();
+      ImmutableList.Builder<SeekPoint> points = ImmutableList.builder();
+      for (int i = 0; i < npoints; i++) {
+        long outPos = in.readLong();
+        long inBitPos = in.readLong();
+        int param = in.readInt();
+        byte[] history = new byte[in.readInt()];
+        in.readFully(history);
+        points.add(new SeekPoint(outPos, inBitPos, param, history));
+      }
+      return new SeekPointIndex(format, compressedLength, lastModified, uncompressedLength, points.build());
+    }
+  }
+}
@@ -140,6 +140,14 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
   private int storedBlockCRC, storedCombinedCRC;
   private int computedBlockCRC, computedCombinedCRC;
+  private boolean checkCombinedCRC = true;
+  private boolean singleBlock;
+
+  // positions of the current block, for random access to the uncompressed data
+  private long bsBytesRead;
+  private long outputCount;
+  private long blockBitOffset;
+  private long blockOutputOffset;
 
   int i2, count, chPrev, ch2;
   int i, tPos;
@@ -170,6 +178,83 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
    * by this object. This saves in memory allocation costs
    */
   public void setStream(InputStream zStream) {
+    resetState();
+    bsSetStream(zStream);
+    initialize();
+    if (!streamEnd) { // Handle if initialize does not detect valid bz2 stream
+      initBlock();
+      setupBlock();
+    }
+  }
+
+  /**
+   * Start decompressing at a block in the middle of a bzip2 stream, for example one found with
+   * {@link #getBlockBitOffset()}. Decompression continues to the end of the stream. Since the earlier blocks are not
+   * read, the combined CRC of the stream is not checked.
+   *
+   * @param zStream positioned at the byte containing the first bit of the block header.
+   * @param blockSize100k block size of the stream, from its header ('1' to '9').
+   * @param bitOffset number of bits before the block header in the first byte, 0 to 7.
+   */
+  public void setBlockStream(InputStream zStream, int blockSize100k, int bitOffset) {
+    setBlockStream(zStream, blockSize100k, bitOffset, false);
+  }
+
+  /**
+   * Start decompressing at a block in the middle of a bzip2 stream, optionally stopping at the end of that block.
+   * The compressed data of the block is read before this returns, so {@link #getCompressedBitsRead()} is then the
+   * position of the end of the block.
+   *
+   * @param zStream positioned at the byte containing the first bit of the block header.
+   * @param blockSize100k block size of the stream, from its header ('1' to '9').
+   * @param bitOffset number of bits before the block header in the first byte, 0 to 7.
+   * @param singleBlock if true, read() returns -1 after the last byte of the block, once its CRC is checked.
+   */
+  public void setBlockStream(InputStream zStream, int blockSize100k, int bitOffset, boolean singleBlock) {
+    resetState();
+    bsSetStream(zStream);
+    bsR(bitOffset);
+    setDecompressStructureSizes(blockSize100k);
+    checkCombinedCRC = false;
+    this.singleBlock = singleBlock;
+    initBlock();
+    if (!streamEnd) {
+      setupBlock();
+    }
+  }
+
+  /** The block size of the stream, in units of 100000 bytes. */
+  public int getBlockSize100k() {
+    return blockSize100k;
+  }
+
+  /**
+   * Position of the current block header in the compressed data, in bits from the start of the stream passed to
+   * setStream() or setBlockStream(). The current block is the one containing the next byte returned by read().
+   */
+  public long getBlockBitOffset() {
+    return blockBitOffset;
+  }
+
+  /** Position of the first byte of the current block in the uncompressed data returned by read(). */
+  public long getBlockOutputOffset() {
+    return blockOutputOffset;
+  }
+
+  /**
+   * Number of bytes read from the compressed stream. At the end of a stream this is its length, since the end of
+   * stream marker is padded to a whole byte.
+   */
+  public long getCompressedBytesRead() {
+    return bsBytesRead;
+  }
+
+  /** Number of bits used from the compressed stream. */
+  public long getCompressedBitsRead() {
+    return bsBytesRead * 8 - bsLive;
+  }
+
+  private void resetState() {
     last = 0;
     origPtr = 0;
     blockSize100k = 0;
@@ -190,13 +275,12 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     rTPos = 0;
     j2 = 0;
     z = 0;
-
-    bsSetStream(zStream);
-    initialize();
-    if (!streamEnd) { // Handle if initialize does not detect valid bz2 stream
-      initBlock();
-      setupBlock();
-    }
+    checkCombinedCRC = true;
+    singleBlock = false;
+    bsBytesRead = 0;
+    outputCount = 0;
+    blockBitOffset = 0;
+    blockOutputOffset = 0;
   }
 
 
@@ -212,6 +296,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       return -1;
     } else {
       int retChar = currentChar;
+      outputCount++;
       switch (currentState) {
         case RAND_PART_B_STATE:
           setupRandPartB();
@@ -232,6 +317,18 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     }
   }
 
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    int n = 0;
+    while (n < len && !streamEnd) {
+      b[off + n++] = (byte) read();
+    }
+    return (n == 0) ? -1 : n;
+  }
+
   private void initialize() {
     char magic3, magic4;
     magic3 = bsGetUChar();
@@ -265,6 +362,8 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       streamEnd = true;
       return;
     }
+    blockBitOffset = bsBytesRead * 8 - bsLive - 48;
+    blockOutputOffset = outputCount;
 
     storedBlockCRC = bsGetInt32();
 
@@ -291,7 +390,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
   private void complete() {
     storedCombinedCRC = bsGetInt32();
-    if (storedCombinedCRC != computedCombinedCRC) {
+    if (checkCombinedCRC && storedCombinedCRC != computedCombinedCRC) {
       // crcError();
       cadvise("CRC error: storedCombinedCRC != computedCombinedCRC");
     }
@@ -341,6 +440,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       }
       bsBuff = (bsBuff << 8) | (zzi & 0xff);
       bsLive += 8;
+      bsBytesRead++;
     }
 
     v = (bsBuff >> (bsLive - n)) & ((1 << n) - 1);
@@ -555,6 +655,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
               }
               bsBuff = (bsBuff << 8) | (zzi & 0xff);
               bsLive += 8;
+              bsBytesRead++;
             }
           }
           zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -608,6 +709,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
                     }
                     bsBuff = (bsBuff << 8) | (zzi & 0xff);
                     bsLive += 8;
+                    bsBytesRead++;
                   }
                 }
                 zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -677,16 +779,18 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
             {
               {
                 while (bsLive < 1) {
-                  int zzi;
-                  char thech = 0;
+                  int zzi = 0;
                   try {
-                    thech = (char) bsStream.read();
+                    zzi = bsStream.read();
                   } catch (IOException e) {
                     compressedStreamEOF();
                   }
-                  zzi = thech;
+                  if (zzi == -1) {
+                    compressedStreamEOF();
+                  }
                   bsBuff = (bsBuff << 8) | (zzi & 0xff);
                   bsLive += 8;
+                  bsBytesRead++;
                 }
               }
               zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -753,6 +857,10 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       mCrc.updateCRC(ch2);
     } else {
       endBlock();
+      if (singleBlock) {
+        streamEnd = true;
+        return;
+      }
       initBlock();
       setupBlock();
     }
@@ -770,6 +878,10 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       mCrc.updateCRC(ch2);
     } else {
       endBlock();
+      if (singleBlock) {
+        streamEnd = true;
+        return;
+      }
       initBlock();
       setupBlock();
     }
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * An input stream that decompresses a BZip2 file (including the "BZh" file header), decoding its blocks in parallel.
+ * <p>
+ * The blocks of a bzip2 stream are independent of each other. They are found by scanning the compressed data for the
+ * 48 bit block header, which is not byte aligned, and are decoded on a {@link ForkJoinPool}, each with its own
+ * {@link CBZip2InputStream}. The output is returned in order, and a limited number of blocks are decoded ahead of
+ * it. The block header may also occur by chance inside the compressed data of a block; such false headers are
+ * recognized because the block before them does not end there, and are skipped.
+ * <p>
+ * Concatenated streams, eg from pbzip2, are read one after the other. Data that follows the last stream and is not a
+ * bzip2 stream is ignored. Block and stream CRCs are checked.
+ * <p>
+ * Not thread safe: the stream must be read by one thread at a time.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+  private static final long BLOCK_MAGIC = 0x314159265359L;
+  private static final long END_MAGIC = 0x177245385090L;
+  private static final long MAGIC_MASK = 0xffffffffffffL;
+  // no block compresses to this much, so the input is corrupt
+  private static final int MAX_BLOCK_BYTES = 1 << 23;
+
+  private final InputStream in;
+  private final ForkJoinPool pool;
+  private final int maxPending;
+  private final Queue<CBZip2InputStream> decoders = new ConcurrentLinkedQueue<>();
+  // blocks in order, which are being decoded
+  private final ArrayDeque<Block> pending = new ArrayDeque<>();
+
+  // input, with enough look ahead to check for a stream header
+  private final byte[] inBuf = new byte[1 << 16];
+  private int inPos;
+  private int inLen;
+  private long inOffset; // position of inBuf[inPos] in the input
+
+  // scanning for block headers
+  private int streamCount;
+  private int blockSize100k; // of the current stream, 0 between streams
+  private long streamDataStart; // bit position of the end of the stream header
+  private long window; // the last 64 bits scanned
+  private long blockStart = -1; // bit position of the current block header, -1 before the first one
+  private long rejectedEnd = -1; // bit position of an end of stream marker that was followed by other data
+  private byte[] scanBuf = new byte[1 << 20]; // input from the byte containing blockStart
+  private int scanLen;
+  private long scanFirstByte; // position of scanBuf[0] in the input
+  private boolean inputDone;
+
+  // output
+  private long expectedBit = -1; // where the next block must start, -1 at the start of a stream
+  private int combinedCRC;
+  private Block current;
+  private Decoded currentData;
+  private int currentPos;
+  private long outputCount;
+  private final byte[] oneByte = new byte[1];
+  private boolean closed;
+
+  /**
+   * Decode blocks on the common fork-join pool.
+   *
+   * @param in bzip2 compressed data, starting with the "BZh" file header.
+   */
+  public ParallelBZip2InputStream(InputStream in) {
+    this(in, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param in bzip2 compressed data, starting with the "BZh" file header.
+   * @param pool decode blocks on this pool. Up to twice its parallelism blocks are decoded ahead of the output.
+   */
+  public ParallelBZip2InputStream(InputStream in, ForkJoinPool pool) {
+    this.in = in;
+    this.pool = pool;
+    this.maxPending = Math.max(2, 2 * pool.getParallelism());
+  }
+
+  @Override
+  public int read() throws IOException {
+    return (read(oneByte, 0, 1) < 0) ? -1 : oneByte[0] & 0xff;
+  }
+
+  /**
+   * Read decompressed bytes. The bytes returned by one call always come from a single block.
+   *
+   * @throws IOException if the input can not be read, or is not valid bzip2 data.
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (currentData == null || currentPos == currentData.length) {
+      if (!nextOutputBlock()) {
+        return -1;
+      }
+    }
+    int n = Math.min(len, currentData.length - currentPos);
+    System.arraycopy(currentData.out, currentPos, b, off, n);
+    currentPos += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return (currentData == null) ? 0 : currentData.length - currentPos;
+  }
+
+  /**
+   * Position of the header of the block of the bytes returned by the last read(), in bits from the start of the
+   * input. Decompression can start there with {@link CBZip2InputStream#setBlockStream}.
+   */
+  public long getBlockBitOffset() {
+    return (current == null) ? 0 : current.bitOffset;
+  }
+
+  /** Position in the uncompressed data of the first byte of the block of the bytes returned by the last read(). */
+  public long getBlockOutputOffset() {
+    return outputCount - ((currentData == null) ? 0 : currentData.length);
+  }
+
+  /** Block size, in units of 100000 bytes, of the stream of the bytes returned by the last read(). */
+  public int getBlockSize100k() {
+    return (current == null) ? 0 : current.blockSize100k;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Block block : pending) {
+      block.task.cancel(false);
+    }
+    pending.clear();
+    decoders.clear();
+    currentData = null;
+    in.close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // output
+
+  private boolean nextOutputBlock() throws IOException {
+    while (true) {
+      submitBlocks();
+      Block block = pending.poll();
+      if (block == null) {
+        return false;
+      }
+
+      Decoded decoded = null;
+      if (block.bitOffset < expectedBit) {
+        // a false block header in the data of the previous block
+        block.task.cancel(false);
+      } else {
+        if (expectedBit >= 0 && block.bitOffset != expectedBit) {
+          throw new IOException("Invalid bzip2 data before bit " + block.bitOffset);
+        }
+        decoded = getDecoded(block);
+        expectedBit = decoded.endBit;
+        combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ decoded.blockCRC;
+      }
+
+      if (block.endOfStream) {
+        if (combinedCRC != block.storedCombinedCRC) {
+          throw new IOException("bzip2 CRC error: storedCombinedCRC != computedCombinedCRC");
+        }
+        combinedCRC = 0;
+        expectedBit = -1;
+      }
+
+      if (decoded != null) {
+        current = block;
+        currentData = decoded;
+        currentPos = 0;
+        outputCount += decoded.length;
+        return true;
+      }
+    }
+  }
+
+  private void submitBlocks() throws IOException {
+    while (!inputDone && pending.size() < maxPending) {
+      Block block = scan();
+      if (block == null) {
+        inputDone = true;
+        break;
+      }
+      block.task = pool.submit(() -> decode(block, block.data));
+      pending.add(block);
+    }
+  }
+
+  private Decoded getDecoded(Block block) throws IOException {
+    try {
+      return block.task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decoding bzip2 block");
+    } catch (ExecutionException e) {
+      // a false block header may have cut the block short, so try again with the data of the following blocks
+      byte[] data = block.data;
+      for (Block next : pending) {
+        data = append(data, block.firstByte, next);
+        try {
+          return decode(block, data);
+        } catch (RuntimeException ignored) {
+          // try with more data
+        }
+      }
+      throw new IOException("Failed to decode bzip2 block at bit " + block.bitOffset, e.getCause());
+    }
+  }
+
+  // runs on the pool
+  private Decoded decode(Block block, byte[] data) {
+    CBZip2InputStream decoder = decoders.poll();
+    if (decoder == null) {
+      decoder = new CBZip2InputStream();
+    }
+    try {
+      int bitOffset = (int) (block.bitOffset - block.firstByte * 8);
+      decoder.setBlockStream(new ByteArrayInputStream(data), block.blockSize100k, bitOffset, true);
+      long endBit = block.firstByte * 8 + decoder.getCompressedBitsRead();
+
+      byte[] out = new byte[block.blockSize100k * BZip2Constants.baseBlockSize];
+      int n = 0;
+      while (true) {
+        if (n == out.length) {
+          out = Arrays.copyOf(out, 2 * n);
+        }
+        int count = decoder.read(out, n, out.length - n);
+        if (count < 0) {
+          break;
+        }
+        n += count;
+      }
+      return new Decoded(out, n, endBit, getInt(data, bitOffset + 48));
+    } finally {
+      decoders.add(decoder);
+    }
+  }
+
+  // the data of block followed by the data of next, which may share a byte
+  private static byte[] append(byte[] data, long firstByte, Block next) {
+    int overlap = (int) (firstByte + data.length - next.firstByte);
+    byte[] result = Arrays.copyOf(data, data.length + next.data.length - overlap);
+    System.arraycopy(next.data, overlap, result, data.length, next.data.length - overlap);
+    return result;
+  }
+
+  private static int getInt(byte[] data, long bitPos) {
+    int result = 0;
+    for (int i = 0; i < 32; i++) {
+      long pos = bitPos + i;
+      result = (result << 1) | ((data[(int) (pos >>> 3)] >> (7 - (int) (pos & 7))) & 1);
+    }
+    return result;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // scanning
+
+  // the next block whose end is known, or null at the end of the input
+  private Block scan() throws IOException {
+    while (true) {
+      if (blockSize100k == 0) {
+        if (!startStream()) {
+          return null;
+        }
+        continue;
+      }
+
+      int b = nextByte();
+      if (b < 0) {
+        return endOfInput();
+      }
+      if (scanLen == scanBuf.length) {
+        if (scanLen >= MAX_BLOCK_BYTES) {
+          throw new IOException("Invalid bzip2 data at byte " + scanFirstByte);
+        }
+        scanBuf = Arrays.copyOf(scanBuf, 2 * scanLen);
+      }
+      scanBuf[scanLen++] = (byte) b;
+      window = (window << 8) | b;
+
+      for (int shift = 7; shift >= 0; shift--) {
+        long bits = (window >>> shift) & MAGIC_MASK;
+        if (bits != BLOCK_MAGIC && bits != END_MAGIC) {
+          continue;
+        }
+        long magicStart = inOffset * 8 - shift - 48;
+        if (magicStart < streamDataStart) {
+          continue;
+        }
+
+        if (bits == BLOCK_MAGIC) {
+          Block done = (blockStart >= 0) ? completeBlock(magicStart) : null;
+          blockStart = magicStart;
+          if (done != null) {
+            return done;
+          }
+        } else if (isStreamEnd(magicStart)) {
+          Block done = endStream(magicStart);
+          if (done != null) {
+            return done;
+          }
+        } else {
+          rejectedEnd = magicStart;
+        }
+        break;
+      }
+    }
+  }
+
+  private boolean startStream() throws IOException {
+    if (!fill(4) || !isStreamHeader(inPos)) {
+      if (streamCount == 0) {
+        throw new IOException("Not a bzip2 stream");
+      }
+      return false;
+    }
+    blockSize100k = inBuf[inPos + 3] - '0';
+    inPos += 4;
+    inOffset += 4;
+    streamCount++;
+    streamDataStart = inOffset * 8;
+    window = 0;
+    blockStart = -1;
+    rejectedEnd = -1;
+    scanLen = 0;
+    scanFirstByte = inOffset;
+    return true;
+  }
+
+  private boolean isStreamHeader(int pos) {
+    return inBuf[pos] == 'B' && inBuf[pos + 1] == 'Z' && inBuf[pos + 2] == 'h' && inBuf[pos + 3] >= '1'
+        && inBuf[pos + 3] <= '9';
+  }
+
+  // An end of stream marker must be followed by the end of the input or another stream, else it is false
+  private boolean isStreamEnd(long magicStart) throws IOException {
+    // the stream CRC follows the marker, padded to a byte
+    int trailer = (int) ((magicStart + 80 + 7) / 8 - inOffset);
+    if (!fill(trailer)) {
+      return false;
+    }
+    if (!fill(trailer + 1)) {
+      return true;
+    }
+    return fill(trailer + 4) && isStreamHeader(inPos + trailer);
+  }
+
+  private Block endStream(long magicStart) throws IOException {
+    Block done = (blockStart >= 0) ? completeBlock(magicStart) : null;
+    while (scanFirstByte + scanLen < (magicStart + 80 + 7) / 8) {
+      if (scanLen == scanBuf.length) {
+        scanBuf = Arrays.copyOf(scanBuf, 2 * scanLen);
+      }
+      scanBuf[scanLen++] = (byte) nextByte();
+    }
+    if (done != null) {
+      done.endOfStream = true;
+      done.storedCombinedCRC = getInt(scanBuf, magicStart + 48 - scanFirstByte * 8);
+    }
+    blockSize100k = 0;
+    return done;
+  }
+
+  private Block endOfInput() throws IOException {
+    if (blockStart >= 0 && rejectedEnd > blockStart) {
+      // the stream ended there, followed by data that is not a bzip2 stream
+      inputDone = true;
+      return endStream(rejectedEnd);
+    }
+    throw new EOFException("Unexpected end of bzip2 stream");
+  }
+
+  // the current block ends at the bit position end
+  private Block completeBlock(long end) {
+    int from = (int) ((blockStart >>> 3) - scanFirstByte);
+    int to = (int) (((end + 7) >>> 3) - scanFirstByte);
+    Block block = new Block(blockStart, blockSize100k, scanFirstByte + from, Arrays.copyOfRange(scanBuf, from, to));
+
+    // keep the byte containing the start of the next block
+    int keep = (int) ((end >>> 3) - scanFirstByte);
+    System.arraycopy(scanBuf, keep, scanBuf, 0, scanLen - keep);
+    scanLen -= keep;
+    scanFirstByte += keep;
+    blockStart = -1;
+    return block;
+  }
+
+  private int nextByte() throws IOException {
+    if (inPos == inLen && !fill(1)) {
+      return -1;
+    }
+    inOffset++;
+    return inBuf[inPos++] & 0xff;
+  }
+
+  // make at least n bytes available in inBuf, return false if the input ends first
+  private boolean fill(int n) throws IOException {
+    if (inLen - inPos >= n) {
+      return true;
+    }
+    System.arraycopy(inBuf, inPos, inBuf, 0, inLen - inPos);
+    inLen -= inPos;
+    inPos = 0;
+    while (inLen < n) {
+      int count = in.read(inBuf, inLen, inBuf.length - inLen);
+      if (count < 0) {
+        return false;
+      }
+      inLen += count;
+    }
+    return true;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static class Block {
+    final long bitOffset; // of the block header in the input
+    final int blockSize100k;
+    final long firstByte; // position of data[0] in the input
+    final byte[] data; // from the byte containing the header to the byte containing the start of the next block
+    boolean endOfStream;
+    int storedCombinedCRC;
+    ForkJoinTask<Decoded> task;
+
+    Block(long bitOffset, int blockSize100k, long firstByte, byte[] data) {
+      this.bitOffset = bitOffset;
+      this.blockSize100k = blockSize100k;
+      this.firstByte = firstByte;
+      this.data = data;
+    }
+  }
+
+  private static class Decoded {
+    final byte[] out;
+    final int length;
+    final long endBit; // position in the input of the end of the block
+    final int blockCRC;
+
+    Decoded(byte[] out, int length, long endBit, int blockCRC) {
+      this.out = out;
+      this.length = length;
+      this.endBit = endBit;
+      this.blockCRC = blockCRC;
+    }
+  }
+}
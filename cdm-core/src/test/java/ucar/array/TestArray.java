@@ -10,6 +10,10 @@ import static org.junit.Assert.assertThrows;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.primitives.Doubles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.stream.StreamSupport;
 
 /** Test {@link Array} */
@@ -77,6 +81,58 @@ public class TestArray {
     assertThat(sum2).isEqualTo(21.0);
   }
 
+  @Test
+  public void testPrimitiveAccess() {
+    assertThat(array.getDouble(0, 1, 2)).isEqualTo(6.0);
+    assertThat(array.getFloat(0, 1, 2)).isEqualTo(6.0f);
+    Index idx = array.getIndex();
+    assertThat(array.getDouble(idx.set(0, 1, 0))).isEqualTo(4.0);
+    assertThat(array.getFloat(idx.set(0, 0, 1))).isEqualTo(2.0f);
+
+    Array<Short> sarray = Arrays.factory(ArrayType.SHORT, new int[] {2}, new short[] {-1, 7});
+    assertThat(sarray.getDouble(0)).isEqualTo(-1.0);
+    assertThat(sarray.getFloat(1)).isEqualTo(7.0f);
+
+    Array<String> strings = Arrays.factory(ArrayType.STRING, new int[] {1}, new String[] {"one"});
+    assertThrows(IllegalArgumentException.class, () -> strings.getDouble(0));
+  }
+
+  @Test
+  public void testPrimitiveIteration() throws InvalidRangeException {
+    checkPrimitiveIteration(array, new double[] {1, 2, 3, 4, 5, 6});
+    checkPrimitiveIteration(Arrays.flip(array, 2), new double[] {3, 2, 1, 6, 5, 4});
+    checkPrimitiveIteration(Arrays.transpose(array, 0, 2), new double[] {1, 4, 2, 5, 3, 6});
+    Section strided = Section.builder().appendRange(null).appendRange(null).appendRange(new Range(0, 2, 2)).build();
+    checkPrimitiveIteration(Arrays.section(array, strided), new double[] {1, 3, 4, 6});
+
+    Array<Integer> iarray = Arrays.factory(ArrayType.INT, new int[] {2, 3}, new int[] {1, 2, 3, 4, 5, 6});
+    checkPrimitiveIteration(iarray, new double[] {1, 2, 3, 4, 5, 6});
+    checkPrimitiveIteration(Arrays.flip(iarray, 0), new double[] {4, 5, 6, 1, 2, 3});
+  }
+
+  private void checkPrimitiveIteration(Array<?> data, double[] expected) {
+    PrimitiveIterator.OfDouble iter = data.doubleIterator();
+    int count = 0;
+    while (iter.hasNext()) {
+      assertThat(iter.nextDouble()).isEqualTo(expected[count++]);
+    }
+    assertThat(count).isEqualTo(expected.length);
+
+    List<Double> visited = new ArrayList<>();
+    data.forEachDouble(visited::add);
+    assertThat(Doubles.toArray(visited)).isEqualTo(expected);
+
+    double[] dest = new double[expected.length + 1];
+    data.copyTo(dest, 1);
+    assertThat(java.util.Arrays.copyOfRange(dest, 1, dest.length)).isEqualTo(expected);
+
+    float[] fdest = new float[expected.length];
+    data.copyTo(fdest, 0);
+    for (int i = 0; i < expected.length; i++) {
+      assertThat(fdest[i]).isEqualTo((float) expected[i]);
+    }
+  }
+
   @Test
   public void testException() {
     assertThrows(IllegalArgumentException.class, () -> array.get(99, 1, 1));
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.After;
+import org.junit.Test;
+
+/** Test {@link ArrayStatistics} */
+public class TestArrayStatistics {
+  private static final IsMissingEvaluator missing999 = new IsMissingEvaluator() {
+    @Override
+    public boolean hasMissing() {
+      return true;
+    }
+
+    @Override
+    public boolean isMissing(double val) {
+      return val == -999;
+    }
+  };
+
+  @After
+  public void reset() {
+    ArrayStatistics.setParallelThreshold(1 << 20);
+  }
+
+  @Test
+  public void testBasics() {
+    Array<Double> array =
+        Arrays.factory(ArrayType.DOUBLE, new int[] {2, 4}, new double[] {3, -999, 1, Double.NaN, 7, 5, 2, 6});
+    ArrayStatistics stats = ArrayStatistics.compute(array, null);
+    assertThat(stats.count()).isEqualTo(7L);
+    assertThat(stats.missingCount()).isEqualTo(1L);
+    assertThat(stats.min()).isEqualTo(-999.0);
+    assertThat(stats.max()).isEqualTo(7.0);
+    assertThat(stats.histogram()).isNull();
+
+    stats = ArrayStatistics.compute(array, missing999);
+    assertThat(stats.count()).isEqualTo(6L);
+    assertThat(stats.missingCount()).isEqualTo(2L);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(1.0, 7.0));
+    assertThat(stats.sum()).isEqualTo(24.0);
+    assertThat(stats.mean()).isEqualTo(4.0);
+    assertThat(Arrays.getMinMaxSkipMissingData(array, missing999)).isEqualTo(MinMax.create(1.0, 7.0));
+  }
+
+  @Test
+  public void testHistogram() {
+    Array<Integer> array = Arrays.factory(ArrayType.INT, new int[] {8}, new int[] {-5, 0, 1, 2, 5, 9, 10, 99});
+    ArrayStatistics stats = ArrayStatistics.compute(array, null, 0, 10, 5);
+    // out of range values are counted in the end bins
+    assertThat(stats.histogram()).isEqualTo(new long[] {3, 1, 1, 0, 3});
+    assertThat(stats.histogramMin()).isEqualTo(0.0);
+    assertThat(stats.histogramMax()).isEqualTo(10.0);
+    assertThat(stats.sum()).isEqualTo(121.0);
+
+    assertThrows(IllegalArgumentException.class, () -> ArrayStatistics.compute(array, null, 1, 1, 5));
+    assertThrows(IllegalArgumentException.class, () -> ArrayStatistics.compute(array, null, 0, 1, 0));
+  }
+
+  @Test
+  public void testUnsigned() throws InvalidRangeException {
+    Array<Byte> ubytes = Arrays.factory(ArrayType.UBYTE, new int[] {4}, new byte[] {-1, 0, 1, -128});
+    ArrayStatistics stats = ArrayStatistics.compute(ubytes, null);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(0.0, 255.0));
+    assertThat(stats.sum()).isEqualTo(384.0);
+    assertThat(Arrays.sumDouble(ubytes)).isEqualTo(384.0);
+    // a view, read through the index
+    stats = ArrayStatistics.compute(Arrays.section(ubytes, new Section("0:3:3")), null);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(128.0, 255.0));
+
+    Array<Short> ushorts = Arrays.factory(ArrayType.USHORT, new int[] {2}, new short[] {-1, 2});
+    assertThat(ArrayStatistics.compute(ushorts, null).max()).isEqualTo(65535.0);
+    Array<Integer> uints = Arrays.factory(ArrayType.UINT, new int[] {2}, new int[] {-1, 2});
+    assertThat(ArrayStatistics.compute(uints, null).max()).isEqualTo(4294967295.0);
+    Array<Long> ulongs = Arrays.factory(ArrayType.ULONG, new int[] {2}, new long[] {Long.MIN_VALUE, 2});
+    assertThat(ArrayStatistics.compute(ulongs, null).max()).isEqualTo(0x1.0p63);
+
+    // signed types are not widened
+    Array<Byte> bytes = Arrays.factory(ArrayType.BYTE, new int[] {2}, new byte[] {-1, 1});
+    assertThat(ArrayStatistics.compute(bytes, null).min()).isEqualTo(-1.0);
+  }
+
+  @Test
+  public void testSumDouble() {
+    Array<Double> array = Arrays.factory(ArrayType.DOUBLE, new int[] {3}, new double[] {1, 2, 3});
+    assertThat(Arrays.sumDouble(array)).isEqualTo(6.0);
+    array = Arrays.factory(ArrayType.DOUBLE, new int[] {3}, new double[] {1, Double.NaN, 3});
+    assertThat(Double.isNaN(Arrays.sumDouble(array))).isTrue();
+  }
+
+  @Test
+  public void testEqual() {
+    int n = 200_001;
+    double[] dvals = new double[n];
+    float[] fvals = new float[n];
+    for (int i = 0; i < n; i++) {
+      dvals[i] = i * 0.1;
+      fvals[i] = (float) (i * 0.1);
+    }
+    Array<Double> doubles = Arrays.factory(ArrayType.DOUBLE, new int[] {n}, dvals);
+    Array<Float> floats = Arrays.factory(ArrayType.FLOAT, new int[] {n}, fvals);
+    for (long threshold : new long[] {1, Long.MAX_VALUE}) {
+      ArrayStatistics.setParallelThreshold(threshold);
+      assertThat(Arrays.equalDoubles(doubles, Arrays.toDouble(doubles))).isTrue();
+      assertThat(Arrays.equalFloats(floats, Arrays.factory(ArrayType.FLOAT, new int[] {n}, fvals.clone()))).isTrue();
+
+      double[] dother = dvals.clone();
+      dother[n - 1] += 1;
+      assertThat(Arrays.equalDoubles(doubles, Arrays.factory(ArrayType.DOUBLE, new int[] {n}, dother))).isFalse();
+      float[] fother = fvals.clone();
+      fother[n / 2] += 1;
+      assertThat(Arrays.equalFloats(floats, Arrays.factory(ArrayType.FLOAT, new int[] {n}, fother))).isFalse();
+    }
+    assertThat(Arrays.equalDoubles(doubles, Arrays.factory(ArrayType.DOUBLE, new int[] {1}, new double[1])))
+        .isFalse();
+  }
+
+  @Test
+  public void testEqualViews() throws InvalidRangeException {
+    Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {2, 3}, new float[] {1, 2, 3, 4, 5, 6});
+    Array<Float> flipped = Arrays.flip(Arrays.flip(array, 1), 1);
+    assertThat(Arrays.equalFloats(array, flipped)).isTrue();
+    assertThat(Arrays.equalFloats(array, Arrays.flip(array, 1))).isFalse();
+    Array<Float> row = Arrays.section(array, new Section("1, :"));
+    assertThat(Arrays.equalFloats(row, Arrays.factory(ArrayType.FLOAT, new int[] {3}, new float[] {4, 5, 6})))
+        .isTrue();
+  }
+
+  @Test
+  public void testViews() throws InvalidRangeException {
+    float[] vals = new float[] {1, 2, 3, 4, 5, 6};
+    Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {2, 3}, vals);
+    Array<Float> section = Arrays.section(array, new Section("1, 0:2:2"));
+    ArrayStatistics stats = ArrayStatistics.compute(section, null);
+    assertThat(stats.count()).isEqualTo(2L);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(4.0, 6.0));
+
+    stats = ArrayStatistics.compute(Arrays.flip(array, 1), null);
+    assertThat(stats.sum()).isEqualTo(21.0);
+  }
+
+  @Test
+  public void testNoValidValues() {
+    Array<Double> array = Arrays.factory(ArrayType.DOUBLE, new int[] {2}, new double[] {Double.NaN, -999});
+    ArrayStatistics stats = ArrayStatistics.compute(array, missing999);
+    assertThat(stats.count()).isEqualTo(0L);
+    assertThat(Double.isNaN(stats.min())).isTrue();
+    assertThat(Double.isNaN(stats.mean())).isTrue();
+    assertThat(Arrays.getMinMaxSkipMissingData(array, missing999))
+        .isEqualTo(MinMax.create(Double.MAX_VALUE, -Double.MAX_VALUE));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> ArrayStatistics.compute(Arrays.factory(ArrayType.STRING, new int[] {1}, new String[] {"1"}), null));
+  }
+
+  @Test
+  public void testParallel() {
+    int n = 300_001;
+    float[] vals = new float[n];
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      vals[i] = (i % 1000) - 100;
+      sum += vals[i];
+    }
+    vals[12345] = Float.NaN;
+    sum -= 245;
+    Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {n}, vals);
+
+    ArrayStatistics.setParallelThreshold(1);
+    ArrayStatistics stats = ArrayStatistics.compute(array, null, -100, 900, 10);
+    assertThat(stats.count()).isEqualTo(n - 1L);
+    assertThat(stats.missingCount()).isEqualTo(1L);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(-100.0, 899.0));
+    assertThat(stats.sum()).isEqualTo(sum);
+    long total = 0;
+    for (long count : stats.histogram()) {
+      total += count;
+    }
+    assertThat(total).isEqualTo(n - 1L);
+
+    ArrayStatistics.setParallelThreshold(Long.MAX_VALUE);
+    ArrayStatistics serial = ArrayStatistics.compute(array, null);
+    assertThat(serial.count()).isEqualTo(stats.count());
+    assertThat(serial.minMax()).isEqualTo(stats.minMax());
+    assertThat(serial.sum()).isEqualTo(sum);
+  }
+
+  @Test
+  public void testPaged() {
+    StoragePaged<?> storage = StoragePaged.create(ArrayType.DOUBLE, 100, 4);
+    for (int i = 0; i < storage.getPageCount(); i++) {
+      double[] page = (double[]) storage.getPage(i);
+      for (int j = 0; j < page.length; j++) {
+        page[j] = i * storage.getPageSize() + j;
+      }
+    }
+    Array<Double> array = Arrays.factory(ArrayType.DOUBLE, new int[] {10, 10}, storage);
+    ArrayStatistics stats = ArrayStatistics.compute(array, null);
+    assertThat(stats.count()).isEqualTo(100L);
+    assertThat(stats.minMax()).isEqualTo(MinMax.create(0.0, 99.0));
+    assertThat(stats.mean()).isEqualTo(49.5);
+  }
+}
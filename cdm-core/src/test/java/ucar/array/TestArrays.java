@@ -317,6 +317,31 @@ public class TestArrays {
     assertThat(Arrays.sumDouble(darray2)).isEqualTo(21);
   }
 
+  @Test
+  public void testViews() throws InvalidRangeException {
+    Array<Double> flip = Arrays.flip(array, 2);
+    assertThat(Arrays.sumDouble(flip)).isEqualTo(21.0);
+    assertThat((double[]) Arrays.copyPrimitiveArray(flip)).isEqualTo(new double[] {3, 2, 1, 6, 5, 4});
+
+    int[] shape = new int[] {2, 3};
+    Array<Integer> iarray = Arrays.factory(ArrayType.INT, shape, new int[] {1, 2, 3, 4, 5, 6});
+    Section strided = Section.builder().appendRange(null).appendRange(new Range(0, 2, 2)).build();
+    Array<Integer> section = Arrays.section(iarray, strided);
+    assertThat(Arrays.sumDouble(section)).isEqualTo(14.0);
+    assertThat((int[]) Arrays.copyPrimitiveArray(section)).isEqualTo(new int[] {1, 3, 4, 6});
+
+    Array<Double> darray = Arrays.toDouble(Arrays.flip(iarray, 0));
+    assertThat(darray.getShape()).isEqualTo(shape);
+    assertThat((double[]) Arrays.copyPrimitiveArray(darray)).isEqualTo(new double[] {4, 5, 6, 1, 2, 3});
+
+    MinMax minmax = Arrays.getMinMaxSkipMissingData(section, null);
+    assertThat(minmax.min()).isEqualTo(1.0);
+    assertThat(minmax.max()).isEqualTo(6.0);
+
+    Array<Integer> reversed = Arrays.factory(ArrayType.INT, shape, new int[] {3, 2, 1, 6, 5, 4});
+    assertThat(Arrays.equalNumbers((Array) Arrays.flip(iarray, 1), (Array) reversed)).isTrue();
+  }
+
   @Test
   public void testMinMaxSkipMissingDataDouble() {
     MinMax minmax = Arrays.getMinMaxSkipMissingData(array, null);
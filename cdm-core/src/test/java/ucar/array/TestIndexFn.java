@@ -7,6 +7,7 @@ package ucar.array;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
+import java.util.PrimitiveIterator;
 import org.junit.Test;
 
 /** Test {@link IndexFn} */
@@ -63,4 +64,26 @@ public class TestIndexFn {
     assertThat(subset.length()).isEqualTo(5);
   }
 
+  @Test
+  public void testLongIndex() {
+    // more elements than fit in an int
+    int[] shape = new int[] {1 << 16, 1 << 16};
+    IndexFn index = IndexFn.builder(shape).build();
+    long last = (1L << 32) - 1;
+    assertThat(index.length()).isEqualTo(last + 1);
+    assertThat(index.get(65535, 65535)).isEqualTo(last);
+    assertThat(index.odometer(last)).isEqualTo(new int[] {65535, 65535});
+
+    PrimitiveIterator.OfLong iter = index.iterator(last - 1, 2);
+    assertThat(iter.nextLong()).isEqualTo(last - 1);
+    assertThat(iter.nextLong()).isEqualTo(last);
+    assertThat(iter.hasNext()).isFalse();
+
+    IndexFn flip = index.flip(0);
+    assertThat(flip.get(0, 0)).isEqualTo(last + 1 - 65536);
+    iter = flip.iterator(last - 1, 2);
+    assertThat(iter.nextLong()).isEqualTo(65534L);
+    assertThat(iter.nextLong()).isEqualTo(65535L);
+  }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+/** Test {@link StorageBB} */
+public class TestStorageBB {
+
+  private static ByteBuffer floats(ByteOrder order, float... vals) {
+    ByteBuffer bb = ByteBuffer.allocateDirect(4 * vals.length).order(order);
+    for (float val : vals) {
+      bb.putFloat(val);
+    }
+    bb.flip();
+    return bb;
+  }
+
+  @Test
+  public void testFactory() {
+    for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      ByteBuffer bb = floats(order, 1, 2, 3, 4, 5, 6);
+      Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {2, 3}, bb);
+      assertThat(array.get(1, 2)).isEqualTo(6.0f);
+      assertThat(array.getDouble(0, 1)).isEqualTo(2.0);
+      assertThat((float[]) Arrays.copyPrimitiveArray(array)).isEqualTo(new float[] {1, 2, 3, 4, 5, 6});
+      assertThat(Arrays.sumDouble(array)).isEqualTo(21.0);
+
+      // views
+      Array<Float> flip = Arrays.flip(array, 1);
+      assertThat((float[]) Arrays.copyPrimitiveArray(flip)).isEqualTo(new float[] {3, 2, 1, 6, 5, 4});
+      assertThat(Arrays.getByteBuffer(flip)).isNull();
+
+      // the ByteBuffer is not changed
+      assertThat(bb.position()).isEqualTo(0);
+      assertThat(bb.order()).isEqualTo(order);
+    }
+  }
+
+  @Test
+  public void testTypes() {
+    ByteBuffer bb = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    bb.putShort((short) -2).putShort((short) 3).putInt(7).putLong(-9);
+    bb.flip();
+
+    Array<Short> shorts = Arrays.factory(ArrayType.SHORT, new int[] {2}, bb);
+    assertThat(shorts.get(0)).isEqualTo((short) -2);
+    assertThat(shorts.getFloat(1)).isEqualTo(3.0f);
+
+    bb.position(4);
+    Array<Integer> ints = Arrays.factory(ArrayType.INT, new int[] {1}, bb);
+    assertThat(ints.get(0)).isEqualTo(7);
+
+    bb.position(8);
+    Array<Long> longs = Arrays.factory(ArrayType.LONG, new int[] {1}, bb);
+    assertThat(longs.getDouble(0)).isEqualTo(-9.0);
+
+    bb.position(0);
+    Array<Byte> bytes = Arrays.factory(ArrayType.BYTE, new int[] {4}, bb);
+    assertThat((byte[]) Arrays.copyPrimitiveArray(bytes)).isEqualTo(new byte[] {-2, -1, 3, 0});
+
+    Array<Double> doubles = Arrays.factory(ArrayType.DOUBLE, new int[] {2}, bb);
+    assertThat(doubles.getDouble(1)).isEqualTo(Double.longBitsToDouble(-9));
+
+    assertThrows(IllegalArgumentException.class, () -> Arrays.factory(ArrayType.STRING, new int[] {1}, bb));
+    assertThrows(IllegalArgumentException.class, () -> Arrays.factory(ArrayType.DOUBLE, new int[] {3}, bb));
+  }
+
+  @Test
+  public void testGetByteBuffer() {
+    ByteBuffer bb = floats(ByteOrder.LITTLE_ENDIAN, 1, 2, 3, 4, 5, 6, 7);
+    Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {3, 2}, bb);
+
+    ByteBuffer view = Arrays.getByteBuffer(array);
+    assertThat(view).isNotNull();
+    assertThat(view.isDirect()).isTrue();
+    assertThat(view.isReadOnly()).isTrue();
+    assertThat(view.order()).isEqualTo(ByteOrder.LITTLE_ENDIAN);
+    assertThat(view.remaining()).isEqualTo(24);
+    assertThat(view.getFloat(20)).isEqualTo(6.0f);
+
+    // not copied
+    bb.putFloat(0, 99);
+    assertThat(array.get(0, 0)).isEqualTo(99.0f);
+
+    assertThat(Arrays.getByteBuffer(Arrays.factory(ArrayType.FLOAT, new int[] {1}, new float[] {1}))).isNull();
+  }
+
+  @Test
+  public void testStorage() {
+    StorageBB<?> storage = StorageBB.create(ArrayType.UINT, ByteBuffer.allocate(10), ByteOrder.BIG_ENDIAN);
+    assertThat(storage.length()).isEqualTo(2);
+    assertThat(storage.isDirect()).isFalse();
+    assertThat(storage.getByteOrder()).isEqualTo(ByteOrder.BIG_ENDIAN);
+    assertThat(storage.getByteBuffer().remaining()).isEqualTo(8);
+
+    int count = 0;
+    for (Object val : storage) {
+      assertThat(val).isEqualTo(0);
+      count++;
+    }
+    assertThat(count).isEqualTo(2);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.array;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+/** Test {@link StoragePaged}, using small pages. */
+public class TestStoragePaged {
+
+  private static StoragePaged<?> floats(int n, int pageShift) {
+    StoragePaged<?> storage = StoragePaged.create(ArrayType.FLOAT, n, pageShift);
+    for (int i = 0; i < storage.getPageCount(); i++) {
+      float[] page = (float[]) storage.getPage(i);
+      for (int j = 0; j < page.length; j++) {
+        page[j] = i * storage.getPageSize() + j;
+      }
+    }
+    return storage;
+  }
+
+  @Test
+  public void testPages() {
+    StoragePaged<?> storage = floats(20, 3);
+    assertThat(storage.length()).isEqualTo(20L);
+    assertThat(storage.getPageSize()).isEqualTo(8);
+    assertThat(storage.getPageCount()).isEqualTo(3);
+    assertThat(((float[]) storage.getPage(2)).length).isEqualTo(4);
+
+    assertThat(storage.get(19)).isEqualTo(19.0f);
+    assertThat(storage.getDouble(8)).isEqualTo(8.0);
+    assertThat(storage.getFloat(7)).isEqualTo(7.0f);
+
+    // across pages
+    float[] dest = new float[12];
+    storage.arraycopy(5, dest, 1, 11);
+    for (int i = 0; i < 11; i++) {
+      assertThat(dest[i + 1]).isEqualTo(5.0f + i);
+    }
+
+    int count = 0;
+    for (Object val : storage) {
+      assertThat(val).isEqualTo((float) count++);
+    }
+    assertThat(count).isEqualTo(20);
+
+    storage.fill(-1);
+    assertThat(storage.get(13)).isEqualTo(-1.0f);
+  }
+
+  @Test
+  public void testArray() throws InvalidRangeException {
+    StoragePaged<?> storage = floats(24, 2);
+    Array<Float> array = Arrays.factory(ArrayType.FLOAT, new int[] {4, 6}, storage);
+    assertThat(array.get(3, 5)).isEqualTo(23.0f);
+    assertThat(array.getDouble(1, 1)).isEqualTo(7.0);
+    assertThat(Arrays.sumDouble(array)).isEqualTo(276.0);
+
+    float[] expected = new float[24];
+    for (int i = 0; i < 24; i++) {
+      expected[i] = i;
+    }
+    assertThat((float[]) Arrays.copyPrimitiveArray(array)).isEqualTo(expected);
+
+    // views
+    Array<Float> flip = Arrays.flip(array, 0);
+    assertThat(flip.get(0, 0)).isEqualTo(18.0f);
+    Array<Float> slice = Arrays.slice(array, 0, 2);
+    assertThat((float[]) Arrays.copyPrimitiveArray(slice)).isEqualTo(new float[] {12, 13, 14, 15, 16, 17});
+  }
+
+  @Test
+  public void testCopyFrom() {
+    StoragePaged<?> storage = StoragePaged.create(ArrayType.INT, 10, 2);
+    storage.copyFrom(Arrays.factory(ArrayType.INT, new int[] {3}, new int[] {1, 2, 3}), 0);
+    storage.copyFrom(Arrays.factory(ArrayType.INT, new int[] {7}, new int[] {4, 5, 6, 7, 8, 9, 10}), 3);
+
+    Array<Integer> array = Arrays.factory(ArrayType.UINT, new int[] {10}, storage);
+    assertThat((int[]) Arrays.copyPrimitiveArray(array)).isEqualTo(new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+  }
+
+  @Test
+  public void testTypes() {
+    assertThat(StoragePaged.create(ArrayType.CHAR, 3, 1).getPage(0)).isInstanceOf(byte[].class);
+    assertThat(StoragePaged.create(ArrayType.USHORT, 3, 1).getPage(1)).isInstanceOf(short[].class);
+    assertThat(StoragePaged.create(ArrayType.ULONG, 3, 1).getPage(0)).isInstanceOf(long[].class);
+    assertThat(StoragePaged.create(ArrayType.DOUBLE, 3, 1).getPage(1)).isInstanceOf(double[].class);
+
+    assertThat(StoragePaged.isNeeded(1000)).isFalse();
+    assertThat(StoragePaged.isNeeded(1L << 31)).isTrue();
+
+    assertThrows(IllegalArgumentException.class, () -> StoragePaged.create(ArrayType.STRING, 3));
+    assertThrows(IllegalArgumentException.class, () -> StoragePaged.create(ArrayType.FLOAT, 3, 31));
+  }
+}
@@ -9,6 +9,7 @@ import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 
 /** Test {@link ucar.nc2.AttributeContainerMutable} */
@@ -144,6 +145,58 @@ public class TestAttributeContainerMutable {
     assertThat(attcc.getName()).isEqualTo("cc");
   }
 
+  @Test
+  public void testDeferred() {
+    AtomicInteger calls = new AtomicInteger();
+    AttributeContainerMutable attc = new AttributeContainerMutable("container");
+    attc.addAttribute(new Attribute("name1", "value"));
+    attc.addDeferred(() -> {
+      calls.incrementAndGet();
+      return ImmutableList.of(new Attribute("name2", "value2"), new Attribute("name1", "replaced"));
+    });
+    assertThat(calls.get()).isEqualTo(0);
+
+    AttributeContainer imm = attc.toImmutable();
+    assertThat(calls.get()).isEqualTo(0);
+    assertThat(Iterables.size(imm)).isEqualTo(2);
+    assertThat(imm.findAttributeString("name1", null)).isEqualTo("replaced");
+    assertThat(Iterables.getLast(imm).getShortName()).isEqualTo("name2");
+    assertThat(calls.get()).isEqualTo(1);
+
+    // changes are made after the deferred attributes are added
+    attc.addAttribute("name3", 123);
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(Iterables.size(attc)).isEqualTo(3);
+    assertThat(Iterables.getLast(attc).getShortName()).isEqualTo("name3");
+    assertThat(Iterables.size(imm)).isEqualTo(2);
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testDeferredFailure() {
+    AtomicInteger calls = new AtomicInteger();
+    AttributeContainerMutable attc = new AttributeContainerMutable("container");
+    attc.addDeferred(() -> {
+      calls.incrementAndGet();
+      throw new IllegalStateException("cant read");
+    });
+    AttributeContainer imm = attc.toImmutable();
+
+    for (int i = 1; i <= 2; i++) {
+      try {
+        imm.findAttribute("name");
+        fail();
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage()).isEqualTo("cant read");
+      }
+      assertThat(calls.get()).isEqualTo(i);
+    }
+
+    attc.clear();
+    assertThat(attc.isEmpty()).isTrue();
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
   @Test
   public void testFilter() {
     AttributeContainerMutable attc = new AttributeContainerMutable("container");
@@ -101,7 +101,7 @@ public class TestNetcdfFiles {
     }
 
     // repeat, to read from cache
-    try (NetcdfFile ncfile = NetcdfFiles.open(TestDir.cdmLocalTestDataDir + "compress/testGzip.nc.zip")) {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TestDir.cdmLocalTestDataDir + "compress/testGzip.nc.gz")) {
       // global attributes
       assertThat(ncfile.getRootGroup().findAttributeString("yo", "barf")).isEqualTo("face");
 
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.util.Objects;
+import org.junit.Test;
+import ucar.array.Array;
+import ucar.array.ArrayType;
+import ucar.array.Arrays;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.util.Misc;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link Variable#readInto} against {@link Variable#readArray} */
+public class TestReadInto {
+  private static final int destPos = 3;
+
+  @Test
+  public void testNetcdf3() throws Exception {
+    compareFile(TestDir.cdmLocalTestDataDir + "example1.nc");
+    compareFile(TestDir.cdmLocalTestDataDir + "testWriteRecord.nc");
+  }
+
+  @Test
+  public void testHdf5() throws Exception {
+    compareFile(TestDir.cdmLocalTestDataDir + "chunked.h5");
+    compareFile(TestDir.cdmLocalTestDataDir + "testCFGridWriter.nc4");
+    compareFile(TestDir.cdmLocalTestDataDir + "hdf5/test_atomic_types.nc");
+  }
+
+  @Test
+  public void testHdf5Chunked() throws Exception {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TestDir.cdmLocalTestDataDir + "chunked.h5")) {
+      Variable v = ncfile.findVariable("data");
+      assertThat(v).isNotNull();
+      assertThat(v.getShape()).isEqualTo(new int[] {10, 10});
+      v.setCaching(false);
+      compare(v, null);
+      // crosses the 3 x 3 chunks, with partial chunks on each side
+      compare(v, new Section("2:8,1:7"));
+      compare(v, new Section("4,:"));
+      compare(v, new Section("9,9"));
+    }
+  }
+
+  @Test
+  public void testDataset() throws Exception {
+    String location = TestDir.cdmLocalTestDataDir + "testWriteRecord.nc";
+    // enhanced data is converted
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(location)) {
+      compareVariables(ncd);
+    }
+    // not enhanced reads through to the original variable
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(location, false, null)) {
+      compareVariables(ncd);
+    }
+  }
+
+  @Test
+  public void testDatasetConverted() throws Exception {
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(TestDir.cdmLocalTestDataDir + "testScaleRecord.nc")) {
+      VariableDS v = (VariableDS) ncd.findVariable("testScale");
+      assertThat(v).isNotNull();
+      assertThat(v.convertNeeded()).isTrue();
+      assertThat(v.getArrayType()).isEqualTo(ArrayType.FLOAT);
+      assertThat(v.getOriginalVariable().getArrayType()).isEqualTo(ArrayType.SHORT);
+
+      float[] dest = new float[(int) v.getSize() + destPos];
+      v.readInto(null, dest, destPos);
+      // the first value is missing, the rest are scaled
+      assertThat(Float.isNaN(dest[destPos])).isTrue();
+      assertThat(Misc.nearlyEquals(dest[destPos + 1], 1006.2832f)).isTrue();
+      float[] expected = (float[]) Arrays.copyPrimitiveArray(v.readArray());
+      assertThat(Objects.deepEquals(expected, java.util.Arrays.copyOfRange(dest, destPos, dest.length))).isTrue();
+    }
+  }
+
+  @Test
+  public void testBadDestination() throws Exception {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TestDir.cdmLocalTestDataDir + "example1.nc")) {
+      Variable v = ncfile.findVariable("T");
+      assertThat(v).isNotNull();
+      assertThat(v.getArrayType()).isEqualTo(ArrayType.DOUBLE);
+      int n = (int) v.getSize();
+      assertThrows(IllegalArgumentException.class, () -> v.readInto(null, new float[n], 0));
+      assertThrows(IllegalArgumentException.class, () -> v.readInto(null, new double[n], 1));
+      assertThrows(IllegalArgumentException.class, () -> v.readInto(null, new double[n], -1));
+    }
+  }
+
+  @Test
+  public void testCopyPrimitiveArray() throws InvalidRangeException {
+    Array<Integer> array = Arrays.factory(ArrayType.INT, new int[] {2, 3}, new int[] {1, 2, 3, 4, 5, 6});
+    int[] dest = new int[5];
+    Arrays.copyPrimitiveArray(Arrays.section(array, new Section(":, 1:2")), dest, 1);
+    assertThat(dest).isEqualTo(new int[] {0, 2, 3, 5, 6});
+    assertThrows(IllegalArgumentException.class, () -> Arrays.copyPrimitiveArray(array, dest, 0));
+    assertThrows(IllegalArgumentException.class, () -> Arrays.copyPrimitiveArray(array, new long[6], 0));
+  }
+
+  private void compareFile(String filename) throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      compareVariables(ncfile);
+    }
+  }
+
+  private void compareVariables(NetcdfFile ncfile) throws IOException, InvalidRangeException {
+    int count = 0;
+    for (Variable v : ncfile.getVariables()) {
+      ArrayType dataType = v.getArrayType();
+      if (v.isVariableLength() || dataType.isStruct() || dataType == ArrayType.OPAQUE || v.getSize() > 1000 * 1000) {
+        continue;
+      }
+      // otherwise small variables are copied from the cache
+      v.setCaching(false);
+      if (v instanceof VariableDS && ((VariableDS) v).getOriginalVariable() != null) {
+        ((VariableDS) v).getOriginalVariable().setCaching(false);
+      }
+      compare(v, null);
+      int[] shape = v.getShape();
+      if (shape.length > 0 && shape[0] > 1) {
+        Section.Builder sb = Section.builder().appendRange(1, shape[0] - 1);
+        for (int i = 1; i < shape.length; i++) {
+          sb.appendRange(shape[i]);
+        }
+        compare(v, sb.build());
+      }
+      count++;
+    }
+    assertThat(count).isGreaterThan(0);
+  }
+
+  private void compare(Variable v, Section section) throws IOException, InvalidRangeException {
+    Object expected = Arrays.copyPrimitiveArray(v.readArray(section));
+    int n = java.lang.reflect.Array.getLength(expected);
+    Object dest = java.lang.reflect.Array.newInstance(expected.getClass().getComponentType(), n + destPos + 2);
+    v.readInto(section, dest, destPos);
+
+    Object actual = java.lang.reflect.Array.newInstance(expected.getClass().getComponentType(), n);
+    System.arraycopy(dest, destPos, actual, 0, n);
+    assertThat(Objects.deepEquals(expected, actual)).isTrue();
+  }
+}
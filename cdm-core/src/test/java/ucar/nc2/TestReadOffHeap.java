@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import ucar.array.Array;
+import ucar.array.Arrays;
+import ucar.array.InvalidRangeException;
+import ucar.array.Range;
+import ucar.array.Section;
+import ucar.nc2.internal.util.CompareArrayToArray;
+import ucar.nc2.iosp.IospArrayHelper;
+import ucar.unidata.util.test.TestDir;
+
+/** Test that reads of contiguous data into off heap storage are the same as reads into the heap. */
+public class TestReadOffHeap {
+  private static final List<String> files = ImmutableList.of("example1.nc", "longOffset.nc", "testWriteRecord.nc",
+      "permuteTest.nc", "hdf5/compound_complex.h5", "testSpecialAttributes.nc4");
+
+  @After
+  public void reset() {
+    IospArrayHelper.setOffHeapThreshold(0);
+  }
+
+  @Test
+  public void testSameData() throws IOException, InvalidRangeException {
+    int countOffHeap = 0;
+    for (String file : files) {
+      String location = TestDir.cdmLocalTestDataDir + file;
+      // separate files, since small variables cache their data
+      try (NetcdfFile heapFile = NetcdfFiles.open(location); NetcdfFile ncfile = NetcdfFiles.open(location)) {
+        for (Variable v : ncfile.getVariables()) {
+          if (v instanceof Structure) {
+            continue;
+          }
+          Variable heapVar = heapFile.findVariable(v.getFullName());
+          IospArrayHelper.setOffHeapThreshold(0);
+          Array<?> expected = heapVar.readArray();
+          IospArrayHelper.setOffHeapThreshold(1);
+          Array<?> data = v.readArray();
+          assertThat(CompareArrayToArray.compareData(v.getFullName(), expected, data)).isTrue();
+
+          ByteBuffer bb = Arrays.getByteBuffer(data);
+          if (bb != null) {
+            assertThat(bb.isDirect()).isTrue();
+            countOffHeap++;
+          }
+          if (v.getRank() > 0 && v.getShape(0) > 1) {
+            compareSections(heapVar, v);
+          }
+        }
+      }
+    }
+    assertThat(countOffHeap).isGreaterThan(0);
+  }
+
+  // contiguous and strided sections
+  private void compareSections(Variable heapVar, Variable v) throws IOException, InvalidRangeException {
+    int[] shape = v.getShape();
+    Section.Builder last = Section.builder().appendRange(1, shape[0] - 1);
+    Section.Builder strided = Section.builder().appendRange(new Range(0, shape[0] - 1, 2));
+    for (int i = 1; i < shape.length; i++) {
+      last.appendRange(shape[i]);
+      strided.appendRange(shape[i]);
+    }
+    for (Section section : new Section[] {last.build(), strided.build()}) {
+      IospArrayHelper.setOffHeapThreshold(0);
+      Array<?> expected = heapVar.readArray(section);
+      IospArrayHelper.setOffHeapThreshold(1);
+      Array<?> data = v.readArray(section);
+      assertThat(CompareArrayToArray.compareData(v.getFullName(), expected, data)).isTrue();
+    }
+  }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.filter;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.BaseEncoding;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import org.junit.Test;
+import ucar.nc2.filter.spi.FilterProvider;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link Filters} and the core filters. */
+public class TestFilters {
+
+  // gen(2000) compressed by the zstd 1.5 library at level 19: Huffman literals in 4 streams, with FSE weights
+  private static final String ZSTD_FRAME = "28b52ffd60d006c50e00c618340de0e97bef2db74c49cad400800e2d0031002e00377671665fadc7227b0a94248797f8"
+      + "58e4071695483659e317135d3da740ef396d40b08e8ebf8482836ccb563d1342cdc3d5886ab3a9b08a4017c285930ee7"
+      + "800fee58222e3320b5bb5c2ac90216adba1a7397c554088b9e436a3920cc01c6f0db230af4c10095a0d7788e89b36147"
+      + "a3ebbf5a73657c6079c8853bb102bab76fa1fd2114e4b63e283b77be31432bac015d801ad85444b8e1d6197281acc144"
+      + "aa3318a9c408b1aa8e605163803d7b74ac558c4023161ad99905f1b45164a80135a994aa19292848b26c06208262184b"
+      + "3e1134108220a408438a19225363d40debe995c6ed69d61e12e362579c8d63275a428608d6e19e8302618d0e6c1acf79"
+      + "e2dc0d03c1d9ca99ce0ae83fa4a1ab92ef4744e1afb921636cae14d2d11a1fa344e96cdc239bbe33ac9962dc30c504cf"
+      + "51c41d0f72941768dd51a7cf5fc148049dab1957457087065bbf4c3571bfb1ea9178a10b6c8cff865e662f922013b400"
+      + "5d55570594b0526998c2868c54097501ada09a5a35b4b2524e3915fed20b436e8621c21b124a338a9213edcb67cc2d13"
+      + "40e212e58f7e72e4ae45dce07bfbda7f1f67f4390f9d4aabad8f9753e32f8a8a07a8f299aa564115792ee866e62e1366"
+      + "efaa";
+
+  // skewed random letters, with repeats of earlier runs
+  private static byte[] gen(int n, long seed) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long x = seed;
+    while (out.size() < n) {
+      x = (x * 1103515245 + 12345) & 0x7fffffff;
+      int r = (int) (x >> 16);
+      if (r % 4 == 0 && out.size() > 64) {
+        byte[] sofar = out.toByteArray();
+        int start = (r >> 2) % (sofar.length - 32);
+        out.write(sofar, start, Math.min(4 + (r >> 8) % 24, sofar.length - start));
+      } else {
+        out.write('a' + Math.min(r % 16, (r >> 4) % 16));
+      }
+    }
+    return Arrays.copyOf(out.toByteArray(), n);
+  }
+
+  // a copy of data, with every 997th byte from start set to val
+  private static byte[] mark(byte[] data, int start, char val) {
+    byte[] result = data.clone();
+    for (int i = start; i < result.length; i += 997) {
+      result[i] = (byte) val;
+    }
+    return result;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part, 0, part.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readTestFile(String name) throws IOException {
+    return Files.readAllBytes(Paths.get(TestDir.cdmLocalTestDataDir, "compress", name));
+  }
+
+  @Test
+  public void testCoreFilters() {
+    int[] ids = {1, 2, 3, 32004, 32015};
+    String[] names = {"deflate", "shuffle", "fletcher32", "lz4", "zstd"};
+    for (int i = 0; i < ids.length; i++) {
+      Filter filter = Filters.getFilter(ids[i], new int[] {4});
+      assertThat(filter).isNotNull();
+      assertThat(filter.getId()).isEqualTo(ids[i]);
+      assertThat(filter.getName()).isEqualTo(names[i]);
+    }
+    assertThat(Filters.getProvider(32001)).isNull();
+    assertThat(Filters.getFilter(32001, null)).isNull();
+  }
+
+  @Test
+  public void testRegisteredProviderIsFirst() throws IOException {
+    FilterProvider reverse = new FilterProvider() {
+      public int getId() {
+        return 1;
+      }
+
+      public String getName() {
+        return "reverse";
+      }
+
+      public Filter create(int[] clientValues) {
+        return new Filter() {
+          public int getId() {
+            return 1;
+          }
+
+          public String getName() {
+            return "reverse";
+          }
+
+          public byte[] decode(byte[] data) {
+            byte[] result = new byte[data.length];
+            for (int i = 0; i < data.length; i++)
+              result[i] = data[data.length - 1 - i];
+            return result;
+          }
+        };
+      }
+    };
+    Filters.registerProvider(reverse);
+    try {
+      assertThat(Filters.getProvider(1)).isSameInstanceAs(reverse);
+      assertThat(Filters.getFilter(1, null).decode(new byte[] {1, 2, 3})).isEqualTo(new byte[] {3, 2, 1});
+    } finally {
+      Filters.unregisterProvider(reverse);
+    }
+    assertThat(Filters.getFilter(1, null).getName()).isEqualTo("deflate");
+  }
+
+  @Test
+  public void testDeflate() throws IOException {
+    byte[] data = gen(5000, 3);
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[10000];
+    int n = deflater.deflate(buffer);
+    deflater.end();
+    assertThat(Filters.getFilter(1, null).decode(Arrays.copyOf(buffer, n))).isEqualTo(data);
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[data.length + 1000];
+    int n = deflater.deflate(buffer);
+    deflater.end();
+    return Arrays.copyOf(buffer, n);
+  }
+
+  @Test
+  public void testDeflateIntoKnownSize() throws IOException {
+    byte[] data = gen(50000, 5);
+    byte[] compressed = deflate(data);
+    Filter filter = Filters.getFilter(1, null);
+
+    // exactly the known size, not copied afterwards
+    ByteBuffer result = filter.decode(ByteBuffer.wrap(compressed), data.length);
+    assertThat(result.array().length).isEqualTo(data.length);
+    assertThat(Filters.toArray(result)).isSameInstanceAs(result.array());
+    assertThat(result.array()).isEqualTo(data);
+
+    // the size is only a hint
+    assertThat(Filters.toArray(filter.decode(ByteBuffer.wrap(compressed), 10))).isEqualTo(data);
+    assertThat(Filters.toArray(filter.decode(ByteBuffer.wrap(compressed), 0))).isEqualTo(data);
+    assertThat(Filters.toArray(filter.decode(ByteBuffer.wrap(compressed), 2 * data.length))).isEqualTo(data);
+
+    // part of an array
+    byte[] padded = new byte[compressed.length + 10];
+    System.arraycopy(compressed, 0, padded, 6, compressed.length);
+    ByteBuffer bb = ByteBuffer.wrap(padded, 6, compressed.length);
+    assertThat(Filters.toArray(filter.decode(bb, data.length))).isEqualTo(data);
+  }
+
+  @Test
+  public void testDeflateTruncated() {
+    byte[] compressed = deflate(gen(5000, 3));
+    try {
+      Filters.getFilter(1, null).decode(Arrays.copyOf(compressed, compressed.length / 2));
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("Unexpected end");
+    }
+  }
+
+  @Test
+  public void testInPlace() throws IOException {
+    // shuffle, then fletcher32 strips the last 4 bytes, both in the same array
+    byte[] chunk = {1, 2, 3, 10, 20, 30, 11, 21, 31, 12, 22, 32, 9, 9, 9, 9};
+    ByteBuffer bb = ByteBuffer.wrap(chunk);
+    bb = Filters.getFilter(3, null).decode(bb, 12);
+    bb = Filters.getFilter(2, new int[] {4}).decode(bb, 12);
+    assertThat(bb.array()).isSameInstanceAs(chunk);
+    assertThat(Filters.toArray(bb)).isEqualTo(new byte[] {1, 10, 11, 12, 2, 20, 21, 22, 3, 30, 31, 32});
+  }
+
+  @Test
+  public void testShuffleAndFletcher() throws IOException {
+    byte[] shuffled = {1, 2, 3, 10, 20, 30, 11, 21, 31, 12, 22, 32};
+    byte[] expected = {1, 10, 11, 12, 2, 20, 21, 22, 3, 30, 31, 32};
+    assertThat(Filters.getFilter(2, new int[] {4}).decode(shuffled)).isEqualTo(expected);
+    assertThat(Filters.getFilter(3, null).decode(new byte[] {1, 2, 3, 4, 5, 6})).isEqualTo(new byte[] {1, 2});
+  }
+
+  @Test
+  public void testLz4() throws IOException {
+    // a compressed block, then a shorter last block that is stored as is
+    ByteBuffer bb = ByteBuffer.allocate(64);
+    bb.putLong(19).putInt(15);
+    byte[] block = {0x44, 'a', 'b', 'c', 'd', 4, 0, 0x30, 'x', 'y', 'z'};
+    bb.putInt(block.length).put(block);
+    bb.putInt(4).put("last".getBytes(StandardCharsets.US_ASCII));
+    byte[] chunk = Arrays.copyOf(bb.array(), bb.position());
+
+    byte[] result = Filters.getFilter(32004, null).decode(chunk);
+    assertThat(new String(result, StandardCharsets.US_ASCII)).isEqualTo("abcdabcdabcdxyzlast");
+  }
+
+  @Test
+  public void testLz4LongMatch() throws IOException {
+    // literal and match lengths of 15 or more are continued in the following bytes
+    byte[] block = {(byte) 0xff, 1, 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 1,
+        0, (byte) 255, 10, 0x10, 'z'};
+    byte[] dest = new byte[16 + 1 + 15 + 255 + 10 + 4];
+    int n = Lz4.decompressBlock(block, 0, block.length, dest, 0, dest.length);
+    assertThat(n).isEqualTo(dest.length);
+    assertThat(new String(dest, 0, 16, StandardCharsets.US_ASCII)).isEqualTo("abcdefghijklmnop");
+    for (int i = 16; i < dest.length - 1; i++)
+      assertThat(dest[i]).isEqualTo((byte) 'p');
+    assertThat(dest[dest.length - 1]).isEqualTo((byte) 'z');
+  }
+
+  @Test
+  public void testLz4BadOffset() {
+    byte[] block = {0x10, 'a', 5, 0, 0x00};
+    try {
+      Lz4.decompressBlock(block, 0, block.length, new byte[100], 0, 100);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("offset");
+    }
+  }
+
+  @Test
+  public void testZstdRawAndRleBlocks() throws IOException {
+    byte[] frame = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd, // magic
+        0x20, 10, // single segment, content size 10
+        0x28, 0, 0, 'h', 'e', 'l', 'l', 'o', // raw block of 5
+        0x2b, 0, 0, '!'}; // last RLE block of 5
+    assertThat(new String(Filters.getFilter(32015, null).decode(frame), StandardCharsets.US_ASCII))
+        .isEqualTo("hello!!!!!");
+  }
+
+  @Test
+  public void testZstdCompressedBlock() throws IOException {
+    byte[] frame = BaseEncoding.base16().lowerCase().decode(ZSTD_FRAME);
+    assertThat(Filters.getFilter(32015, null).decode(frame)).isEqualTo(gen(2000, 7));
+  }
+
+  // Made by the zstd 1.5.4 library at level 19, with a 256 KiB window and the content checksum, from 8 marked copies of
+  // gen(20000, 11). Its 5 blocks have Huffman literals in 4 streams and 1 stream, treeless literals that reuse the
+  // previous block's Huffman table, and repeat and RLE modes for the sequence FSE tables.
+  @Test
+  public void testZstdRepeatTables() throws IOException {
+    byte[] g = gen(20000, 11);
+    byte[][] copies = new byte[8][];
+    for (int i = 0; i < copies.length; i++) {
+      copies[i] = mark(g, 7 * i, (char) ('A' + i));
+    }
+    byte[] result = Filters.getFilter(32015, null).decode(readTestFile("zstdRepeatTables.zst"));
+    assertThat(result).isEqualTo(concat(copies));
+  }
+
+  // Made by the zstd 1.5.4 library at level 9, with a 256 KiB window and the content checksum. The second block
+  // matches the first copy of gen(20000, 11), 160000 bytes back, further than the 128 KiB block size.
+  @Test
+  public void testZstdLongOffsets() throws IOException {
+    byte[] g = gen(20000, 11);
+    byte[] filler = new byte[140000];
+    Arrays.fill(filler, (byte) 'z');
+    byte[] expected = concat(g, filler, mark(g, 7, 'B'), mark(g, 14, 'C'));
+    byte[] result = Filters.getFilter(32015, null).decode(readTestFile("zstdLongOffsets.zst"));
+    assertThat(result).isEqualTo(expected);
+  }
+
+  @Test
+  public void testDirectAndReadOnlyBuffers() throws IOException {
+    byte[] data = gen(5000, 3);
+    byte[] zstdFrame = BaseEncoding.base16().lowerCase().decode(ZSTD_FRAME);
+    byte[] shuffled = {1, 2, 3, 10, 20, 30, 11, 21, 31, 12, 22, 32};
+    byte[] lz4Chunk = {0, 0, 0, 0, 0, 0, 0, 4, 0, 0, 0, 4, 0, 0, 0, 4, 'l', 'a', 's', 't'};
+
+    int[] ids = {1, 2, 3, 32004, 32015};
+    byte[][] encoded = {deflate(data), shuffled, shuffled, lz4Chunk, zstdFrame};
+    for (int i = 0; i < ids.length; i++) {
+      Filter filter = Filters.getFilter(ids[i], new int[] {4});
+      byte[] expected = filter.decode(encoded[i].clone());
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(encoded[i].length);
+      direct.put(encoded[i]).flip();
+      assertThat(Filters.toArray(filter.decode(direct, -1))).isEqualTo(expected);
+
+      ByteBuffer readOnly = ByteBuffer.wrap(encoded[i].clone()).asReadOnlyBuffer();
+      assertThat(Filters.toArray(filter.decode(readOnly, -1))).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testZstdSkippableAndConcatenatedFrames() throws IOException {
+    byte[] frame = BaseEncoding.base16().lowerCase().decode(ZSTD_FRAME);
+    ByteBuffer bb = ByteBuffer.allocate(2 * frame.length + 11).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    bb.put(frame).putInt(0x184D2A5F).putInt(3).put(new byte[3]).put(frame);
+
+    byte[] expected = gen(2000, 7);
+    byte[] result = Filters.getFilter(32015, null).decode(bb.array());
+    assertThat(result.length).isEqualTo(4000);
+    assertThat(Arrays.copyOfRange(result, 0, 2000)).isEqualTo(expected);
+    assertThat(Arrays.copyOfRange(result, 2000, 4000)).isEqualTo(expected);
+  }
+
+  @Test
+  public void testZstdBadFrame() {
+    byte[] frame = BaseEncoding.base16().lowerCase().decode(ZSTD_FRAME);
+    Filter zstd = Filters.getFilter(32015, null);
+    try {
+      zstd.decode(Arrays.copyOf(frame, frame.length - 20));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    frame[0] = 0;
+    try {
+      zstd.decode(frame);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("magic");
+    }
+  }
+
+  @Test
+  public void testZstdPredefinedTables() {
+    // from RFC 8878 Appendix A
+    ZstdDecoder.FseTable ll = ZstdDecoder.LL_PREDEFINED;
+    assertThat(ll.accuracyLog).isEqualTo(6);
+    int[][] llStates = {{0, 4, 0}, {0, 4, 16}, {1, 5, 32}, {3, 5, 0}, {4, 5, 0}, {6, 5, 0}, {7, 5, 0}};
+    for (int state = 0; state < llStates.length; state++) {
+      assertThat((int) ll.symbols[state]).isEqualTo(llStates[state][0]);
+      assertThat((int) ll.numBits[state]).isEqualTo(llStates[state][1]);
+      assertThat((int) ll.newStateBase[state]).isEqualTo(llStates[state][2]);
+    }
+    ZstdDecoder.FseTable of = ZstdDecoder.OF_PREDEFINED;
+    assertThat(of.accuracyLog).isEqualTo(5);
+    int[][] ofStates = {{0, 5, 0}, {6, 4, 0}, {9, 5, 0}, {15, 5, 0}, {21, 5, 0}, {3, 5, 0}, {7, 4, 0}};
+    for (int state = 0; state < ofStates.length; state++) {
+      assertThat((int) of.symbols[state]).isEqualTo(ofStates[state][0]);
+      assertThat((int) of.numBits[state]).isEqualTo(ofStates[state][1]);
+      assertThat((int) of.newStateBase[state]).isEqualTo(ofStates[state][2]);
+    }
+  }
+}
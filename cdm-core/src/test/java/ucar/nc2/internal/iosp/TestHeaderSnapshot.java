@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.iosp.netcdf3.N3iosp;
+import ucar.nc2.internal.util.CompareArrayToArray;
+import ucar.nc2.internal.util.DiskCache2;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+/** Test that netcdf-3 files opened from a header snapshot are the same as when the header is read. */
+public class TestHeaderSnapshot {
+  private static final List<String> files = ImmutableList.of("example1.nc", "longOffset.nc", "testWriteRecord.nc",
+      "testSpecialChars.nc", "testScaleRecord.nc", "jan.nc");
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File dir;
+
+  @Before
+  public void setCache() throws IOException {
+    dir = tempFolder.newFolder();
+    HeaderSnapshot.setSnapshotCache(new DiskCache2(dir.getPath(), false, 0, 0));
+  }
+
+  @After
+  public void resetCache() {
+    HeaderSnapshot.setSnapshotCache(null);
+  }
+
+  @Test
+  public void testSameAsHeader() throws IOException {
+    for (String file : files) {
+      String location = TestDir.cdmLocalTestDataDir + file;
+      try (NetcdfFile built = NetcdfFiles.open(location); NetcdfFile fromSnapshot = NetcdfFiles.open(location)) {
+        assertThat(fromSnapshot.toString()).isEqualTo(built.toString());
+        compareData(built, fromSnapshot);
+      }
+      try (RandomAccessFile raf = RandomAccessFile.acquire(location)) {
+        assertThat(HeaderSnapshot.read(new N3iosp(), raf)).isNotNull();
+      }
+    }
+    assertThat(snapshots()).hasSize(files.size());
+  }
+
+  @Test
+  public void testRecordStructure() throws IOException {
+    String location = TestDir.cdmLocalTestDataDir + "testWriteRecord.nc";
+    try (NetcdfFile plain = NetcdfFiles.open(location)) {
+      assertThat(plain.findVariable("record")).isNull();
+    }
+    try (NetcdfFile built = NetcdfFiles.open(location, -1, null, NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+        NetcdfFile fromSnapshot =
+            NetcdfFiles.open(location, -1, null, NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE)) {
+      assertThat(fromSnapshot.findVariable("record")).isInstanceOf(Structure.class);
+      assertThat(fromSnapshot.toString()).isEqualTo(built.toString());
+      compareData(built, fromSnapshot);
+    }
+    // the record structure is not part of the snapshot
+    assertThat(snapshots()).hasSize(1);
+  }
+
+  @Test
+  public void testChangedFile() throws IOException {
+    File copy = tempFolder.newFile("copy.nc");
+    Files.copy(new File(TestDir.cdmLocalTestDataDir + "example1.nc").toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    try (NetcdfFile ncfile = NetcdfFiles.open(copy.getPath())) {
+      assertThat(ncfile.findVariable("rh")).isNotNull();
+    }
+    assertThat(copy.setLastModified(copy.lastModified() - 60_000)).isTrue();
+    try (NetcdfFile ncfile = NetcdfFiles.open(copy.getPath())) {
+      assertThat(ncfile.findVariable("rh")).isNotNull();
+    }
+    assertThat(snapshots()).hasSize(2);
+  }
+
+  private void compareData(NetcdfFile built, NetcdfFile fromSnapshot) throws IOException {
+    for (Variable v : built.getVariables()) {
+      Variable sv = fromSnapshot.findVariable(v.getFullName());
+      assertThat(sv).isNotNull();
+      assertThat(CompareArrayToArray.compareData(v.getFullName(), v.readArray(), sv.readArray())).isTrue();
+    }
+  }
+
+  private List<Path> snapshots() throws IOException {
+    try (Stream<Path> paths = Files.walk(dir.toPath())) {
+      return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.array.Array;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.util.CompareArrayToArray;
+import ucar.nc2.iosp.ChunkCache;
+import ucar.nc2.iosp.LayoutBBTiled;
+import ucar.unidata.util.test.TestDir;
+
+/**
+ * Compare reads of compressed HDF4 data through the chunk cache and in parallel, with uncached sequential reads.
+ * The compressed, linked and chunked files are made from nc_test_hdf4.hdf4, by replacing the data of its one
+ * variable, "pres(3, 2)", with special elements.
+ */
+public class TestH4chunkCacheLocal {
+  private static final String source = TestDir.cdmTestDataDir + "thredds/public/testdata/nc_test_hdf4.hdf4";
+  private static final String varName = "pres";
+  private static final int[] values = {10, 11, 20, 21, 30, 31};
+
+  private static final short SD = 702;
+  private static final short SD_REF = 3;
+  private static final int EXTENDED = 0x4000;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    ChunkCache.setDefault(null);
+    LayoutBBTiled.setExecutor(null);
+  }
+
+  @Test
+  public void testCompressed() throws IOException, InvalidRangeException {
+    H4File h4 = new H4File();
+    int header = h4.append(compHeader(uncompressed().length, 100));
+    h4.replace(SD, SD_REF, SD | EXTENDED, header, 16);
+    byte[] compressed = deflate(uncompressed());
+    h4.add(TagEnum.COMPRESSED.getCode(), 100, h4.append(compressed), compressed.length);
+    compareReads(h4.write("compressed.hdf"));
+  }
+
+  @Test
+  public void testCompressedLinked() throws IOException, InvalidRangeException {
+    H4File h4 = new H4File();
+    int header = h4.append(compHeader(uncompressed().length, 100));
+    h4.replace(SD, SD_REF, SD | EXTENDED, header, 16);
+
+    // the compressed data in two linked blocks
+    byte[] compressed = deflate(uncompressed());
+    int first = compressed.length / 2;
+    ByteBuffer linked = newBuffer(16);
+    linked.putShort((short) TagEnum.SPECIAL_LINKED).putInt(compressed.length).putInt(first).putShort((short) first)
+        .putShort((short) 2).putShort((short) 101);
+    h4.add(TagEnum.COMPRESSED.getCode() | EXTENDED, 100, h4.append(linked.array()), 16);
+    ByteBuffer table = newBuffer(6);
+    table.putShort((short) 0).putShort((short) 102).putShort((short) 103);
+    h4.add(TagEnum.LINKED.getCode(), 101, h4.append(table.array()), 6);
+    h4.add(TagEnum.LINKED.getCode(), 102, h4.append(Arrays.copyOfRange(compressed, 0, first)), first);
+    h4.add(TagEnum.LINKED.getCode(), 103, h4.append(Arrays.copyOfRange(compressed, first, compressed.length)),
+        compressed.length - first);
+    compareReads(h4.write("linked.hdf"));
+  }
+
+  @Test
+  public void testChunked() throws IOException, InvalidRangeException {
+    H4File h4 = new H4File();
+    int[] shape = {3, 2};
+    int[] chunkShape = {1, 2};
+    int chunkBytes = 4 * chunkShape[0] * chunkShape[1];
+
+    ByteBuffer special = newBuffer(73);
+    special.putShort((short) TagEnum.SPECIAL_CHUNKED).putInt(67).put((byte) 1).put(new byte[3]).put((byte) 0)
+        .putInt(4 * values.length).putInt(chunkBytes).putInt(4).putShort((short) 1962).putShort((short) 110)
+        .put(new byte[4]).putInt(shape.length);
+    for (int i = 0; i < shape.length; i++) {
+      special.put(new byte[4]).putInt(shape[i]).putInt(chunkShape[i]);
+    }
+    special.putInt(4).put(new byte[4]).putShort((short) TagEnum.SPECIAL_COMP).putInt(0);
+    h4.replace(SD, SD_REF, SD | EXTENDED, h4.append(special.array()), special.capacity());
+
+    // the chunk table: origin in units of chunks, then the tag and ref of the chunk
+    ByteBuffer records = newBuffer(12 * shape[0]);
+    for (int row = 0; row < shape[0]; row++) {
+      records.putInt(row).putInt(0).putShort(TagEnum.CHUNK.getCode()).putShort((short) (111 + row));
+
+      byte[] chunk = Arrays.copyOfRange(uncompressed(), row * chunkBytes, (row + 1) * chunkBytes);
+      byte[] compressed = deflate(chunk);
+      h4.add(TagEnum.CHUNK.getCode() | EXTENDED, 111 + row, h4.append(compHeader(chunk.length, 121 + row)), 16);
+      h4.add(TagEnum.COMPRESSED.getCode(), 121 + row, h4.append(compressed), compressed.length);
+    }
+    byte[] vh = chunkTableHeader(shape[0], shape.length);
+    h4.add(TagEnum.VH.getCode(), 110, h4.append(vh), vh.length);
+    h4.add(TagEnum.VS.getCode(), 110, h4.append(records.array()), records.capacity());
+    compareReads(h4.write("chunked.hdf"));
+  }
+
+  private void compareReads(String filename) throws IOException, InvalidRangeException {
+    Section subset = new Section(new int[] {1, 0}, new int[] {2, 2});
+    Array<Integer> original = ucar.array.Arrays.factory(ucar.array.ArrayType.INT, new int[] {3, 2}, values);
+    Array<?> originalSubset = ucar.array.Arrays.section(original, subset);
+
+    // uncached, one chunk at a time on this thread
+    ChunkCache.setDefault(new ChunkCache(0));
+    LayoutBBTiled.setExecutor(Runnable::run);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      Variable v = ncfile.findVariable(varName);
+      assertThat(v).isNotNull();
+      v.setCaching(false); // so each read goes to the iosp
+      assertThat(CompareArrayToArray.compareData(varName, original, v.readArray())).isTrue();
+      assertThat(CompareArrayToArray.compareData(varName, originalSubset, v.readArray(subset))).isTrue();
+    }
+
+    ChunkCache cache = new ChunkCache(1L << 20);
+    ChunkCache.setDefault(cache);
+    LayoutBBTiled.setExecutor(null);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      Variable v = ncfile.findVariable(varName);
+      v.setCaching(false);
+      assertThat(CompareArrayToArray.compareData(varName, original, v.readArray())).isTrue();
+      assertThat(cache.getSizeInBytes()).isGreaterThan(0L);
+
+      long hits = cache.getStats().hitCount();
+      assertThat(CompareArrayToArray.compareData(varName, originalSubset, v.readArray(subset))).isTrue();
+      assertThat(cache.getStats().hitCount()).isGreaterThan(hits);
+    }
+    assertThat(cache.getSizeInBytes()).isEqualTo(0L);
+  }
+
+  private static byte[] uncompressed() {
+    ByteBuffer bb = newBuffer(4 * values.length);
+    for (int value : values) {
+      bb.putInt(value);
+    }
+    return bb.array();
+  }
+
+  // SPECIAL_COMP header, deflate
+  private static byte[] compHeader(int uncompLength, int dataRef) {
+    ByteBuffer bb = newBuffer(16);
+    bb.putShort((short) TagEnum.SPECIAL_COMP).putShort((short) 0).putInt(uncompLength).putShort((short) dataRef)
+        .putShort((short) 0).putShort((short) TagEnum.COMP_CODE_DEFLATE).putShort((short) 6);
+    return bb.array();
+  }
+
+  // Vdata header of the chunk table: int origin[ndims], short chk_tag, short chk_ref
+  private static byte[] chunkTableHeader(int nrecs, int ndims) {
+    String[] names = {"origin", "chk_tag", "chk_ref"};
+    String className = "_HDF_CHK_TBL_0";
+    ByteBuffer bb = newBuffer(200);
+    bb.putShort((short) 0).putInt(nrecs).putShort((short) (4 * ndims + 4)).putShort((short) 3);
+    bb.putShort((short) 24).putShort((short) 22).putShort((short) 22); // type
+    bb.putShort((short) (4 * ndims)).putShort((short) 2).putShort((short) 2); // size
+    bb.putShort((short) 0).putShort((short) (4 * ndims)).putShort((short) (4 * ndims + 2)); // offset
+    bb.putShort((short) ndims).putShort((short) 1).putShort((short) 1); // order
+    for (String name : names) {
+      putString(bb, name);
+    }
+    putString(bb, varName);
+    putString(bb, className);
+    bb.putShort((short) 0).putShort((short) 0).putShort((short) 3);
+    return Arrays.copyOf(bb.array(), bb.position());
+  }
+
+  private static void putString(ByteBuffer bb, String s) {
+    byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+    bb.putShort((short) b.length).put(b);
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(6);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[data.length + 64];
+    int n = deflater.deflate(buffer);
+    deflater.end();
+    return Arrays.copyOf(buffer, n);
+  }
+
+  private static ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size); // big endian
+  }
+
+  /** The bytes of the source file, with data elements appended and its one DD block edited in place. */
+  private class H4File {
+    private static final int ddStart = 4 + 6;
+    private final ByteBuffer bb;
+    private final int ndd;
+
+    H4File() throws IOException {
+      byte[] bytes = Files.readAllBytes(Paths.get(source));
+      bb = ByteBuffer.allocate(bytes.length + 4096);
+      bb.put(bytes);
+      ndd = bb.getShort(4);
+      assertThat(bb.getInt(6)).isEqualTo(0); // only one DD block
+    }
+
+    int append(byte[] data) {
+      int pos = bb.position();
+      bb.put(data);
+      return pos;
+    }
+
+    void replace(int tag, int ref, int newTag, int offset, int length) {
+      put(find(tag, ref), newTag, ref, offset, length);
+    }
+
+    void add(int tag, int ref, int offset, int length) {
+      put(find(1, 0), tag, ref, offset, length); // first unused DD
+    }
+
+    private int find(int tag, int ref) {
+      for (int i = 0; i < ndd; i++) {
+        int pos = ddStart + 12 * i;
+        if (bb.getShort(pos) == tag && (tag == 1 || bb.getShort(pos + 2) == ref)) {
+          return pos;
+        }
+      }
+      throw new IllegalStateException("no DD for " + tag + "/" + ref);
+    }
+
+    private void put(int pos, int tag, int ref, int offset, int length) {
+      bb.putShort(pos, (short) tag).putShort(pos + 2, (short) ref).putInt(pos + 4, offset).putInt(pos + 8, length);
+    }
+
+    String write(String name) throws IOException {
+      File file = tempFolder.newFile(name);
+      Files.write(file.toPath(), Arrays.copyOf(bb.array(), bb.position()));
+      return file.getPath();
+    }
+  }
+}
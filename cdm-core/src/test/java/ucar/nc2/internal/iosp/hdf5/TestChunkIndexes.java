@@ -0,0 +1,613 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.array.Array;
+import ucar.array.ArrayType;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.iosp.IospArrayHelper;
+import ucar.nc2.iosp.LayoutBB;
+import ucar.nc2.iosp.NetcdfFormatUtils;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Test reading the chunk indexes of the version 4 layout message (single chunk, implicit, fixed array, extensible
+ * array, version 2 B-tree), from small files written here. Each index is used the way the HDF5 library chooses it:
+ * fixed array for fixed maximum dimensions, extensible array for one unlimited dimension, version 2 B-tree for more
+ * than one, each with and without filters.
+ */
+public class TestChunkIndexes {
+  private static final int[] shape = {10, 9};
+  private static final int[] chunk = {4, 4};
+  private static final int nchunkCols = 3; // chunks are 3 x 3
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static int value(int row, int col) {
+    return 100 * row + col + 1;
+  }
+
+  @Test
+  public void testSingleChunk() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    byte[] data = deflate(chunkData(0, 0, shape));
+    long address = w.pos();
+    w.bytes(data);
+
+    // filtered single chunk: flags bit 1, then the filtered size and filter mask
+    ByteBuffer layout = layout(shape, 2, 1, 32);
+    layout.putLong(data.length).putInt(0).putLong(address);
+    check(w, shape, layout, shape, true);
+  }
+
+  @Test
+  public void testImplicit() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long address = w.pos();
+    for (int row = 0; row < shape[0]; row += chunk[0]) {
+      for (int col = 0; col < shape[1]; col += chunk[1]) {
+        w.bytes(chunkData(row, col, chunk));
+      }
+    }
+    ByteBuffer layout = layout(chunk, 0, 2, 32);
+    layout.putLong(address);
+    check(w, shape, layout, chunk, false);
+  }
+
+  @Test
+  public void testFixedArrayPaged() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long[] chunkAddress = writeChunks(w, false);
+
+    long header = w.pos();
+    w.str("FAHD").b(0).b(0).b(8).b(2).l(9);
+    long dataBlockField = w.pos();
+    w.l(-1).checksum(header);
+
+    // pages of 4 elements, the second page is not initialized
+    long dataBlock = w.pos();
+    w.patch(dataBlockField, dataBlock);
+    w.str("FADB").b(0).b(0).l(header).b(0xa0).checksum(dataBlock);
+    for (int page = 0; page < 3; page++) {
+      long start = w.pos();
+      for (int i = page * 4; i < Math.min(9, page * 4 + 4); i++) {
+        w.l(page == 1 ? 0 : chunkAddress[i]);
+      }
+      w.checksum(start);
+    }
+
+    ByteBuffer layout = layout(chunk, 0, 3, 32);
+    layout.put((byte) 2).putLong(header);
+    check(w, shape, layout, chunk, false, 4, 5, 6, 7);
+  }
+
+  @Test
+  public void testFixedArrayFiltered() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long[] address = writeChunks(w, true);
+    address[4] = -1; // not written
+    check(w, shape, fixedArrayFiltered(w, address), chunk, true, 4);
+  }
+
+  @Test
+  public void testFilteredChunksReadTogether() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long[] address = writeChunks(w, true);
+    File file = check(w, shape, fixedArrayFiltered(w, address), chunk, true);
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(file.getPath())) {
+      Variable v = ncfile.findVariable("data");
+      assertThat(v).isNotNull();
+      H5header.Vinfo vinfo = (H5header.Vinfo) v.getSPobject();
+
+      // the chunks are next to each other in the file, so the wanted ones are read at once
+      for (String spec : new String[] {":,:", "4:7,:", "5,5"}) {
+        Section want = Section.fill(new Section(spec), shape);
+        try (CountingRandomAccessFile raf = new CountingRandomAccessFile(file.getPath())) {
+          LayoutBB layout = new H5tiledLayoutBB(v, want, raf, vinfo.mfp.getFilters(), ByteOrder.LITTLE_ENDIAN);
+          int[] data = (int[]) IospArrayHelper.readDataFill(layout, ArrayType.INT, null);
+          int count = 0;
+          for (int row : want.getRange(0)) {
+            for (int col : want.getRange(1)) {
+              assertThat(data[count++]).isEqualTo(value(row, col));
+            }
+          }
+          // a single chunk is read when it is needed
+          assertThat(raf.nmerged).isEqualTo(spec.equals("5,5") ? 0 : 1);
+        }
+      }
+    }
+  }
+
+  // counts the physical reads of readRanges()
+  private static class CountingRandomAccessFile extends RandomAccessFile {
+    int nmerged;
+
+    CountingRandomAccessFile(String location) throws IOException {
+      super(location, "r");
+    }
+
+    @Override
+    protected void readMergedRange(long pos, byte[] dst) throws IOException {
+      nmerged++;
+      super.readMergedRange(pos, dst);
+    }
+  }
+
+  // fixed array index of the filtered chunks, not paged; returns the layout message
+  private static ByteBuffer fixedArrayFiltered(H5Writer w, long[] address) {
+    int elementSize = 8 + DataBTree.chunkSizeLength(64) + 4;
+    long header = w.pos();
+    w.str("FAHD").b(0).b(1).b(elementSize).b(10).l(9);
+    long dataBlockField = w.pos();
+    w.l(-1).checksum(header);
+
+    // not paged, since there are fewer than 2^10 elements
+    long dataBlock = w.pos();
+    w.patch(dataBlockField, dataBlock);
+    w.str("FADB").b(0).b(1).l(header);
+    for (int i = 0; i < 9; i++) {
+      w.l(address[i]).s(address[i] == -1 ? 0 : w.sizes[i]).i(0);
+    }
+    w.checksum(dataBlock);
+
+    ByteBuffer layout = layout(chunk, 0, 3, 32);
+    layout.put((byte) 10).putLong(header);
+    return layout;
+  }
+
+  @Test
+  public void testExtensibleArray() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    // the rows are unlimited, so elements are in row major order of the chunks
+    long[] address = writeChunks(w, false);
+    address[2 * nchunkCols + 1] = -1; // not written
+
+    long header = extensibleArray(w, address, null);
+    ByteBuffer layout = layout(chunk, 0, 4, 32);
+    layout.put(new byte[] {10, 2, 2, 2, 2}).putLong(header);
+    check(w, new int[] {-1, 9}, layout, chunk, false, 2 * nchunkCols + 1);
+  }
+
+  @Test
+  public void testExtensibleArrayFiltered() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    // the columns are unlimited, so elements are in column major order of the chunks
+    long[] rowMajor = writeChunks(w, true);
+    long[] address = new long[9];
+    int[] size = new int[9];
+    for (int i = 0; i < 9; i++) {
+      int rowMajorIndex = (i % 3) * nchunkCols + (i / 3);
+      address[i] = rowMajor[rowMajorIndex];
+      size[i] = w.sizes[rowMajorIndex];
+    }
+    address[5] = -1; // not written: column chunk 1, row chunk 2
+
+    long header = extensibleArray(w, address, size);
+    ByteBuffer layout = layout(chunk, 0, 4, 32);
+    layout.put(new byte[] {10, 2, 2, 2, 2}).putLong(header);
+    check(w, new int[] {10, -1}, layout, chunk, true, 2 * nchunkCols + 1);
+  }
+
+  /**
+   * Write an extensible array of 9 elements with 10 bit indexes, 2 elements in the index block, data blocks of at
+   * least 2 elements, and at least 2 data block addresses in secondary blocks. So the index block has elements 0-1,
+   * and data blocks for super blocks 0 (elements 2-3) and 1 (4-7); element 8 is in the first data block of the
+   * secondary block for super block 2.
+   *
+   * @param address chunk addresses in element order, -1 if not written
+   * @param size filtered chunk sizes in element order, or null if not filtered
+   * @return address of the header
+   */
+  private static long extensibleArray(H5Writer w, long[] address, int[] size) {
+    int clientId = (size == null) ? 0 : 1;
+    int elementSize = (size == null) ? 8 : 8 + DataBTree.chunkSizeLength(64) + 4;
+    long header = w.pos();
+    w.str("EAHD").b(0).b(clientId).b(elementSize).b(10).b(2).b(2).b(2).b(2);
+    long statsField = w.pos();
+    w.l(0).l(0).l(0).l(0).l(0).l(0).l(-1).checksum(header);
+
+    // block offsets do not count the elements in the index block
+    long dataBlock0 = w.pos();
+    eaDataBlock(w, header, clientId, address, size, 2, 2);
+    long dataBlock1 = w.pos();
+    eaDataBlock(w, header, clientId, address, size, 4, 4);
+    long dataBlock2 = w.pos();
+    eaDataBlock(w, header, clientId, address, size, 8, 4);
+    long secondaryBlock = w.pos();
+    w.str("EASB").b(0).b(clientId).l(header).s(8 - 2).l(dataBlock2).l(-1).checksum(secondaryBlock);
+    long indexBlock = w.pos();
+    w.str("EAIB").b(0).b(clientId).l(header);
+    eaElements(w, address, size, 0, 2);
+    w.l(dataBlock0).l(dataBlock1).l(secondaryBlock);
+    for (int i = 1; i < 8; i++) {
+      w.l(-1);
+    }
+    w.checksum(indexBlock);
+
+    // secondary blocks, their size, data blocks, their size, max index set, elements realized, index block
+    long[] stats = {1, indexBlock - secondaryBlock, 3, secondaryBlock - dataBlock0, 9, 2 + 2 + 4 + 4, indexBlock};
+    for (int i = 0; i < stats.length; i++) {
+      w.patch(statsField + 8 * i, stats[i]);
+    }
+    return header;
+  }
+
+  private static void eaDataBlock(H5Writer w, long header, int clientId, long[] address, int[] size, int start,
+      int n) {
+    long dataBlock = w.pos();
+    w.str("EADB").b(0).b(clientId).l(header).s(start - 2);
+    eaElements(w, address, size, start, n);
+    w.checksum(dataBlock);
+  }
+
+  private static void eaElements(H5Writer w, long[] address, int[] size, int start, int n) {
+    for (int i = start; i < start + n; i++) {
+      boolean written = i < address.length && address[i] != -1;
+      w.l(written ? address[i] : -1);
+      if (size != null) {
+        w.s(written ? size[i] : 0).i(0);
+      }
+    }
+  }
+
+  @Test
+  public void testBTree2() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long[] address = writeChunks(w, false);
+
+    // depth 1: a root with one record and two leaves; chunk 8 is not written
+    // records are 24 bytes, so the leaves have at most (128 - 10) / 24 = 4 records, and 1 byte record counts
+    long leaf0 = w.pos();
+    w.str("BTLF").b(0).b(10);
+    for (int i = 0; i < 4; i++) {
+      w.l(address[i]).l(i / nchunkCols).l(i % nchunkCols);
+    }
+    w.checksum(leaf0);
+    long leaf1 = w.pos();
+    w.str("BTLF").b(0).b(10);
+    for (int i = 5; i < 8; i++) {
+      w.l(address[i]).l(i / nchunkCols).l(i % nchunkCols);
+    }
+    w.checksum(leaf1);
+    long root = w.pos();
+    w.str("BTIN").b(0).b(10).l(address[4]).l(1).l(1);
+    w.l(leaf0).b(4).l(leaf1).b(3).checksum(root);
+    long header = w.pos();
+    w.str("BTHD").b(0).b(10).i(128).s(24).s(1).b(100).b(40).l(root).s(1).l(8).checksum(header);
+
+    ByteBuffer layout = layout(chunk, 0, 5, 32);
+    layout.putInt(128).put((byte) 100).put((byte) 40).putLong(header);
+    check(w, new int[] {-1, -1}, layout, chunk, false, 8);
+  }
+
+  @Test
+  public void testBTree2Filtered() throws IOException, InvalidRangeException {
+    H5Writer w = new H5Writer();
+    long[] address = writeChunks(w, true);
+
+    // chunk sizes are 1 + (log2(64) + 8) / 8 = 2 bytes
+    long leaf = w.pos();
+    w.str("BTLF").b(0).b(11);
+    for (int i = 0; i < 9; i++) {
+      w.l(address[i]).s(w.sizes[i]).i(0).l(i / nchunkCols).l(i % nchunkCols);
+    }
+    w.checksum(leaf);
+    long header = w.pos();
+    w.str("BTHD").b(0).b(11).i(512).s(8 + 2 + 4 + 16).s(0).b(100).b(40).l(leaf).s(9).l(9).checksum(header);
+
+    ByteBuffer layout = layout(chunk, 0, 5, 32);
+    layout.putInt(512).put((byte) 100).put((byte) 40).putLong(header);
+    check(w, new int[] {-1, -1}, layout, chunk, true);
+  }
+
+  @Test
+  public void testChunkSizeLength() {
+    assertThat(DataBTree.chunkSizeLength(64)).isEqualTo(2);
+    assertThat(DataBTree.chunkSizeLength(256)).isEqualTo(3);
+    assertThat(DataBTree.chunkSizeLength(1 << 20)).isEqualTo(4);
+    assertThat(DataBTree.chunkSizeLength(Long.MAX_VALUE)).isEqualTo(8);
+  }
+
+  @Test
+  public void testScaledOffset() {
+    long[] chunks = {Long.MAX_VALUE, 3, 4};
+    assertThat(DataBTree.scaledOffset(0, chunks)).isEqualTo(new long[] {0, 0, 0});
+    assertThat(DataBTree.scaledOffset(7, chunks)).isEqualTo(new long[] {0, 1, 3});
+    assertThat(DataBTree.scaledOffset(12 * 5 + 9, chunks)).isEqualTo(new long[] {5, 2, 1});
+
+    long[] coords = {1, 2, 3, 4};
+    assertThat(DataBTree.swizzle(coords, 2)).isEqualTo(new long[] {3, 1, 2, 4});
+    assertThat(DataBTree.unswizzle(DataBTree.swizzle(coords, 2), 2)).isEqualTo(coords);
+    assertThat(DataBTree.unswizzle(DataBTree.swizzle(coords, 0), 0)).isEqualTo(coords);
+  }
+
+  @Test
+  public void testSuperBlocks() {
+    ExtensibleArray.SuperBlockInfo[] info = ExtensibleArray.makeSuperBlocks(32, 16);
+    assertThat(info.length).isEqualTo(29);
+    long[] ndataBlocks = {1, 1, 2, 2, 4, 4};
+    long[] dataBlockNelems = {16, 32, 32, 64, 64, 128};
+    long[] startIndex = {0, 16, 48, 112, 240, 496};
+    for (int i = 0; i < ndataBlocks.length; i++) {
+      assertThat(info[i].ndataBlocks).isEqualTo(ndataBlocks[i]);
+      assertThat(info[i].dataBlockNelems).isEqualTo(dataBlockNelems[i]);
+      assertThat(info[i].startIndex).isEqualTo(startIndex[i]);
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+
+  // the 9 chunks in row major order, optionally deflated; returns their addresses
+  private static long[] writeChunks(H5Writer w, boolean deflate) {
+    long[] address = new long[9];
+    w.sizes = new int[9];
+    for (int i = 0; i < 9; i++) {
+      byte[] data = chunkData((i / nchunkCols) * chunk[0], (i % nchunkCols) * chunk[1], chunk);
+      if (deflate) {
+        data = deflate(data);
+      }
+      address[i] = w.pos();
+      w.sizes[i] = data.length;
+      w.bytes(data);
+    }
+    return address;
+  }
+
+  private static byte[] chunkData(int row0, int col0, int[] chunkShape) {
+    ByteBuffer bb = ByteBuffer.allocate(4 * chunkShape[0] * chunkShape[1]).order(ByteOrder.LITTLE_ENDIAN);
+    for (int row = row0; row < row0 + chunkShape[0]; row++) {
+      for (int col = col0; col < col0 + chunkShape[1]; col++) {
+        bb.putInt(value(row, col));
+      }
+    }
+    return bb.array();
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buff = new byte[1000];
+    while (!deflater.finished()) {
+      out.write(buff, 0, deflater.deflate(buff));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  // version 4 chunked layout message, up to the index parameters
+  private static ByteBuffer layout(int[] chunkShape, int flags, int indexType, int size) {
+    ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    bb.put((byte) 4).put((byte) 2).put((byte) flags).put((byte) 3).put((byte) 1);
+    bb.put((byte) chunkShape[0]).put((byte) chunkShape[1]).put((byte) 4);
+    bb.put((byte) indexType);
+    return bb;
+  }
+
+  /**
+   * Write the dataset "data" with the layout message, open the file and check the values.
+   *
+   * @param maxShape -1 for unlimited
+   * @param missing row major index of the chunks that are not written, read as the default fill value
+   * @return the file
+   */
+  private File check(H5Writer w, int[] maxShape, ByteBuffer layout, int[] chunkShape, boolean deflate,
+      int... missing) throws IOException, InvalidRangeException {
+    ByteBuffer dataspace = ByteBuffer.allocate(4 + 32).order(ByteOrder.LITTLE_ENDIAN);
+    dataspace.put((byte) 2).put((byte) 2).put((byte) 1).put((byte) 1);
+    dataspace.putLong(shape[0]).putLong(shape[1]).putLong(maxShape[0]).putLong(maxShape[1]);
+    ByteBuffer datatype = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    datatype.put(new byte[] {0x10, 0x08, 0, 0}).putInt(4).putShort((short) 0).putShort((short) 32);
+    ByteBuffer filter = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    filter.put((byte) 2).put((byte) 1).putShort((short) 1).putShort((short) 0).putShort((short) 1).putInt(5);
+
+    long dataset = w.pos();
+    if (deflate) {
+      w.objectHeader(1, dataspace, 3, datatype, 11, filter, 8, layout);
+    } else {
+      w.objectHeader(1, dataspace, 3, datatype, 8, layout);
+    }
+
+    ByteBuffer linkInfo = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+    linkInfo.put((byte) 0).put((byte) 0).putLong(-1).putLong(-1);
+    ByteBuffer groupInfo = ByteBuffer.allocate(2);
+    ByteBuffer link = ByteBuffer.allocate(2 + 1 + 4 + 8).order(ByteOrder.LITTLE_ENDIAN);
+    link.put((byte) 1).put((byte) 0).put((byte) 4).put("data".getBytes(StandardCharsets.UTF_8)).putLong(dataset);
+    long root = w.pos();
+    w.objectHeader(2, linkInfo, 10, groupInfo, 6, link);
+
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), w.finish(root));
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(file.getPath())) {
+      Variable v = ncfile.findVariable("data");
+      assertThat(v).isNotNull();
+      assertThat(v.getShape()).isEqualTo(shape);
+      v.setCaching(false); // so readInto goes to the iosp
+      Array<?> data = v.readArray();
+      int count = 0;
+      for (Object val : data) {
+        int row = count / shape[1];
+        int col = count % shape[1];
+        int chunkIndex = (row / chunkShape[0]) * nchunkCols + (col / chunkShape[1]);
+        boolean isMissing = Arrays.stream(missing).anyMatch(m -> m == chunkIndex);
+        assertThat(val).isEqualTo(isMissing ? NetcdfFormatUtils.NC_FILL_INT : value(row, col));
+        count++;
+      }
+      assertThat(count).isEqualTo(shape[0] * shape[1]);
+
+      // the missing chunks are filled in the destination, past an offset
+      int[] dest = new int[count + 3];
+      Arrays.fill(dest, -1);
+      v.readInto(null, dest, 3);
+      assertThat(Arrays.copyOfRange(dest, 3, dest.length))
+          .isEqualTo(ucar.array.Arrays.copyPrimitiveArray(data));
+    }
+    return file;
+  }
+
+  // writes a little endian file with 8 byte offsets and lengths
+  private static class H5Writer {
+    private final ByteBuffer bb = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    // start and end of the bytes of each checksum, which are computed at the end, after any patches
+    private final List<long[]> checksums = new ArrayList<>();
+    int[] sizes;
+
+    H5Writer() {
+      bb.position(48); // the superblock is written last
+    }
+
+    long pos() {
+      return bb.position();
+    }
+
+    H5Writer b(int v) {
+      bb.put((byte) v);
+      return this;
+    }
+
+    H5Writer s(int v) {
+      bb.putShort((short) v);
+      return this;
+    }
+
+    H5Writer i(int v) {
+      bb.putInt(v);
+      return this;
+    }
+
+    H5Writer l(long v) {
+      bb.putLong(v);
+      return this;
+    }
+
+    H5Writer str(String s) {
+      bb.put(s.getBytes(StandardCharsets.UTF_8));
+      return this;
+    }
+
+    H5Writer bytes(byte[] b) {
+      bb.put(b);
+      return this;
+    }
+
+    // the checksum of the bytes from start to here
+    H5Writer checksum(long start) {
+      checksums.add(new long[] {start, pos()});
+      return i(0);
+    }
+
+    // an address that was not known when it was written
+    void patch(long pos, long address) {
+      bb.putLong((int) pos, address);
+    }
+
+    // version 2 object header with messages given as (type, message) pairs
+    void objectHeader(Object... messages) {
+      int size = 0;
+      for (int i = 1; i < messages.length; i += 2) {
+        size += 4 + ((ByteBuffer) messages[i]).capacity();
+      }
+      long start = pos();
+      str("OHDR").b(2).b(2).i(size);
+      for (int i = 0; i < messages.length; i += 2) {
+        byte[] message = ((ByteBuffer) messages[i + 1]).array();
+        b((Integer) messages[i]).s(message.length).b(0).bytes(message);
+      }
+      checksum(start);
+    }
+
+    // version 2 superblock
+    byte[] finish(long rootAddress) {
+      int eof = bb.position();
+      bb.position(0);
+      bytes(new byte[] {(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'});
+      b(2).b(8).b(8).b(0).l(0).l(-1).l(eof).l(rootAddress).checksum(0);
+      for (long[] range : checksums) {
+        bb.putInt((int) range[1], lookup3(bb.array(), (int) range[0], (int) (range[1] - range[0])));
+      }
+      return Arrays.copyOf(bb.array(), eof);
+    }
+
+    // Bob Jenkins' lookup3 hashlittle() with an initial value of 0, the HDF5 checksum
+    static int lookup3(byte[] data, int offset, int length) {
+      int a = 0xdeadbeef + length;
+      int b = a;
+      int c = a;
+      ByteBuffer in = ByteBuffer.wrap(data, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+      while (in.remaining() > 12) {
+        a += in.getInt();
+        b += in.getInt();
+        c += in.getInt();
+        a -= c;
+        a ^= Integer.rotateLeft(c, 4);
+        c += b;
+        b -= a;
+        b ^= Integer.rotateLeft(a, 6);
+        a += c;
+        c -= b;
+        c ^= Integer.rotateLeft(b, 8);
+        b += a;
+        a -= c;
+        a ^= Integer.rotateLeft(c, 16);
+        c += b;
+        b -= a;
+        b ^= Integer.rotateLeft(a, 19);
+        a += c;
+        c -= b;
+        c ^= Integer.rotateLeft(b, 4);
+        b += a;
+      }
+      if (!in.hasRemaining()) {
+        return c;
+      }
+      // the last 1 to 12 bytes, padded with zeros
+      ByteBuffer last = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+      last.put(in);
+      last.rewind();
+      a += last.getInt();
+      b += last.getInt();
+      c += last.getInt();
+      c ^= b;
+      c -= Integer.rotateLeft(b, 14);
+      a ^= c;
+      a -= Integer.rotateLeft(c, 11);
+      b ^= a;
+      b -= Integer.rotateLeft(a, 25);
+      c ^= b;
+      c -= Integer.rotateLeft(b, 16);
+      a ^= c;
+      a -= Integer.rotateLeft(c, 4);
+      b ^= a;
+      b -= Integer.rotateLeft(a, 14);
+      c ^= b;
+      c -= Integer.rotateLeft(b, 24);
+      return c;
+    }
+  }
+}
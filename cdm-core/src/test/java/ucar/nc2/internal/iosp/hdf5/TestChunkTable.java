@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.array.Array;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.util.DiskCache2;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link ChunkTable} and its use by {@link DataBTree} */
+public class TestChunkTable {
+  private static final String testFile = TestDir.cdmLocalTestDataDir + "chunked.h5";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void cleanup() {
+    DataBTree.setChunkIndexCache(null);
+  }
+
+  private static List<Object> values(Array<?> array) {
+    List<Object> result = new ArrayList<>();
+    array.forEach(result::add);
+    return result;
+  }
+
+  @Test
+  public void testFindFirst() {
+    Tiling tiling = new Tiling(new int[] {10, 10}, new int[] {4, 4, 4});
+    ChunkTable.Builder builder = new ChunkTable.Builder(3);
+    for (int row = 0; row < 10; row += 4) {
+      for (int col = 0; col < 10; col += 4) {
+        builder.add(new int[] {row, col, 0}, 1000 + 10 * row + col, 64, 0);
+      }
+    }
+    ChunkTable table = builder.build(tiling);
+
+    assertThat(table.getNumberOfChunks()).isEqualTo(9);
+    assertThat(table.getOffset(4)).isEqualTo(new int[] {4, 4, 0});
+    assertThat(table.getFilePos(4)).isEqualTo(1044);
+    assertThat(table.findFirst(null, tiling)).isEqualTo(0);
+    assertThat(table.findFirst(new int[] {0, 0}, tiling)).isEqualTo(0);
+    assertThat(table.findFirst(new int[] {0, 5}, tiling)).isEqualTo(1);
+    assertThat(table.findFirst(new int[] {5, 0}, tiling)).isEqualTo(3);
+    assertThat(table.findFirst(new int[] {7, 9}, tiling)).isEqualTo(5);
+    assertThat(table.findFirst(new int[] {9, 9}, tiling)).isEqualTo(8);
+  }
+
+  @Test
+  public void testSubsetsMatch() throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(testFile)) {
+      Variable v = ncfile.findVariable("data");
+      assertThat(v).isNotNull();
+      int[] shape = v.getShape();
+      Array<?> all = v.readArray();
+      for (int row = 0; row < shape[0]; row++) {
+        for (int col = 0; col < shape[1]; col++) {
+          Section section = new Section(new int[] {row, col}, new int[] {1, 1});
+          assertThat(values(v.readArray(section))).containsExactly(all.get(row, col));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSavedChunkTable() throws IOException, InvalidRangeException {
+    File dir = tempFolder.newFolder();
+    DataBTree.setChunkIndexCache(new DiskCache2(dir.getPath(), false, 0, 0));
+
+    List<Object> expected;
+    ChunkTable read;
+    try (NetcdfFile ncfile = NetcdfFiles.open(testFile)) {
+      Variable v = ncfile.findVariable("data");
+      expected = values(v.readArray());
+      read = ((H5header.Vinfo) v.getSPobject()).btree.getChunkTable();
+    }
+
+    List<File> saved;
+    try (Stream<Path> files = Files.walk(dir.toPath())) {
+      saved = files.filter(Files::isRegularFile).map(Path::toFile).collect(Collectors.toList());
+    }
+    assertThat(saved).hasSize(1);
+
+    try (NetcdfFile ncfile = NetcdfFiles.open(testFile)) {
+      Variable v = ncfile.findVariable("data");
+      assertThat(values(v.readArray())).isEqualTo(expected);
+      ChunkTable loaded = ((H5header.Vinfo) v.getSPobject()).btree.getChunkTable();
+      assertThat(loaded).isNotSameInstanceAs(read);
+      assertThat(loaded.getNumberOfChunks()).isEqualTo(read.getNumberOfChunks());
+      for (int i = 0; i < read.getNumberOfChunks(); i++) {
+        assertThat(loaded.getOffset(i)).isEqualTo(read.getOffset(i));
+        assertThat(loaded.getFilePos(i)).isEqualTo(read.getFilePos(i));
+        assertThat(loaded.getSize(i)).isEqualTo(read.getSize(i));
+        assertThat(loaded.getFilterMask(i)).isEqualTo(read.getFilterMask(i));
+      }
+    }
+
+    // not used if the file has changed
+    File file = new File(testFile);
+    Tiling tiling = new Tiling(new int[] {10, 10}, new int[] {4, 4, 4});
+    assertThat(ChunkTable.read(saved.get(0), file.length(), file.lastModified() + 1, 0, read.getRank(), tiling))
+        .isNull();
+  }
+}
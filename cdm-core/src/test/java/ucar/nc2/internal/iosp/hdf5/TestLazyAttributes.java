@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.unidata.util.test.TestDir;
+
+/** Test that attributes read lazily, with "unidata.h5iosp.lazyAttributes", are the same as those read at open. */
+public class TestLazyAttributes {
+  private static final String PROPERTY = "unidata.h5iosp.lazyAttributes";
+  private static final List<String> files =
+      ImmutableList.of("hdf5/string_attrs.nc4", "hdf5/compound_complex.h5", "hdf5/test_atomic_types.nc",
+          "hdf5/structmetadata_eos.h5", "testSpecialAttributes.nc4", "testCFGridWriter.nc4", "chunked.h5");
+
+  @Test
+  public void testSameAttributes() throws IOException {
+    for (String file : files) {
+      String location = TestDir.cdmLocalTestDataDir + file;
+      try (NetcdfFile eager = NetcdfFiles.open(location); NetcdfFile lazy = openLazy(location)) {
+        compare(eager.getRootGroup(), lazy.getRootGroup());
+        assertThat(lazy.toString()).isEqualTo(eager.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testReadDataThenAttributes() throws IOException {
+    String location = TestDir.cdmLocalTestDataDir + "hdf5/string_attrs.nc4";
+    try (NetcdfFile eager = NetcdfFiles.open(location); NetcdfFile lazy = openLazy(location)) {
+      for (Variable v : lazy.getVariables()) {
+        v.readArray();
+      }
+      compare(eager.getRootGroup(), lazy.getRootGroup());
+    }
+  }
+
+  @Test
+  public void testAttributesAfterClose() throws IOException {
+    String location = TestDir.cdmLocalTestDataDir + "hdf5/string_attrs.nc4";
+    try (NetcdfFile eager = NetcdfFiles.open(location)) {
+      NetcdfFile lazy = openLazy(location);
+      lazy.close();
+      compare(eager.getRootGroup(), lazy.getRootGroup());
+    }
+  }
+
+  @Test
+  public void testAttributesAfterRelease() throws IOException {
+    String location = TestDir.cdmLocalTestDataDir + "testCFGridWriter.nc4";
+    try (NetcdfFile eager = NetcdfFiles.open(location); NetcdfFile lazy = openLazy(location)) {
+      lazy.release();
+      compare(eager.getRootGroup(), lazy.getRootGroup());
+      lazy.reacquire();
+      for (Variable v : lazy.getVariables()) {
+        v.readArray();
+      }
+      compare(eager.getRootGroup(), lazy.getRootGroup());
+    }
+  }
+
+  @Test
+  public void testReadDataWhileMakingAttributes() throws Exception {
+    String location = TestDir.cdmLocalTestDataDir + "hdf5/string_attrs.nc4";
+    ExecutorService exec = Executors.newFixedThreadPool(2);
+    try (NetcdfFile eager = NetcdfFiles.open(location)) {
+      for (int i = 0; i < 20; i++) {
+        try (NetcdfFile lazy = openLazy(location)) {
+          List<Future<?>> futures = new ArrayList<>();
+          futures.add(exec.submit(() -> {
+            for (int j = 0; j < 10; j++) {
+              for (Variable v : lazy.getVariables()) {
+                v.setCaching(false);
+                v.readArray();
+              }
+            }
+            return null;
+          }));
+          futures.add(exec.submit(() -> {
+            compare(eager.getRootGroup(), lazy.getRootGroup());
+            return null;
+          }));
+          for (Future<?> f : futures) {
+            f.get();
+          }
+        }
+      }
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  private NetcdfFile openLazy(String location) throws IOException {
+    System.setProperty(PROPERTY, "true");
+    try {
+      return NetcdfFiles.open(location);
+    } finally {
+      System.clearProperty(PROPERTY);
+    }
+  }
+
+  private void compare(Group eager, Group lazy) {
+    assertThat(ImmutableList.copyOf(lazy.attributes())).isEqualTo(ImmutableList.copyOf(eager.attributes()));
+    for (Variable v : eager.getVariables()) {
+      Variable lv = lazy.findVariableLocal(v.getShortName());
+      assertThat(lv).isNotNull();
+      assertThat(ImmutableList.copyOf(lv.attributes())).isEqualTo(ImmutableList.copyOf(v.attributes()));
+    }
+    for (Group g : eager.getGroups()) {
+      Group lg = lazy.findGroupLocal(g.getShortName());
+      assertThat(lg).isNotNull();
+      compare(g, lg);
+    }
+  }
+}
@@ -12,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.unidata.util.test.TestDir;
 import java.io.File;
+import java.nio.file.Files;
 import java.lang.invoke.MethodHandles;
 import ucar.unidata.util.test.category.NeedsCdmUnitTest;
 
@@ -34,6 +35,32 @@ public class TestDiskCache2 {
     System.out.printf("cache.getRootDirectory = %s%n", f.toString());
   }
 
+  @Test
+  public void testPropertyCache() throws Exception {
+    String property = "ucar.nc2.internal.util.TestDiskCache2.dir";
+    DiskCache2.PropertyCache notSet = new DiskCache2.PropertyCache(property);
+    assertThat(notSet.get()).isNull();
+    DiskCache2 other = DiskCache2.getNoop();
+    notSet.set(other);
+    assertThat(notSet.get()).isSameInstanceAs(other);
+
+    File dir = Files.createTempDirectory("TestDiskCache2").toFile();
+    System.setProperty(property, dir.getPath());
+    try {
+      DiskCache2.PropertyCache fromProperty = new DiskCache2.PropertyCache(property);
+      DiskCache2 cache = fromProperty.get();
+      assertThat(cache).isNotNull();
+      assertThat(new File(cache.getRootDirectory()).getCanonicalFile()).isEqualTo(dir.getCanonicalFile());
+      assertThat(fromProperty.get()).isSameInstanceAs(cache);
+      fromProperty.set(null);
+      assertThat(fromProperty.get()).isNull();
+    } finally {
+      System.clearProperty(property);
+      DiskCache2.exit();
+      dir.delete();
+    }
+  }
+
   @Test
   @Category(NeedsCdmUnitTest.class)
   public void testReletivePath() throws Exception {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Test {@link ChunkCache} */
+public class TestChunkCache {
+
+  @Test
+  public void testGetAndPut() {
+    ChunkCache cache = new ChunkCache(1000);
+    String file = ChunkCache.newFileId("test.h5");
+    byte[] chunk = new byte[100];
+
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "var", new int[] {0, 10}))).isNull();
+    cache.put(new ChunkCache.Key(file, "var", new int[] {0, 10}), chunk);
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "var", new int[] {0, 10}))).isSameInstanceAs(chunk);
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "var", new int[] {10, 0}))).isNull();
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "other", new int[] {0, 10}))).isNull();
+    assertThat(cache.getIfPresent(new ChunkCache.Key(ChunkCache.newFileId("test.h5"), "var", new int[] {0, 10})))
+        .isNull();
+
+    assertThat(cache.getSizeInBytes()).isEqualTo(100);
+    assertThat(cache.getStats().hitCount()).isEqualTo(1);
+    assertThat(cache.getStats().missCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void testByteBudget() {
+    ChunkCache cache = new ChunkCache(1000);
+    String file = ChunkCache.newFileId("test.h5");
+    for (int i = 0; i < 30; i++) {
+      cache.put(new ChunkCache.Key(file, "var", new int[] {i}), new byte[100]);
+    }
+    assertThat(cache.getSizeInBytes()).isAtMost(1000);
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "var", new int[] {29}))).isNotNull();
+
+    // too big to keep
+    cache.put(new ChunkCache.Key(file, "var", new int[] {100}), new byte[1001]);
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file, "var", new int[] {100}))).isNull();
+  }
+
+  @Test
+  public void testInvalidate() {
+    ChunkCache cache = new ChunkCache(1000);
+    String file1 = ChunkCache.newFileId("test.h5");
+    String file2 = ChunkCache.newFileId("test.h5");
+    assertThat(file1).isNotEqualTo(file2);
+
+    cache.put(new ChunkCache.Key(file1, "var", new int[] {0}), new byte[10]);
+    cache.put(new ChunkCache.Key(file2, "var", new int[] {0}), new byte[10]);
+    cache.invalidate(file1);
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file1, "var", new int[] {0}))).isNull();
+    assertThat(cache.getIfPresent(new ChunkCache.Key(file2, "var", new int[] {0}))).isNotNull();
+
+    cache.invalidateAll();
+    assertThat(cache.getSizeInBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testEvictedKeysAreForgotten() {
+    ChunkCache cache = new ChunkCache(1000);
+    String file = ChunkCache.newFileId("test.h5");
+    for (int i = 0; i < 30; i++) {
+      cache.put(new ChunkCache.Key(file, "var", new int[] {i}), new byte[100]);
+    }
+    // put again, replaces
+    cache.put(new ChunkCache.Key(file, "var", new int[] {29}), new byte[100]);
+    assertThat(cache.getKeyCount(file) * 100L).isEqualTo(cache.getSizeInBytes());
+    assertThat(cache.getKeyCount(file)).isAtMost(10);
+
+    cache.invalidate(file);
+    assertThat(cache.getKeyCount(file)).isEqualTo(0);
+    assertThat(cache.getSizeInBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDisabled() {
+    ChunkCache cache = new ChunkCache(0);
+    assertThat(cache.isEnabled()).isFalse();
+    ChunkCache.Key key = new ChunkCache.Key(ChunkCache.newFileId("test.h5"), "var", new int[] {0});
+    cache.put(key, new byte[0]);
+    assertThat(cache.getIfPresent(key)).isNull();
+  }
+}
@@ -44,4 +44,21 @@ public class TestIndexChunker {
     assertThat(index.toString()).isEqualTo("wantSize=1,2 maxSize=200,2 wantStride=1,1 stride=20,200");
   }
 
+  @Test
+  public void testMoreThanIntElements() throws InvalidRangeException {
+    int[] shape = new int[] {3, 1 << 20, 1 << 10};
+    IndexChunker index = new IndexChunker(shape, null);
+    assertThat(index.getTotalNelems()).isEqualTo(3L << 30);
+    // chunks are limited to what fits in a java array
+    int count = 0;
+    while (index.hasNext()) {
+      IndexChunker.Chunk chunk = index.next();
+      assertThat(chunk.getNelems()).isEqualTo(1 << 30);
+      assertThat(chunk.getDestElem()).isEqualTo((long) count << 30);
+      assertThat(chunk.getSrcElem()).isEqualTo((long) count << 30);
+      count++;
+    }
+    assertThat(count).isEqualTo(3);
+  }
+
 }
@@ -4,14 +4,35 @@
  */
 package ucar.nc2.iosp;
 
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.array.Array;
 import ucar.array.ArrayType;
+import ucar.array.Arrays;
+import ucar.array.Section;
+import ucar.array.StoragePaged;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 /** Test {@link IospArrayHelper} */
 public class TestIospArrayHelper {
 
+  @ClassRule
+  public static final TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void testMakePrimitiveArray() {
     Object sresult = IospArrayHelper.makePrimitiveArray(10, ArrayType.STRING);
@@ -38,4 +59,189 @@ public class TestIospArrayHelper {
     }
   }
 
+  private static File makeFloatFile(int[] shape, long startPos, ByteOrder order) throws Exception {
+    int n = (int) ucar.array.Arrays.computeSize(shape);
+    ByteBuffer bb = ByteBuffer.allocate((int) startPos + 4 * n).order(order);
+    bb.position((int) startPos);
+    for (int i = 0; i < n; i++) {
+      bb.putFloat(i);
+    }
+    File file = tempFolder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(bb.array());
+    }
+    return file;
+  }
+
+  @Test
+  public void testReadDataAt() throws Exception {
+    int[] shape = new int[] {10, 20, 30};
+    long startPos = 13;
+    File file = makeFloatFile(shape, startPos, ByteOrder.LITTLE_ENDIAN);
+    Section want = new Section("1:9:2, 3:17, 0:29:3");
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r", 100)) {
+      Layout layout = new LayoutRegular(startPos, 4, shape, want);
+      float[] expected = (float[]) IospArrayHelper.readDataFill(raf, layout, ArrayType.FLOAT, null,
+          ByteOrder.LITTLE_ENDIAN);
+
+      raf.order(ByteOrder.BIG_ENDIAN);
+      raf.seek(7);
+      layout = new LayoutRegular(startPos, 4, shape, want);
+      float[] result = (float[]) IospArrayHelper.readDataFillAt(raf, layout, ArrayType.FLOAT, null,
+          ByteOrder.LITTLE_ENDIAN);
+      assertThat(result).isEqualTo(expected);
+      // the state of the raf is not changed
+      assertThat(raf.getFilePointer()).isEqualTo(7);
+      assertThat(raf.getByteOrder()).isEqualTo(ByteOrder.BIG_ENDIAN);
+    }
+  }
+
+  @Test
+  public void testReadDataAtConcurrently() throws Exception {
+    int[] shape = new int[] {50, 100};
+    File file = makeFloatFile(shape, 0, ByteOrder.BIG_ENDIAN);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      List<Future<float[]>> results = new ArrayList<>();
+      for (int row = 0; row < shape[0]; row++) {
+        Section want = new Section(row + ", :");
+        results.add(pool.submit(() -> (float[]) IospArrayHelper.readDataFillAt(raf,
+            new LayoutRegular(0, 4, shape, want), ArrayType.FLOAT, null, ByteOrder.BIG_ENDIAN)));
+      }
+      for (int row = 0; row < shape[0]; row++) {
+        float[] data = results.get(row).get();
+        for (int col = 0; col < shape[1]; col++) {
+          assertThat(data[col]).isEqualTo((float) (row * shape[1] + col));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testUsePositionalReads() throws Exception {
+    int[] shape = new int[] {50, 100};
+    File file = makeFloatFile(shape, 0, ByteOrder.BIG_ENDIAN);
+    int threshold = IospArrayHelper.getPositionalReadThreshold();
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      IospArrayHelper.setPositionalReadThreshold(400);
+      // each row is one chunk of 400 bytes
+      assertThat(IospArrayHelper.usePositionalReads(raf, new LayoutRegular(0, 4, shape, new Section("0:9, :")),
+          ArrayType.FLOAT)).isTrue();
+      assertThat(IospArrayHelper.usePositionalReads(raf, new LayoutRegular(0, 4, shape, new Section("0:9, 0:98")),
+          ArrayType.FLOAT)).isFalse();
+      assertThat(IospArrayHelper.usePositionalReads(raf, new LayoutRegular(0, 4, shape, new Section(":, :")),
+          ArrayType.STRING)).isFalse();
+
+      LayoutRegular layout = new LayoutRegular(0, 4, shape, new Section("3:5, :"));
+      float[] data = (float[]) IospArrayHelper.readDataFillRegular(raf, layout, ArrayType.FLOAT, null, null);
+      assertThat(data[0]).isEqualTo(300.0f);
+      assertThat(data[data.length - 1]).isEqualTo(599.0f);
+    } finally {
+      IospArrayHelper.setPositionalReadThreshold(threshold);
+    }
+
+    // the file may change while it is open for writing
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "rw")) {
+      assertThat(IospArrayHelper.usePositionalReads(raf, new LayoutRegular(0, 4, shape, null), ArrayType.FLOAT))
+          .isFalse();
+    }
+  }
+
+  @Test
+  public void testVariableReadsConcurrently() throws Exception {
+    int threshold = IospArrayHelper.getPositionalReadThreshold();
+    IospArrayHelper.setPositionalReadThreshold(0);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try (ucar.nc2.NetcdfFile ncfile =
+        ucar.nc2.NetcdfFiles.open(ucar.unidata.util.test.TestDir.cdmLocalTestDataDir + "permuteTest.nc")) {
+      ucar.nc2.Variable v = ncfile.findVariable("tzyx");
+      assertThat(v).isNotNull();
+      v.setCaching(false);
+      int[] shape = v.getShape();
+      double[] expected = (double[]) Arrays.copyPrimitiveArray(v.readArray());
+      int rowSize = shape[1] * shape[2] * shape[3];
+
+      List<Future<Array<?>>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        Section want = new Section((i % shape[0]) + ", :, :, :");
+        results.add(pool.submit(() -> v.readArray(want)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        double[] data = (double[]) Arrays.copyPrimitiveArray(results.get(i).get());
+        int start = (i % shape[0]) * rowSize;
+        assertThat(data).isEqualTo(java.util.Arrays.copyOfRange(expected, start, start + rowSize));
+      }
+    } finally {
+      pool.shutdown();
+      IospArrayHelper.setPositionalReadThreshold(threshold);
+    }
+  }
+
+  @Test
+  public void testHdf5PositionalReadsWithoutLock() throws Exception {
+    int threshold = IospArrayHelper.getPositionalReadThreshold();
+    IospArrayHelper.setPositionalReadThreshold(0);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try (ucar.nc2.NetcdfFile ncfile =
+        ucar.nc2.NetcdfFiles.open(ucar.unidata.util.test.TestDir.cdmLocalTestDataDir + "testCFGridWriter.nc4")) {
+      ucar.nc2.Variable v = ncfile.findVariable("Temperature_surface");
+      assertThat(v).isNotNull();
+      v.setCaching(false);
+      float[] expected = (float[]) Arrays.copyPrimitiveArray(v.readArray());
+      Section want = new Section("3:7, :, :");
+
+      // contiguous data does not wait for a read that holds the iosp lock
+      Object iosp = ncfile.sendIospMessage(ucar.nc2.NetcdfFile.IOSP_MESSAGE_GET_IOSP);
+      Future<Array<?>> result;
+      synchronized (iosp) {
+        result = pool.submit(() -> v.readArray(want));
+        assertThat(result.get(10, java.util.concurrent.TimeUnit.SECONDS)).isNotNull();
+      }
+      int rowSize = v.getShape(1) * v.getShape(2);
+      assertThat((float[]) Arrays.copyPrimitiveArray(result.get()))
+          .isEqualTo(java.util.Arrays.copyOfRange(expected, 3 * rowSize, 8 * rowSize));
+    } finally {
+      pool.shutdown();
+      IospArrayHelper.setPositionalReadThreshold(threshold);
+    }
+  }
+
+  @Test
+  public void testReadDataPaged() throws Exception {
+    int[] shape = new int[] {10, 20, 30};
+    File file = makeFloatFile(shape, 0, ByteOrder.BIG_ENDIAN);
+    Section want = new Section("1:9:2, 3:17, 0:29");
+    int[] wantShape = want.getShape();
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r", 100)) {
+      float[] expected = (float[]) IospArrayHelper.readDataFill(raf, new LayoutRegular(0, 4, shape, want),
+          ArrayType.FLOAT, null, ByteOrder.BIG_ENDIAN);
+
+      // small pages, so that chunks span pages
+      StoragePaged<?> paged = StoragePaged.create(ArrayType.FLOAT, want.computeSize(), 5);
+      IospArrayHelper.readData(raf, new LayoutRegular(0, 4, shape, want), ArrayType.FLOAT, paged,
+          ByteOrder.BIG_ENDIAN);
+      Array<Float> array = Arrays.factory(ArrayType.FLOAT, wantShape, paged);
+      assertThat((float[]) Arrays.copyPrimitiveArray(array)).isEqualTo(expected);
+
+      StoragePaged<?> pagedAt = StoragePaged.create(ArrayType.FLOAT, want.computeSize(), 6);
+      IospArrayHelper.readDataAt(raf, new LayoutRegular(0, 4, shape, want), ArrayType.FLOAT, pagedAt,
+          ByteOrder.BIG_ENDIAN);
+      Array<Float> arrayAt = Arrays.factory(ArrayType.FLOAT, wantShape, pagedAt);
+      assertThat((float[]) Arrays.copyPrimitiveArray(arrayAt)).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testMakeStorage() {
+    assertThat(IospArrayHelper.makeStorage(10, ArrayType.SHORT, 3)).isInstanceOf(short[].class);
+    assertThat(IospArrayHelper.makeStorage(10, ArrayType.STRING, null)).isInstanceOf(String[].class);
+    assertThrows(IllegalArgumentException.class,
+        () -> IospArrayHelper.makeStorage(1L << 31, ArrayType.STRING, null));
+  }
+
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ucar.array.ArrayType;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+
+/** Test {@link LayoutBBTiled} reading compressed chunks serially and concurrently. */
+public class TestLayoutBBTiled {
+  private static final int[] shape = {50, 45};
+  private static final int[] chunkSize = {8, 8};
+  private static final int fill = -1;
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void setup() {
+    executor = Executors.newFixedThreadPool(3);
+    LayoutBBTiled.setExecutor(executor);
+  }
+
+  @AfterClass
+  public static void teardown() {
+    LayoutBBTiled.setExecutor(null);
+    executor.shutdown();
+  }
+
+  private static int value(int row, int col) {
+    return row * 1000 + col;
+  }
+
+  // deflated chunks in row-major order, skipping the chunk at missingChunk
+  private static List<TestChunk> makeChunks(int[] missingChunk) {
+    List<TestChunk> chunks = new ArrayList<>();
+    for (int row = 0; row < shape[0]; row += chunkSize[0]) {
+      for (int col = 0; col < shape[1]; col += chunkSize[1]) {
+        if (missingChunk != null && row == missingChunk[0] && col == missingChunk[1]) {
+          continue;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(4 * chunkSize[0] * chunkSize[1]);
+        for (int i = 0; i < chunkSize[0]; i++) {
+          for (int j = 0; j < chunkSize[1]; j++) {
+            bb.putInt(value(row + i, col + j));
+          }
+        }
+        chunks.add(new TestChunk(new int[] {row, col}, deflate(bb.array())));
+      }
+    }
+    return chunks;
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buff = new byte[1000];
+    while (!deflater.finished()) {
+      out.write(buff, 0, deflater.deflate(buff));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  private static int[] read(List<TestChunk> chunks, Section want, int maxConcurrency) throws IOException {
+    Iterator<TestChunk> iter = chunks.iterator();
+    LayoutBBTiled.DataChunkIterator chunkIterator = new LayoutBBTiled.DataChunkIterator() {
+      public boolean hasNext() {
+        return iter.hasNext();
+      }
+
+      public LayoutBBTiled.DataChunk next() {
+        return iter.next();
+      }
+    };
+    LayoutBB layout = new LayoutBBTiled(chunkIterator, chunkSize, 4, want, maxConcurrency);
+    return (int[]) IospArrayHelper.readDataFill(layout, ArrayType.INT, fill);
+  }
+
+  private static void check(List<TestChunk> chunks, String spec, int[] missingChunk)
+      throws InvalidRangeException, IOException {
+    Section want = Section.fill(new Section(spec), shape);
+    int[] serial = read(chunks, want, 1);
+    int[] parallel = read(chunks, want, 4);
+    assertThat(parallel).isEqualTo(serial);
+
+    int count = 0;
+    for (int row : want.getRange(0)) {
+      for (int col : want.getRange(1)) {
+        boolean missing = missingChunk != null && row / chunkSize[0] * chunkSize[0] == missingChunk[0]
+            && col / chunkSize[1] * chunkSize[1] == missingChunk[1];
+        assertThat(parallel[count++]).isEqualTo(missing ? fill : value(row, col));
+      }
+    }
+    assertThat(count).isEqualTo(parallel.length);
+  }
+
+  @Test
+  public void testReadSections() throws InvalidRangeException, IOException {
+    List<TestChunk> chunks = makeChunks(null);
+    check(chunks, ":,:", null);
+    check(chunks, "3:47,5:40", null);
+    check(chunks, "1:49:3,0:44:5", null);
+    check(chunks, "17,:", null);
+    check(chunks, ":,44", null);
+    check(chunks, "10:12,10:12", null);
+  }
+
+  @Test
+  public void testMissingChunk() throws InvalidRangeException, IOException {
+    int[] missing = {16, 24};
+    List<TestChunk> chunks = makeChunks(missing);
+    check(chunks, ":,:", missing);
+    check(chunks, "10:30,20:40", missing);
+  }
+
+  @Test
+  public void testChunkError() throws InvalidRangeException {
+    List<TestChunk> chunks = makeChunks(null);
+    chunks.get(7).compressed[0] ^= 0x55;
+    for (int maxConcurrency : new int[] {1, 4}) {
+      Section want = Section.fill(new Section(":,:"), shape);
+      assertThrows(IOException.class, () -> read(chunks, want, maxConcurrency));
+    }
+  }
+
+  @Test
+  public void testChunkIteratorError() throws InvalidRangeException {
+    for (int maxConcurrency : new int[] {1, 4}) {
+      IOException e = assertThrows(IOException.class, () -> readFailingIterator(maxConcurrency));
+      assertThat(e.getMessage()).isEqualTo("bad chunk index");
+    }
+  }
+
+  // the 9th chunk from the iterator throws an IOException
+  private static void readFailingIterator(int maxConcurrency) throws InvalidRangeException, IOException {
+    List<TestChunk> chunks = makeChunks(null);
+    Iterator<TestChunk> iter = chunks.iterator();
+    LayoutBBTiled.DataChunkIterator chunkIterator = new LayoutBBTiled.DataChunkIterator() {
+      int count;
+
+      public boolean hasNext() {
+        return iter.hasNext();
+      }
+
+      public LayoutBBTiled.DataChunk next() throws IOException {
+        if (++count == 9) {
+          throw new IOException("bad chunk index");
+        }
+        return iter.next();
+      }
+    };
+    LayoutBB layout = new LayoutBBTiled(chunkIterator, chunkSize, 4, Section.fill(null, shape), maxConcurrency);
+    IospArrayHelper.readDataFill(layout, ArrayType.INT, fill);
+  }
+
+  private static class TestChunk implements LayoutBBTiled.DataChunk {
+    private final int[] offset;
+    private final byte[] compressed;
+
+    TestChunk(int[] offset, byte[] compressed) {
+      this.offset = offset;
+      this.compressed = compressed;
+    }
+
+    @Override
+    public int[] getOffset() {
+      return offset;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+      byte[] result = new byte[4 * chunkSize[0] * chunkSize[1]];
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(compressed);
+        if (inflater.inflate(result) != result.length) {
+          throw new IOException("short chunk");
+        }
+      } catch (DataFormatException e) {
+        throw new IOException(e);
+      } finally {
+        inflater.end();
+      }
+      return ByteBuffer.wrap(result);
+    }
+
+    @Override
+    public Callable<ByteBuffer> readChunk() {
+      return this::getByteBuffer;
+    }
+  }
+}
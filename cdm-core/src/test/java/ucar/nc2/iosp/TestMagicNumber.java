@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.internal.iosp.netcdf3.N3header;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link MagicNumber} */
+public class TestMagicNumber {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static boolean matches(MagicNumber magic, String filename) throws IOException {
+    try (RandomAccessFile raf = RandomAccessFile.acquire(filename)) {
+      long pos = raf.getFilePointer();
+      boolean result = magic.matches(new MagicNumber.Sniffer(raf));
+      assertThat(raf.getFilePointer()).isEqualTo(pos);
+      return result;
+    }
+  }
+
+  private String makeFile(int size, int pos, String magic) throws IOException {
+    byte[] data = new byte[size];
+    byte[] b = magic.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(b, 0, data, pos, b.length);
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), data);
+    return file.getPath();
+  }
+
+  @Test
+  public void testNetcdfFormats() throws IOException {
+    String nc3 = TestDir.cdmLocalTestDataDir + "jan.nc";
+    String nc4 = TestDir.cdmLocalTestDataDir + "hdf5/string_attrs.nc4";
+
+    assertThat(matches(NetcdfFileFormat.CDF1_MAGIC, nc3)).isTrue();
+    assertThat(matches(NetcdfFileFormat.CDF2_MAGIC, nc3)).isFalse();
+    assertThat(matches(NetcdfFileFormat.HDF5_MAGIC, nc3)).isFalse();
+    assertThat(matches(NetcdfFileFormat.HDF5_MAGIC, nc4)).isTrue();
+    assertThat(matches(NetcdfFileFormat.CDF1_MAGIC, nc4)).isFalse();
+  }
+
+  @Test
+  public void testSuperblockOffsets() throws IOException {
+    MagicNumber magic = MagicNumber.atSuperblockOffsets("HDF".getBytes(StandardCharsets.UTF_8), 50000);
+    assertThat(matches(magic, makeFile(100_000, 0, "HDF"))).isTrue();
+    assertThat(matches(magic, makeFile(100_000, 512, "HDF"))).isTrue();
+    assertThat(matches(magic, makeFile(100_000, 32768, "HDF"))).isTrue();
+    assertThat(matches(magic, makeFile(100_000, 65536, "HDF"))).isFalse();
+    assertThat(matches(magic, makeFile(100_000, 1000, "HDF"))).isFalse();
+    // past the end of the file
+    assertThat(matches(magic, makeFile(1000, 998, "HD"))).isFalse();
+  }
+
+  @Test
+  public void testWithin() throws IOException {
+    MagicNumber magic = MagicNumber.within("GRIB", 16000);
+    assertThat(matches(magic, makeFile(100, 0, "GRIB"))).isTrue();
+    assertThat(matches(magic, makeFile(20_000, 15_000, "GRIB"))).isTrue();
+    assertThat(matches(magic, makeFile(20_000, 16_001, "GRIB"))).isFalse();
+    assertThat(matches(magic, makeFile(100, 97, "GRI"))).isFalse();
+  }
+
+  @Test
+  public void testAnyMatch() throws IOException {
+    try (RandomAccessFile raf = RandomAccessFile.acquire(TestDir.cdmLocalTestDataDir + "jan.nc")) {
+      MagicNumber.Sniffer sniffer = new MagicNumber.Sniffer(raf);
+      assertThat(MagicNumber.anyMatch(ImmutableList.of(), sniffer)).isTrue();
+      assertThat(MagicNumber.anyMatch(N3header.MAGIC_NUMBERS, sniffer)).isTrue();
+      assertThat(MagicNumber.anyMatch(ImmutableList.of(NetcdfFileFormat.HDF5_MAGIC), sniffer)).isFalse();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package ucar.unidata.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Test {@link BufferPool} */
+public class TestBufferPool {
+  private static final String TEST_FILE_PATH = "src/test/data/preserveLineEndings/testUTF8.txt";
+
+  @Test
+  public void testReuse() {
+    BufferPool pool = new BufferPool(1 << 20);
+    byte[] first = pool.acquire(4096, "first");
+    assertThat(first.length).isEqualTo(4096);
+    pool.release(first);
+    assertThat(pool.getFreeBytes()).isEqualTo(4096L);
+
+    // same size is reused, other sizes are not
+    assertThat(pool.acquire(4096, "second")).isSameInstanceAs(first);
+    assertThat(pool.acquire(8192, "third").length).isEqualTo(8192);
+    assertThat(pool.getFreeBytes()).isEqualTo(0L);
+    assertThat(pool.getReusedCount()).isEqualTo(1L);
+    assertThat(pool.getAllocatedCount()).isEqualTo(2L);
+  }
+
+  @Test
+  public void testSizeClasses() {
+    BufferPool pool = new BufferPool(1 << 20);
+    // rounded up to a power of two
+    byte[] first = pool.acquire(3000, "first");
+    assertThat(first.length).isEqualTo(4096);
+    pool.release(first);
+    assertThat(pool.getFreeBytes()).isEqualTo(4096L);
+
+    // any size in the same class gets the same array
+    assertThat(pool.acquire(2049, "second")).isSameInstanceAs(first);
+    pool.release(first);
+    assertThat(pool.acquire(4096, "third")).isSameInstanceAs(first);
+    assertThat(pool.acquire(4097, "fourth").length).isEqualTo(8192);
+    assertThat(pool.acquire(1024, "fifth").length).isEqualTo(1024);
+
+    // sizes that are not pooled are exact
+    assertThat(pool.acquire(1000, "small").length).isEqualTo(1000);
+    assertThat(pool.acquire((1 << 24) + 1, "large").length).isEqualTo((1 << 24) + 1);
+
+    // arrays that are not a size class are not kept
+    pool.release(new byte[5000]);
+    assertThat(pool.getFreeBytes()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testLimits() {
+    BufferPool pool = new BufferPool(10_000);
+    // too small to pool
+    pool.release(pool.acquire(100, "small"));
+    assertThat(pool.getFreeBytes()).isEqualTo(0L);
+
+    // the pool keeps at most maxBytes of free arrays
+    byte[][] buffers = new byte[5][];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = pool.acquire(4096, "buffer" + i);
+    }
+    for (byte[] buffer : buffers) {
+      pool.release(buffer);
+    }
+    assertThat(pool.getFreeBytes()).isEqualTo(8192L);
+
+    pool.clear();
+    assertThat(pool.getFreeBytes()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testLeaks() {
+    BufferPool pool = new BufferPool(1 << 20);
+    pool.setDebugLeaks(true);
+    byte[] kept = pool.acquire(4096, "kept");
+    byte[] returned = pool.acquire(4096, "returned");
+    pool.release(returned);
+    assertThat(pool.getLeaks()).containsExactly("kept");
+    pool.release(kept);
+    assertThat(pool.getLeaks()).isEmpty();
+  }
+
+  @Test
+  public void testRandomAccessFileReturnsBuffer() throws IOException {
+    BufferPool pool = BufferPool.getDefault();
+    // an unusual size class, so that no other file shares it
+    int bufferSize = (3 << 20) + 1;
+    byte[] buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", bufferSize)) {
+      buffer = raf.buffer;
+      assertThat(raf.readByte()).isEqualTo((byte) 'H');
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", bufferSize)) {
+      assertThat(raf.buffer).isSameInstanceAs(buffer);
+      raf.seek(6);
+      assertThat(raf.readString(5)).isEqualTo("world");
+
+      // released while in a FileCache, then used again
+      raf.release();
+      assertThat(raf.buffer).isNotSameInstanceAs(buffer);
+      raf.reacquire();
+      assertThat(raf.getBufferSize()).isEqualTo(bufferSize);
+      assertThat(raf.buffer.length).isEqualTo(4 << 20);
+      assertThat(raf.getFilePointer()).isEqualTo(11);
+      assertThat(raf.readString(5)).isEqualTo(", thi");
+    }
+    assertThat(pool.getFreeBytes()).isAtLeast((long) bufferSize);
+  }
+
+  @Test
+  public void testRandomAccessFileLeak() throws IOException {
+    BufferPool pool = BufferPool.getDefault();
+    RandomAccessFile.setDebugLeaks(true);
+    try {
+      RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", 4100);
+      assertThat(pool.getLeaks()).contains(TEST_FILE_PATH);
+      raf.close();
+      assertThat(pool.getLeaks()).doesNotContain(TEST_FILE_PATH);
+    } finally {
+      RandomAccessFile.setDebugLeaks(false);
+    }
+  }
+}
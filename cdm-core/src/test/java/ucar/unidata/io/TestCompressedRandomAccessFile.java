@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.util.IO;
+import ucar.unidata.io.bzip2.CBZip2InputStream;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link CompressedRandomAccessFile} */
+public class TestCompressedRandomAccessFile {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // compressible text, with a stretch of random bytes that deflate stores uncompressed
+  private static byte[] makeData(int size) {
+    byte[] data = new byte[size];
+    Random random = new Random(17);
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ("abcdefghij".charAt((i / 7 + random.nextInt(3)) % 10));
+    }
+    byte[] noise = new byte[size / 10];
+    random.nextBytes(noise);
+    System.arraycopy(noise, 0, data, size / 3, noise.length);
+    return data;
+  }
+
+  private File gzip(byte[]... members) throws IOException {
+    File file = tempFolder.newFile("test.gz");
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (byte[] member : members) {
+        GZIPOutputStream gz = new GZIPOutputStream(out);
+        gz.write(member);
+        gz.finish();
+      }
+    }
+    return file;
+  }
+
+  private static void checkRandomReads(RandomAccessFile raf, byte[] expected) throws IOException {
+    assertThat(raf.length()).isEqualTo(expected.length);
+
+    byte[] all = new byte[expected.length];
+    raf.seek(0);
+    raf.readFully(all);
+    assertThat(Arrays.equals(all, expected)).isTrue();
+
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      int len = random.nextInt(20000) + 1;
+      int pos = random.nextInt(expected.length - len);
+      byte[] b = new byte[len];
+      raf.seek(pos);
+      raf.readFully(b);
+      assertThat(Arrays.equals(b, Arrays.copyOfRange(expected, pos, pos + len))).isTrue();
+    }
+
+    ByteBuffer last = ByteBuffer.allocate(10);
+    raf.readFullyAt(expected.length - 10, last);
+    assertThat(Arrays.equals(last.array(), Arrays.copyOfRange(expected, expected.length - 10, expected.length)))
+        .isTrue();
+    assertThat(raf.readAt(expected.length, ByteBuffer.allocate(1))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testGzip() throws IOException {
+    byte[] data = makeData(3_500_000);
+    File file = gzip(data);
+    assertThat(CompressedRandomAccessFile.canOpen(file.getPath())).isTrue();
+
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), 8092)) {
+      assertThat(raf.getSeekPointCount()).isGreaterThan(1);
+      checkRandomReads(raf, data);
+    }
+
+    // the second open uses the saved seek points
+    File index = new File(file.getPath() + CompressedRandomAccessFile.INDEX_SUFFIX);
+    assertThat(index.exists()).isTrue();
+    long indexModified = index.lastModified();
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), 8092)) {
+      checkRandomReads(raf, data);
+    }
+    assertThat(index.lastModified()).isEqualTo(indexModified);
+  }
+
+  @Test
+  public void testGzipMembers() throws IOException {
+    byte[] first = makeData(1_500_000);
+    byte[] second = "a second member".getBytes();
+    byte[] third = makeData(1_200_000);
+    File file = gzip(first, second, third);
+
+    ByteArrayOutputStream all = new ByteArrayOutputStream();
+    all.write(first);
+    all.write(second);
+    all.write(third);
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), 8092)) {
+      checkRandomReads(raf, all.toByteArray());
+    }
+  }
+
+  @Test
+  public void testZip() throws IOException {
+    byte[] data = makeData(2_000_000);
+    File file = tempFolder.newFile("test.zip");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+      zip.putNextEntry(new ZipEntry("test.nc"));
+      zip.write(data);
+      zip.closeEntry();
+    }
+
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), 8092)) {
+      checkRandomReads(raf, data);
+    }
+  }
+
+  @Test
+  public void testBzip2() throws IOException {
+    File original = new File(TestDir.cdmLocalTestDataDir + "compress/testBzip.nc.bz2");
+    byte[] expected;
+    try (InputStream in = new CBZip2InputStream(new FileInputStream(original), true)) {
+      expected = IO.readContentsToByteArray(in);
+    }
+
+    // two concatenated streams
+    byte[] compressed = Files.readAllBytes(original.toPath());
+    File file = tempFolder.newFile("test.nc.bz2");
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(compressed);
+      out.write(compressed);
+    }
+    byte[] twice = new byte[2 * expected.length];
+    System.arraycopy(expected, 0, twice, 0, expected.length);
+    System.arraycopy(expected, 0, twice, expected.length, expected.length);
+
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), 1000)) {
+      assertThat(raf.getSeekPointCount()).isAtLeast(2);
+      checkRandomReads(raf, twice);
+    }
+  }
+
+  @Test
+  public void testNotCompressed() throws IOException {
+    File file = tempFolder.newFile("test.nc");
+    Files.write(file.toPath(), makeData(1000));
+    assertThat(CompressedRandomAccessFile.canOpen(file.getPath())).isFalse();
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorrupt() throws IOException {
+    byte[] data = makeData(100_000);
+    File file = gzip(data);
+    byte[] compressed = Files.readAllBytes(file.toPath());
+    Files.write(file.toPath(), Arrays.copyOf(compressed, compressed.length / 2));
+    new CompressedRandomAccessFile(file.getPath(), 8092).close();
+  }
+}
@@ -75,6 +75,23 @@ public class TestInMemoryRandomAccessFile {
   // test reads for persistent test files
   // no changes made to file
 
+  @Test
+  public void testReadAt() throws IOException {
+    int len = 5;
+    ByteBuffer dst = ByteBuffer.allocate(len);
+    assertThat(testFile.readAt(6, dst)).isEqualTo(len);
+    assertThat(new String(dst.array(), StandardCharsets.UTF_8)).isEqualTo(TEST_FILE_STRING.substring(6, 6 + len));
+
+    // read at end of file
+    assertThat(testFile.readAt(TEST_FILE_LENGTH, ByteBuffer.allocate(len))).isEqualTo(-1);
+    try {
+      testFile.readFullyAt(TEST_FILE_LENGTH - 2, new byte[len], 0, len);
+      fail();
+    } catch (java.io.EOFException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testSetBufferSize() {
     int expected = 100;
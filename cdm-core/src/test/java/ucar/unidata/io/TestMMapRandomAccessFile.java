@@ -0,0 +1,151 @@
+package ucar.unidata.io;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/** Test {@link MMapRandomAccessFile} */
+public class TestMMapRandomAccessFile {
+
+  @ClassRule
+  public static final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final String TEST_FILE_PATH = "src/test/data/preserveLineEndings/testUTF8.txt";
+  private static final String TEST_FILE_STRING = "Hello world, this is a test.\r\nThis is a second line of text.";
+  private static final byte[] UTF8_BYTES = TEST_FILE_STRING.getBytes(StandardCharsets.UTF_8);
+
+  // smallest allowed window, so that reads cross window boundaries
+  private static final long TEST_WINDOW_SIZE = (1 << 16) + 1024;
+  // number of floats in the large test file, more than 3 windows
+  private static final int NFLOATS = 65536;
+  private static File floatFile;
+
+  @BeforeClass
+  public static void makeFloatFile() throws IOException {
+    floatFile = tempFolder.newFile("floats.bin");
+    ByteBuffer bb = ByteBuffer.allocate(NFLOATS * 4 + 1);
+    bb.put((byte) 0); // so that floats are not aligned
+    for (int i = 0; i < NFLOATS; i++) {
+      bb.putFloat(i);
+    }
+    try (FileOutputStream out = new FileOutputStream(floatFile)) {
+      out.write(bb.array());
+    }
+  }
+
+  @Test
+  public void testReadBytes() throws IOException {
+    try (RandomAccessFile raf = new MMapRandomAccessFile(TEST_FILE_PATH, 10)) {
+      assertThat(raf.length()).isEqualTo(UTF8_BYTES.length);
+      byte[] buff = new byte[UTF8_BYTES.length];
+      raf.readFully(buff);
+      assertThat(buff).isEqualTo(UTF8_BYTES);
+      assertThat(raf.read()).isEqualTo(-1);
+
+      raf.seek(6);
+      assertThat(raf.readString(5)).isEqualTo("world");
+    }
+  }
+
+  @Test
+  public void testReadPastEof() throws IOException {
+    try (RandomAccessFile raf = new MMapRandomAccessFile(TEST_FILE_PATH)) {
+      raf.seek(UTF8_BYTES.length - 4);
+      try {
+        raf.readInt(new int[2], 0, 2);
+        fail();
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testBulkFloatsAcrossWindows() throws IOException {
+    try (RandomAccessFile raf = new MMapRandomAccessFile(floatFile.getPath(), 100, TEST_WINDOW_SIZE)) {
+      float[] result = new float[NFLOATS];
+      raf.seek(1);
+      raf.readFloat(result, 0, NFLOATS);
+      for (int i = 0; i < NFLOATS; i++) {
+        assertThat(result[i]).isEqualTo((float) i);
+      }
+      assertThat(raf.getFilePointer()).isEqualTo(raf.length());
+
+      // single value reads after a bulk read
+      raf.seek(1 + 4 * 40000);
+      assertThat(raf.readFloat()).isEqualTo(40000.0f);
+      raf.readFloat(result, 0, 2);
+      assertThat(result[0]).isEqualTo(40001.0f);
+      assertThat(raf.readFloat()).isEqualTo(40003.0f);
+    }
+  }
+
+  @Test
+  public void testMatchesRandomAccessFile() throws IOException {
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(floatFile.getPath(), 100, TEST_WINDOW_SIZE);
+        RandomAccessFile raf = new RandomAccessFile(floatFile.getPath(), "r", 100)) {
+      for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+        mmap.order(order);
+        raf.order(order);
+        for (long pos : new long[] {0, 3, TEST_WINDOW_SIZE - 5, 2 * TEST_WINDOW_SIZE + 7}) {
+          int n = 1000;
+          int[] expected = new int[n];
+          int[] result = new int[n];
+          raf.seek(pos);
+          raf.readInt(expected, 0, n);
+          mmap.seek(pos);
+          mmap.readInt(result, 0, n);
+          assertThat(result).isEqualTo(expected);
+
+          double[] expectedD = new double[n];
+          double[] resultD = new double[n];
+          raf.seek(pos);
+          raf.readDouble(expectedD, 0, n);
+          mmap.seek(pos);
+          mmap.readDouble(resultD, 0, n);
+          assertThat(resultD).isEqualTo(expectedD);
+          assertThat(mmap.readShort()).isEqualTo(raf.readShort());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadAt() throws IOException {
+    try (RandomAccessFile raf = new MMapRandomAccessFile(floatFile.getPath(), 100, TEST_WINDOW_SIZE)) {
+      // read across a window boundary
+      ByteBuffer dst = ByteBuffer.allocate(4 * 10000);
+      raf.readFullyAt(1 + 4 * 15000, dst);
+      dst.flip();
+      for (int i = 0; i < 10000; i++) {
+        assertThat(dst.getFloat()).isEqualTo((float) (15000 + i));
+      }
+      assertThat(raf.getFilePointer()).isEqualTo(0);
+      assertThat(raf.readAt(raf.length(), ByteBuffer.allocate(1))).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void testProvider() throws IOException {
+    MMapRandomAccessFile.Provider provider = new MMapRandomAccessFile.Provider();
+    assertThat(provider.isOwnerOf("mmap:" + TEST_FILE_PATH)).isTrue();
+    assertThat(provider.isOwnerOf(TEST_FILE_PATH)).isFalse();
+    try (RandomAccessFile raf = provider.open("mmap:file:" + TEST_FILE_PATH)) {
+      assertThat(raf).isInstanceOf(MMapRandomAccessFile.class);
+      assertThat(raf.getLocation()).isEqualTo(TEST_FILE_PATH);
+      assertThat(raf.length()).isEqualTo(UTF8_BYTES.length);
+    }
+  }
+
+}
@@ -1,15 +1,19 @@
 package ucar.unidata.io;
 
+import com.google.common.collect.ImmutableList;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
@@ -237,6 +241,205 @@ public class TestRandomAccessFile {
     assertThat(arraysMatch(buff, UTF8_BYTES, offset, 0, len)).isTrue();
   }
 
+  @Test
+  public void testReadAt() throws IOException {
+    testFile.seek(3);
+    long pos = 6;
+    int len = 5;
+    ByteBuffer dst = ByteBuffer.allocate(len);
+    int n = testFile.readAt(pos, dst);
+    assertThat(n).isEqualTo(len);
+    assertThat(arraysMatch(dst.array(), UTF8_BYTES, 0, (int) pos, len)).isTrue();
+    // file position is not changed
+    assertThat(testFile.getFilePointer()).isEqualTo(3);
+
+    // direct buffer
+    dst = ByteBuffer.allocateDirect(len);
+    testFile.readFullyAt(pos, dst);
+    assertThat(dst.hasRemaining()).isFalse();
+    dst.flip();
+    byte[] out = new byte[len];
+    dst.get(out);
+    assertThat(arraysMatch(out, UTF8_BYTES, 0, (int) pos, len)).isTrue();
+
+    // read at end of file
+    assertThat(testFile.readAt(TEST_FILE_LENGTH, ByteBuffer.allocate(len))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testReadFullyAt() throws IOException {
+    int offset = 2;
+    int len = (TEST_BUFFER_SIZE * 2) + 1;
+    byte[] buff = new byte[offset + len];
+    testFile.readFullyAt(1, buff, offset, len);
+    assertThat(arraysMatch(buff, UTF8_BYTES, offset, 1, len)).isTrue();
+
+    // read fully past end of file
+    try {
+      testFile.readFullyAt(TEST_FILE_LENGTH - 1, new byte[2], 0, 2);
+      fail();
+    } catch (EOFException eof) {
+      // expected.
+    }
+  }
+
+  @Test
+  public void testReadRanges() throws IOException {
+    List<ByteRange> ranges = ImmutableList.of(new ByteRange(6, 5), new ByteRange(0, 5), new ByteRange(23, 4),
+        new ByteRange(8, 3), new ByteRange(30, 0));
+    AtomicInteger nreads = new AtomicInteger();
+    try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE_PATH, "r", TEST_BUFFER_SIZE) {
+      @Override
+      protected void readMergedRange(long pos, byte[] dst) throws IOException {
+        nreads.incrementAndGet();
+        super.readMergedRange(pos, dst);
+      }
+    }) {
+      List<ByteBuffer> result = raf.readRanges(ranges);
+      assertThat(nreads.get()).isEqualTo(1);
+      assertThat(result).hasSize(ranges.size());
+      String[] expected = {"world", "Hello", "test", "rld", ""};
+      for (int i = 0; i < expected.length; i++) {
+        assertThat(StandardCharsets.UTF_8.decode(result.get(i)).toString()).isEqualTo(expected[i]);
+      }
+      assertThat(raf.getFilePointer()).isEqualTo(0);
+
+      // with no gap allowed, only the overlapping ranges are merged
+      nreads.set(0);
+      raf.setReadRangesMaxGap(0);
+      raf.order(ByteOrder.LITTLE_ENDIAN);
+      result = raf.readRanges(ranges);
+      assertThat(nreads.get()).isEqualTo(4);
+      assertThat(result.get(1).order()).isEqualTo(ByteOrder.LITTLE_ENDIAN);
+      assertThat(result.get(1).getInt()).isEqualTo(DATA_AS_LE_INTS[0]);
+      assertThat(StandardCharsets.UTF_8.decode(result.get(3)).toString()).isEqualTo("rld");
+
+      try {
+        raf.readRanges(ImmutableList.of(new ByteRange(TEST_FILE_LENGTH - 1, 2)));
+        fail();
+      } catch (EOFException eof) {
+        // expected.
+      }
+    }
+  }
+
+  @Test
+  public void testBulkReads() throws IOException {
+    // larger than the bulk read piece size, so reads go through the buffer, and straight from the file in pieces
+    byte[] data = new byte[(3 << 20) + 13];
+    new java.util.Random(42).nextBytes(data);
+    java.io.File file = tempFolder.newFile();
+    java.nio.file.Files.write(file.toPath(), data);
+
+    int pos = 3; // not aligned with the elements
+    int n = (data.length - pos) / 8;
+    for (int bufferSize : new int[] {TEST_BUFFER_SIZE, 4096, 1 << 21}) {
+      for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+        ByteBuffer expected = ByteBuffer.wrap(data, pos, data.length - pos).slice().order(order);
+        try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r", bufferSize)) {
+          raf.order(order);
+
+          short[] shorts = new short[n * 4];
+          raf.seek(pos);
+          raf.readShort(shorts, 0, shorts.length);
+          short[] wantShorts = new short[shorts.length];
+          expected.asShortBuffer().get(wantShorts);
+          assertThat(shorts).isEqualTo(wantShorts);
+
+          int[] ints = new int[n * 2];
+          raf.seek(pos);
+          raf.readInt(ints, 0, ints.length);
+          int[] wantInts = new int[ints.length];
+          expected.asIntBuffer().get(wantInts);
+          assertThat(ints).isEqualTo(wantInts);
+
+          // after a few single values, into the middle of the array
+          float[] floats = new float[n * 2];
+          raf.seek(pos);
+          floats[0] = raf.readFloat();
+          floats[1] = raf.readFloat();
+          raf.readFloat(floats, 2, floats.length - 2);
+          float[] wantFloats = new float[floats.length];
+          expected.asFloatBuffer().get(wantFloats);
+          assertThat(floats).isEqualTo(wantFloats);
+
+          long[] longs = new long[n];
+          raf.seek(pos);
+          raf.readLong(longs, 0, longs.length);
+          long[] wantLongs = new long[longs.length];
+          expected.asLongBuffer().get(wantLongs);
+          assertThat(longs).isEqualTo(wantLongs);
+
+          double[] doubles = new double[n];
+          raf.seek(pos);
+          raf.readDouble(doubles, 0, doubles.length);
+          double[] wantDoubles = new double[doubles.length];
+          expected.asDoubleBuffer().get(wantDoubles);
+          assertThat(doubles).isEqualTo(wantDoubles);
+          assertThat(raf.getFilePointer()).isEqualTo(pos + 8L * n);
+
+          // then single values carry on from there
+          assertThat(raf.readByte()).isEqualTo(data[pos + 8 * n]);
+
+          // reading past the end
+          raf.seek(pos);
+          try {
+            raf.readDouble(new double[n + 1], 0, n + 1);
+            fail();
+          } catch (EOFException e) {
+            // expected
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBulkReadsReuseBuffer() throws IOException {
+    byte[] data = new byte[(3 << 20) + 5];
+    new java.util.Random(17).nextBytes(data);
+    java.io.File file = tempFolder.newFile();
+    java.nio.file.Files.write(file.toPath(), data);
+    ByteBuffer expected = ByteBuffer.wrap(data);
+
+    BufferPool pool = BufferPool.getDefault();
+    RandomAccessFile.setDebugLeaks(true);
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r", TEST_BUFFER_SIZE);
+      int[] ints = new int[data.length / 4];
+      raf.readInt(ints, 0, ints.length);
+      long nallocated = pool.getAllocatedCount();
+
+      // later reads, several pieces each, use the same bulk buffer
+      for (int pos = 1; pos < 4; pos++) {
+        raf.seek(pos);
+        raf.readInt(ints, 0, ints.length - 1);
+        expected.position(pos);
+        int[] want = new int[ints.length - 1];
+        expected.asIntBuffer().get(want);
+        assertThat(java.util.Arrays.copyOf(ints, want.length)).isEqualTo(want);
+      }
+      assertThat(pool.getAllocatedCount()).isEqualTo(nallocated);
+      // the buffer and the bulk buffer
+      assertThat(java.util.Collections.frequency(pool.getLeaks(), file.getPath())).isEqualTo(2);
+
+      raf.release();
+      assertThat(pool.getLeaks()).doesNotContain(file.getPath());
+      raf.reacquire();
+      raf.seek(0);
+      raf.readInt(ints, 0, ints.length);
+      expected.position(0);
+      int[] want = new int[ints.length];
+      expected.asIntBuffer().get(want);
+      assertThat(ints).isEqualTo(want);
+
+      raf.close();
+      assertThat(pool.getLeaks()).doesNotContain(file.getPath());
+    } finally {
+      RandomAccessFile.setDebugLeaks(false);
+    }
+  }
+
   @Test
   public void testSkipBytes() throws IOException {
     testFile.seek(0);
@@ -0,0 +1,103 @@
+package ucar.unidata.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.internal.util.DiskCache2;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/** Test {@link RemoteBlockCache} */
+public class TestRemoteBlockCache {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static RemoteBlockCache.BlockKey key(String version, boolean persistent, long blockNumber) {
+    return new RemoteBlockCache.BlockKey("https://example.com/test.nc", version, persistent, 100, blockNumber);
+  }
+
+  private static byte[] block(long blockNumber) {
+    byte[] result = new byte[100];
+    Arrays.fill(result, (byte) blockNumber);
+    return result;
+  }
+
+  @Test
+  public void testLoadsOnce() throws IOException {
+    RemoteBlockCache cache = new RemoteBlockCache(10_000, null);
+    AtomicInteger nloads = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      byte[] result = cache.get(key("v1", true, 7), () -> {
+        nloads.incrementAndGet();
+        return block(7);
+      });
+      assertThat(result).isEqualTo(block(7));
+    }
+    assertThat(nloads.get()).isEqualTo(1);
+    assertThat(cache.getIfPresent(key("v1", true, 7))).isEqualTo(block(7));
+    assertThat(cache.getIfPresent(key("v2", true, 7))).isNull();
+  }
+
+  @Test
+  public void testMemoryBudget() throws IOException {
+    RemoteBlockCache cache = new RemoteBlockCache(1000, null);
+    for (int i = 0; i < 50; i++) {
+      long blockNumber = i;
+      cache.get(key("v1", true, i), () -> block(blockNumber));
+    }
+    assertThat(cache.getSizeInBytes()).isGreaterThan(0L);
+    assertThat(cache.getSizeInBytes()).isAtMost(1000L);
+  }
+
+  @Test
+  public void testLoaderException() throws IOException {
+    RemoteBlockCache cache = new RemoteBlockCache(10_000, null);
+    try {
+      cache.get(key("v1", true, 1), () -> {
+        throw new IOException("remote failure");
+      });
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("remote failure");
+    }
+    // failures are not cached
+    assertThat(cache.get(key("v1", true, 1), () -> block(1))).isEqualTo(block(1));
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    RemoteBlockCache cache = new RemoteBlockCache(10_000, null);
+    cache.get(key("v1", false, 1), () -> block(1));
+    cache.get(key("v2", false, 1), () -> block(1));
+    cache.invalidate("https://example.com/test.nc", "v1");
+    assertThat(cache.getIfPresent(key("v1", false, 1))).isNull();
+    assertThat(cache.getIfPresent(key("v2", false, 1))).isNotNull();
+  }
+
+  @Test
+  public void testDiskTier() throws IOException {
+    DiskCache2 diskCache = new DiskCache2(tempFolder.getRoot().getPath(), false, 0, 0);
+    RemoteBlockCache cache = new RemoteBlockCache(10_000, diskCache);
+    cache.get(key("v1", true, 3), () -> block(3));
+    cache.get(key("unversioned-1", false, 4), () -> block(4));
+
+    // a new cache, eg after a restart, reads persistent blocks from disk
+    RemoteBlockCache restarted = new RemoteBlockCache(10_000, diskCache);
+    assertThat(restarted.get(key("v1", true, 3), () -> {
+      throw new IOException("should be read from disk");
+    })).isEqualTo(block(3));
+
+    AtomicInteger nloads = new AtomicInteger();
+    restarted.get(key("unversioned-1", false, 4), () -> {
+      nloads.incrementAndGet();
+      return block(4);
+    });
+    assertThat(nloads.get()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,225 @@
+package ucar.unidata.io;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/** Test {@link RemoteRandomAccessFile} read cache and read-ahead, using an in-memory "remote" file. */
+public class TestRemoteRandomAccessFile {
+  private static final int BLOCK_SIZE = 100;
+  private static final int NBLOCKS = 50;
+
+  private static class InMemoryRemoteFile extends RemoteRandomAccessFile {
+    final byte[] data;
+    final String version;
+    // start of each remote read
+    final List<Long> remoteReads = new CopyOnWriteArrayList<>();
+
+    InMemoryRemoteFile(byte[] data, int bufferSize, long maxCacheSize) {
+      this(data, bufferSize, maxCacheSize, null);
+    }
+
+    InMemoryRemoteFile(byte[] data, int bufferSize, long maxCacheSize, String version) {
+      super("test:inMemoryRemote", bufferSize, maxCacheSize);
+      this.data = data;
+      this.version = version;
+    }
+
+    @Override
+    protected String getRemoteVersion() {
+      return version;
+    }
+
+    @Override
+    public int readRemote(long pos, byte[] buff, int offset, int len) {
+      remoteReads.add(pos);
+      int n = (int) Math.min(len, data.length - pos);
+      System.arraycopy(data, (int) pos, buff, offset, n);
+      return n;
+    }
+
+    @Override
+    public void closeRemote() {}
+
+    @Override
+    public long length() {
+      return data.length;
+    }
+  }
+
+  private static byte[] makeData() {
+    byte[] data = new byte[BLOCK_SIZE * NBLOCKS];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 251);
+    }
+    return data;
+  }
+
+  @Before
+  public void useDirectExecutor() {
+    // read ahead synchronously, so that the remote reads are deterministic
+    RemoteRandomAccessFile.setPrefetchExecutor(MoreExecutors.directExecutor());
+    RemoteBlockCache.setDefault(new RemoteBlockCache(1L << 20, null));
+  }
+
+  @After
+  public void resetExecutor() {
+    RemoteRandomAccessFile.setPrefetchExecutor(null);
+    RemoteBlockCache.setDefault(null);
+  }
+
+  @Test
+  public void testSequentialReadAhead() throws IOException {
+    byte[] data = makeData();
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE)) {
+      assertThat(raf.readByte()).isEqualTo(data[0]);
+      // block 0, and block 1 read ahead
+      assertThat(raf.remoteReads).containsExactly(0L, 100L);
+
+      raf.seek(BLOCK_SIZE);
+      assertThat(raf.readByte()).isEqualTo(data[BLOCK_SIZE]);
+      // window doubles to 2 blocks
+      assertThat(raf.remoteReads).containsExactly(0L, 100L, 200L, 300L);
+
+      // each block is read from the remote file exactly once
+      byte[] all = new byte[data.length];
+      raf.seek(0);
+      raf.readFully(all);
+      assertThat(all).isEqualTo(data);
+      assertThat(raf.remoteReads).hasSize(NBLOCKS);
+    }
+  }
+
+  @Test
+  public void testRandomAccessNoReadAhead() throws IOException {
+    byte[] data = makeData();
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE)) {
+      for (int block : new int[] {10, 3, 30, 7, 22}) {
+        raf.seek(block * BLOCK_SIZE);
+        assertThat(raf.readByte()).isEqualTo(data[block * BLOCK_SIZE]);
+      }
+      assertThat(raf.remoteReads).containsExactly(1000L, 300L, 3000L, 700L, 2200L);
+    }
+  }
+
+  @Test
+  public void testReadAheadStopsAtEof() throws IOException {
+    byte[] data = makeData();
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE)) {
+      raf.seek((NBLOCKS - 3) * BLOCK_SIZE);
+      raf.readByte();
+      raf.seek((NBLOCKS - 2) * BLOCK_SIZE);
+      raf.readByte();
+      assertThat(raf.remoteReads).containsExactly(4700L, 4900L, 4800L);
+    }
+  }
+
+  @Test
+  public void testNoReadAheadWithoutCache() throws IOException {
+    byte[] data = makeData();
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 0)) {
+      raf.readByte();
+      raf.seek(BLOCK_SIZE);
+      raf.readByte();
+      assertThat(raf.remoteReads).containsExactly(0L, 100L);
+    }
+  }
+
+  @Test
+  public void testVersionedBlocksAreShared() throws IOException {
+    byte[] data = makeData();
+    byte[] first = new byte[3 * BLOCK_SIZE];
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE, "v1")) {
+      raf.seek(10 * BLOCK_SIZE);
+      raf.readFully(first);
+    }
+
+    // the blocks stay in the cache after close, and are used by another file of the same version
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE, "v1")) {
+      byte[] again = new byte[3 * BLOCK_SIZE];
+      raf.seek(10 * BLOCK_SIZE);
+      raf.readFully(again);
+      assertThat(again).isEqualTo(first);
+      assertThat(raf.remoteReads).isEmpty();
+    }
+
+    // but not by a different version
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE, "v2")) {
+      raf.seek(10 * BLOCK_SIZE);
+      raf.readByte();
+      assertThat(raf.remoteReads).contains(1000L);
+    }
+  }
+
+  @Test
+  public void testReadIntoLargerDestination() throws IOException {
+    byte[] data = makeData();
+    for (long maxCacheSize : new long[] {100L * BLOCK_SIZE, 0}) {
+      try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, maxCacheSize)) {
+        // within a block, across blocks, and to the end of the file
+        int[][] requests = {{10, 20}, {150, 275}, {0, 3 * BLOCK_SIZE}, {data.length - 130, 130}};
+        for (int[] request : requests) {
+          int pos = request[0];
+          int len = request[1];
+          byte[] dest = new byte[2 * len + 7];
+          java.util.Arrays.fill(dest, (byte) -1);
+          raf.readFullyAt(pos, dest, 3, len);
+          assertThat(java.util.Arrays.copyOfRange(dest, 3, 3 + len))
+              .isEqualTo(java.util.Arrays.copyOfRange(data, pos, pos + len));
+          // nothing is written past the request
+          for (int i = 3 + len; i < dest.length; i++) {
+            assertThat(dest[i]).isEqualTo((byte) -1);
+          }
+
+          // a buffer whose capacity is larger than its limit
+          ByteBuffer bb = ByteBuffer.allocate(dest.length);
+          bb.limit(len);
+          assertThat(raf.readAt(pos, bb)).isEqualTo(len);
+          assertThat(bb.position()).isEqualTo(len);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPooledArrayLongerThanRequest() throws IOException {
+    byte[] data = makeData();
+    // not a power of two, so the array from the BufferPool is longer
+    int len = 3000;
+    for (long maxCacheSize : new long[] {100L * BLOCK_SIZE, 0}) {
+      try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, maxCacheSize)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(raf.readToByteChannel(Channels.newChannel(out), 50, len)).isEqualTo(len);
+        assertThat(out.toByteArray()).isEqualTo(java.util.Arrays.copyOfRange(data, 50, 50 + len));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(len);
+        raf.readFullyAt(70, direct);
+        assertThat(direct.position()).isEqualTo(len);
+        direct.flip();
+        byte[] got = new byte[len];
+        direct.get(got);
+        assertThat(got).isEqualTo(java.util.Arrays.copyOfRange(data, 70, 70 + len));
+      }
+    }
+  }
+
+  @Test
+  public void testUnversionedBlocksAreRemovedOnClose() throws IOException {
+    byte[] data = makeData();
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile(data, BLOCK_SIZE, 100L * BLOCK_SIZE)) {
+      raf.readByte();
+      assertThat(RemoteBlockCache.getDefault().getSizeInBytes()).isGreaterThan(0L);
+    }
+    assertThat(RemoteBlockCache.getDefault().getSizeInBytes()).isEqualTo(0L);
+  }
+}
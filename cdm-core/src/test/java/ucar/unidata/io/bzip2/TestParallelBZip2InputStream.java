@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io.bzip2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ucar.nc2.util.IO;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link ParallelBZip2InputStream} */
+public class TestParallelBZip2InputStream {
+  private static ForkJoinPool pool;
+  private static byte[] compressed;
+  private static byte[] expected;
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    pool = new ForkJoinPool(3);
+    File file = new File(TestDir.cdmLocalTestDataDir + "compress/testBzip.nc.bz2");
+    compressed = Files.readAllBytes(file.toPath());
+    try (InputStream in = new CBZip2InputStream(new FileInputStream(file), true)) {
+      expected = IO.readContentsToByteArray(in);
+    }
+  }
+
+  @AfterClass
+  public static void teardown() {
+    pool.shutdown();
+  }
+
+  private static byte[] concat(byte[]... parts) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] data) throws IOException {
+    try (InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(data), pool)) {
+      return IO.readContentsToByteArray(in);
+    }
+  }
+
+  @Test
+  public void testSingleStream() throws IOException {
+    assertThat(Arrays.equals(decompress(compressed), expected)).isTrue();
+  }
+
+  @Test
+  public void testConcatenatedStreams() throws IOException {
+    int n = 20;
+    byte[][] streams = new byte[n][];
+    byte[][] outputs = new byte[n][];
+    Arrays.fill(streams, compressed);
+    Arrays.fill(outputs, expected);
+    assertThat(Arrays.equals(decompress(concat(streams)), concat(outputs))).isTrue();
+  }
+
+  @Test
+  public void testBlockPositions() throws IOException {
+    try (ParallelBZip2InputStream in =
+        new ParallelBZip2InputStream(new ByteArrayInputStream(concat(compressed, compressed)), pool)) {
+      byte[] buff = new byte[expected.length];
+      assertThat(in.read(buff)).isEqualTo(expected.length);
+      assertThat(in.getBlockOutputOffset()).isEqualTo(0);
+      assertThat(in.getBlockBitOffset()).isEqualTo(32);
+
+      assertThat(in.read(buff)).isEqualTo(expected.length);
+      assertThat(in.getBlockOutputOffset()).isEqualTo(expected.length);
+      assertThat(in.getBlockBitOffset()).isEqualTo(8L * (compressed.length + 4));
+      assertThat(in.read(buff)).isEqualTo(-1);
+
+      // decompression can start at the block
+      CBZip2InputStream bzip = new CBZip2InputStream();
+      bzip.setBlockStream(new ByteArrayInputStream(compressed, 4, compressed.length), in.getBlockSize100k(), 0);
+      assertThat(Arrays.equals(IO.readContentsToByteArray(bzip), expected)).isTrue();
+    }
+  }
+
+  @Test
+  public void testTrailingData() throws IOException {
+    assertThat(Arrays.equals(decompress(concat(compressed, new byte[1000])), expected)).isTrue();
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotBzip2() throws IOException {
+    decompress(new byte[1000]);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated() throws IOException {
+    decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorrupt() throws IOException {
+    byte[] corrupt = compressed.clone();
+    corrupt[compressed.length / 2] ^= 0x10;
+    decompress(corrupt);
+  }
+}
@@ -25,6 +25,8 @@ public final class CdmS3Uri {
 
   private static final String SCHEME_CDM_S3_DEPRECATED = "s3";
   private static final String DELIMITER = "delimiter";
+  private static final String PART_SIZE = "partSize";
+  private static final String PART_CONCURRENCY = "partConcurrency";
 
   private final String bucket;
   private final String key;
@@ -32,6 +34,8 @@ public final class CdmS3Uri {
   private final String uriString;
   private final URI endpoint;
   private final String delimiter;
+  private final Integer partSize;
+  private final Integer partConcurrency;
   private final String fragment;
 
   /**
@@ -89,12 +93,17 @@ public final class CdmS3Uri {
    * <li>fragment (<b>optional</b>): configuration options</li>
    * <ul>
    * <li>Configuration options may be passed through the fragment on the CDM S3 URI</li>
-   * <li>Currently, only one configuration option is available and is used to describe a delimiter for keys that have
+   * <li>Options are given as key=value pairs, separated by "&amp;".</li>
+   * <li>delimiter: describes a delimiter for keys that have
    * been designed to be hierarchical. A commonly encountered case is that the object keys are the same as the file path
    * on the system from which they were uploaded. In this case, the delimiter might be the "/" character. If the
    * fragment
    * is not used, netCDF-Java will assume there is no hierarchical structure to the object keys.
    * </li>
+   * <li>partSize: reads of an object larger than this many bytes are split into parts of this size, which are
+   * requested in parallel. Default is set by the system property "ucar.unidata.io.s3.partSize".</li>
+   * <li>partConcurrency: the maximum number of parts of one read that are requested at the same time. Default is set
+   * by the system property "ucar.unidata.io.s3.partConcurrency".</li>
    * </ul>
    * </div>
    * <div>
@@ -224,6 +233,8 @@ public final class CdmS3Uri {
     uriString = cdmS3Uri.toString();
     endpoint = getEndpoint(cdmS3Uri, bucket);
     delimiter = getKeyDelimiter(cdmS3Uri);
+    partSize = getPositiveIntOption(cdmS3Uri, PART_SIZE);
+    partConcurrency = getPositiveIntOption(cdmS3Uri, PART_CONCURRENCY);
     fragment = cdmS3Uri.getFragment();
   }
 
@@ -247,6 +258,16 @@ public final class CdmS3Uri {
     return Optional.ofNullable(delimiter);
   }
 
+  /** The part size in bytes for parallel reads, if set in the fragment. */
+  public Optional<Integer> getPartSize() {
+    return Optional.ofNullable(partSize);
+  }
+
+  /** The maximum number of parts of one read requested at the same time, if set in the fragment. */
+  public Optional<Integer> getPartConcurrency() {
+    return Optional.ofNullable(partConcurrency);
+  }
+
   @Override
   public String toString() {
     return uriString;
@@ -413,6 +434,8 @@ public final class CdmS3Uri {
         String[] splitKvp = kvp.split("=");
         if (splitKvp[0].equalsIgnoreCase(DELIMITER) && splitKvp.length == 2) {
           delimiter = kvp.split("=")[1];
+        } else if (splitKvp[0].equalsIgnoreCase(PART_SIZE) || splitKvp[0].equalsIgnoreCase(PART_CONCURRENCY)) {
+          // see getPositiveIntOption
         } else {
           logger.debug("Unknown configuration option encountered: {}", kvp);
         }
@@ -421,6 +444,29 @@ public final class CdmS3Uri {
     return delimiter;
   }
 
+  @Nullable
+  private Integer getPositiveIntOption(URI cdmUri, String name) throws URISyntaxException {
+    Integer value = null;
+    String config = cdmUri.getFragment();
+    if (config != null) {
+      for (String kvp : config.split("&")) {
+        String[] splitKvp = kvp.split("=");
+        if (splitKvp[0].equalsIgnoreCase(name)) {
+          try {
+            value = (splitKvp.length == 2) ? Integer.parseInt(splitKvp[1]) : -1;
+          } catch (NumberFormatException e) {
+            value = -1;
+          }
+          if (value <= 0) {
+            throw new URISyntaxException(cdmUri.toString(),
+                String.format("The %s configuration option must be a positive integer.", name));
+          }
+        }
+      }
+    }
+    return value;
+  }
+
   @Override
   public int hashCode() {
     return Objects.hash(bucket, key, profile, uriString, endpoint, delimiter, fragment);
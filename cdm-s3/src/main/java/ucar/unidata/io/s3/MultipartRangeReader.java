@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.s3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Splits a large read into parts that are read in parallel, and reassembles them in the caller's buffer.
+ * The calling thread reads parts too, so at most concurrency - 1 tasks are submitted to the executor.
+ */
+@Immutable
+final class MultipartRangeReader {
+
+  /** Reads one range of the object. May return fewer bytes than asked for, or -1 at the end of the object. */
+  interface RangeReader {
+    int read(long pos, byte[] buff, int offset, int len) throws IOException;
+  }
+
+  private final int partSize;
+  private final int concurrency;
+  private final Executor executor;
+
+  /**
+   * Constructor.
+   *
+   * @param partSize reads larger than this are split into parts of this many bytes.
+   * @param concurrency maximum number of parts of one read that are read at the same time.
+   * @param executor runs the part reads.
+   */
+  MultipartRangeReader(int partSize, int concurrency, Executor executor) {
+    if (partSize <= 0 || concurrency <= 0) {
+      throw new IllegalArgumentException("partSize and concurrency must be > 0");
+    }
+    this.partSize = partSize;
+    this.concurrency = concurrency;
+    this.executor = executor;
+  }
+
+  int getPartSize() {
+    return partSize;
+  }
+
+  int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Read len bytes starting at pos into buff. Reads larger than the part size are split into parts.
+   * Nothing past the end of the object is requested, since S3 rejects ranges that start past it.
+   *
+   * @param objectLength the length of the object.
+   * @return actual number of bytes read, which is less than len only at the end of the object, or -1 if pos is at or
+   *         past the end of the object.
+   * @throws IOException if reading any part fails.
+   */
+  int read(long pos, byte[] buff, int offset, int len, long objectLength, RangeReader reader) throws IOException {
+    if (pos >= objectLength) {
+      return -1;
+    }
+    return readParts(pos, buff, offset, (int) Math.min(len, objectLength - pos), reader);
+  }
+
+  private int readParts(long pos, byte[] buff, int offset, int len, RangeReader reader) throws IOException {
+    int nparts = (int) (((long) len + partSize - 1) / partSize);
+    if (nparts <= 1 || concurrency == 1) {
+      return readFully(reader, pos, buff, offset, len);
+    }
+
+    int[] partBytes = new int[nparts];
+    AtomicInteger nextPart = new AtomicInteger();
+    Runnable worker = () -> {
+      int part;
+      while ((part = nextPart.getAndIncrement()) < nparts) {
+        int partOffset = part * partSize;
+        int partLen = Math.min(partSize, len - partOffset);
+        try {
+          partBytes[part] = readFully(reader, pos + partOffset, buff, offset + partOffset, partLen);
+        } catch (IOException e) {
+          nextPart.set(nparts); // stop the other workers
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    for (int i = 1; i < Math.min(nparts, concurrency); i++) {
+      tasks.add(CompletableFuture.runAsync(worker, executor));
+    }
+    tasks.add(CompletableFuture.runAsync(worker, Runnable::run)); // the calling thread
+    try {
+      CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      throw new IOException("Error reading parts of " + len + " bytes at " + pos, cause);
+    }
+
+    // parts are complete, except at the end of the object
+    int total = 0;
+    for (int part = 0; part < nparts; part++) {
+      total += partBytes[part];
+      if (partBytes[part] < Math.min(partSize, len - part * partSize)) {
+        break;
+      }
+    }
+    return total;
+  }
+
+  private static int readFully(RangeReader reader, long pos, byte[] buff, int offset, int len) throws IOException {
+    int done = 0;
+    while (done < len) {
+      int n = reader.read(pos + done, buff, offset + done, len - done);
+      if (n <= 0) {
+        break;
+      }
+      done += n;
+    }
+    return done;
+  }
+}
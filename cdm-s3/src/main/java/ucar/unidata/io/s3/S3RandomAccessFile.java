@@ -7,10 +7,13 @@ package ucar.unidata.io.s3;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -27,6 +30,11 @@ import ucar.unidata.io.spi.RandomAccessFileProvider;
  *
  * Extensions to {@link ucar.unidata.io.RandomAccessFile} and {@link ucar.unidata.io.RemoteRandomAccessFile} for
  * objects stored on AWS S3 compatible Object Stores.
+ * <p>
+ * Reads larger than the part size are split into part sized range requests that are made in parallel, bypassing the
+ * read cache. The part size and the number of parallel requests per read are set with the "partSize" and
+ * "partConcurrency" options of the {@link CdmS3Uri} fragment, or by default with the system properties
+ * "ucar.unidata.io.s3.partSize" and "ucar.unidata.io.s3.partConcurrency".
  *
  * @author James McClain, based on work by John Caron and Donald Denbof
  * @since 5.3.2
@@ -40,7 +48,19 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
   private static final long s3MaxReadCacheSize = Long
       .parseLong(System.getProperty("ucar.unidata.io.s3.maxReadCacheSize", String.valueOf(defaultMaxReadCacheSize)));
 
+  // 8 MiB default part size of parallel reads
+  private static final int s3PartSize =
+      Integer.parseInt(System.getProperty("ucar.unidata.io.s3.partSize", String.valueOf(1 << 23)));
+
+  private static final int s3PartConcurrency =
+      Integer.parseInt(System.getProperty("ucar.unidata.io.s3.partConcurrency", "4"));
+
+  // runs the part requests of all files; the number of parts of one read in flight is limited by its concurrency
+  private static final ExecutorService partExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("S3RandomAccessFile-part-%d").build());
+
   private final CdmS3Uri uri;
+  private final MultipartRangeReader partReader;
   private S3Client client;
 
   private HeadObjectResponse objectHeadResponse;
@@ -64,6 +84,9 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
     // must be trying to open an object, so the key of the cdms3uri must be present
     checkState(uri.getKey().isPresent(), "The cdmS3Uri must reference an object - object key is missing.");
 
+    partReader = new MultipartRangeReader(uri.getPartSize().orElse(s3PartSize),
+        uri.getPartConcurrency().orElse(s3PartConcurrency), partExecutor);
+
     // create client that will make S3 API requests
     client = CdmS3Client.acquire(uri);
 
@@ -80,8 +103,25 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
     objectHeadResponse = null;
   }
 
+  /**
+   * Reads larger than the part size bypass the read cache, and are read in parallel parts.
+   * The read is first limited to the end of the object.
+   */
+  @Override
+  protected int read_(long pos, byte[] buff, int offset, int len) throws IOException {
+    if (pos >= length()) {
+      return -1;
+    }
+    len = (int) Math.min(len, length() - pos);
+    if (len > partReader.getPartSize()) {
+      return readRemote(pos, buff, offset, len);
+    }
+    return super.read_(pos, buff, offset, len);
+  }
+
   /**
    * Read directly from the remote service All reading goes through here or readToByteChannel;
+   * reads larger than the part size are split into parts which are requested in parallel.
    *
    * 1. https://docs.aws.amazon.com/AmazonS3/latest/dev/RetrievingObjectUsingJava.html
    *
@@ -94,8 +134,13 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
    */
   @Override
   public int readRemote(long pos, byte[] buff, int offset, int len) throws IOException {
+    return partReader.read(pos, buff, offset, len, length(), this::readRange);
+  }
 
-    String range = String.format("bytes=%d-%d", pos, pos + len);
+  /** Read one range with a single request. */
+  private int readRange(long pos, byte[] buff, int offset, int len) throws IOException {
+    // the end of an HTTP byte range is inclusive
+    String range = String.format("bytes=%d-%d", pos, pos + len - 1);
     GetObjectRequest rangeObjectRequest =
         GetObjectRequest.builder().bucket(uri.getBucket()).key(uri.getKey().get()).range(range).build();
 
@@ -128,6 +173,13 @@ public final class S3RandomAccessFile extends RemoteRandomAccessFile implements
     return objectHeadResponse.lastModified().toEpochMilli();
   }
 
+  /** The ETag of the object, which changes whenever its contents change. */
+  @Override
+  protected String getRemoteVersion() {
+    String eTag = objectHeadResponse.eTag();
+    return (eTag != null) ? "ETag=" + eTag : super.getRemoteVersion();
+  }
+
   @Override
   public String getLocation() {
     return uri.toString();
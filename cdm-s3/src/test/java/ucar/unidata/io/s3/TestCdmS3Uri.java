@@ -198,6 +198,24 @@ public class TestCdmS3Uri {
     assertThat(uri1).isNotEqualTo(uri3);
   }
 
+  @Test
+  public void testPartOptions() throws URISyntaxException {
+    CdmS3Uri cdmS3Uri = new CdmS3Uri(
+        schemeCdmS3 + ":" + bucket_name + "?" + query + "#" + fragment + "&partSize=1048576&partConcurrency=8");
+    assertThat(cdmS3Uri.getDelimiter().get()).isEqualTo("/");
+    assertThat(cdmS3Uri.getPartSize().get()).isEqualTo(1048576);
+    assertThat(cdmS3Uri.getPartConcurrency().get()).isEqualTo(8);
+
+    cdmS3Uri = new CdmS3Uri(schemeCdmS3 + ":" + bucket_name + "?" + query);
+    assertThat(cdmS3Uri.getPartSize().isPresent()).isFalse();
+    assertThat(cdmS3Uri.getPartConcurrency().isPresent()).isFalse();
+  }
+
+  @Test(expected = URISyntaxException.class)
+  public void testBadPartSize() throws URISyntaxException {
+    new CdmS3Uri(schemeCdmS3 + ":" + bucket_name + "?" + query + "#partSize=big");
+  }
+
   public void testUri(String cdmS3UriString, String expectedEndpoint) throws URISyntaxException {
     logger.debug(cdmS3UriString);
     CdmS3Uri cdmS3Uri = new CdmS3Uri(cdmS3UriString);
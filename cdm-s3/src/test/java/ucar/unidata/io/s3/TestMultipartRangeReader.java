@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.s3;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/** Test {@link MultipartRangeReader} against an in-memory object, standing in for S3 range requests. */
+public class TestMultipartRangeReader {
+  private static final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+  @AfterClass
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static class InMemoryObject implements MultipartRangeReader.RangeReader {
+    final byte[] data;
+    final List<Long> requests = new CopyOnWriteArrayList<>();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    long failAt = -1;
+
+    InMemoryObject(int size) {
+      data = new byte[size];
+      for (int i = 0; i < size; i++) {
+        data[i] = (byte) (i % 253);
+      }
+    }
+
+    @Override
+    public int read(long pos, byte[] buff, int offset, int len) throws IOException {
+      requests.add(pos);
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(5); // let the parts overlap
+        if (pos == failAt) {
+          throw new IOException("failed part at " + pos);
+        }
+        if (pos >= data.length) {
+          return -1;
+        }
+        int n = (int) Math.min(len, data.length - pos);
+        System.arraycopy(data, (int) pos, buff, offset, n);
+        return n;
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  public void testSmallReadIsOneRequest() throws IOException {
+    InMemoryObject object = new InMemoryObject(10_000);
+    MultipartRangeReader reader = new MultipartRangeReader(1000, 4, executor);
+    byte[] buff = new byte[1000];
+    assertThat(reader.read(500, buff, 0, 1000, object.data.length, object)).isEqualTo(1000);
+    assertThat(object.requests).containsExactly(500L);
+    assertThat(buff).isEqualTo(Arrays.copyOfRange(object.data, 500, 1500));
+  }
+
+  @Test
+  public void testPartsAreReassembled() throws IOException {
+    InMemoryObject object = new InMemoryObject(10_000);
+    MultipartRangeReader reader = new MultipartRangeReader(1000, 3, executor);
+    byte[] buff = new byte[8500 + 7];
+    assertThat(reader.read(1200, buff, 7, 8500, object.data.length, object)).isEqualTo(8500);
+    assertThat(Arrays.copyOfRange(buff, 7, buff.length)).isEqualTo(Arrays.copyOfRange(object.data, 1200, 9700));
+    assertThat(object.requests).hasSize(9);
+    assertThat(object.maxInFlight.get()).isAtMost(3);
+    assertThat(object.maxInFlight.get()).isGreaterThan(1);
+  }
+
+  @Test
+  public void testReadPastEnd() throws IOException {
+    InMemoryObject object = new InMemoryObject(10_000);
+    MultipartRangeReader reader = new MultipartRangeReader(1000, 4, executor);
+    byte[] buff = new byte[5000];
+    assertThat(reader.read(7500, buff, 0, 5000, object.data.length, object)).isEqualTo(2500);
+    assertThat(Arrays.copyOfRange(buff, 0, 2500)).isEqualTo(Arrays.copyOfRange(object.data, 7500, 10_000));
+    // only the parts before the end are requested
+    assertThat(object.requests).containsExactly(7500L, 8500L, 9500L);
+  }
+
+  @Test
+  public void testReadAtEnd() throws IOException {
+    InMemoryObject object = new InMemoryObject(10_000);
+    MultipartRangeReader reader = new MultipartRangeReader(1000, 4, executor);
+    assertThat(reader.read(10_000, new byte[5000], 0, 5000, object.data.length, object)).isEqualTo(-1);
+    assertThat(object.requests).isEmpty();
+  }
+
+  @Test
+  public void testFailedPart() {
+    InMemoryObject object = new InMemoryObject(10_000);
+    object.failAt = 3000;
+    MultipartRangeReader reader = new MultipartRangeReader(1000, 4, executor);
+    try {
+      reader.read(0, new byte[10_000], 0, 10_000, object.data.length, object);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("failed part at 3000");
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 1998-2021 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import ucar.array.Array;
+import ucar.array.InvalidRangeException;
+import ucar.array.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.util.CompareArrayToArray;
+import ucar.nc2.iosp.ChunkCache;
+import ucar.nc2.iosp.LayoutBBTiled;
+import ucar.unidata.util.test.category.NeedsCdmUnitTest;
+
+/** Compare reads of compressed HDF4 data through the chunk cache and in parallel, with uncached sequential reads. */
+@RunWith(Parameterized.class)
+@Category(NeedsCdmUnitTest.class)
+public class TestH4chunkCache {
+
+  @Parameterized.Parameters(name = "{0} {1}")
+  public static List<Object[]> getTestParameters() {
+    List<Object[]> result = new ArrayList<>();
+
+    // compressed, not linked
+    result.add(new Object[] {TestH4readAndCount.testDir + "ssec/MYD06_L2.A2006188.1655.005.2006194124315.hdf",
+        "mod06/Data_Fields/Cloud_Top_Pressure"});
+
+    // compressed, linked
+    result.add(new Object[] {TestH4readAndCount.testDir + "eos/mopitt/MOP03M-200501-L3V81.0.1.hdf",
+        "MOP03/Data_Fields/Surface_Pressure_Day"});
+    result.add(new Object[] {TestH4readAndCount.testDir + "ncidc/MOD10A1.A2008001.h23v15.005.2008003161138.hdf",
+        "MOD_Grid_Snow_500m/Data_Fields/Fractional_Snow_Cover"});
+
+    // chunked and compressed
+    result.add(new Object[] {TestH4readAndCount.testDir + "eos/misr/MISR_AM1_GP_GMP_P040_O003734_05.eos",
+        "GeometricParameters/Data_Fields/CaZenith"});
+    result.add(new Object[] {TestH4readAndCount.testDir + "ncidc/MOD02HKM.A2007016.0245.005.2007312120020.hdf",
+        "MODIS_SWATH_Type_L1B/Data_Fields/EV_500_RefSB_Uncert_Indexes"});
+
+    return result;
+  }
+
+  private final String filename;
+  private final String varName;
+
+  public TestH4chunkCache(String filename, String varName) {
+    this.filename = filename;
+    this.varName = varName;
+  }
+
+  @After
+  public void reset() {
+    ChunkCache.setDefault(null);
+    LayoutBBTiled.setExecutor(null);
+  }
+
+  @Test
+  public void testSameData() throws IOException, InvalidRangeException {
+    // uncached, one chunk at a time on this thread
+    ChunkCache.setDefault(new ChunkCache(0));
+    LayoutBBTiled.setExecutor(Runnable::run);
+    Array<?> expected;
+    Array<?> expectedSubset;
+    Section subset;
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      Variable v = ncfile.findVariable(varName);
+      assertThat(v).isNotNull();
+      expected = v.readArray();
+      subset = lastHalf(v.getShape());
+      expectedSubset = v.readArray(subset);
+    }
+
+    ChunkCache cache = new ChunkCache(1L << 28);
+    ChunkCache.setDefault(cache);
+    LayoutBBTiled.setExecutor(null);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename)) {
+      Variable v = ncfile.findVariable(varName);
+      assertThat(CompareArrayToArray.compareData(varName, expected, v.readArray())).isTrue();
+      assertThat(cache.getSizeInBytes()).isGreaterThan(0L);
+
+      long hits = cache.getStats().hitCount();
+      assertThat(CompareArrayToArray.compareData(varName, expectedSubset, v.readArray(subset))).isTrue();
+      assertThat(cache.getStats().hitCount()).isGreaterThan(hits);
+    }
+    assertThat(cache.getSizeInBytes()).isEqualTo(0L);
+  }
+
+  // the second half of the outer dimension
+  private static Section lastHalf(int[] shape) throws InvalidRangeException {
+    int[] origin = new int[shape.length];
+    int[] size = shape.clone();
+    origin[0] = shape[0] / 2;
+    size[0] = shape[0] - origin[0];
+    return new Section(origin, size);
+  }
+}
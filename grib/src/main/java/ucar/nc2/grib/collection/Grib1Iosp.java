@@ -11,11 +11,14 @@ import ucar.nc2.grib.grib1.*;
 import ucar.nc2.grib.grib1.tables.Grib1Customizer;
 import ucar.nc2.grib.grib1.tables.Grib1ParamTables;
 import ucar.nc2.grib.*;
+import com.google.common.collect.ImmutableList;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.nc2.internal.http.RafHttp;
 
 import java.io.IOException;
 import java.util.Formatter;
+import java.util.List;
 
 /**
  * Grib-1 Collection IOSP.
@@ -26,6 +29,9 @@ import java.util.Formatter;
  */
 public class Grib1Iosp extends GribIosp {
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Grib2Iosp.class);
+  // a GRIB1 file, or an index of one
+  private static final List<MagicNumber> magicNumbers = ImmutableList.of(Grib1RecordScanner.MAGIC,
+      MagicNumber.at(Grib1CollectionWriter.MAGIC_START, 0), MagicNumber.at(Grib1PartitionBuilder.MAGIC_START, 0));
 
   @Override
   public String makeVariableName(GribCollectionImmutable.VariableIndex v) {
@@ -187,6 +193,11 @@ public class Grib1Iosp extends GribIosp {
     return Grib1RecordScanner.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return magicNumbers;
+  }
+
   @Override
   public String getFileTypeId() {
     return DataFormatType.GRIB1.getDescription();
@@ -9,11 +9,14 @@ import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.grib.grib2.*;
 import ucar.nc2.grib.*;
 import ucar.nc2.grib.grib2.table.Grib2Tables;
+import com.google.common.collect.ImmutableList;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.nc2.internal.http.RafHttp;
 
 import java.io.IOException;
 import java.util.Formatter;
+import java.util.List;
 
 /**
  * Grib-2 Collection IOSP.
@@ -24,6 +27,9 @@ import java.util.Formatter;
  */
 public class Grib2Iosp extends GribIosp {
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Grib2Iosp.class);
+  // a GRIB2 file, or an index of one
+  private static final List<MagicNumber> magicNumbers = ImmutableList.of(Grib2RecordScanner.MAGIC,
+      MagicNumber.at(Grib2CollectionWriter.MAGIC_START, 0), MagicNumber.at(Grib2PartitionBuilder.MAGIC_START, 0));
 
   static String makeVariableNameFromTable(Grib2Tables cust, GribCollectionImmutable gribCollection,
       GribCollectionImmutable.VariableIndex vindex, boolean useGenType) {
@@ -205,6 +211,11 @@ public class Grib2Iosp extends GribIosp {
     return Grib2RecordScanner.isValidFile(raf);
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return magicNumbers;
+  }
+
   @Override
   public String getFileTypeId() {
     return DataFormatType.GRIB2.getDescription();
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,10 +75,26 @@ public abstract class GribArrayReader {
    * @return data as an Array
    */
   public Array<?> readData(SectionIterable want) throws IOException, InvalidRangeException {
+    return readReceiver(want, null, 0).getArray();
+  }
+
+  /**
+   * Read the section of data described by want into a caller-supplied array, in canonical order.
+   * Missing records are set to NaN.
+   *
+   * @param want which data do you want?
+   * @param dest put the data here, must have room for want.computeSize() values starting at destPos.
+   * @param destPos starting position in dest.
+   */
+  public void readData(SectionIterable want, float[] dest, int destPos) throws IOException, InvalidRangeException {
+    readReceiver(want, dest, destPos);
+  }
+
+  private DataReceiverIF readReceiver(SectionIterable want, @Nullable float[] dest, int destPos) throws IOException {
     if (vindex instanceof PartitionCollectionImmutable.VariableIndexPartitioned)
-      return readDataFromPartition((PartitionCollectionImmutable.VariableIndexPartitioned) vindex, want);
+      return readDataFromPartition((PartitionCollectionImmutable.VariableIndexPartitioned) vindex, want, dest, destPos);
     else
-      return readDataFromCollection(vindex, want);
+      return readDataFromCollection(vindex, want, dest, destPos);
   }
 
   /*
@@ -86,8 +103,8 @@ public abstract class GribArrayReader {
    * GribCoverage: must translate coordinates to Grib Coordinate index.
    * SectionIterable.next(int[] index) is not used here.
    */
-  private Array<?> readDataFromCollection(GribCollectionImmutable.VariableIndex vindex, SectionIterable want)
-      throws IOException {
+  private DataReceiverIF readDataFromCollection(GribCollectionImmutable.VariableIndex vindex, SectionIterable want,
+      @Nullable float[] dest, int destPos) throws IOException {
     // first time, read records and keep in memory
     vindex.readRecords();
 
@@ -110,9 +127,10 @@ public abstract class GribArrayReader {
     }
 
     // sort by file and position, then read
-    DataReceiverIF dataReceiver = new DataReceiver(want.getShape(), want.getRange(rank - 2), want.getRange(rank - 1));
+    DataReceiverIF dataReceiver =
+        new DataReceiver(want.getShape(), want.getRange(rank - 2), want.getRange(rank - 1), dest, destPos);
     read(dataReceiver);
-    return dataReceiver.getArray();
+    return dataReceiver;
   }
 
   /*
@@ -121,8 +139,8 @@ public abstract class GribArrayReader {
    * VariableIndexPartitioned.getDataRecord(int[] index)
    * want.getShape() indicates the result Array shape.
    */
-  private Array<?> readDataFromPartition(PartitionCollectionImmutable.VariableIndexPartitioned vindexP,
-      SectionIterable section) throws IOException {
+  private DataReceiverIF readDataFromPartition(PartitionCollectionImmutable.VariableIndexPartitioned vindexP,
+      SectionIterable section, @Nullable float[] dest, int destPos) throws IOException {
 
     int rank = section.getRank();
     SectionIterable sectionWanted = section.subSection(0, rank - 2); // all but x, y
@@ -164,10 +182,10 @@ public abstract class GribArrayReader {
 
     // sort by file and position, then read
     DataReceiverIF dataReceiver =
-        new DataReceiver(section.getShape(), section.getRange(rank - 2), section.getRange(rank - 1));
+        new DataReceiver(section.getShape(), section.getRange(rank - 2), section.getRange(rank - 1), dest, destPos);
     readPartitioned(dataReceiver);
 
-    return dataReceiver.getArray();
+    return dataReceiver;
   }
 
   //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -290,27 +308,42 @@ public abstract class GribArrayReader {
     private final RangeIterator xRange;
     private final int horizSize;
     private final float[] dataArray;
+    private final int offset;
+    private final int len;
     private final int[] shape;
 
     DataReceiver(int[] shape, RangeIterator yRange, RangeIterator xRange) {
+      this(shape, yRange, xRange, null, 0);
+    }
+
+    /** If dest is not null, put the data there starting at destPos, instead of allocating a new array. */
+    DataReceiver(int[] shape, RangeIterator yRange, RangeIterator xRange, @Nullable float[] dest, int destPos) {
       this.shape = shape;
       this.yRange = yRange;
       this.xRange = xRange;
       this.horizSize = yRange.length() * xRange.length();
 
       long len = Arrays.computeSize(shape);
-      if (len > 100 * 1000 * 1000 * 4) { // TODO make configurable
-        logger.debug("Len greater that 100MB shape={}%n{}", java.util.Arrays.toString(shape),
-            Throwables.getStackTraceAsString(new Throwable()));
-        throw new IllegalArgumentException("RequestTooLarge: Len greater that 100M ");
+      if (dest == null) {
+        if (len > 100 * 1000 * 1000 * 4) { // TODO make configurable
+          logger.debug("Len greater that 100MB shape={}%n{}", java.util.Arrays.toString(shape),
+              Throwables.getStackTraceAsString(new Throwable()));
+          throw new IllegalArgumentException("RequestTooLarge: Len greater that 100M ");
+        }
+        this.dataArray = new float[(int) len];
+        this.offset = 0;
+      } else {
+        Arrays.checkPrimitiveArray(ArrayType.FLOAT, dest, destPos, len);
+        this.dataArray = dest;
+        this.offset = destPos;
       }
-      this.dataArray = new float[(int) len];
-      java.util.Arrays.fill(this.dataArray, Float.NaN); // prefill primitive array
+      this.len = (int) len;
+      java.util.Arrays.fill(this.dataArray, offset, offset + this.len, Float.NaN); // prefill primitive array
     }
 
     @Override
     public void addData(float[] data, int resultIndex, int nx) {
-      int start = resultIndex * horizSize;
+      int start = offset + resultIndex * horizSize;
       int count = 0;
       for (int y : yRange) {
         for (int x : xRange) {
@@ -325,11 +358,14 @@ public abstract class GribArrayReader {
     // optimization
     @Override
     public void setDataToZero() {
-      java.util.Arrays.fill(this.dataArray, 0.0f);
+      java.util.Arrays.fill(this.dataArray, offset, offset + len, 0.0f);
     }
 
     @Override
     public Array<?> getArray() {
+      if (offset != 0 || dataArray.length != len) {
+        return Arrays.factory(ArrayType.FLOAT, shape, java.util.Arrays.copyOfRange(dataArray, offset, offset + len));
+      }
       return Arrays.factory(ArrayType.FLOAT, shape, dataArray);
     }
   }
@@ -248,6 +248,26 @@ public abstract class GribIosp extends AbstractIOServiceProvider {
     }
   }
 
+  @Override
+  public void readArrayDataInto(Variable v2, ucar.array.Section section, Object dest, int destPos)
+      throws java.io.IOException, ucar.array.InvalidRangeException {
+    if (v2.getSPobject() instanceof Time2Dinfo || !(dest instanceof float[])) {
+      super.readArrayDataInto(v2, section, dest, destPos);
+      return;
+    }
+
+    try {
+      GribCollectionImmutable.VariableIndex vindex = (GribCollectionImmutable.VariableIndex) v2.getSPobject();
+      GribArrayReader dataReader = GribArrayReader.factory(gribCollection, vindex);
+      SectionIterable sectionIter = new SectionIterable(section, v2.getShape());
+      dataReader.readData(sectionIter, (float[]) dest, destPos);
+
+    } catch (IOException ioe) {
+      logger.error("Failed to readData ", ioe);
+      throw ioe;
+    }
+  }
+
   ///////////////////////////////////////
   // debugging back door
   public abstract Object getLastRecordRead();
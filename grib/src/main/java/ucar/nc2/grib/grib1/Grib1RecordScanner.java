@@ -7,6 +7,7 @@ package ucar.nc2.grib.grib1;
 
 import javax.annotation.Nullable;
 import ucar.nc2.grib.GribNumbers;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.unidata.io.KMPMatch;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.util.StringUtil2;
@@ -39,6 +40,9 @@ public class Grib1RecordScanner {
   private static final boolean debugGds = false;
   private static final int maxScan = 16000;
 
+  /** A GRIB file has a record in the part that isValidFile() searches. */
+  public static final MagicNumber MAGIC = MagicNumber.within("GRIB", maxScan);
+
   static boolean allowBadIsLength;
   static boolean allowBadDsLength; // ECMWF workaround
 
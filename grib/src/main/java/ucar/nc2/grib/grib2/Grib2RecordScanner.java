@@ -7,6 +7,7 @@ package ucar.nc2.grib.grib2;
 
 import javax.annotation.Nullable;
 import ucar.nc2.grib.GribNumbers;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.unidata.io.KMPMatch;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.util.StringUtil2;
@@ -28,6 +29,9 @@ public class Grib2RecordScanner {
   private static final boolean debugEnding = false;
   private static final int maxScan = 16000;
 
+  /** A GRIB file has a record in the part that isValidFile() searches. */
+  public static final MagicNumber MAGIC = MagicNumber.within("GRIB", maxScan);
+
   public static boolean isValidFile(RandomAccessFile raf) {
     try {
       raf.seek(0);
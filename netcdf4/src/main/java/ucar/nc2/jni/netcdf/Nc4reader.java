@@ -10,6 +10,7 @@ import static ucar.nc2.ffi.netcdf.NetcdfClibrary.isLibraryPresent;
 import static ucar.nc2.jni.netcdf.Nc4prototypes.*;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.sun.jna.Platform;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
@@ -37,6 +38,7 @@ import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.internal.util.URLnaming;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.iosp.IospArrayHelper;
+import ucar.nc2.iosp.MagicNumber;
 import ucar.nc2.ffi.netcdf.NetcdfClibrary;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.internal.util.EscapeStrings;
@@ -121,6 +123,11 @@ public class Nc4reader extends AbstractIOServiceProvider {
     return false;
   }
 
+  @Override
+  public List<MagicNumber> getMagicNumbers() {
+    return ImmutableList.of(NetcdfFileFormat.HDF5_MAGIC, NetcdfFileFormat.CDF5_MAGIC);
+  }
+
   // 2016-06-06 note: Once netcdf-c v4.4.1 is released, we should be able to return much better information from
   // getFileTypeDescription(), getFileTypeId(), and getFileTypeVersion() (inherited from superclass).
   // See https://goo.gl/pSP1Bq